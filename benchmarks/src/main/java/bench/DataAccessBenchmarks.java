@@ -0,0 +1,124 @@
+package bench;
+
+import db.DBConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import service.AuthService;
+import service.BillingService;
+import service.CartLine;
+import service.StockService;
+import ui.MedicineTableModel;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DataAccessBenchmarks
+ *
+ * JMH versions of the DataAccessBench hot paths, run against an EmbeddedDatabase
+ * seeded the same way every fork, so numbers can be compared between machines and
+ * commits. They measure the app's own JDBC and service code; absolute numbers are
+ * H2's, not MySQL's, so use DataAccessBench against a scratch MySQL schema to size
+ * a real store.
+ *
+ * Build and run from the repository root:
+ *   mvn -B -f benchmarks/pom.xml package
+ *   java -jar benchmarks/target/benchmarks.jar [regex] [-t 4] [-p rows=50000] [-rf csv]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DataAccessBenchmarks {
+
+    private static final int SEED_STOCK = 1_000_000;
+
+    @Param("20000")
+    public int rows;
+
+    private final AuthService auth = new AuthService();
+    private final StockService stock = new StockService();
+    private final BillingService billing = new BillingService();
+    private int[] ids;
+    private String[] names;
+
+    // Each benchmark thread picks medicines from its own fixed-seed sequence
+    @State(Scope.Thread)
+    public static class Picker {
+        private static int next;
+        final Random rnd;
+
+        public Picker() {
+            synchronized (Picker.class) {
+                rnd = new Random(42 + next++);
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        EmbeddedDatabase.start("medixbench");
+        DBConnection.setPoolSize(4, 16);
+        Seeder.Catalog catalog = Seeder.seed(rows, SEED_STOCK);
+        ids = catalog.ids;
+        names = catalog.names;
+    }
+
+    @Benchmark
+    public boolean login() throws SQLException {
+        return auth.checkCredentials("bench", "bench");
+    }
+
+    // ShowStockFrame.loadData
+    @Benchmark
+    public int stockPage() throws SQLException {
+        return MedicineTableModel.loadFirstPage("");
+    }
+
+    @Benchmark
+    public int stockSearch(Picker p) throws SQLException {
+        String generic = Seeder.GENERICS[p.rnd.nextInt(Seeder.GENERICS.length)];
+        return MedicineTableModel.loadFirstPage(generic.substring(0, 4).toLowerCase(Locale.ROOT));
+    }
+
+    @Benchmark
+    public int addStock(Picker p) throws SQLException {
+        int i = p.rnd.nextInt(ids.length);
+        return stock.addStock(ids[i], names[i], 1);
+    }
+
+    // BillingFrame.processSale
+    @Benchmark
+    public boolean sale(Picker p) throws SQLException {
+        int i = p.rnd.nextInt(ids.length);
+        if (!billing.sellById(ids[i], names[i], 1).isOk()) throw new IllegalStateException("sale refused for " + names[i]);
+        return true;
+    }
+
+    @Benchmark
+    public boolean checkout(Picker p) throws SQLException {
+        List<CartLine> cart = new ArrayList<>();
+        for (int k = 0; k < 3; k++) {
+            int i = p.rnd.nextInt(ids.length);
+            cart.add(new CartLine(ids[i], names[i], 1 + p.rnd.nextInt(3)));
+        }
+        if (!billing.checkout(cart).isOk()) throw new IllegalStateException("checkout refused");
+        return true;
+    }
+}
@@ -0,0 +1,36 @@
+# Launch MedixHub from medixhub.jar (build it with: jar --create --file medixhub.jar -C out .)
+#
+#   .\run.ps1          normal start
+#   .\run.ps1 -Cds     start with an application class-data-sharing archive (JDK 13+):
+#                      the first run records every class it loads into medixhub.jsa when
+#                      the app exits; later runs map that archive instead of loading and
+#                      verifying the classes again. The archive is rebuilt when the jar changes.
+#
+# Each run prints "Startup: <phase> at N ms"; compare "login-window" with and without -Cds.
+param(
+    [switch]$Cds,
+    [string]$Jar = "medixhub.jar",
+    [string]$Driver = "lib/mysql-connector-j.jar",
+    [string]$Archive = "medixhub.jsa"
+)
+
+if (-not (Test-Path $Jar)) {
+    Write-Error "$Jar not found. Compile into out\ and run: jar --create --file $Jar -C out ."
+    exit 1
+}
+
+# CDS only archives classes from jar files, so the classpath is jars only
+$javaArgs = @("-cp", "$Jar;$Driver")
+if ($Cds) {
+    if ((Test-Path $Archive) -and ((Get-Item $Archive).LastWriteTime -lt (Get-Item $Jar).LastWriteTime)) {
+        Remove-Item $Archive
+    }
+    if (Test-Path $Archive) {
+        $javaArgs = @("-XX:SharedArchiveFile=$Archive") + $javaArgs
+    } else {
+        Write-Host "Recording class list into $Archive (written when the app exits)"
+        $javaArgs = @("-XX:ArchiveClassesAtExit=$Archive") + $javaArgs
+    }
+}
+
+& java @javaArgs Main
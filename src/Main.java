@@ -1,19 +1,28 @@
 import javax.swing.SwingUtilities;
 import ui.LoginFrame;
-import ui.UIUtils;
+import ui.Startup;
+
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 /**
  * Main
  *
- * Application entry point: launches the LoginFrame.
+ * Application entry point: starts background warm-up, then launches the LoginFrame.
  */
 public class Main {
     public static void main(String[] args) {
-        // Initialize UI theme once
-        UIUtils.init();
+        // Look and feel once, pool and catalog warm-up in the background
+        Startup.begin();
 
         SwingUtilities.invokeLater(() -> {
             LoginFrame login = new LoginFrame();
+            login.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowOpened(WindowEvent e) {
+                    Startup.mark("login-window");
+                }
+            });
             login.setVisible(true);
         });
     }
@@ -0,0 +1,376 @@
+package api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import db.DBConnection;
+import db.DbExecutor;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import service.AuthService;
+import service.BillingService;
+import service.CartLine;
+import service.CatalogCache;
+import service.CatalogService;
+import service.GroupCommit;
+import service.JournalReplayer;
+import service.Medicine;
+import service.RemoteClient;
+import service.SaleJournal;
+import service.StockBatch;
+import service.StockLedger;
+import service.StockService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ApiServer
+ *
+ * Optional store server: runs the catalog, stock, billing and auth services for
+ * every terminal in the shop over HTTP/JSON, so only this process holds database
+ * credentials and connections (one shared pool) and one catalog cache serves all
+ * counters. Terminals started with MEDIXHUB_SERVER pointing here become thin clients.
+ *
+ * Requests are handled on DbExecutor (virtual threads on Java 21+). Every request must
+ * carry MEDIXHUB_API_KEY in the X-Api-Key header. Without a key the server refuses to
+ * start unless it is bound to loopback or --no-api-key is given, since the API can sell
+ * and change stock and the traffic is plain HTTP.
+ *
+ * Endpoints (JSON bodies and responses):
+ *   GET  /api/health
+ *   POST /api/login            {username, password}         -> {ok}
+ *   GET  /api/medicines/count  ?q=                          -> {count}
+ *   GET  /api/medicines        ?q=&after=&limit=            -> {rows: [medicine...]}
+ *   GET  /api/medicines/skip   ?q=&after=&count=            -> {id}
+ *   GET  /api/medicines/sync   ?q=                          -> {sync: {count, maxId, syncedAt, complete, rows}}
+ *   GET  /api/medicines/changes?since=                      -> {changes: {count, maxId, syncedAt, complete, rows}}
+ *   GET  /api/medicines/by-name?name=                       -> {medicine}
+ *   POST /api/medicines        {name, company, price, stock} -> {medicine}
+ *   POST /api/stock            {id, name, qty}              -> {updated}
+ *   POST /api/batches          {id, name, batchNo, expiry, qty} -> {updated}
+ *   POST /api/batches/write-off {id}                        -> {units}
+ *   GET  /api/batches/expiring ?days=                       -> {batches: [batch...]}
+ *   GET  /api/ledger           ?id=&limit=                  -> {history} (null for an unknown medicine)
+ *   POST /api/sales            {id, name, qty}              -> sale result
+ *   POST /api/checkout         {lines: [{id, name, qty}]}   -> cart result
+ *   POST /api/journal          {entries: [journal entry...]} -> replay report (offline sales from a terminal)
+ *
+ * With --group-commit MS, sales and checkouts that arrive within MS milliseconds of
+ * each other are committed together (see GroupCommit); responses are unchanged.
+ *
+ * Usage: java -cp "lib/*;out" api.ApiServer [--port 8080] [--bind 0.0.0.0] [--group-commit 2] [--no-api-key]
+ */
+public class ApiServer {
+
+    private static final int MAX_BODY_BYTES = 1 << 20;
+
+    // One endpoint: returns the JSON response body
+    private interface Handler {
+        Object handle(Map<String, String> query, Map<String, Object> body) throws Exception;
+    }
+
+    private static final class Route {
+        final LatencyHistogram timer;
+        final Handler handler;
+
+        Route(String metric, Handler handler) {
+            this.timer = Metrics.timer(metric);
+            this.handler = handler;
+        }
+    }
+
+    private final HttpServer server;
+    // UTF-8 bytes of the key, or null when requests need none
+    private final byte[] apiKey;
+    private final Map<String, Route> routes = new HashMap<>();
+
+    private final AuthService auth = new AuthService();
+    private final CatalogService catalog = new CatalogService();
+    private final StockService stock = new StockService();
+    private final BillingService billing = new BillingService();
+    private final StockLedger ledger = new StockLedger();
+    private final GroupCommit group;
+
+    // groupCommitMs: 0 runs every sale in its own transaction
+    public ApiServer(InetSocketAddress address, String apiKey, int groupCommitMs) throws IOException {
+        this.apiKey = apiKey != null ? apiKey.getBytes(StandardCharsets.UTF_8) : null;
+        this.group = groupCommitMs > 0 ? new GroupCommit(billing, groupCommitMs) : null;
+        registerRoutes();
+        server = HttpServer.create(address, 0);
+        server.createContext("/api/", this::dispatch);
+        server.setExecutor(DbExecutor::submit);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 8080;
+        String bind = "0.0.0.0";
+        int groupCommitMs = 0;
+        boolean noApiKey = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--bind": bind = args[++i]; break;
+                case "--group-commit": groupCommitMs = Integer.parseInt(args[++i]); break;
+                case "--no-api-key": noApiKey = true; break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (RemoteClient.isEnabled()) {
+            System.err.println("MEDIXHUB_SERVER is set; the store server must talk to the database directly. Unset it and retry.");
+            System.exit(1);
+        }
+        String key = System.getenv("MEDIXHUB_API_KEY");
+        if (key == null || key.isEmpty()) {
+            key = null;
+            if (!noApiKey && !InetAddress.getByName(bind).isLoopbackAddress()) {
+                System.err.println("MEDIXHUB_API_KEY is not set, so any host that can reach " + bind + ":" + port
+                        + " could sell and change stock. Set it, bind to 127.0.0.1, or pass --no-api-key.");
+                System.exit(1);
+            }
+            System.err.println("Warning: MEDIXHUB_API_KEY is not set; every process that can reach this port can use the API.");
+        }
+
+        DBConnection.ensureSchema();
+        DBConnection.warmUpPool();
+        CatalogCache.get().loadAll();
+        CatalogCache.get().startAutoRefresh();
+        // Sales this server journaled itself during a database outage
+        JournalReplayer.start();
+        StockLedger.startCompaction();
+
+        ApiServer api = new ApiServer(new InetSocketAddress(bind, port), key, groupCommitMs);
+        api.start();
+        System.out.printf("Store server listening on %s:%d (%d medicines cached, %s threads, pool %s%s)%n",
+                bind, port, CatalogCache.get().all().size(),
+                DbExecutor.usesVirtualThreads() ? "virtual" : "platform", DBConnection.getPoolStats(),
+                groupCommitMs > 0 ? ", group commit " + groupCommitMs + " ms" : "");
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+    }
+
+    private void registerRoutes() {
+        route("GET", "/api/health", "api.health", (q, b) -> {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("ok", true);
+            out.put("terminal", Metrics.getTerminalId());
+            out.put("pool", DBConnection.getPoolStats().toString());
+            out.put("catalog", CatalogCache.get().stats().toString());
+            return out;
+        });
+
+        route("POST", "/api/login", "api.login", (q, b) ->
+                single("ok", auth.checkCredentials(text(b, "username"), text(b, "password"))));
+
+        route("GET", "/api/medicines/count", "api.count", (q, b) ->
+                single("count", catalog.countRows(q.get("q"))));
+
+        route("GET", "/api/medicines", "api.page", (q, b) -> {
+            List<Object> rows = new ArrayList<>();
+            for (Medicine m : catalog.page(q.get("q"), number(q, "after", 0), (int) number(q, "limit", 200))) {
+                rows.add(RemoteClient.toJson(m));
+            }
+            return single("rows", rows);
+        });
+
+        route("GET", "/api/medicines/skip", "api.skip", (q, b) ->
+                single("id", catalog.skipAhead(q.get("q"), number(q, "after", 0), (int) number(q, "count", 0))));
+
+        route("GET", "/api/medicines/sync", "api.sync", (q, b) ->
+                single("sync", RemoteClient.toJson(catalog.syncPoint(q.get("q")))));
+
+        route("GET", "/api/medicines/changes", "api.changes", (q, b) ->
+                single("changes", RemoteClient.toJson(catalog.changesSince(number(q, "since", 0)))));
+
+        // Served from the store-wide catalog cache, reading through on a miss
+        route("GET", "/api/medicines/by-name", "api.by-name", (q, b) -> {
+            String name = q.get("name");
+            if (name == null || name.trim().isEmpty()) throw new IllegalArgumentException("name is required");
+            return single("medicine", RemoteClient.toJson(CatalogCache.get().lookup(name)));
+        });
+
+        route("POST", "/api/medicines", "api.add-medicine", (q, b) -> {
+            String name = text(b, "name");
+            if (name.trim().isEmpty()) throw new IllegalArgumentException("name is required");
+            Medicine m = stock.addMedicine(name.trim(), text(b, "company"), RemoteClient.doubleValue(b.get("price")),
+                    RemoteClient.intValue(b.get("stock")));
+            return single("medicine", RemoteClient.toJson(m));
+        });
+
+        route("POST", "/api/stock", "api.stock-add", (q, b) ->
+                single("updated", stock.addStock(RemoteClient.intValue(b.get("id")), text(b, "name"),
+                        RemoteClient.intValue(b.get("qty")))));
+
+        route("POST", "/api/batches", "api.batch-receive", (q, b) -> {
+            String batchNo = text(b, "batchNo").trim();
+            if (batchNo.isEmpty()) throw new IllegalArgumentException("batchNo is required");
+            return single("updated", stock.receiveBatch(RemoteClient.intValue(b.get("id")), text(b, "name"), batchNo,
+                    RemoteClient.dateValue(b.get("expiry")), RemoteClient.intValue(b.get("qty"))));
+        });
+
+        route("POST", "/api/batches/write-off", "api.batch-write-off", (q, b) ->
+                single("units", stock.writeOffBatch(new StockBatch(RemoteClient.longValue(b.get("id")), 0, null, null, null, 0))));
+
+        route("GET", "/api/batches/expiring", "api.expiring", (q, b) -> {
+            List<Object> rows = new ArrayList<>();
+            for (StockBatch batch : stock.expiringWithin((int) number(q, "days", 30))) {
+                rows.add(RemoteClient.toJson(batch));
+            }
+            return single("batches", rows);
+        });
+
+        route("GET", "/api/ledger", "api.ledger", (q, b) ->
+                single("history", RemoteClient.toJson(ledger.history((int) number(q, "id", 0), (int) number(q, "limit", 50)))));
+
+        route("POST", "/api/sales", "api.sale", (q, b) -> {
+            int id = RemoteClient.intValue(b.get("id"));
+            int qty = RemoteClient.intValue(b.get("qty"));
+            if (group != null) return RemoteClient.toJson(group.sell(id, text(b, "name"), qty));
+            return RemoteClient.toJson(id > 0 ? billing.sellById(id, text(b, "name"), qty) : billing.sell(text(b, "name"), qty));
+        });
+
+        route("POST", "/api/checkout", "api.checkout", (q, b) -> {
+            Object lines = b.get("lines");
+            if (!(lines instanceof List)) throw new IllegalArgumentException("lines must be an array");
+            List<CartLine> cart = new ArrayList<>();
+            for (Object line : (List<?>) lines) {
+                if (!(line instanceof Map)) throw new IllegalArgumentException("each line must be an object");
+                @SuppressWarnings("unchecked")
+                Map<String, Object> m = (Map<String, Object>) line;
+                cart.add(RemoteClient.cartLine(m));
+            }
+            return RemoteClient.toJson(group != null ? group.checkout(cart) : billing.checkout(cart));
+        });
+
+        route("POST", "/api/journal", "api.journal", (q, b) -> {
+            Object entries = b.get("entries");
+            if (!(entries instanceof List)) throw new IllegalArgumentException("entries must be an array");
+            List<SaleJournal.Entry> batch = new ArrayList<>();
+            for (Object entry : (List<?>) entries) {
+                if (!(entry instanceof Map)) throw new IllegalArgumentException("each entry must be an object");
+                @SuppressWarnings("unchecked")
+                Map<String, Object> m = (Map<String, Object>) entry;
+                batch.add(RemoteClient.journalEntry(m));
+            }
+            return RemoteClient.toJson(billing.replay(batch));
+        });
+    }
+
+    // Constant-time comparison, so response timing does not reveal how much of a guess was right
+    private boolean keyMatches(String given) {
+        return given != null && MessageDigest.isEqual(apiKey, given.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void route(String method, String path, String metric, Handler handler) {
+        routes.put(method + " " + path, new Route(metric, handler));
+    }
+
+    private void dispatch(HttpExchange ex) throws IOException {
+        long start = System.nanoTime();
+        Route route = routes.get(ex.getRequestMethod() + " " + ex.getRequestURI().getPath());
+        int status;
+        Object response;
+        try {
+            if (apiKey != null && !keyMatches(ex.getRequestHeaders().getFirst("X-Api-Key"))) {
+                status = 401;
+                response = single("error", "Missing or wrong API key");
+            } else if (route == null) {
+                status = 404;
+                response = single("error", "No such endpoint: " + ex.getRequestMethod() + " " + ex.getRequestURI().getPath());
+            } else {
+                Map<String, Object> body = "POST".equals(ex.getRequestMethod()) ? readBody(ex) : new HashMap<>();
+                response = route.handler.handle(parseQuery(ex.getRequestURI().getRawQuery()), body);
+                status = 200;
+            }
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            response = single("error", e.getMessage());
+        } catch (SQLException e) {
+            Metrics.increment("api.errors");
+            status = 500;
+            response = single("error", "Database error: " + e.getMessage());
+        } catch (Exception e) {
+            Metrics.increment("api.errors");
+            status = 500;
+            response = single("error", e.toString());
+        }
+
+        byte[] bytes = Json.write(response).getBytes(StandardCharsets.UTF_8);
+        try {
+            ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            ex.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            ex.close();
+            if (route != null) route.timer.recordSince(start);
+        }
+    }
+
+    private static Map<String, Object> readBody(HttpExchange ex) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (InputStream in = ex.getRequestBody()) {
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                buf.write(chunk, 0, n);
+                if (buf.size() > MAX_BODY_BYTES) throw new IllegalArgumentException("Request body too large");
+            }
+        }
+        String text = new String(buf.toByteArray(), StandardCharsets.UTF_8).trim();
+        return text.isEmpty() ? new HashMap<>() : Json.parseObject(text);
+    }
+
+    private static Map<String, String> parseQuery(String raw) throws UnsupportedEncodingException {
+        Map<String, String> out = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return out;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            out.put(key, value);
+        }
+        return out;
+    }
+
+    private static Map<String, Object> single(String key, Object value) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put(key, value);
+        return out;
+    }
+
+    private static String text(Map<String, Object> body, String key) {
+        Object v = body.get(key);
+        return v == null ? "" : v.toString();
+    }
+
+    private static long number(Map<String, String> query, String key, long defaultValue) {
+        String v = query.get(key);
+        if (v == null || v.isEmpty()) return defaultValue;
+        try {
+            return Long.parseLong(v);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a whole number");
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bench
+ *
+ * Minimal benchmark harness: runs an operation on N threads for a warm-up period,
+ * then for a measured period in which every call's latency is recorded. Reports
+ * throughput and latency percentiles, saves results as CSV and compares them with
+ * a saved baseline so regressions fail the run.
+ *
+ * Plain Java so it runs against a real MySQL store with just the driver jar; the
+ * warm-up phase lets the JIT settle before anything is recorded. The JMH module in
+ * benchmarks/ measures the same paths reproducibly on an embedded database.
+ */
+public final class Bench {
+
+    // One benchmarked call; rnd is private to the calling thread
+    public interface Op {
+        void run(Random rnd) throws Exception;
+    }
+
+    // Outcome of one benchmark
+    public static final class Result {
+        final String name;
+        final int threads;
+        final long ops;
+        final long errors;
+        final double seconds;
+        final long[] percentilesNanos; // p50, p90, p99, p99.9, max
+        final String firstError;
+
+        Result(String name, int threads, long ops, long errors, double seconds, long[] percentilesNanos, String firstError) {
+            this.name = name;
+            this.threads = threads;
+            this.ops = ops;
+            this.errors = errors;
+            this.seconds = seconds;
+            this.percentilesNanos = percentilesNanos;
+            this.firstError = firstError;
+        }
+
+        public String getName() { return name; }
+
+        public double getThroughput() { return seconds == 0 ? 0 : ops / seconds; }
+
+        public double getP50Millis() { return percentilesNanos[0] / 1e6; }
+
+        public double getP99Millis() { return percentilesNanos[2] / 1e6; }
+
+        public long getErrors() { return errors; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-22s %3d thr %10.1f ops/s   p50 %8.3f  p90 %8.3f  p99 %8.3f  p99.9 %8.3f  max %8.3f ms%s",
+                    name, threads, getThroughput(), percentilesNanos[0] / 1e6, percentilesNanos[1] / 1e6,
+                    percentilesNanos[2] / 1e6, percentilesNanos[3] / 1e6, percentilesNanos[4] / 1e6,
+                    errors == 0 ? "" : "   errors " + errors + " (" + firstError + ")");
+        }
+    }
+
+    // Growable per-thread latency log
+    static final class Recorder {
+        long[] nanos = new long[1 << 14];
+        int size;
+
+        void add(long v) {
+            if (size == nanos.length) nanos = Arrays.copyOf(nanos, size * 2);
+            nanos[size++] = v;
+        }
+    }
+
+    private Bench() {
+    }
+
+    /**
+     * Runs op on the given number of threads: warmupSeconds unrecorded, then measureSeconds recorded.
+     */
+    public static Result run(String name, int threads, int warmupSeconds, int measureSeconds, Op op) throws InterruptedException {
+        Recorder[] recorders = new Recorder[threads];
+        AtomicLong errors = new AtomicLong();
+        AtomicReference<String> firstError = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] window = new long[2]; // measure start, measure end (nanoTime); written before start opens
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Recorder rec = recorders[t] = new Recorder();
+            Random rnd = new Random(42 + t);
+            Thread th = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                while (true) {
+                    long t0 = System.nanoTime();
+                    if (t0 >= window[1]) break;
+                    try {
+                        op.run(rnd);
+                    } catch (Exception ex) {
+                        if (t0 >= window[0]) errors.incrementAndGet();
+                        firstError.compareAndSet(null, ex.getClass().getSimpleName() + ": " + ex.getMessage());
+                        continue;
+                    }
+                    if (t0 >= window[0]) rec.add(System.nanoTime() - t0);
+                }
+            }, "bench-" + name + "-" + t);
+            th.setDaemon(true);
+            workers.add(th);
+            th.start();
+        }
+
+        long now = System.nanoTime();
+        window[0] = now + warmupSeconds * 1_000_000_000L;
+        window[1] = window[0] + measureSeconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread th : workers) {
+            th.join();
+        }
+
+        int total = 0;
+        for (Recorder r : recorders) {
+            total += r.size;
+        }
+        long[] all = new long[total];
+        int pos = 0;
+        for (Recorder r : recorders) {
+            System.arraycopy(r.nanos, 0, all, pos, r.size);
+            pos += r.size;
+        }
+        Arrays.sort(all);
+        long[] pct = {percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), percentile(all, 0.999),
+                all.length == 0 ? 0 : all[all.length - 1]};
+        return new Result(name, threads, total, errors.get(), measureSeconds, pct, firstError.get());
+    }
+
+    // Writes name,threads,ops_per_sec,p50_ms,p99_ms,errors per result
+    public static void save(List<Result> results, Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("name,threads,ops_per_sec,p50_ms,p99_ms,errors");
+        for (Result r : results) {
+            lines.add(String.format(Locale.ROOT, "%s,%d,%.3f,%.6f,%.6f,%d",
+                    r.name, r.threads, r.getThroughput(), r.getP50Millis(), r.getP99Millis(), r.errors));
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares results with a file written by save(). A benchmark regresses when its
+     * throughput drops, or its p50 or p99 grows, by more than tolerance (0.10 = 10%).
+     *
+     * @return one message per regression; empty when nothing regressed
+     */
+    public static List<String> compare(List<Result> results, Path baseline, double tolerance) throws IOException {
+        Map<String, double[]> base = new HashMap<>();
+        List<String> lines = Files.readAllLines(baseline, StandardCharsets.UTF_8);
+        for (String line : lines.subList(1, lines.size())) {
+            String[] f = line.split(",");
+            if (f.length < 5) continue;
+            base.put(f[0], new double[]{Double.parseDouble(f[2]), Double.parseDouble(f[3]), Double.parseDouble(f[4])});
+        }
+
+        List<String> regressions = new ArrayList<>();
+        for (Result r : results) {
+            double[] b = base.get(r.name);
+            if (b == null) continue;
+            if (r.getThroughput() < b[0] * (1 - tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: throughput %.1f -> %.1f ops/s", r.name, b[0], r.getThroughput()));
+            }
+            if (r.getP50Millis() > b[1] * (1 + tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: p50 %.3f -> %.3f ms", r.name, b[1], r.getP50Millis()));
+            }
+            if (r.getP99Millis() > b[2] * (1 + tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: p99 %.3f -> %.3f ms", r.name, b[2], r.getP99Millis()));
+            }
+        }
+        return regressions;
+    }
+
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+}
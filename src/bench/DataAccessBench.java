@@ -0,0 +1,137 @@
+package bench;
+
+import db.DBConnection;
+import service.AuthService;
+import service.BillingService;
+import service.CartLine;
+import service.StockService;
+import ui.MedicineTableModel;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * DataAccessBench
+ *
+ * Command-line benchmarks for the application's database hot paths, calling the
+ * same code the windows run:
+ *   login        AuthService.checkCredentials
+ *   stock-page   MedicineTableModel.loadFirstPage("") (ShowStockFrame.loadData)
+ *   stock-search MedicineTableModel.loadFirstPage(filter)
+ *   add-stock    StockService.addStock by id
+ *   sale         BillingService.sellById (BillingFrame.processSale)
+ *   checkout     BillingService.checkout with 3 lines
+ *
+ * The target database comes from DB_URL / DB_USER / DB_PASS as usual and is seeded
+ * with realistic medicines (and a bench/bench user) if it has fewer rows than asked.
+ * Sales and stock changes are really written, so the run refuses to start unless the
+ * URL names a scratch database containing "bench" or --force is given.
+ *
+ * Usage: java -cp "lib/*;out" bench.DataAccessBench [--threads 4] [--warmup 5] [--seconds 10]
+ *        [--rows 20000] [--only sale,login] [--out bench-results.csv] [--baseline old.csv] [--tolerance 0.10] [--force]
+ * Exits with status 2 when --baseline is given and a benchmark regressed.
+ *
+ * For numbers that do not depend on the local MySQL setup, see DataAccessBenchmarks
+ * in benchmarks/ (JMH on an EmbeddedDatabase).
+ */
+public class DataAccessBench {
+
+    private static final int SEED_STOCK = 1_000_000;
+
+    private int threads = 1;
+    private int warmup = 5;
+    private int seconds = 10;
+    private int rows = 20_000;
+    private Set<String> only;
+    private Path out = Paths.get("bench-results.csv");
+    private Path baseline;
+    private double tolerance = 0.10;
+    private boolean force;
+
+    public static void main(String[] args) throws Exception {
+        DataAccessBench b = new DataAccessBench();
+        b.parse(args);
+        System.exit(b.runAll());
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+                case "--rows": rows = Integer.parseInt(args[++i]); break;
+                case "--only": only = new HashSet<>(Arrays.asList(args[++i].split(","))); break;
+                case "--out": out = Paths.get(args[++i]); break;
+                case "--baseline": baseline = Paths.get(args[++i]); break;
+                case "--tolerance": tolerance = Double.parseDouble(args[++i]); break;
+                case "--force": force = true; break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    private int runAll() throws Exception {
+        if (!Seeder.checkScratchDatabase(force)) return 1;
+        DBConnection.setPoolSize(Math.min(threads, 4), threads + 2);
+        Seeder.Catalog catalog = Seeder.seed(rows, SEED_STOCK);
+        int[] ids = catalog.ids;
+        String[] names = catalog.names;
+        System.out.printf("%s, %d medicines, %d thread(s), %ds warm-up, %ds measured%n",
+                DBConnection.getDbUrl(), ids.length, threads, warmup, seconds);
+
+        AuthService auth = new AuthService();
+        StockService stock = new StockService();
+        BillingService billing = new BillingService();
+        List<Bench.Result> results = new ArrayList<>();
+        bench(results, "login", rnd -> {
+            if (!auth.checkCredentials("bench", "bench")) throw new IllegalStateException("bench user missing");
+        });
+        bench(results, "stock-page", rnd -> MedicineTableModel.loadFirstPage(""));
+        bench(results, "stock-search", rnd -> MedicineTableModel.loadFirstPage(Seeder.GENERICS[rnd.nextInt(Seeder.GENERICS.length)].substring(0, 4).toLowerCase(Locale.ROOT)));
+        bench(results, "add-stock", rnd -> {
+            int i = rnd.nextInt(ids.length);
+            stock.addStock(ids[i], names[i], 1);
+        });
+        bench(results, "sale", rnd -> {
+            int i = rnd.nextInt(ids.length);
+            if (!billing.sellById(ids[i], names[i], 1).isOk()) throw new IllegalStateException("sale refused for " + names[i]);
+        });
+        bench(results, "checkout", rnd -> {
+            List<CartLine> cart = new ArrayList<>();
+            for (int k = 0; k < 3; k++) {
+                int i = rnd.nextInt(ids.length);
+                cart.add(new CartLine(ids[i], names[i], 1 + rnd.nextInt(3)));
+            }
+            if (!billing.checkout(cart).isOk()) throw new IllegalStateException("checkout refused");
+        });
+
+        Bench.save(results, out);
+        System.out.println("Results written to " + out.toAbsolutePath());
+        if (baseline == null) return 0;
+
+        List<String> regressions = Bench.compare(results, baseline, tolerance);
+        if (regressions.isEmpty()) {
+            System.out.printf("No regressions against %s (tolerance %.0f%%)%n", baseline, tolerance * 100);
+            return 0;
+        }
+        System.out.println("REGRESSIONS against " + baseline + ":");
+        for (String r : regressions) {
+            System.out.println("  " + r);
+        }
+        return 2;
+    }
+
+    private void bench(List<Bench.Result> results, String name, Bench.Op op) throws InterruptedException {
+        if (only != null && !only.contains(name)) return;
+        Bench.Result r = Bench.run(name, threads, warmup, seconds, op);
+        System.out.println(r);
+        results.add(r);
+    }
+}
@@ -0,0 +1,262 @@
+package bench;
+
+import db.DBConnection;
+import service.BillingService;
+import service.CartLine;
+import service.CartResult;
+import service.GroupCommit;
+import service.SaleResult;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LoadGenerator
+ *
+ * Headless checkout load: N simulated cashiers run the same BillingService calls
+ * as BillingFrame (a single sale for one-line carts, a cart checkout otherwise)
+ * against the database in DB_URL, with think time between customers and a Zipf
+ * skew towards a few hot medicines. At the end it prints sales per second,
+ * latency percentiles, deadlock / lock-timeout / retry counts, and checks that
+ * every medicine's stock fell by exactly the units the cashiers were told were sold.
+ * With --group-commit MS the cashiers go through GroupCommit, as on the store server.
+ *
+ * Usage: java -cp "lib/*;out" bench.LoadGenerator [--cashiers 8] [--seconds 60] [--think-ms 500]
+ *        [--cart-size 3] [--skus 500] [--skew 1.0] [--stock 1000] [--group-commit 2] [--force]
+ * Exits with status 3 when the stock check finds a mismatch.
+ */
+public class LoadGenerator {
+
+    private int cashiers = 8;
+    private int seconds = 60;
+    private int thinkMs = 500;
+    private int cartSize = 3;
+    private int skus = 500;
+    private double skew = 1.0;
+    private int stock = 1000;
+    private int groupCommitMs;
+    private boolean force;
+
+    private int[] ids;
+    private String[] names;
+    private double[] zipfCdf;
+
+    private final BillingService billing = new BillingService();
+    private GroupCommit group;
+    private final AtomicLong sales = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile String firstError;
+    private AtomicLongArray unitsSold;
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator g = new LoadGenerator();
+        g.parse(args);
+        System.exit(g.run());
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--cashiers": cashiers = Integer.parseInt(args[++i]); break;
+                case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+                case "--think-ms": thinkMs = Integer.parseInt(args[++i]); break;
+                case "--cart-size": cartSize = Integer.parseInt(args[++i]); break;
+                case "--skus": skus = Integer.parseInt(args[++i]); break;
+                case "--skew": skew = Double.parseDouble(args[++i]); break;
+                case "--stock": stock = Integer.parseInt(args[++i]); break;
+                case "--group-commit": groupCommitMs = Integer.parseInt(args[++i]); break;
+                case "--force": force = true; break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    private int run() throws Exception {
+        if (!Seeder.checkScratchDatabase(force)) return 1;
+        DBConnection.setPoolSize(Math.min(cashiers, 4), cashiers + 2);
+
+        Seeder.Catalog catalog = Seeder.seed(skus, stock);
+        ids = catalog.ids;
+        names = catalog.names;
+        resetStock();
+        int[] before = readStock();
+        unitsSold = new AtomicLongArray(ids.length);
+        zipfCdf = zipf(ids.length, skew);
+        if (groupCommitMs > 0) group = new GroupCommit(billing, groupCommitMs);
+
+        System.out.printf("%d cashiers, %ds, think %dms, cart ~%d lines, %d SKUs (skew %.2f), stock %d each%s%n",
+                cashiers, seconds, thinkMs, cartSize, ids.length, skew, stock,
+                groupCommitMs > 0 ? ", group commit " + groupCommitMs + " ms" : "");
+
+        long deadlocks0 = BillingService.getDeadlockCount();
+        long timeouts0 = BillingService.getLockTimeoutCount();
+        long retries0 = BillingService.getRetryCount();
+
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Bench.Recorder[] recorders = new Bench.Recorder[cashiers];
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < cashiers; c++) {
+            Bench.Recorder rec = recorders[c] = new Bench.Recorder();
+            Random rnd = new Random(1000 + c);
+            Thread t = new Thread(() -> cashier(rnd, rec, deadline), "cashier-" + c);
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        // Latency of every checkout attempt (including retries inside BillingService)
+        int total = 0;
+        for (Bench.Recorder r : recorders) {
+            total += r.size;
+        }
+        long[] all = new long[total];
+        int pos = 0;
+        for (Bench.Recorder r : recorders) {
+            System.arraycopy(r.nanos, 0, all, pos, r.size);
+            pos += r.size;
+        }
+        Arrays.sort(all);
+
+        System.out.printf("sales %,d (%.1f/s), refused for stock %,d, errors %,d%s%n",
+                sales.get(), sales.get() / (double) seconds, refused.get(), errors.get(),
+                firstError == null ? "" : " (first: " + firstError + ")");
+        System.out.printf("latency p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f ms%n",
+                Bench.percentile(all, 0.50) / 1e6, Bench.percentile(all, 0.90) / 1e6, Bench.percentile(all, 0.99) / 1e6,
+                Bench.percentile(all, 0.999) / 1e6, all.length == 0 ? 0 : all[all.length - 1] / 1e6);
+        System.out.printf("deadlocks %d, lock wait timeouts %d, retries %d%n",
+                BillingService.getDeadlockCount() - deadlocks0, BillingService.getLockTimeoutCount() - timeouts0,
+                BillingService.getRetryCount() - retries0);
+
+        return checkStock(before) ? 0 : 3;
+    }
+
+    // One cashier: think, build a cart, sell; until the deadline
+    private void cashier(Random rnd, Bench.Recorder rec, long deadline) {
+        while (System.nanoTime() < deadline) {
+            if (thinkMs > 0) {
+                try {
+                    // exponential think time around the mean
+                    Thread.sleep((long) (-Math.log(1 - rnd.nextDouble()) * thinkMs));
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+            int lines = 1 + rnd.nextInt(Math.max(1, 2 * cartSize - 1));
+            int[] picks = new int[lines];
+            int[] qtys = new int[lines];
+            for (int k = 0; k < lines; k++) {
+                picks[k] = pick(rnd);
+                qtys[k] = 1 + rnd.nextInt(3);
+            }
+
+            long t0 = System.nanoTime();
+            try {
+                boolean ok;
+                if (lines == 1) {
+                    SaleResult r = group != null ? group.sell(ids[picks[0]], names[picks[0]], qtys[0])
+                            : billing.sellById(ids[picks[0]], names[picks[0]], qtys[0]);
+                    ok = r.isOk();
+                } else {
+                    List<CartLine> cart = new ArrayList<>(lines);
+                    for (int k = 0; k < lines; k++) {
+                        cart.add(new CartLine(ids[picks[k]], names[picks[k]], qtys[k]));
+                    }
+                    CartResult r = group != null ? group.checkout(cart) : billing.checkout(cart);
+                    ok = r.isOk();
+                }
+                rec.add(System.nanoTime() - t0);
+                if (ok) {
+                    sales.incrementAndGet();
+                    for (int k = 0; k < lines; k++) {
+                        unitsSold.addAndGet(picks[k], qtys[k]);
+                    }
+                } else {
+                    refused.incrementAndGet();
+                }
+            } catch (SQLException | RuntimeException ex) {
+                rec.add(System.nanoTime() - t0);
+                errors.incrementAndGet();
+                if (firstError == null) firstError = ex.getMessage();
+            }
+        }
+    }
+
+    // Index into ids, Zipf-distributed: index 0 is the hottest medicine
+    private int pick(Random rnd) {
+        int i = Arrays.binarySearch(zipfCdf, rnd.nextDouble());
+        return Math.min(ids.length - 1, i >= 0 ? i : -i - 1);
+    }
+
+    private static double[] zipf(int n, double s) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, s);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    private void resetStock() throws SQLException {
+        try (Connection conn = DBConnection.openConnection();
+             PreparedStatement pst = conn.prepareStatement("UPDATE medicine SET stock = ?, stock_version = stock_version + 1 WHERE id >= ? AND id <= ?")) {
+            pst.setInt(1, stock);
+            pst.setInt(2, ids[0]);
+            pst.setInt(3, ids[ids.length - 1]);
+            pst.executeUpdate();
+        }
+    }
+
+    private int[] readStock() throws SQLException {
+        int[] out = new int[ids.length];
+        try (Connection conn = DBConnection.openConnection();
+             PreparedStatement pst = conn.prepareStatement("SELECT id, stock FROM medicine WHERE id >= ? AND id <= ?")) {
+            pst.setInt(1, ids[0]);
+            pst.setInt(2, ids[ids.length - 1]);
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    int i = Arrays.binarySearch(ids, rs.getInt(1));
+                    if (i >= 0) out[i] = rs.getInt(2);
+                }
+            }
+        }
+        return out;
+    }
+
+    // Every unit a cashier was told was sold must be gone from stock, and nothing else
+    private boolean checkStock(int[] before) throws SQLException {
+        int[] after = readStock();
+        int mismatches = 0;
+        int negative = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (after[i] < 0) negative++;
+            long expected = before[i] - unitsSold.get(i);
+            if (after[i] != expected) {
+                if (mismatches++ < 10) {
+                    System.out.printf("  stock mismatch %s (id %d): before %d, sold %d, now %d%n",
+                            names[i], ids[i], before[i], unitsSold.get(i), after[i]);
+                }
+            }
+        }
+        if (mismatches == 0 && negative == 0) {
+            System.out.println("stock consistent: every SKU dropped by exactly the units sold, none negative");
+            return true;
+        }
+        System.out.printf("STOCK INCONSISTENT: %d mismatched SKUs, %d negative%n", mismatches, negative);
+        return false;
+    }
+}
@@ -0,0 +1,131 @@
+package bench;
+
+import db.DBConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Seeder
+ *
+ * Fills a scratch database with realistic-looking medicines for benchmarks and load
+ * tests, and guards against pointing those tools at a live store.
+ */
+final class Seeder {
+
+    static final String[] GENERICS = {"Paracetamol", "Amoxicillin", "Azithromycin", "Cetirizine", "Metformin",
+        "Atorvastatin", "Omeprazole", "Pantoprazole", "Ibuprofen", "Diclofenac", "Amlodipine", "Losartan",
+        "Levothyroxine", "Montelukast", "Ciprofloxacin", "Doxycycline", "Ranitidine", "Ondansetron", "Salbutamol", "Vitamin D3"};
+    private static final String[] FORMS = {"Tablet", "Capsule", "Syrup", "Suspension", "Injection", "Drops", "Gel"};
+    private static final int[] STRENGTHS = {5, 10, 20, 50, 100, 250, 500, 650, 1000};
+    private static final String[] COMPANIES = {"Cipla", "Sun Pharma", "Dr. Reddy's", "Lupin", "Zydus", "Mankind",
+        "Alkem", "Torrent", "Glenmark", "Intas", "Abbott", "Pfizer", "GSK", "Sanofi", "Micro Labs", "Macleods"};
+    private static final int SEED_BATCH = 1000;
+
+    // The first medicines by id: what the benchmark picks from
+    static final class Catalog {
+        final int[] ids;
+        final String[] names;
+
+        Catalog(int[] ids, String[] names) {
+            this.ids = ids;
+            this.names = names;
+        }
+    }
+
+    private Seeder() {
+    }
+
+    // False (with a message) unless the URL names a scratch database or force is set
+    static boolean checkScratchDatabase(boolean force) {
+        String url = DBConnection.getDbUrl();
+        if (force || url.toLowerCase(Locale.ROOT).contains("bench")) return true;
+        System.err.println("Refusing to run against " + url + ": this writes sales and stock. Point DB_URL at a scratch"
+                + " database whose name contains \"bench\", or pass --force.");
+        return false;
+    }
+
+    /**
+     * Tops up the medicine table to `rows` rows, makes sure the bench/bench user
+     * exists, and raises the stock of the first `rows` medicines below minStock back
+     * to minStock. Returns the first `rows` medicines by id.
+     */
+    static Catalog seed(int rows, int minStock) throws SQLException {
+        try (Connection conn = DBConnection.openConnection()) {
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("INSERT INTO users(username, password) SELECT 'bench', 'bench' FROM DUAL"
+                        + " WHERE NOT EXISTS (SELECT 1 FROM users WHERE username = 'bench')");
+            }
+
+            int existing;
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM medicine")) {
+                rs.next();
+                existing = rs.getInt(1);
+            }
+
+            if (existing < rows) {
+                System.out.printf("Seeding %,d medicines...%n", rows - existing);
+                Random rnd = new Random(7);
+                boolean autoCommit = conn.getAutoCommit();
+                conn.setAutoCommit(false);
+                try (PreparedStatement pst = conn.prepareStatement("INSERT INTO medicine(name, company, price, stock) VALUES (?, ?, ?, ?)")) {
+                    for (int n = existing; n < rows; n++) {
+                        String name = GENERICS[rnd.nextInt(GENERICS.length)] + " " + STRENGTHS[rnd.nextInt(STRENGTHS.length)]
+                                + "mg " + FORMS[rnd.nextInt(FORMS.length)] + " #" + n;
+                        pst.setString(1, name);
+                        pst.setString(2, COMPANIES[rnd.nextInt(COMPANIES.length)]);
+                        // log-normal-ish prices, mostly 10..500
+                        pst.setDouble(3, Math.round(Math.exp(3.5 + rnd.nextGaussian()) * 100) / 100.0);
+                        pst.setInt(4, minStock);
+                        pst.addBatch();
+                        if ((n - existing + 1) % SEED_BATCH == 0) {
+                            pst.executeBatch();
+                            conn.commit();
+                        }
+                    }
+                    pst.executeBatch();
+                    conn.commit();
+                } finally {
+                    conn.setAutoCommit(autoCommit);
+                }
+            }
+
+            List<Integer> idList = new ArrayList<>();
+            List<String> nameList = new ArrayList<>();
+            try (PreparedStatement pst = conn.prepareStatement("SELECT id, name FROM medicine ORDER BY id LIMIT ?")) {
+                pst.setInt(1, rows);
+                try (ResultSet rs = pst.executeQuery()) {
+                    while (rs.next()) {
+                        idList.add(rs.getInt(1));
+                        nameList.add(rs.getString(2));
+                    }
+                }
+            }
+            int[] ids = new int[idList.size()];
+            String[] names = new String[idList.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = idList.get(i);
+                names[i] = nameList.get(i);
+            }
+
+            // Sales need stock; top up anything earlier runs drained
+            if (ids.length > 0) {
+                try (PreparedStatement pst = conn.prepareStatement("UPDATE medicine SET stock = ?, stock_version = stock_version + 1 WHERE id <= ? AND stock < ?")) {
+                    pst.setInt(1, minStock);
+                    pst.setInt(2, ids[ids.length - 1]);
+                    pst.setInt(3, minStock);
+                    pst.executeUpdate();
+                }
+            }
+            return new Catalog(ids, names);
+        }
+    }
+}
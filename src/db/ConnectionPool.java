@@ -0,0 +1,412 @@
+package db;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ConnectionPool
+ *
+ * Small bounded JDBC connection pool used by DBConnection.
+ * Connections handed out are proxies: calling close() returns the physical
+ * connection to the pool instead of closing it.
+ */
+class ConnectionPool {
+
+    // Physical connection plus bookkeeping
+    private static final class Entry {
+        final Connection conn;
+        final long generation;
+        long lastUsedNanos;
+
+        Entry(Connection conn, long generation) {
+            this.conn = conn;
+            this.generation = generation;
+            this.lastUsedNanos = System.nanoTime();
+        }
+    }
+
+    private static final LatencyHistogram ACQUIRE_TIMER = Metrics.timer("db.acquire");
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ArrayDeque<Entry> idle = new ArrayDeque<>();
+
+    private String url;
+    private String user;
+    private String pass;
+    private int minIdle;
+    private int maxSize;
+    private final long idleTimeoutMs;
+    private final long borrowTimeoutMs;
+    private final int validationTimeoutSec;
+
+    // guarded by lock
+    private int total;
+    private int waiting;
+    private long generation;
+
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private final ScheduledExecutorService evictor;
+
+    ConnectionPool(String url, String user, String pass, int minIdle, int maxSize,
+                   long idleTimeoutMs, long borrowTimeoutMs, int validationTimeoutSec) {
+        this.url = url;
+        this.user = user;
+        this.pass = pass;
+        this.maxSize = Math.max(1, maxSize);
+        this.minIdle = Math.max(0, Math.min(minIdle, this.maxSize));
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000L, idleTimeoutMs / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Borrow a connection, waiting up to the borrow timeout when the pool is exhausted
+    Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMs);
+
+        while (true) {
+            Entry entry = null;
+            boolean mayCreate = false;
+            String cUrl, cUser, cPass;
+            long cGen;
+
+            lock.lock();
+            try {
+                while (idle.isEmpty() && total >= maxSize) {
+                    if (remaining <= 0L) {
+                        timeouts.incrementAndGet();
+                        throw new SQLException("Timed out after " + borrowTimeoutMs
+                                + " ms waiting for a database connection (pool size " + maxSize + ").");
+                    }
+                    waiting++;
+                    try {
+                        remaining = available.awaitNanos(remaining);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection.", ie);
+                    } finally {
+                        waiting--;
+                    }
+                }
+                entry = idle.pollFirst();
+                if (entry == null) {
+                    total++;
+                    mayCreate = true;
+                }
+                cUrl = url;
+                cUser = user;
+                cPass = pass;
+                cGen = generation;
+            } finally {
+                lock.unlock();
+            }
+
+            if (mayCreate) {
+                try {
+                    Connection c = DriverManager.getConnection(cUrl, cUser, cPass);
+                    created.incrementAndGet();
+                    entry = new Entry(c, cGen);
+                } catch (SQLException | RuntimeException e) {
+                    discard(null);
+                    throw e;
+                }
+            } else if (!isUsable(entry)) {
+                discard(entry);
+                continue;
+            }
+
+            long waited = System.nanoTime() - start;
+            recordWait(waited);
+            ACQUIRE_TIMER.record(waited);
+            return wrap(entry);
+        }
+    }
+
+    // Validate an idle connection before handing it out
+    private boolean isUsable(Entry entry) {
+        if (entry.generation != currentGeneration()) return false;
+        try {
+            return !entry.conn.isClosed() && entry.conn.isValid(validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private long currentGeneration() {
+        lock.lock();
+        try {
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recordWait(long nanos) {
+        borrows.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        long prev;
+        while (nanos > (prev = maxWaitNanos.get())) {
+            if (maxWaitNanos.compareAndSet(prev, nanos)) break;
+        }
+    }
+
+    // Return a physical connection to the pool (called by the proxy's close())
+    private void release(Entry entry) {
+        boolean healthy;
+        try {
+            healthy = !entry.conn.isClosed();
+            if (healthy && !entry.conn.getAutoCommit()) {
+                // never leak an open transaction to the next borrower
+                entry.conn.rollback();
+                entry.conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            healthy = false;
+        }
+
+        lock.lock();
+        try {
+            if (healthy && entry.generation == generation && total <= maxSize) {
+                entry.lastUsedNanos = System.nanoTime();
+                idle.addFirst(entry);
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        discard(entry);
+    }
+
+    // Close a physical connection and free its slot
+    private void discard(Entry entry) {
+        lock.lock();
+        try {
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (entry != null) closeQuietly(entry.conn);
+    }
+
+    // Close connections that sat idle longer than the idle timeout, keeping minIdle around
+    void evictIdle() {
+        List<Entry> evicted = new ArrayList<>();
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        lock.lock();
+        try {
+            Iterator<Entry> it = idle.descendingIterator();
+            while (it.hasNext() && idle.size() > minIdle) {
+                Entry e = it.next();
+                if (e.lastUsedNanos - cutoff < 0L) {
+                    it.remove();
+                    total--;
+                    evicted.add(e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Entry e : evicted) closeQuietly(e.conn);
+    }
+
+    // Open connections until minIdle are ready; errors are left for the next borrow to report
+    void prefill() {
+        List<Connection> opened = new ArrayList<>();
+        try {
+            int need;
+            lock.lock();
+            try {
+                need = Math.min(minIdle - idle.size(), maxSize - total);
+            } finally {
+                lock.unlock();
+            }
+            for (int i = 0; i < need; i++) {
+                opened.add(borrow());
+            }
+        } catch (SQLException ignored) {
+            // database not reachable yet
+        } finally {
+            for (Connection c : opened) closeQuietly(c);
+        }
+    }
+
+    // Point the pool at new settings; idle connections are dropped, busy ones are closed on return
+    void reconfigure(String url, String user, String pass) {
+        List<Entry> stale;
+        lock.lock();
+        try {
+            this.url = url;
+            this.user = user;
+            this.pass = pass;
+            generation++;
+            stale = new ArrayList<>(idle);
+            total -= idle.size();
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Entry e : stale) closeQuietly(e.conn);
+    }
+
+    // Change pool bounds at runtime
+    void resize(int minIdle, int maxSize) {
+        List<Entry> extra = new ArrayList<>();
+        lock.lock();
+        try {
+            this.maxSize = Math.max(1, maxSize);
+            this.minIdle = Math.max(0, Math.min(minIdle, this.maxSize));
+            while (total > this.maxSize && !idle.isEmpty()) {
+                extra.add(idle.pollLast());
+                total--;
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Entry e : extra) closeQuietly(e.conn);
+    }
+
+    PoolStats stats() {
+        lock.lock();
+        try {
+            int idleCount = idle.size();
+            return new PoolStats(total - idleCount, idleCount, waiting, minIdle, maxSize,
+                    borrows.get(), timeouts.get(), created.get(),
+                    totalWaitNanos.get(), maxWaitNanos.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Connection wrap(Entry entry) {
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new PooledHandler(entry));
+    }
+
+    private static void closeQuietly(Connection c) {
+        try { if (c != null) c.close(); } catch (SQLException ignored) {}
+    }
+
+    // Intercepts close()/isClosed() on the proxy; everything else goes to the physical connection
+    private final class PooledHandler implements InvocationHandler {
+        private final Entry entry;
+        private boolean closed;
+
+        PooledHandler(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name) && method.getParameterCount() == 0) {
+                if (!closed) {
+                    closed = true;
+                    release(entry);
+                }
+                return null;
+            }
+            if ("isClosed".equals(name) && method.getParameterCount() == 0) {
+                return closed || entry.conn.isClosed();
+            }
+            if ("equals".equals(name) && method.getParameterCount() == 1) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name) && method.getParameterCount() == 0) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name) && method.getParameterCount() == 0) {
+                return "Pooled[" + entry.conn + "]";
+            }
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+            Object result;
+            try {
+                result = method.invoke(entry.conn, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            // Statements are wrapped too, so every execute call is timed
+            if (result instanceof Statement && method.getReturnType().isInterface()) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                return Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                        new Class<?>[]{method.getReturnType()}, new TimedStatementHandler((Statement) result, sql));
+            }
+            return result;
+        }
+    }
+
+    // Times execute/executeQuery/executeUpdate/executeBatch under "sql.<verb> <table>"
+    private static final class TimedStatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final LatencyHistogram preparedTimer;
+
+        TimedStatementHandler(Statement target, String preparedSql) {
+            this.target = target;
+            this.preparedTimer = preparedSql != null ? Metrics.timer(Metrics.sqlTimerName(preparedSql)) : null;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!method.getName().startsWith("execute")) {
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            LatencyHistogram timer = preparedTimer;
+            if (args != null && args.length > 0 && args[0] instanceof String) {
+                timer = Metrics.timer(Metrics.sqlTimerName((String) args[0])); // plain Statement
+            }
+            long start = System.nanoTime();
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                Metrics.increment("sql.errors");
+                throw e.getCause();
+            } finally {
+                if (timer != null) timer.recordSince(start);
+            }
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package db;
 
+import metrics.Metrics;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 /**
  * DBConnection
@@ -10,6 +14,16 @@ import java.sql.SQLException;
  * Provides a reusable method to obtain a JDBC Connection to the
  * local MySQL database `medical_store`.
  *
+ * Connections come from a bounded pool; closing a connection returns it to the pool.
+ * Pool bounds can be tuned with the DB_POOL_MIN, DB_POOL_MAX, DB_POOL_IDLE_TIMEOUT_MS
+ * and DB_POOL_BORROW_TIMEOUT_MS environment variables.
+ *
+ * Optionally a MySQL replica (DB_REPLICA_URL, DB_REPLICA_USER, DB_REPLICA_PASS, or the
+ * DB Settings dialog) serves read-only work that can tolerate a few seconds of
+ * staleness through openReadConnection(), from a pool of its own. Its replication lag
+ * is checked every few seconds; above DB_REPLICA_MAX_LAG_SEC, or when the replica
+ * cannot be reached, those reads go to the primary instead.
+ *
  * Update the DB_URL, USER and PASS if your local MySQL credentials differ.
  */
 public class DBConnection {
@@ -27,8 +41,36 @@ public class DBConnection {
     private static volatile String USER = DEFAULT_DB_USER;
     private static volatile String PASS = DEFAULT_DB_PASS;
 
+    // Pool sizing (checkout terminals rarely need more than a handful of connections)
+    private static final int POOL_MIN = envInt("DB_POOL_MIN", 1);
+    private static final int POOL_MAX = envInt("DB_POOL_MAX", 8);
+    private static final long POOL_IDLE_TIMEOUT_MS = envInt("DB_POOL_IDLE_TIMEOUT_MS", 300_000);
+    private static final long POOL_BORROW_TIMEOUT_MS = envInt("DB_POOL_BORROW_TIMEOUT_MS", 10_000);
+    private static final int POOL_VALIDATION_TIMEOUT_SEC = 2;
+
+    private static final ConnectionPool POOL = new ConnectionPool(DB_URL, USER, PASS,
+            POOL_MIN, POOL_MAX, POOL_IDLE_TIMEOUT_MS, POOL_BORROW_TIMEOUT_MS, POOL_VALIDATION_TIMEOUT_SEC);
+
+    // Replica pool: created on first use, sized for a few report/export/browse readers
+    private static final int REPLICA_POOL_MAX = envInt("DB_REPLICA_POOL_MAX", 4);
+    private static final int REPLICA_MAX_LAG_SEC = envInt("DB_REPLICA_MAX_LAG_SEC", 5);
+    private static final long LAG_CHECK_MS = 2_000L;
+    private static final long REPLICA_RETRY_MS = 30_000L;
+
+    private static volatile String REPLICA_URL = System.getenv().getOrDefault("DB_REPLICA_URL", "");
+    private static volatile String REPLICA_USER = System.getenv().getOrDefault("DB_REPLICA_USER", DEFAULT_DB_USER);
+    private static volatile String REPLICA_PASS = System.getenv().getOrDefault("DB_REPLICA_PASS", DEFAULT_DB_PASS);
+    private static ConnectionPool replicaPool; // guarded by DBConnection.class
+    private static volatile long lagCheckedAt;
+    private static volatile long replicaLagSec = -1L;
+    private static volatile long replicaSkipUntil;
+    private static volatile String replicaProblem;
+
+    private static final Object SCHEMA_LOCK = new Object();
+    private static volatile boolean schemaReady;
+
     // Flag to indicate whether the JDBC driver class was successfully loaded
-    private static boolean DRIVER_AVAILABLE = false;
+    private static volatile boolean DRIVER_AVAILABLE = false;
 
     // Load the MySQL JDBC driver (optional for modern drivers but kept for clarity)
     static {
@@ -37,16 +79,40 @@ public class DBConnection {
             DRIVER_AVAILABLE = true;
         } catch (ClassNotFoundException e) {
             // Do not print stack traces here; we'll surface a helpful message when getConnection is called.
-            DRIVER_AVAILABLE = false;
+            // Another driver for DB_URL (H2 in MySQL mode for the tests and benchmarks) will do as well.
+            DRIVER_AVAILABLE = driverAccepts(DB_URL);
         }
     }
 
     /**
-     * Returns a Connection to the medical_store database.
+     * Returns a pooled Connection to the medical_store database.
+     * Closing it hands it back to the pool.
      *
      * @return Connection if successful, otherwise null
      */
     public static Connection getConnection() {
+        try {
+            return openConnection();
+        } catch (SQLException e) {
+            String title = DRIVER_AVAILABLE ? "DB Connection Error" : "JDBC Driver Missing";
+            String err = DRIVER_AVAILABLE ? "Failed to create DB connection: " + e.getMessage() : e.getMessage();
+            try {
+                javax.swing.JOptionPane.showMessageDialog(null, err, title, javax.swing.JOptionPane.ERROR_MESSAGE);
+            } catch (Exception ignore) {
+                System.err.println(err);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Borrows a pooled Connection without showing any dialogs.
+     * Intended for background workers; callers report the failure themselves.
+     *
+     * @return Connection, never null
+     * @throws SQLException if the driver is missing or the database cannot be reached
+     */
+    public static Connection openConnection() throws SQLException {
         if (!DRIVER_AVAILABLE) {
             // Inform the user with actionable steps
             String msg = "MySQL JDBC driver is not available on the classpath.\n" +
@@ -56,38 +122,188 @@ public class DBConnection {
                     "java -cp \".;lib/mysql-connector-j.jar;src\" Main\n\n" +
                     "If you already have the JAR, ensure the path is correct.\n" +
                     "Current DB URL: " + DB_URL;
-            try {
-                javax.swing.JOptionPane.showMessageDialog(null, msg, "JDBC Driver Missing", javax.swing.JOptionPane.ERROR_MESSAGE);
-            } catch (Exception ignore) {
-                System.err.println(msg);
-            }
-            return null;
+            throw new SQLException(msg);
         }
+        return POOL.borrow();
+    }
 
+    /**
+     * Borrows a connection for read-only work that may lag the primary by up to
+     * DB_REPLICA_MAX_LAG_SEC (browsing stock, reports, exports): from the replica when
+     * one is configured and caught up, otherwise from the primary. Never use it to read
+     * back something the caller has just written.
+     *
+     * @return Connection, never null
+     * @throws SQLException if neither the replica nor the primary can be reached
+     */
+    public static Connection openReadConnection() throws SQLException {
+        ConnectionPool replica = replicaPool();
+        if (replica == null || !DRIVER_AVAILABLE || System.currentTimeMillis() < replicaSkipUntil) return openConnection();
+
+        Connection conn = null;
         try {
-            return DriverManager.getConnection(DB_URL, USER, PASS);
-        } catch (SQLException e) {
-            String err = "Failed to create DB connection: " + e.getMessage();
+            conn = replica.borrow();
+            if (System.currentTimeMillis() - lagCheckedAt >= LAG_CHECK_MS) checkLag(conn);
+            if (replicaLagSec >= 0 && replicaLagSec <= REPLICA_MAX_LAG_SEC) {
+                Metrics.increment("db.replica.reads");
+                return conn;
+            }
+        } catch (SQLException ex) {
+            replicaProblem = "is unreachable: " + ex.getMessage();
+            replicaSkipUntil = System.currentTimeMillis() + REPLICA_RETRY_MS;
+        }
+        if (conn != null) {
+            try { conn.close(); } catch (SQLException ignored) {}
+        }
+        Metrics.increment("db.replica.fallbacks");
+        return openConnection();
+    }
+
+    private static void checkLag(Connection conn) throws SQLException {
+        Long lag = readLag(conn);
+        lagCheckedAt = System.currentTimeMillis();
+        replicaLagSec = lag == null ? -1L : lag;
+        replicaProblem = lagProblem(lag);
+    }
+
+    // Seconds_Behind_Source (MySQL 8.0.22+) or Seconds_Behind_Master; null when replication is not running
+    private static Long readLag(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            ResultSet rs;
+            String column = "Seconds_Behind_Source";
             try {
-                javax.swing.JOptionPane.showMessageDialog(null, err, "DB Connection Error", javax.swing.JOptionPane.ERROR_MESSAGE);
-            } catch (Exception ignore) {
-                System.err.println(err);
+                rs = st.executeQuery("SHOW REPLICA STATUS");
+            } catch (SQLException ex) {
+                rs = st.executeQuery("SHOW SLAVE STATUS");
+                column = "Seconds_Behind_Master";
+            }
+            try {
+                if (!rs.next()) return null;
+                long lag = rs.getLong(column);
+                return rs.wasNull() ? null : lag;
+            } finally {
+                rs.close();
             }
-            return null;
         }
     }
 
+    private static String lagProblem(Long lag) {
+        if (lag == null) return "is not replicating";
+        if (lag > REPLICA_MAX_LAG_SEC) return "is " + lag + " s behind (limit " + REPLICA_MAX_LAG_SEC + " s)";
+        return null;
+    }
+
+    private static synchronized ConnectionPool replicaPool() {
+        if (REPLICA_URL.isEmpty()) return null;
+        if (replicaPool == null) {
+            replicaPool = new ConnectionPool(REPLICA_URL, REPLICA_USER, REPLICA_PASS,
+                    0, REPLICA_POOL_MAX, POOL_IDLE_TIMEOUT_MS, POOL_BORROW_TIMEOUT_MS, POOL_VALIDATION_TIMEOUT_SEC);
+        }
+        return replicaPool;
+    }
+
+    // Point read-only work at a replica (empty url: use the primary for everything)
+    public static synchronized void setReplicaConfig(String url, String user, String pass) {
+        REPLICA_URL = url == null ? "" : url.trim();
+        if (user != null) REPLICA_USER = user;
+        if (pass != null) REPLICA_PASS = pass;
+        if (replicaPool != null) replicaPool.reconfigure(REPLICA_URL, REPLICA_USER, REPLICA_PASS);
+        lagCheckedAt = 0L;
+        replicaSkipUntil = 0L;
+        replicaProblem = null;
+    }
+
+    public static String getReplicaUrl() {
+        return REPLICA_URL;
+    }
+
+    public static String getReplicaUser() {
+        return REPLICA_USER;
+    }
+
+    // How far behind the primary a row read through openReadConnection() may be, in ms (0 without a replica).
+    // The lag is only sampled every LAG_CHECK_MS and reported in whole seconds, and a stalled replica falls
+    // behind by at most the time that passes, so the limit plus one check interval plus a second bounds it.
+    public static long getMaxReadStalenessMs() {
+        return REPLICA_URL.isEmpty() ? 0L : REPLICA_MAX_LAG_SEC * 1000L + LAG_CHECK_MS + 1000L;
+    }
+
+    // One line for the settings dialog: where read-only work goes right now and why
+    public static String getReplicaStatus() {
+        if (REPLICA_URL.isEmpty()) return "No replica: all reads use the primary.";
+        if (lagCheckedAt == 0L && replicaProblem == null) return "Replica not used yet.";
+        if (replicaProblem != null) return "Reads use the primary; replica " + replicaProblem;
+        return "Reads use the replica (" + replicaLagSec + " s behind).";
+    }
+
     // Update DB configuration at runtime
     public static synchronized void setConfig(String url, String user, String pass) {
         if (url != null && !url.isEmpty()) DB_URL = url;
+        if (!DRIVER_AVAILABLE) DRIVER_AVAILABLE = driverAccepts(DB_URL);
         if (user != null) USER = user;
         if (pass != null) PASS = pass;
+        POOL.reconfigure(DB_URL, USER, PASS);
+    }
+
+    // True when a driver registered with DriverManager can open url
+    private static boolean driverAccepts(String url) {
+        try {
+            DriverManager.getDriver(url);
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // Resize the connection pool at runtime
+    public static void setPoolSize(int minIdle, int maxSize) {
+        POOL.resize(minIdle, maxSize);
+    }
+
+    /**
+     * Brings the schema up to date (see SchemaMigrator) once per process and warns on
+     * stderr about hot queries that could not use an index. Set DB_MIGRATE=off when the
+     * database user may not run DDL.
+     *
+     * @throws SQLException if the database is unreachable or a migration fails
+     */
+    public static void ensureSchema() throws SQLException {
+        if (schemaReady || "off".equalsIgnoreCase(System.getenv("DB_MIGRATE"))) return;
+        synchronized (SCHEMA_LOCK) {
+            if (schemaReady) return;
+            try (Connection conn = openConnection()) {
+                int applied = SchemaMigrator.migrate(conn);
+                if (applied > 0) {
+                    System.out.println("Schema upgraded to version " + SchemaMigrator.currentVersion(conn)
+                            + " (" + applied + " migration(s))");
+                }
+                try {
+                    for (String problem : SchemaMigrator.checkQueryPlans(conn)) {
+                        System.err.println("Query plan: " + problem);
+                    }
+                } catch (SQLException ex) {
+                    // Advisory only; H2 (tests, benchmarks) has no MySQL-style EXPLAIN
+                    System.err.println("Query plan check skipped: " + ex.getMessage());
+                }
+            }
+            schemaReady = true;
+        }
+    }
+
+    // Open connections up to the pool minimum ahead of the first request
+    public static void warmUpPool() {
+        if (DRIVER_AVAILABLE) POOL.prefill();
+    }
+
+    // Snapshot of pool usage (active, idle, waiting threads, wait times)
+    public static PoolStats getPoolStats() {
+        return POOL.stats();
     }
 
     // Test connection with current settings. Returns null on success, otherwise error message.
     public static String testConnection() {
         if (!DRIVER_AVAILABLE) return "JDBC driver not found on classpath.";
-        try (Connection c = DriverManager.getConnection(DB_URL, USER, PASS)) {
+        try (Connection c = POOL.borrow()) {
             if (c != null && !c.isClosed()) return null;
             return "Connection returned null or closed.";
         } catch (SQLException e) {
@@ -106,6 +322,17 @@ public class DBConnection {
         }
     }
 
+    // Test a replica without changing saved config (null pass: the saved one); null when it can serve reads
+    public static String testReplica(String url, String user, String pass) {
+        if (!DRIVER_AVAILABLE) return "JDBC driver not found on classpath.";
+        try (Connection c = DriverManager.getConnection(url, user, pass == null ? REPLICA_PASS : pass)) {
+            String problem = lagProblem(readLag(c));
+            return problem == null ? null : "Replica " + problem + ".";
+        } catch (SQLException e) {
+            return e.getMessage();
+        }
+    }
+
     // Getters so other UI code can prefill fields
     public static String getDbUrl() {
         return DB_URL;
@@ -118,4 +345,14 @@ public class DBConnection {
     public static String getDbPass() {
         return PASS;
     }
+
+    private static int envInt(String name, int def) {
+        String v = System.getenv(name);
+        if (v == null || v.trim().isEmpty()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
 }
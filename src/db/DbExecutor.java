@@ -0,0 +1,58 @@
+package db;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DbExecutor
+ *
+ * Shared executor for database work so JDBC calls never run on the Swing event thread.
+ * Uses virtual threads when the JDK provides them (Java 21+), otherwise a small
+ * pool of daemon threads sized to the connection pool.
+ */
+public class DbExecutor {
+
+    private static final ExecutorService EXECUTOR = create();
+
+    private DbExecutor() {
+    }
+
+    // Submit database work; the result (or exception) is available through the Future
+    public static <T> Future<T> submit(Callable<T> work) {
+        return EXECUTOR.submit(work);
+    }
+
+    public static Future<?> submit(Runnable work) {
+        return EXECUTOR.submit(work);
+    }
+
+    // True when work runs on virtual threads
+    public static boolean usesVirtualThreads() {
+        return !(EXECUTOR instanceof ThreadPoolExecutor);
+    }
+
+    private static ExecutorService create() {
+        try {
+            // Looked up reflectively so the code still compiles and runs on Java 8-20
+            Method m = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger seq = new AtomicInteger();
+            int threads = Math.max(2, DBConnection.getPoolStats().getMaxSize());
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), r -> {
+                        Thread t = new Thread(r, "db-worker-" + seq.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package db;
+
+/**
+ * PoolStats
+ *
+ * Immutable snapshot of the connection pool counters, for status displays and logging.
+ */
+public class PoolStats {
+
+    private final int active;
+    private final int idle;
+    private final int waiting;
+    private final int minIdle;
+    private final int maxSize;
+    private final long borrows;
+    private final long timeouts;
+    private final long created;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+
+    PoolStats(int active, int idle, int waiting, int minIdle, int maxSize,
+              long borrows, long timeouts, long created, long totalWaitNanos, long maxWaitNanos) {
+        this.active = active;
+        this.idle = idle;
+        this.waiting = waiting;
+        this.minIdle = minIdle;
+        this.maxSize = maxSize;
+        this.borrows = borrows;
+        this.timeouts = timeouts;
+        this.created = created;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    // Connections currently lent out
+    public int getActive() { return active; }
+
+    // Connections parked in the pool, ready for reuse
+    public int getIdle() { return idle; }
+
+    // Threads currently blocked waiting for a connection
+    public int getWaiting() { return waiting; }
+
+    public int getMinIdle() { return minIdle; }
+
+    public int getMaxSize() { return maxSize; }
+
+    public long getBorrows() { return borrows; }
+
+    // Borrows that gave up after the borrow timeout
+    public long getTimeouts() { return timeouts; }
+
+    // Physical connections opened since start
+    public long getCreated() { return created; }
+
+    public double getAvgWaitMillis() {
+        return borrows == 0 ? 0.0 : totalWaitNanos / 1_000_000.0 / borrows;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("active=%d idle=%d waiting=%d max=%d borrows=%d timeouts=%d created=%d avgWait=%.2fms maxWait=%.2fms",
+                active, idle, waiting, maxSize, borrows, timeouts, created, getAvgWaitMillis(), getMaxWaitMillis());
+    }
+}
@@ -0,0 +1,447 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SchemaMigrator
+ *
+ * Versioned schema for medical_store. Each migration runs once per database and is
+ * recorded in `schema_version`; a MySQL named lock keeps two terminals that start at
+ * the same moment from migrating together. MySQL commits DDL immediately, so every
+ * step is written to be safe to run again (IF NOT EXISTS, index created only when
+ * missing) in case a migration was interrupted half way.
+ *
+ * Add new tables and indexes as a new migration at the end of MIGRATIONS; never edit
+ * one that has shipped.
+ *
+ * checkQueryPlans() runs EXPLAIN on the app's hot queries and reports any that would
+ * scan a whole table. Run from the command line to see every plan:
+ *   java -cp "lib/*;out" db.SchemaMigrator [--check]
+ */
+public final class SchemaMigrator {
+
+    private static final String LOCK_NAME = "medical_store.schema";
+    private static final int LOCK_TIMEOUT_SEC = 30;
+
+    // One schema change; must be safe to run again
+    private interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    private static final String[] BASE_TABLES = {
+        "CREATE TABLE IF NOT EXISTS users ("
+                + " id INT AUTO_INCREMENT PRIMARY KEY,"
+                + " username VARCHAR(50) NOT NULL,"
+                + " password VARCHAR(255) NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS medicine ("
+                + " id INT AUTO_INCREMENT PRIMARY KEY,"
+                + " name VARCHAR(100) NOT NULL,"
+                + " company VARCHAR(100),"
+                + " price DOUBLE NOT NULL,"
+                + " stock INT DEFAULT 0)",
+        "CREATE TABLE IF NOT EXISTS bills ("
+                + " bill_id INT AUTO_INCREMENT PRIMARY KEY,"
+                + " medicine_name VARCHAR(100),"
+                + " quantity INT,"
+                + " total DOUBLE,"
+                + " bill_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP)",
+        "CREATE TABLE IF NOT EXISTS bill_headers ("
+                + " id BIGINT AUTO_INCREMENT PRIMARY KEY,"
+                + " total DOUBLE NOT NULL,"
+                + " item_count INT NOT NULL,"
+                + " bill_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP)",
+        "CREATE TABLE IF NOT EXISTS bill_lines ("
+                + " id BIGINT AUTO_INCREMENT PRIMARY KEY,"
+                + " bill_id BIGINT NOT NULL,"
+                + " medicine_id INT NOT NULL,"
+                + " medicine_name VARCHAR(100),"
+                + " quantity INT NOT NULL,"
+                + " price DOUBLE NOT NULL,"
+                + " line_total DOUBLE NOT NULL,"
+                + " FOREIGN KEY (bill_id) REFERENCES bill_headers(id))",
+        "CREATE TABLE IF NOT EXISTS sales_daily ("
+                + " sale_date DATE NOT NULL,"
+                + " medicine_id INT NOT NULL,"
+                + " medicine_name VARCHAR(100),"
+                + " quantity BIGINT NOT NULL,"
+                + " revenue DOUBLE NOT NULL,"
+                + " sale_count INT NOT NULL,"
+                + " PRIMARY KEY (sale_date, medicine_id))",
+        "CREATE TABLE IF NOT EXISTS sales_hourly ("
+                + " sale_hour DATETIME NOT NULL,"
+                + " medicine_id INT NOT NULL,"
+                + " medicine_name VARCHAR(100),"
+                + " quantity BIGINT NOT NULL,"
+                + " revenue DOUBLE NOT NULL,"
+                + " sale_count INT NOT NULL,"
+                + " PRIMARY KEY (sale_hour, medicine_id))"
+    };
+
+    private static final String OFFLINE_SALES_TABLE = "CREATE TABLE IF NOT EXISTS offline_sales ("
+            + " journal_id CHAR(36) PRIMARY KEY,"
+            + " terminal VARCHAR(64),"
+            + " sold_at DATETIME NOT NULL,"
+            + " status VARCHAR(10) NOT NULL,"
+            + " bill_id BIGINT,"
+            + " total DOUBLE NOT NULL,"
+            + " detail VARCHAR(500),"
+            + " replayed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
+
+    // open_expiry is NULL once a batch is used up, so expiry scans skip exhausted batches.
+    // %s is " STORED" on MySQL; H2 (tests, benchmarks) only takes the bare generated column.
+    private static final String BATCHES_TABLE = "CREATE TABLE IF NOT EXISTS medicine_batches ("
+            + " id BIGINT AUTO_INCREMENT PRIMARY KEY,"
+            + " medicine_id INT NOT NULL,"
+            + " batch_no VARCHAR(50) NOT NULL,"
+            + " expiry DATE NOT NULL,"
+            + " quantity INT NOT NULL,"
+            + " received_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,"
+            + " open_expiry DATE AS (CASE WHEN quantity > 0 THEN expiry END)%s,"
+            + " UNIQUE KEY ux_batches_medicine_batch (medicine_id, batch_no),"
+            + " KEY ix_batches_fefo (medicine_id, expiry),"
+            + " KEY ix_batches_open_expiry (open_expiry),"
+            + " FOREIGN KEY (medicine_id) REFERENCES medicine(id))";
+
+    // Append-only: rows are inserted with the stock change they describe and never updated
+    private static final String[] LEDGER_TABLES = {
+        "CREATE TABLE IF NOT EXISTS stock_ledger ("
+                + " id BIGINT AUTO_INCREMENT PRIMARY KEY,"
+                + " medicine_id INT NOT NULL,"
+                + " batch_id BIGINT,"
+                + " delta INT NOT NULL,"
+                + " reason VARCHAR(10) NOT NULL,"
+                + " ref VARCHAR(40),"
+                + " terminal VARCHAR(64),"
+                + " created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,"
+                + " KEY ix_ledger_medicine (medicine_id, id),"
+                + " FOREIGN KEY (medicine_id) REFERENCES medicine(id))",
+        // on_hand = sum of the medicine's folded ledger rows; ledger_id is the highest of them
+        "CREATE TABLE IF NOT EXISTS stock_snapshots ("
+                + " medicine_id INT PRIMARY KEY,"
+                + " on_hand INT NOT NULL,"
+                + " ledger_id BIGINT NOT NULL,"
+                + " taken_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP)",
+        "CREATE TABLE IF NOT EXISTS ledger_compaction ("
+                + " id TINYINT PRIMARY KEY,"
+                + " folded_to BIGINT NOT NULL,"
+                + " compacted_at TIMESTAMP NULL)",
+        "INSERT IGNORE INTO ledger_compaction(id, folded_to) VALUES (1, 0)",
+        // Stock on hand before the ledger existed becomes each medicine's opening snapshot
+        "INSERT IGNORE INTO stock_snapshots(medicine_id, on_hand, ledger_id) SELECT id, COALESCE(stock, 0), 0 FROM medicine"
+    };
+
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+        new Migration(1, "base tables", conn -> {
+            // Older README versions called the table `medicines`; the code has always used `medicine`
+            if (tableExists(conn, "medicines") && !tableExists(conn, "medicine")) {
+                execute(conn, "RENAME TABLE medicines TO medicine");
+            }
+            execute(conn, BASE_TABLES);
+        }),
+        new Migration(2, "offline sales journal", conn -> execute(conn, OFFLINE_SALES_TABLE)),
+        new Migration(3, "indexes for login, bill history and offline review", conn -> {
+            addIndex(conn, "users", "ix_users_username", "username", false);
+            addIndex(conn, "bills", "ix_bills_date", "bill_date", false);
+            addIndex(conn, "bills", "ix_bills_medicine", "medicine_name, bill_date", false);
+            addIndex(conn, "bill_headers", "ix_bill_headers_date", "bill_date", false);
+            addIndex(conn, "bill_lines", "ix_bill_lines_medicine", "medicine_id", false);
+            addIndex(conn, "offline_sales", "ix_offline_sales_status", "status, sold_at", false);
+        }),
+        // On its own so duplicate names in an old store only hold up this step
+        new Migration(4, "unique medicine names", conn -> addUniqueNameIndex(conn)),
+        new Migration(5, "stock batches with expiry", conn -> execute(conn, String.format(BATCHES_TABLE, isH2(conn) ? "" : " STORED"))),
+        new Migration(6, "stock ledger and snapshots", conn -> execute(conn, LEDGER_TABLES)),
+        // MySQL stamps every insert and update itself, so no write path (app, bench tools, manual SQL) can forget it
+        new Migration(7, "medicine change tracking", conn -> {
+            addColumn(conn, "medicine", "updated_at",
+                    "TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)");
+            addIndex(conn, "medicine", "ix_medicine_updated", "updated_at", false);
+        }),
+        // Bumped by every statement that changes a medicine's stock or batches; BatchBook trusts
+        // a cached shelf only while it is unchanged (the stock figure alone can repeat)
+        new Migration(8, "medicine stock version", conn ->
+            addColumn(conn, "medicine", "stock_version", "BIGINT NOT NULL DEFAULT 0")),
+        // Ledger rows are folded by flag, not below an id watermark that a late-committing row can slip under
+        new Migration(9, "stock ledger folded flag", conn -> {
+            if (!columnExists(conn, "stock_ledger", "folded")) {
+                execute(conn, "ALTER TABLE stock_ledger ADD COLUMN folded TINYINT NOT NULL DEFAULT 0");
+                execute(conn, "UPDATE stock_ledger SET folded = 1 WHERE id <= (SELECT s.ledger_id FROM stock_snapshots s"
+                        + " WHERE s.medicine_id = stock_ledger.medicine_id)");
+            }
+            addIndex(conn, "stock_ledger", "ix_ledger_unfolded", "folded, medicine_id", false);
+        })
+    );
+
+    // A hot query, sample parameters and the index it must be able to use
+    private static final class PlanCheck {
+        final String name;
+        final String sql;
+        final Object[] params;
+        final String table;
+        final String index;
+
+        PlanCheck(String name, String sql, String table, String index, Object... params) {
+            this.name = name;
+            this.sql = sql;
+            this.table = table;
+            this.index = index;
+            this.params = params;
+        }
+    }
+
+    private static final List<PlanCheck> PLAN_CHECKS = Arrays.asList(
+        new PlanCheck("login", "SELECT id FROM users WHERE username = ? AND password = ?",
+                "users", "ix_users_username", "admin", "x"),
+        new PlanCheck("sale by name", "SELECT id, name, price, stock, stock_version FROM medicine WHERE name = ?",
+                "medicine", "ux_medicine_name", "Paracetamol"),
+        new PlanCheck("sale by id", "SELECT id, name, price, stock, stock_version FROM medicine WHERE id = ?",
+                "medicine", "PRIMARY", 1),
+        new PlanCheck("add stock by name", "UPDATE medicine SET stock = stock + ?, stock_version = stock_version + 1 WHERE name = ?",
+                "medicine", "ux_medicine_name", 1, "Paracetamol"),
+        new PlanCheck("stock page", "SELECT id, name, company, price, stock, stock_version FROM medicine WHERE id > ? ORDER BY id LIMIT ?",
+                "medicine", "PRIMARY", 0, 200),
+        new PlanCheck("stock changes", "SELECT id, name, company, price, stock, stock_version FROM medicine WHERE updated_at >= ? ORDER BY id LIMIT ?",
+                "medicine", "ix_medicine_updated", "2099-01-01 00:00:00", 5000),
+        new PlanCheck("bills by date", "SELECT bill_id, medicine_name, quantity, total FROM bills WHERE bill_date >= ? AND bill_date < ?",
+                "bills", "ix_bills_date", "2024-01-01", "2024-01-02"),
+        new PlanCheck("bills for a medicine", "SELECT bill_id, quantity, total, bill_date FROM bills WHERE medicine_name = ? ORDER BY bill_date",
+                "bills", "ix_bills_medicine", "Paracetamol"),
+        new PlanCheck("cart bills by date", "SELECT id, total FROM bill_headers WHERE bill_date >= ? AND bill_date < ?",
+                "bill_headers", "ix_bill_headers_date", "2024-01-01", "2024-01-02"),
+        new PlanCheck("report totals", "SELECT SUM(revenue) FROM sales_daily WHERE sale_date >= ? AND sale_date < ?",
+                "sales_daily", "PRIMARY", "2024-01-01", "2024-02-01"),
+        new PlanCheck("report by hour", "SELECT SUM(revenue) FROM sales_hourly WHERE sale_hour >= ? AND sale_hour < ?",
+                "sales_hourly", "PRIMARY", "2024-01-01", "2024-01-02"),
+        new PlanCheck("FEFO batches", "SELECT id, batch_no, expiry, quantity FROM medicine_batches WHERE medicine_id = ? AND quantity > 0 ORDER BY expiry, id",
+                "medicine_batches", "ix_batches_fefo", 1),
+        new PlanCheck("expiring batches", "SELECT id, medicine_id, expiry, quantity FROM medicine_batches WHERE open_expiry <= ? ORDER BY open_expiry",
+                "medicine_batches", "ix_batches_open_expiry", "2024-01-31"),
+        new PlanCheck("stock on hand", "SELECT SUM(delta) FROM stock_ledger WHERE folded = 0 AND medicine_id = ?",
+                "stock_ledger", "ix_ledger_unfolded", 1),
+        new PlanCheck("stock history", "SELECT id, delta, reason FROM stock_ledger WHERE medicine_id = ? ORDER BY id DESC LIMIT ?",
+                "stock_ledger", "ix_ledger_medicine", 1, 50),
+        new PlanCheck("offline replay", "SELECT journal_id FROM offline_sales WHERE journal_id IN (?)",
+                "offline_sales", "PRIMARY", "00000000-0000-0000-0000-000000000000")
+    );
+
+    private SchemaMigrator() {
+    }
+
+    // Check the configured database from the command line
+    public static void main(String[] args) throws SQLException {
+        boolean checkOnly = args.length > 0 && "--check".equals(args[0]);
+        try (Connection conn = DBConnection.openConnection()) {
+            if (!checkOnly) {
+                System.out.println("Applied " + migrate(conn) + " migration(s); schema version " + currentVersion(conn));
+            }
+            List<String> problems = new ArrayList<>();
+            for (String line : explainAll(conn, problems)) {
+                System.out.println(line);
+            }
+            System.out.println(problems.isEmpty() ? "All hot queries can use an index." : problems.size() + " problem(s).");
+        }
+    }
+
+    /**
+     * Applies every migration this database has not seen yet.
+     *
+     * @return the number of migrations applied
+     * @throws SQLException if a migration fails (earlier ones stay applied)
+     */
+    static int migrate(Connection conn) throws SQLException {
+        execute(conn, "CREATE TABLE IF NOT EXISTS schema_version ("
+                + " version INT PRIMARY KEY,"
+                + " description VARCHAR(200) NOT NULL,"
+                + " applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        if (!namedLock(conn, "SELECT GET_LOCK(?, " + LOCK_TIMEOUT_SEC + ")")) {
+            throw new SQLException("Timed out waiting for another terminal to finish upgrading the schema");
+        }
+        try {
+            Set<Integer> applied = appliedVersions(conn);
+            int count = 0;
+            for (Migration m : MIGRATIONS) {
+                if (applied.contains(m.version)) continue;
+                try {
+                    m.step.apply(conn);
+                } catch (SQLException ex) {
+                    throw new SQLException("Schema migration " + m.version + " (" + m.description + ") failed: "
+                            + ex.getMessage(), ex.getSQLState(), ex.getErrorCode(), ex);
+                }
+                try (PreparedStatement pst = conn.prepareStatement("INSERT INTO schema_version(version, description) VALUES (?, ?)")) {
+                    pst.setInt(1, m.version);
+                    pst.setString(2, m.description);
+                    pst.executeUpdate();
+                }
+                count++;
+            }
+            return count;
+        } finally {
+            namedLock(conn, "SELECT RELEASE_LOCK(?)");
+        }
+    }
+
+    // Highest migration applied to this database (0 for a fresh one)
+    static int currentVersion(Connection conn) throws SQLException {
+        int max = 0;
+        for (int v : appliedVersions(conn)) max = Math.max(max, v);
+        return max;
+    }
+
+    /**
+     * EXPLAINs every hot query and returns the ones that cannot use the index they
+     * were designed around (an empty list when all is well).
+     */
+    static List<String> checkQueryPlans(Connection conn) throws SQLException {
+        List<String> problems = new ArrayList<>();
+        explainAll(conn, problems);
+        return problems;
+    }
+
+    // One line per hot query; problems also go into the given list
+    private static List<String> explainAll(Connection conn, List<String> problems) throws SQLException {
+        List<String> lines = new ArrayList<>();
+        for (PlanCheck check : PLAN_CHECKS) {
+            String line = explain(conn, check);
+            if (line.startsWith("FULL SCAN")) problems.add(line);
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private static String explain(Connection conn, PlanCheck check) throws SQLException {
+        try (PreparedStatement pst = conn.prepareStatement("EXPLAIN " + check.sql)) {
+            for (int i = 0; i < check.params.length; i++) {
+                pst.setObject(i + 1, check.params[i]);
+            }
+            String extra = "";
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    if (!check.table.equalsIgnoreCase(rs.getString("table"))) {
+                        if (rs.getString("Extra") != null) extra = rs.getString("Extra");
+                        continue;
+                    }
+                    String key = rs.getString("key");
+                    String possible = rs.getString("possible_keys");
+                    if (check.index.equalsIgnoreCase(key)) {
+                        return "OK        " + check.name + ": " + check.table + " via " + key + " (" + rs.getString("type") + ")";
+                    }
+                    if (possible != null && Arrays.asList(possible.split(",")).contains(check.index)) {
+                        // Tiny tables are often scanned anyway; the index is there once it matters
+                        return "OK        " + check.name + ": " + check.table + " can use " + check.index
+                                + " (optimizer chose " + (key == null ? "a scan" : key) + " for now)";
+                    }
+                    return "FULL SCAN " + check.name + ": " + check.table + " cannot use " + check.index
+                            + " (type " + rs.getString("type") + ", key " + key + ")";
+                }
+            }
+            // No row for the table: answered from the index alone, e.g. "no matching row in const table"
+            return "OK        " + check.name + ": " + check.table + " resolved by the optimizer (" + extra + ")";
+        }
+    }
+
+    private static void addUniqueNameIndex(Connection conn) throws SQLException {
+        if (indexExists(conn, "medicine", "ux_medicine_name")) return;
+        List<String> duplicates = new ArrayList<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT name FROM medicine GROUP BY name HAVING COUNT(*) > 1 LIMIT 10")) {
+            while (rs.next()) duplicates.add(rs.getString(1));
+        }
+        if (!duplicates.isEmpty()) {
+            throw new SQLException("medicine names must be unique before they can be indexed; merge these rows (stock"
+                    + " and bills) and restart: " + duplicates);
+        }
+        addIndex(conn, "medicine", "ux_medicine_name", "name", true);
+    }
+
+    private static void addIndex(Connection conn, String table, String index, String columns, boolean unique) throws SQLException {
+        if (indexExists(conn, table, index)) return;
+        execute(conn, "ALTER TABLE " + table + " ADD " + (unique ? "UNIQUE " : "") + "INDEX " + index + " (" + columns + ")");
+    }
+
+    private static void addColumn(Connection conn, String table, String column, String definition) throws SQLException {
+        if (columnExists(conn, table, column)) return;
+        execute(conn, "ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+    }
+
+    private static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        try (PreparedStatement pst = conn.prepareStatement("SELECT 1 FROM information_schema.columns"
+                + " WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ? LIMIT 1")) {
+            pst.setString(1, table);
+            pst.setString(2, column);
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // Through JDBC metadata rather than information_schema.statistics, which H2 (tests, benchmarks) lacks
+    private static boolean indexExists(Connection conn, String table, String index) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, table, false, true)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) return true;
+            }
+            return false;
+        }
+    }
+
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        try (PreparedStatement pst = conn.prepareStatement("SELECT 1 FROM information_schema.tables"
+                + " WHERE table_schema = DATABASE() AND table_name = ? LIMIT 1")) {
+            pst.setString(1, table);
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static Set<Integer> appliedVersions(Connection conn) throws SQLException {
+        Set<Integer> out = new HashSet<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT version FROM schema_version")) {
+            while (rs.next()) out.add(rs.getInt(1));
+        }
+        return out;
+    }
+
+    private static boolean namedLock(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement pst = conn.prepareStatement(sql)) {
+            pst.setString(1, LOCK_NAME);
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static boolean isH2(Connection conn) throws SQLException {
+        return "H2".equals(conn.getMetaData().getDatabaseProductName());
+    }
+
+    private static void execute(Connection conn, String... statements) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            for (String sql : statements) {
+                st.execute(sql);
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * CountersMXBean
+ *
+ * JMX view of all event counters (errors, refused sales, ...).
+ * Registered as MedixHub:type=Counters,terminal=...
+ */
+public interface CountersMXBean {
+
+    Map<String, Long> getCounters();
+}
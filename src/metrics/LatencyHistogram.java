@@ -0,0 +1,134 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram
+ *
+ * Lock-free log-linear histogram of durations in nanoseconds. Every power of two is
+ * split into 16 equal buckets, so any reported percentile is within about 6% of the
+ * true value, from 1 ns up to several minutes, in a fixed 5 KB of counters.
+ * Recording is a couple of atomic increments; no allocation.
+ *
+ * Snapshots can be subtracted to get the distribution for an interval
+ * (e.g. the last refresh of the metrics panel).
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40; // ~18 minutes
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) << SUB_BITS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        count.increment();
+        sum.add(nanos);
+        long prev;
+        while (nanos > (prev = max.get())) {
+            if (max.compareAndSet(prev, nanos)) break;
+        }
+    }
+
+    // Time since startNanos (a System.nanoTime() value)
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] c = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts.get(i);
+            n += c[i];
+        }
+        return new Snapshot(name, c, n, sum.sum(), max.get());
+    }
+
+    static int bucket(long v) {
+        if (v < SUB_COUNT) return (int) v;
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int shift = exponent - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((v >>> shift) & (SUB_COUNT - 1));
+    }
+
+    // Midpoint of the bucket's value range
+    static long value(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        int shift = (bucket >>> SUB_BITS) - 1;
+        long low = ((long) (SUB_COUNT + (bucket & (SUB_COUNT - 1)))) << shift;
+        return low + ((1L << shift) >>> 1);
+    }
+
+    /**
+     * Immutable copy of a histogram's counters.
+     */
+    public static final class Snapshot {
+        private final String name;
+        private final long[] counts;
+        private final long count;
+        private final long sumNanos;
+        private final long maxNanos;
+
+        Snapshot(String name, long[] counts, long count, long sumNanos, long maxNanos) {
+            this.name = name;
+            this.counts = counts;
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getName() { return name; }
+
+        public long getCount() { return count; }
+
+        public double getMeanMillis() {
+            return count == 0 ? 0 : sumNanos / (double) count / 1e6;
+        }
+
+        // Max since the histogram was created (not per interval)
+        public double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        // p in 0..1, e.g. 0.99
+        public double getPercentileMillis(double p) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(p * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(value(i), maxNanos) / 1e6;
+            }
+            return maxNanos / 1e6;
+        }
+
+        // Counts recorded after `earlier` was taken (same histogram)
+        public Snapshot minus(Snapshot earlier) {
+            if (earlier == null) return this;
+            long[] c = new long[counts.length];
+            for (int i = 0; i < c.length; i++) {
+                c[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(name, c, count - earlier.count, sumNanos - earlier.sumNanos, maxNanos);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package metrics;
+
+/**
+ * LatencyMXBean
+ *
+ * JMX view of one latency histogram (all-time figures since the process started).
+ * Registered as MedixHub:type=Latency,terminal=...,name=...
+ */
+public interface LatencyMXBean {
+
+    long getCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+}
@@ -0,0 +1,165 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Metrics
+ *
+ * Process-wide registry of latency histograms and event counters. Timers are
+ * created on first use and published over JMX under the "MedixHub" domain, tagged
+ * with this terminal's id (env TERMINAL_ID, else the host name), so a JMX console
+ * such as JConsole can compare checkout PCs.
+ *
+ * Names in use:
+ *   db.acquire                      borrowing a pooled connection
+ *   sql.<verb> <table>              each JDBC execute call, e.g. "sql.update medicine"
+ *   ui.login, ui.sale, ui.checkout,
+ *   ui.stock-add, ui.search         user actions, from click to result
+ *   api.sale, api.checkout, ...     store server requests (api.ApiServer)
+ * and counters such as ui.errors, sql.errors, api.errors, catalog.errors and sale.refused.
+ */
+public final class Metrics {
+
+    private static final String DOMAIN = "MedixHub";
+    private static final int MAX_SQL_LABELS = 2000;
+    private static final Pattern TABLE = Pattern.compile("(?i)\\b(?:FROM|INTO|UPDATE|JOIN)\\s+`?([A-Za-z_][\\w.]*)");
+
+    private static final ConcurrentHashMap<String, LatencyHistogram> TIMERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, String> SQL_LABELS = new ConcurrentHashMap<>();
+    private static final String TERMINAL = terminalId();
+
+    static {
+        register("type=Counters", new CountersBean());
+    }
+
+    private Metrics() {
+    }
+
+    public static String getTerminalId() {
+        return TERMINAL;
+    }
+
+    public static LatencyHistogram timer(String name) {
+        LatencyHistogram h = TIMERS.get(name);
+        if (h != null) return h;
+        h = new LatencyHistogram(name);
+        LatencyHistogram prev = TIMERS.putIfAbsent(name, h);
+        if (prev != null) return prev;
+        register("type=Latency,name=" + ObjectName.quote(name), new LatencyBean(h));
+        return h;
+    }
+
+    public static void increment(String counter) {
+        COUNTERS.computeIfAbsent(counter, k -> new LongAdder()).increment();
+    }
+
+    public static void increment(String counter, long delta) {
+        COUNTERS.computeIfAbsent(counter, k -> new LongAdder()).add(delta);
+    }
+
+    // Wraps work so each call's duration is recorded under name (failures included)
+    public static <T> Callable<T> timed(String name, Callable<T> work) {
+        LatencyHistogram h = timer(name);
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                return work.call();
+            } finally {
+                h.recordSince(start);
+            }
+        };
+    }
+
+    // Current state of every timer, by name
+    public static List<LatencyHistogram.Snapshot> snapshots() {
+        List<LatencyHistogram.Snapshot> out = new ArrayList<>();
+        for (LatencyHistogram h : new TreeMap<>(TIMERS).values()) {
+            out.add(h.snapshot());
+        }
+        return out;
+    }
+
+    public static Map<String, Long> counters() {
+        Map<String, Long> out = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : COUNTERS.entrySet()) {
+            out.put(e.getKey(), e.getValue().sum());
+        }
+        return out;
+    }
+
+    /**
+     * Timer name for a SQL statement: "sql." plus the verb and first table,
+     * e.g. "sql.select medicine". Keeps the number of timers small even when the
+     * SQL text varies (IN lists, generated filters).
+     */
+    public static String sqlTimerName(String sql) {
+        if (sql == null) return "sql.other";
+        String label = SQL_LABELS.get(sql);
+        if (label != null) return label;
+
+        String s = sql.trim();
+        int space = s.indexOf(' ');
+        String verb = (space < 0 ? s : s.substring(0, space)).toLowerCase(Locale.ROOT);
+        Matcher m = TABLE.matcher(s);
+        label = "sql." + verb + (m.find() ? " " + m.group(1).toLowerCase(Locale.ROOT) : "");
+        if (SQL_LABELS.size() < MAX_SQL_LABELS) SQL_LABELS.put(sql, label);
+        return label;
+    }
+
+    private static void register(String keys, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + keys + ",terminal=" + ObjectName.quote(TERMINAL));
+            if (!server.isRegistered(name)) server.registerMBean(bean, name);
+        } catch (JMException | RuntimeException ex) {
+            System.err.println("Metrics: JMX registration failed for " + keys + ": " + ex.getMessage());
+        }
+    }
+
+    private static String terminalId() {
+        String id = System.getenv("TERMINAL_ID");
+        if (id != null && !id.trim().isEmpty()) return id.trim();
+        String host = System.getenv("COMPUTERNAME"); // Windows
+        if (host == null) host = System.getenv("HOSTNAME");
+        return host != null && !host.isEmpty() ? host : "local";
+    }
+
+    private static final class CountersBean implements CountersMXBean {
+        @Override public Map<String, Long> getCounters() { return counters(); }
+    }
+
+    // JMX adapter; figures are since process start
+    private static final class LatencyBean implements LatencyMXBean {
+        private final LatencyHistogram h;
+
+        LatencyBean(LatencyHistogram h) {
+            this.h = h;
+        }
+
+        @Override public long getCount() { return h.snapshot().getCount(); }
+
+        @Override public double getMeanMillis() { return h.snapshot().getMeanMillis(); }
+
+        @Override public double getP50Millis() { return h.snapshot().getPercentileMillis(0.50); }
+
+        @Override public double getP90Millis() { return h.snapshot().getPercentileMillis(0.90); }
+
+        @Override public double getP99Millis() { return h.snapshot().getPercentileMillis(0.99); }
+
+        @Override public double getMaxMillis() { return h.snapshot().getMaxMillis(); }
+    }
+}
@@ -0,0 +1,41 @@
+package service;
+
+import db.DBConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * AuthService
+ *
+ * Checks terminal logins against the `users` table, or asks the store server
+ * when running as a thin client (see RemoteClient).
+ */
+public class AuthService {
+
+    private static final String CHECK_SQL = "SELECT id FROM users WHERE username = ? AND password = ?";
+
+    // True when the username/password pair exists
+    public boolean checkCredentials(String username, String password) throws SQLException {
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("username", username);
+            body.put("password", password);
+            return Boolean.TRUE.equals(remote.post("/api/login", body).get("ok"));
+        }
+
+        try (Connection conn = DBConnection.openConnection();
+             PreparedStatement pst = conn.prepareStatement(CHECK_SQL)) {
+            pst.setString(1, username);
+            pst.setString(2, password);
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BatchBook
+ *
+ * Process-wide, in-memory view of each medicine's open stock batches in
+ * first-expiry-first-out order (expiry, then id), loaded per medicine on first use.
+ * Stock not covered by any batch (stock entered before batches existed, CSV imports,
+ * a new medicine's opening stock) is "loose" and is sold after the unexpired batches.
+ * Expired batches are never sold.
+ *
+ * A shelf is trusted only while medicine.stock_version still has the value it was synced
+ * at. Every statement that changes a medicine's stock or batches, from any terminal, also
+ * bumps that counter, so a stale shelf is reloaded from the database while the medicine
+ * row is locked, before allocating. (The stock figure itself cannot be used: a receipt
+ * and a sale of the same size elsewhere leave it unchanged with different batches.)
+ *
+ * Sales allocate through an Allocation, which belongs to one transaction: flush() writes
+ * the batch decrements as one guarded JDBC batch, and committed() updates the book.
+ */
+public final class BatchBook {
+
+    static final String LOAD_SQL = "SELECT id, medicine_id, batch_no, expiry, quantity FROM medicine_batches"
+            + " WHERE medicine_id IN (%s) AND quantity > 0";
+    static final String TAKE_SQL = "UPDATE medicine_batches SET quantity = quantity - ? WHERE id = ? AND quantity >= ?";
+
+    private static final Comparator<StockBatch> FEFO =
+            Comparator.comparing(StockBatch::getExpiry).thenComparingLong(StockBatch::getId);
+
+    private static final BatchBook INSTANCE = new BatchBook();
+
+    // Open batches of one medicine, valid while medicine.stock_version == syncedVersion
+    private static final class Shelf {
+        final List<StockBatch> batches;
+        final long syncedVersion;
+
+        Shelf(Collection<StockBatch> batches, long syncedVersion) {
+            TreeSet<StockBatch> sorted = new TreeSet<>(FEFO);
+            sorted.addAll(batches);
+            this.batches = Collections.unmodifiableList(new ArrayList<>(sorted));
+            this.syncedVersion = syncedVersion;
+        }
+    }
+
+    private final ConcurrentHashMap<Integer, Shelf> shelves = new ConcurrentHashMap<>();
+
+    private BatchBook() {
+    }
+
+    public static BatchBook get() {
+        return INSTANCE;
+    }
+
+    // Forget a medicine's batches (after a receipt or write-off); the next sale reloads them
+    public void invalidate(int medicineId) {
+        shelves.remove(medicineId);
+    }
+
+    // Start allocating inside the caller's transaction
+    public Allocation begin(Connection conn) {
+        return new Allocation(conn);
+    }
+
+    /**
+     * FEFO allocation for one transaction. Every medicine must be locked by that
+     * transaction (guarded UPDATE or SELECT ... FOR UPDATE) and passed to prepare()
+     * before it is used here. The transaction must bump stock_version exactly once for
+     * each medicine it takes from (one decrement statement per medicine).
+     */
+    public final class Allocation {
+
+        private final Connection conn;
+        private final Map<Integer, Working> working = new HashMap<>();
+        private final Map<Long, Integer> taken = new LinkedHashMap<>();
+
+        private Allocation(Connection conn) {
+            this.conn = conn;
+        }
+
+        /**
+         * Makes sure each medicine's shelf matches its locked row, loading all stale
+         * ones with a single query.
+         *
+         * @param stockBefore   medicine id -> medicine.stock before this transaction changed it
+         * @param versionBefore medicine id -> medicine.stock_version before this transaction changed it
+         */
+        public void prepare(Map<Integer, Integer> stockBefore, Map<Integer, Long> versionBefore) throws SQLException {
+            List<Integer> stale = new ArrayList<>();
+            for (Map.Entry<Integer, Integer> e : stockBefore.entrySet()) {
+                if (working.containsKey(e.getKey())) continue;
+                long version = versionBefore.get(e.getKey());
+                Shelf shelf = shelves.get(e.getKey());
+                if (shelf != null && shelf.syncedVersion == version) {
+                    working.put(e.getKey(), new Working(shelf.batches, e.getValue(), version));
+                } else {
+                    stale.add(e.getKey());
+                }
+            }
+            if (stale.isEmpty()) return;
+
+            Map<Integer, List<StockBatch>> loaded = new HashMap<>();
+            try (PreparedStatement pst = conn.prepareStatement(String.format(LOAD_SQL, BillingService.placeholders(stale.size())))) {
+                for (int i = 0; i < stale.size(); i++) {
+                    pst.setInt(i + 1, stale.get(i));
+                }
+                try (ResultSet rs = pst.executeQuery()) {
+                    while (rs.next()) {
+                        StockBatch b = new StockBatch(rs.getLong("id"), rs.getInt("medicine_id"), null,
+                                rs.getString("batch_no"), rs.getDate("expiry").toLocalDate(), rs.getInt("quantity"));
+                        loaded.computeIfAbsent(b.getMedicineId(), k -> new ArrayList<>()).add(b);
+                    }
+                }
+            }
+            for (Integer id : stale) {
+                List<StockBatch> batches = loaded.containsKey(id) ? loaded.get(id) : Collections.<StockBatch>emptyList();
+                long version = versionBefore.get(id);
+                working.put(id, new Working(new Shelf(batches, version).batches, stockBefore.get(id), version));
+            }
+        }
+
+        // Units of the medicine that may still be sold as of the given day: unexpired batches plus loose stock
+        public int sellable(int medicineId, LocalDate asOf) {
+            return working(medicineId).sellable(asOf);
+        }
+
+        /**
+         * Takes qty units, earliest-expiring unexpired batch first, then loose stock.
+         *
+         * @return false (and takes nothing) when qty is more than sellable()
+         */
+        public boolean take(int medicineId, int qty, LocalDate asOf) {
+            Working w = working(medicineId);
+            if (w.sellable(asOf) < qty) return false;
+            int left = qty;
+            for (int i = 0; i < w.batches.size() && left > 0; i++) {
+                StockBatch b = w.batches.get(i);
+                if (b.isExpired(asOf) || b.getQuantity() == 0) continue;
+                int n = Math.min(left, b.getQuantity());
+                w.batches.set(i, b.withQuantity(b.getQuantity() - n));
+                taken.merge(b.getId(), n, Integer::sum);
+                left -= n;
+            }
+            w.loose -= left;
+            w.stock -= qty;
+            w.taken = true;
+            return true;
+        }
+
+        // Writes every batch decrement as one JDBC batch; each is guarded so no batch goes negative
+        public void flush() throws SQLException {
+            if (taken.isEmpty()) return;
+            try (PreparedStatement pst = conn.prepareStatement(TAKE_SQL)) {
+                for (Map.Entry<Long, Integer> e : taken.entrySet()) {
+                    pst.setInt(1, e.getValue());
+                    pst.setLong(2, e.getKey());
+                    pst.setInt(3, e.getValue());
+                    pst.addBatch();
+                }
+                for (int c : pst.executeBatch()) {
+                    if (c == 0) {
+                        // Changed without going through medicine.stock (e.g. by hand); reload next time
+                        for (Integer id : working.keySet()) {
+                            shelves.remove(id);
+                        }
+                        throw new SQLException("Batch quantities changed during the sale; no changes were made.");
+                    }
+                }
+            }
+            taken.clear();
+        }
+
+        // Call after the transaction commits so the book matches the database
+        public void committed() {
+            for (Map.Entry<Integer, Working> e : working.entrySet()) {
+                List<StockBatch> open = new ArrayList<>();
+                for (StockBatch b : e.getValue().batches) {
+                    if (b.getQuantity() > 0) open.add(b);
+                }
+                // The transaction's one decrement of a medicine it took from bumped the version once
+                Working w = e.getValue();
+                shelves.put(e.getKey(), new Shelf(open, w.taken ? w.version + 1 : w.version));
+            }
+        }
+
+        private Working working(int medicineId) {
+            Working w = working.get(medicineId);
+            if (w == null) throw new IllegalStateException("Medicine " + medicineId + " was not prepared for allocation.");
+            return w;
+        }
+    }
+
+    // Per-transaction copy of a shelf
+    private static final class Working {
+        final List<StockBatch> batches;
+        final long version;
+        int stock;
+        int loose;
+        boolean taken;
+
+        Working(List<StockBatch> batches, int stock, long version) {
+            this.batches = new ArrayList<>(batches);
+            this.stock = stock;
+            this.version = version;
+            int inBatches = 0;
+            for (StockBatch b : batches) {
+                inBatches += b.getQuantity();
+            }
+            this.loose = Math.max(0, stock - inBatches);
+        }
+
+        int sellable(LocalDate asOf) {
+            int n = loose;
+            for (StockBatch b : batches) {
+                if (!b.isExpired(asOf)) n += b.getQuantity();
+            }
+            return Math.min(n, stock);
+        }
+    }
+}
@@ -0,0 +1,1044 @@
+package service;
+
+import db.DBConnection;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BillingService
+ *
+ * Sale logic shared by BillingFrame and any headless caller. No Swing code here.
+ *
+ * The stock check and the decrement are a single guarded UPDATE
+ * (`... WHERE stock >= ?`), so two terminals selling the same item can never
+ * drive stock below zero: the row lock serializes them and the loser's UPDATE
+ * simply matches no row.
+ *
+ * Cart sales write one bill_headers row plus one bill_lines row per medicine.
+ * All lines are priced and locked with a single lookup, and the stock
+ * decrements and line inserts go out as JDBC batches in one transaction.
+ *
+ * Every sale also bumps the daily and hourly per-medicine rollups (see
+ * RollupWriter) in the same transaction, so reports never scan the bill history.
+ *
+ * Units are taken from stock batches first-expiry-first-out (see BatchBook), in the
+ * same transaction; units in expired batches cannot be sold. Each line is also
+ * appended to the stock ledger (see StockLedger) with the bill it belongs to.
+ *
+ * Calls that borrow their own connection re-run the whole transaction (up to
+ * MAX_ATTEMPTS times) when MySQL picks it as a deadlock victim or a lock wait times out.
+ * In thin-client mode (see RemoteClient) those calls go to the store server instead.
+ *
+ * When no connection can be opened at all (database or store server unreachable),
+ * sales are checked against the catalog cache's last known stock and appended to the
+ * local SaleJournal instead, so the counter keeps selling. JournalReplayer later
+ * replays them (replayJournal) in batched transactions; each journal entry is written
+ * at most once thanks to its row in `offline_sales`.
+ */
+public class BillingService {
+
+    // Every stock write bumps stock_version, which is what BatchBook keys its cached shelves on
+    static final String DECREMENT_SQL = "UPDATE medicine SET stock = stock - ?, stock_version = stock_version + 1 WHERE name = ? AND stock >= ?";
+    static final String LOOKUP_SQL = "SELECT id, name, price, stock, stock_version FROM medicine WHERE name = ?";
+    static final String LOOKUP_BY_ID_SQL = "SELECT id, name, price, stock, stock_version FROM medicine WHERE id = ?";
+    static final String INSERT_BILL_SQL = "INSERT INTO bills(medicine_name, quantity, total) VALUES (?, ?, ?)";
+    static final String DECREMENT_BY_ID_SQL = "UPDATE medicine SET stock = stock - ?, stock_version = stock_version + 1 WHERE id = ? AND stock >= ?";
+    static final String INSERT_HEADER_SQL = "INSERT INTO bill_headers(total, item_count) VALUES (?, ?)";
+    static final String INSERT_LINE_SQL = "INSERT INTO bill_lines(bill_id, medicine_id, medicine_name, quantity, price, line_total) VALUES (?, ?, ?, ?, ?, ?)";
+
+    // Attempts per pooled-connection call when MySQL reports a deadlock or lock wait timeout
+    static final int MAX_ATTEMPTS = 3;
+    private static final int MYSQL_DEADLOCK = 1213;
+    private static final int MYSQL_LOCK_WAIT_TIMEOUT = 1205;
+    // SQLState of a group whose COMMIT was sent but not confirmed: it may or may not have gone through
+    static final String COMMIT_UNKNOWN = "MX001";
+
+    static final String INSERT_REPLAYED_HEADER_SQL = "INSERT INTO bill_headers(total, item_count, bill_date) VALUES (?, ?, ?)";
+    static final String INSERT_OFFLINE_SQL = "INSERT INTO offline_sales(journal_id, terminal, sold_at, status, bill_id, total, detail)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    // Journal entries per replay transaction
+    static final int REPLAY_BATCH = 50;
+    // After a connection failure, sales go straight to the journal for this long instead of waiting on connect timeouts
+    private static final long OFFLINE_RETRY_MS = 15_000L;
+    private static volatile long offlineUntil;
+
+    private static final AtomicLong DEADLOCKS = new AtomicLong();
+    private static final AtomicLong LOCK_TIMEOUTS = new AtomicLong();
+    private static final AtomicLong RETRIES = new AtomicLong();
+
+    // Work run in one transaction on a pooled connection; may be attempted more than once
+    private interface SqlWork<T> {
+        T apply(Connection conn) throws SQLException;
+    }
+
+    // A sale attempt: over HTTP, or journaled offline (returns null when the cache cannot vouch for it)
+    private interface SaleCall<T> {
+        T call() throws SQLException;
+    }
+
+    /**
+     * Sells qty units of the named medicine using a pooled connection.
+     *
+     * @throws SQLException if the database cannot be reached or the transaction fails
+     */
+    public SaleResult sell(String name, int qty) throws SQLException {
+        if (RemoteClient.get() != null) return sellRemote(0, name, qty);
+        return withRetry(conn -> sell(conn, name, qty), () -> sellOffline(0, name, qty));
+    }
+
+    /**
+     * Sells qty units of a medicine picked by id (e.g. from autocomplete), so the
+     * update hits the primary key instead of matching the name string.
+     */
+    public SaleResult sellById(int medicineId, String displayName, int qty) throws SQLException {
+        if (RemoteClient.get() != null) return sellRemote(medicineId, displayName, qty);
+        return withRetry(conn -> sell(conn, medicineId, displayName, qty), () -> sellOffline(medicineId, displayName, qty));
+    }
+
+    /**
+     * Sells qty units of the named medicine on the given connection in its own transaction.
+     * The connection's auto-commit mode is restored afterwards.
+     */
+    public SaleResult sell(Connection conn, String name, int qty) throws SQLException {
+        return sell(conn, 0, name, qty);
+    }
+
+    // medicineId > 0 selects by primary key, otherwise by name
+    private SaleResult sell(Connection conn, int medicineId, String name, int qty) throws SQLException {
+        if (qty <= 0) throw new IllegalArgumentException("Quantity must be positive: " + qty);
+        boolean byId = medicineId > 0;
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement pstUpdate = conn.prepareStatement(byId ? DECREMENT_BY_ID_SQL : DECREMENT_SQL);
+             PreparedStatement pstLookup = conn.prepareStatement(byId ? LOOKUP_BY_ID_SQL : LOOKUP_SQL)) {
+
+            // Check and deduct in one statement; takes the row lock
+            pstUpdate.setInt(1, qty);
+            if (byId) pstUpdate.setInt(2, medicineId); else pstUpdate.setString(2, name);
+            pstUpdate.setInt(3, qty);
+            int upd = pstUpdate.executeUpdate();
+
+            // Same transaction: price and remaining stock, or why the guard failed
+            int id;
+            double price;
+            int stock;
+            long version;
+            if (byId) pstLookup.setInt(1, medicineId); else pstLookup.setString(1, name);
+            try (ResultSet rs = pstLookup.executeQuery()) {
+                if (!rs.next()) {
+                    conn.rollback();
+                    return SaleResult.notFound(name, qty);
+                }
+                id = rs.getInt("id");
+                name = rs.getString("name");
+                price = rs.getDouble("price");
+                stock = rs.getInt("stock");
+                version = rs.getLong("stock_version");
+            }
+
+            if (upd == 0) {
+                conn.rollback();
+                return new SaleResult(SaleResult.Status.INSUFFICIENT_STOCK, name, id, qty, price, stock);
+            }
+
+            // Earliest-expiring batches first; the row is locked by the decrement above (stock is after it)
+            LocalDate today = LocalDate.now();
+            BatchBook.Allocation batches = BatchBook.get().begin(conn);
+            batches.prepare(Collections.singletonMap(id, stock + qty), Collections.singletonMap(id, version - 1));
+            if (!batches.take(id, qty, today)) {
+                int sellable = batches.sellable(id, today);
+                conn.rollback();
+                return new SaleResult(SaleResult.Status.INSUFFICIENT_STOCK, name, id, qty, price, sellable);
+            }
+
+            long billId;
+            try (PreparedStatement pstInsert = conn.prepareStatement(INSERT_BILL_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                pstInsert.setString(1, name);
+                pstInsert.setInt(2, qty);
+                pstInsert.setDouble(3, price * qty);
+                pstInsert.executeUpdate();
+                try (ResultSet keys = pstInsert.getGeneratedKeys()) {
+                    if (!keys.next()) throw new SQLException("No bill id generated.");
+                    billId = keys.getLong(1);
+                }
+            }
+
+            try (RollupWriter rollups = new RollupWriter(conn);
+                 LedgerWriter ledger = new LedgerWriter(conn)) {
+                rollups.add(id, name, qty, price * qty);
+                rollups.flush();
+                ledger.add(id, null, -qty, StockLedger.Reason.SALE, "bills/" + billId);
+                ledger.flush();
+            }
+            batches.flush();
+
+            conn.commit();
+            batches.committed();
+            CatalogCache.get().updateStock(id, stock, version);
+            return new SaleResult(SaleResult.Status.OK, name, id, qty, price, stock, null, version);
+
+        } catch (SQLException | RuntimeException ex) {
+            try { conn.rollback(); } catch (SQLException ignored) {}
+            throw ex;
+        } finally {
+            try { conn.setAutoCommit(autoCommit); } catch (SQLException ignored) {}
+        }
+    }
+
+    /**
+     * Checks out a whole cart as one bill using a pooled connection.
+     *
+     * @throws SQLException if the database cannot be reached or the transaction fails
+     */
+    public CartResult checkout(List<CartLine> cart) throws SQLException {
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            List<Object> lines = new ArrayList<>(cart.size());
+            for (CartLine line : cart) {
+                lines.add(RemoteClient.toJson(line));
+            }
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("lines", lines);
+            return remoteOrOffline(() -> RemoteClient.cartResult(remote.post("/api/checkout", body)), () -> checkoutOffline(cart));
+        }
+        return withRetry(conn -> checkout(conn, cart), () -> checkoutOffline(cart));
+    }
+
+    // Thin-client sale: the store server runs the transaction; mirror the new stock in the local cache
+    private SaleResult sellRemote(int medicineId, String name, int qty) throws SQLException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("id", medicineId);
+        body.put("name", name);
+        body.put("qty", qty);
+        SaleResult result = remoteOrOffline(() -> RemoteClient.saleResult(RemoteClient.get().post("/api/sales", body)),
+                () -> sellOffline(medicineId, name, qty));
+        if (result.isOk() && !result.isOffline()) {
+            CatalogCache.get().updateStock(result.getMedicineId(), result.getRemainingStock(), result.getStockVersion());
+        }
+        return result;
+    }
+
+    // Thin-client call, journaled offline when the store server cannot be reached (the request was never sent)
+    private static <T> T remoteOrOffline(SaleCall<T> call, SaleCall<T> offline) throws SQLException {
+        if (isOffline()) {
+            T result = offline.call();
+            if (result != null) return result;
+        }
+        try {
+            return call.call();
+        } catch (SQLException ex) {
+            if (!RemoteClient.CONNECT_FAILED.equals(ex.getSQLState())) throw ex;
+            offlineUntil = System.currentTimeMillis() + OFFLINE_RETRY_MS;
+            T result = offline.call();
+            if (result == null) throw ex;
+            return result;
+        }
+    }
+
+    // Deadlocks seen by this process since start (each one was rolled back by MySQL)
+    public static long getDeadlockCount() {
+        return DEADLOCKS.get();
+    }
+
+    public static long getLockTimeoutCount() {
+        return LOCK_TIMEOUTS.get();
+    }
+
+    // Transactions re-run after a deadlock or lock wait timeout
+    public static long getRetryCount() {
+        return RETRIES.get();
+    }
+
+    // True while recent sales could not reach the database (or store server) and are being journaled
+    public static boolean isOffline() {
+        return System.currentTimeMillis() < offlineUntil;
+    }
+
+    // Runs work on a fresh pooled connection; a deadlocked or timed-out transaction is rolled back
+    // as a whole, so it is safe to run it again after a short randomized back-off.
+    // Only a failure to connect at all (nothing was sent, SQLState class 08) falls back to offline.
+    private static <T> T withRetry(SqlWork<T> work, SaleCall<T> offline) throws SQLException {
+        if (offline != null && isOffline()) {
+            T result = offline.call();
+            if (result != null) return result;
+        }
+        for (int attempt = 1; ; attempt++) {
+            Connection opened;
+            try {
+                opened = DBConnection.openConnection();
+            } catch (SQLException ex) {
+                String state = ex.getSQLState();
+                if (offline == null || state == null || !state.startsWith("08")) throw ex;
+                offlineUntil = System.currentTimeMillis() + OFFLINE_RETRY_MS;
+                T result = offline.call();
+                if (result == null) throw ex;
+                return result;
+            }
+            try (Connection conn = opened) {
+                return work.apply(conn);
+            } catch (SQLException ex) {
+                boolean deadlock = ex.getErrorCode() == MYSQL_DEADLOCK || "40001".equals(ex.getSQLState());
+                boolean timeout = ex.getErrorCode() == MYSQL_LOCK_WAIT_TIMEOUT;
+                if (deadlock) DEADLOCKS.incrementAndGet();
+                if (timeout) LOCK_TIMEOUTS.incrementAndGet();
+                if (!(deadlock || timeout) || attempt >= MAX_ATTEMPTS) throw ex;
+                RETRIES.incrementAndGet();
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextInt(5, 20) * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks out a whole cart as one bill on the given connection, in a single transaction.
+     * Lines for the same medicine are merged, whether they name it by id or by name.
+     * Nothing is written unless every line can be filled.
+     */
+    public CartResult checkout(Connection conn, List<CartLine> cart) throws SQLException {
+        // Lookup keys, first-seen order: "#id" or the lower-cased name
+        Map<String, Integer> wanted = new LinkedHashMap<>();
+        Map<String, String> labels = new HashMap<>();
+        for (CartLine line : cart) {
+            if (line.getQuantity() <= 0) throw new IllegalArgumentException("Quantity must be positive: " + line.getQuantity());
+            String k = line.getMedicineId() > 0 ? "#" + line.getMedicineId() : key(line.getMedicineName());
+            wanted.merge(k, line.getQuantity(), Integer::sum);
+            labels.putIfAbsent(k, line.getMedicineName());
+        }
+        if (wanted.isEmpty()) throw new IllegalArgumentException("Cart is empty.");
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            // One lookup prices every line and locks the rows for the rest of the transaction
+            Map<String, PricedRow> rows = lockAndPrice(conn, wanted.keySet());
+
+            // Merge again by the row each key resolved to: one line may name a medicine by id, another by name
+            Map<PricedRow, Integer> need = new LinkedHashMap<>();
+            List<String> missing = new ArrayList<>();
+            for (Map.Entry<String, Integer> e : wanted.entrySet()) {
+                PricedRow row = rows.get(e.getKey());
+                if (row == null) missing.add(labels.get(e.getKey()));
+                else need.merge(row, e.getValue(), Integer::sum);
+            }
+
+            // FEFO allocation per line; a shortage discards it along with the transaction
+            LocalDate today = LocalDate.now();
+            BatchBook.Allocation batches = BatchBook.get().begin(conn);
+            batches.prepare(stockById(rows.values()), versionById(rows.values()));
+
+            Map<String, Integer> shortages = new LinkedHashMap<>();
+            double total = 0.0;
+            for (Map.Entry<PricedRow, Integer> e : need.entrySet()) {
+                PricedRow row = e.getKey();
+                if (!batches.take(row.id, e.getValue(), today)) {
+                    shortages.put(row.name, batches.sellable(row.id, today));
+                } else {
+                    total += row.price * e.getValue();
+                }
+            }
+            if (!missing.isEmpty() || !shortages.isEmpty()) {
+                conn.rollback();
+                return new CartResult(0L, 0.0, need.size() + missing.size(), missing, shortages);
+            }
+
+            try (PreparedStatement pstUpdate = conn.prepareStatement(DECREMENT_BY_ID_SQL)) {
+                for (Map.Entry<PricedRow, Integer> e : need.entrySet()) {
+                    pstUpdate.setInt(1, e.getValue());
+                    pstUpdate.setInt(2, e.getKey().id);
+                    pstUpdate.setInt(3, e.getValue());
+                    pstUpdate.addBatch();
+                }
+                int[] counts = pstUpdate.executeBatch();
+                for (int c : counts) {
+                    // rows are locked above, so this only trips if the schema or data changed underneath us
+                    if (c == 0) throw new SQLException("Stock changed during checkout; no changes were made.");
+                }
+            }
+
+            long billId;
+            try (PreparedStatement pstHeader = conn.prepareStatement(INSERT_HEADER_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                pstHeader.setDouble(1, total);
+                pstHeader.setInt(2, need.size());
+                pstHeader.executeUpdate();
+                try (ResultSet keys = pstHeader.getGeneratedKeys()) {
+                    if (!keys.next()) throw new SQLException("No bill id generated.");
+                    billId = keys.getLong(1);
+                }
+            }
+
+            try (PreparedStatement pstLine = conn.prepareStatement(INSERT_LINE_SQL)) {
+                for (Map.Entry<PricedRow, Integer> e : need.entrySet()) {
+                    PricedRow row = e.getKey();
+                    pstLine.setLong(1, billId);
+                    pstLine.setInt(2, row.id);
+                    pstLine.setString(3, row.name);
+                    pstLine.setInt(4, e.getValue());
+                    pstLine.setDouble(5, row.price);
+                    pstLine.setDouble(6, row.price * e.getValue());
+                    pstLine.addBatch();
+                }
+                pstLine.executeBatch();
+            }
+
+            try (RollupWriter rollups = new RollupWriter(conn);
+                 LedgerWriter ledger = new LedgerWriter(conn)) {
+                for (Map.Entry<PricedRow, Integer> e : need.entrySet()) {
+                    PricedRow row = e.getKey();
+                    rollups.add(row.id, row.name, e.getValue(), row.price * e.getValue());
+                    ledger.add(row.id, null, -e.getValue(), StockLedger.Reason.SALE, "bill_headers/" + billId);
+                }
+                rollups.flush();
+                ledger.flush();
+            }
+            batches.flush();
+
+            conn.commit();
+            batches.committed();
+            for (Map.Entry<PricedRow, Integer> e : need.entrySet()) {
+                // The decrement above bumped stock_version once
+                CatalogCache.get().updateStock(e.getKey().id, e.getKey().stock - e.getValue(), e.getKey().version + 1);
+            }
+            return new CartResult(billId, total, need.size(), missing, shortages);
+
+        } catch (SQLException | RuntimeException ex) {
+            try { conn.rollback(); } catch (SQLException ignored) {}
+            throw ex;
+        } finally {
+            try { conn.setAutoCommit(autoCommit); } catch (SQLException ignored) {}
+        }
+    }
+
+    // Single sale checked against the catalog cache's last known stock and journaled
+    private SaleResult sellOffline(int medicineId, String name, int qty) throws SQLException {
+        if (qty <= 0) throw new IllegalArgumentException("Quantity must be positive: " + qty);
+        CatalogCache cache = CatalogCache.get();
+        SaleJournal journal = openJournal();
+        if (!cache.isLoaded() || journal == null) return null;
+
+        synchronized (journal) {
+            Medicine m = medicineId > 0 ? cache.peekById(medicineId) : cache.peekByName(name);
+            if (m == null) return SaleResult.notFound(name, qty);
+            if (m.getStock() < qty) {
+                return new SaleResult(SaleResult.Status.INSUFFICIENT_STOCK, m.getName(), m.getId(), qty, m.getPrice(), m.getStock());
+            }
+            SaleJournal.Entry entry = append(journal, Collections.singletonList(new CartLine(m.getId(), m.getName(), qty)),
+                    new double[]{m.getPrice()});
+            cache.updateStock(m.getId(), m.getStock() - qty);
+            return new SaleResult(SaleResult.Status.OK, m.getName(), m.getId(), qty, m.getPrice(), m.getStock() - qty, entry.getId());
+        }
+    }
+
+    // Cart version of sellOffline: all lines or none, like an online checkout
+    private CartResult checkoutOffline(List<CartLine> cart) throws SQLException {
+        CatalogCache cache = CatalogCache.get();
+        SaleJournal journal = openJournal();
+        if (!cache.isLoaded() || journal == null) return null;
+
+        synchronized (journal) {
+            Map<Integer, Integer> wanted = new LinkedHashMap<>();
+            Map<Integer, Medicine> meds = new HashMap<>();
+            List<String> missing = new ArrayList<>();
+            for (CartLine line : cart) {
+                if (line.getQuantity() <= 0) throw new IllegalArgumentException("Quantity must be positive: " + line.getQuantity());
+                Medicine m = line.getMedicineId() > 0 ? cache.peekById(line.getMedicineId()) : cache.peekByName(line.getMedicineName());
+                if (m == null) {
+                    missing.add(line.getMedicineName());
+                    continue;
+                }
+                wanted.merge(m.getId(), line.getQuantity(), Integer::sum);
+                meds.put(m.getId(), m);
+            }
+            if (wanted.isEmpty() && missing.isEmpty()) throw new IllegalArgumentException("Cart is empty.");
+
+            Map<String, Integer> shortages = new LinkedHashMap<>();
+            List<CartLine> lines = new ArrayList<>();
+            double[] prices = new double[wanted.size()];
+            double total = 0.0;
+            for (Map.Entry<Integer, Integer> e : wanted.entrySet()) {
+                Medicine m = meds.get(e.getKey());
+                if (m.getStock() < e.getValue()) shortages.put(m.getName(), m.getStock());
+                prices[lines.size()] = m.getPrice();
+                lines.add(new CartLine(m.getId(), m.getName(), e.getValue()));
+                total += m.getPrice() * e.getValue();
+            }
+            if (!missing.isEmpty() || !shortages.isEmpty()) {
+                return new CartResult(0L, 0.0, wanted.size() + missing.size(), missing, shortages);
+            }
+
+            SaleJournal.Entry entry = append(journal, lines, prices);
+            for (CartLine line : lines) {
+                Medicine m = meds.get(line.getMedicineId());
+                cache.updateStock(m.getId(), m.getStock() - line.getQuantity());
+            }
+            return new CartResult(0L, total, lines.size(), missing, shortages, entry.getId());
+        }
+    }
+
+    private static SaleJournal openJournal() {
+        try {
+            return SaleJournal.get();
+        } catch (IOException ex) {
+            System.err.println("Offline journal unavailable: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    // The sale only counts once it is on disk
+    private static SaleJournal.Entry append(SaleJournal journal, List<CartLine> lines, double[] prices) throws SQLException {
+        try {
+            return journal.append(lines, prices);
+        } catch (IOException ex) {
+            throw new SQLException("Database unreachable and the offline journal could not be written: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Replays every pending journal entry, REPLAY_BATCH entries per transaction, settling the
+     * journal after each commit. Also clears the offline state once the database answers.
+     *
+     * @throws SQLException if the database (or store server) is still unreachable; batches
+     *                      committed before the failure stay settled
+     */
+    public ReplayReport replayJournal() throws SQLException {
+        SaleJournal journal = openJournal();
+        List<SaleJournal.Entry> pending = journal != null ? journal.pending() : Collections.<SaleJournal.Entry>emptyList();
+        if (pending.isEmpty()) {
+            probe();
+            offlineUntil = 0L;
+            return new ReplayReport(0, 0, new ArrayList<String>());
+        }
+
+        int applied = 0;
+        int already = 0;
+        List<String> conflicts = new ArrayList<>();
+        for (int from = 0; from < pending.size(); from += REPLAY_BATCH) {
+            List<SaleJournal.Entry> batch = pending.subList(from, Math.min(pending.size(), from + REPLAY_BATCH));
+            ReplayReport r = replay(batch);
+            journal.settle(batch.get(batch.size() - 1).getEnd());
+            offlineUntil = 0L;
+            applied += r.getApplied();
+            already += r.getAlreadyApplied();
+            conflicts.addAll(r.getConflicts());
+        }
+        return new ReplayReport(applied, already, conflicts);
+    }
+
+    // Cheap reachability check for replayJournal when there is nothing to replay
+    private static void probe() throws SQLException {
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            remote.get("/api/health");
+            return;
+        }
+        DBConnection.openConnection().close(); // borrowing validates the connection
+    }
+
+    /**
+     * Writes journaled offline sales into the database in one transaction (retried on deadlock).
+     * Entries already present in offline_sales are skipped, so a replay can safely be repeated.
+     */
+    public ReplayReport replay(List<SaleJournal.Entry> entries) throws SQLException {
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            List<Object> list = new ArrayList<>(entries.size());
+            for (SaleJournal.Entry e : entries) {
+                list.add(RemoteClient.toJson(e));
+            }
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("entries", list);
+            return RemoteClient.replayReport(remote.post("/api/journal", body));
+        }
+        return withRetry(conn -> replay(conn, entries), null);
+    }
+
+    /**
+     * Replays entries on the given connection in a single transaction. All rows the batch
+     * touches are priced and locked with one lookup; each entry is then applied in full at
+     * the price charged offline and with its original sale time, or, when a medicine is
+     * unknown or no longer has enough stock, recorded as a CONFLICT without touching stock.
+     */
+    public ReplayReport replay(Connection conn, List<SaleJournal.Entry> entries) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            Set<String> done = replayedIds(conn, entries);
+            Set<String> keys = new HashSet<>();
+            for (SaleJournal.Entry e : entries) {
+                if (done.contains(e.getId())) continue;
+                for (CartLine line : e.getLines()) {
+                    keys.add(line.getMedicineId() > 0 ? "#" + line.getMedicineId() : key(line.getMedicineName()));
+                }
+            }
+            Map<String, PricedRow> rows = keys.isEmpty() ? new HashMap<String, PricedRow>() : lockAndPrice(conn, keys);
+            Map<Integer, Integer> stockLeft = stockById(rows.values());
+            BatchBook.Allocation batches = BatchBook.get().begin(conn);
+            batches.prepare(stockLeft, versionById(rows.values()));
+
+            int applied = 0;
+            // One decrement per medicine for the whole batch, so each bumps stock_version once
+            Map<Integer, Integer> decrements = new LinkedHashMap<>();
+            List<String> conflicts = new ArrayList<>();
+            List<PricedRow> touched = new ArrayList<>();
+            try (PreparedStatement pstUpdate = conn.prepareStatement(DECREMENT_BY_ID_SQL);
+                 PreparedStatement pstHeader = conn.prepareStatement(INSERT_REPLAYED_HEADER_SQL, Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement pstLine = conn.prepareStatement(INSERT_LINE_SQL);
+                 PreparedStatement pstMarker = conn.prepareStatement(INSERT_OFFLINE_SQL);
+                 RollupWriter rollups = new RollupWriter(conn, true);
+                 LedgerWriter ledger = new LedgerWriter(conn)) {
+
+                for (SaleJournal.Entry e : entries) {
+                    if (done.contains(e.getId())) continue;
+                    Timestamp soldAt = new Timestamp(e.getSoldAt());
+                    // Batches are judged by the day the sale was made, not the day it is replayed
+                    LocalDate soldOn = soldAt.toLocalDateTime().toLocalDate();
+
+                    // Check every line against the stock left after earlier entries in this batch
+                    Map<Integer, Integer> need = new HashMap<>();
+                    StringBuilder problem = new StringBuilder();
+                    List<PricedRow> lineRows = new ArrayList<>();
+                    for (CartLine line : e.getLines()) {
+                        PricedRow row = rows.get(line.getMedicineId() > 0 ? "#" + line.getMedicineId() : key(line.getMedicineName()));
+                        lineRows.add(row);
+                        if (row == null) {
+                            problem.append(problem.length() == 0 ? "" : "; ").append("unknown medicine ").append(line.getMedicineName());
+                        } else {
+                            need.merge(row.id, line.getQuantity(), Integer::sum);
+                        }
+                    }
+                    for (Map.Entry<Integer, Integer> n : need.entrySet()) {
+                        int left = batches.sellable(n.getKey(), soldOn);
+                        if (left < n.getValue()) {
+                            problem.append(problem.length() == 0 ? "" : "; ").append(rows.get("#" + n.getKey()).name)
+                                    .append(": sold ").append(n.getValue()).append(" offline, ").append(left).append(" sellable");
+                        }
+                    }
+
+                    if (problem.length() > 0) {
+                        String detail = problem.length() > 500 ? problem.substring(0, 497) + "..." : problem.toString();
+                        bindMarker(pstMarker, e, soldAt, "CONFLICT", null, detail);
+                        conflicts.add(String.format("%s sale of %.2f at %s: %s", e.getTerminal(), e.getTotal(), soldAt, detail));
+                        continue;
+                    }
+
+                    for (Map.Entry<Integer, Integer> n : need.entrySet()) {
+                        batches.take(n.getKey(), n.getValue(), soldOn);
+                        stockLeft.put(n.getKey(), stockLeft.get(n.getKey()) - n.getValue());
+                        decrements.merge(n.getKey(), n.getValue(), Integer::sum);
+                    }
+
+                    long billId;
+                    pstHeader.setDouble(1, e.getTotal());
+                    pstHeader.setInt(2, e.getLines().size());
+                    pstHeader.setTimestamp(3, soldAt);
+                    pstHeader.executeUpdate();
+                    try (ResultSet keysRs = pstHeader.getGeneratedKeys()) {
+                        if (!keysRs.next()) throw new SQLException("No bill id generated.");
+                        billId = keysRs.getLong(1);
+                    }
+                    // Recorded under the terminal that made the sale; the ledger's own time is when stock moved
+                    for (Map.Entry<Integer, Integer> n : need.entrySet()) {
+                        ledger.add(n.getKey(), null, -n.getValue(), StockLedger.Reason.SALE, "bill_headers/" + billId, e.getTerminal());
+                    }
+
+                    for (int i = 0; i < e.getLines().size(); i++) {
+                        CartLine line = e.getLines().get(i);
+                        PricedRow row = lineRows.get(i);
+                        double lineTotal = e.getPrice(i) * line.getQuantity();
+                        pstLine.setLong(1, billId);
+                        pstLine.setInt(2, row.id);
+                        pstLine.setString(3, row.name);
+                        pstLine.setInt(4, line.getQuantity());
+                        pstLine.setDouble(5, e.getPrice(i));
+                        pstLine.setDouble(6, lineTotal);
+                        pstLine.addBatch();
+                        rollups.add(soldAt, row.id, row.name, line.getQuantity(), lineTotal);
+                        touched.add(row);
+                    }
+                    bindMarker(pstMarker, e, soldAt, "APPLIED", billId, null);
+                    applied++;
+                }
+
+                if (applied > 0) {
+                    for (Map.Entry<Integer, Integer> d : decrements.entrySet()) {
+                        pstUpdate.setInt(1, d.getValue());
+                        pstUpdate.setInt(2, d.getKey());
+                        pstUpdate.setInt(3, d.getValue());
+                        pstUpdate.addBatch();
+                    }
+                    pstUpdate.executeBatch();
+                    pstLine.executeBatch();
+                    rollups.flush();
+                    ledger.flush();
+                    batches.flush();
+                }
+                if (applied > 0 || !conflicts.isEmpty()) pstMarker.executeBatch();
+            }
+
+            conn.commit();
+            batches.committed();
+            for (PricedRow row : touched) {
+                CatalogCache.get().updateStock(row.id, stockLeft.get(row.id), row.version + 1);
+            }
+            return new ReplayReport(applied, done.size(), conflicts);
+
+        } catch (SQLException | RuntimeException ex) {
+            try { conn.rollback(); } catch (SQLException ignored) {}
+            throw ex;
+        } finally {
+            try { conn.setAutoCommit(autoCommit); } catch (SQLException ignored) {}
+        }
+    }
+
+    /**
+     * Group commit (see GroupCommit): applies sales and carts from many callers in one
+     * transaction on the given connection. Every medicine of the group is priced and
+     * locked with one lookup; each request is then checked in arrival order against the
+     * stock the earlier ones left, and refused on its own (NOT_FOUND, INSUFFICIENT_STOCK,
+     * missing or short cart lines) without touching stock. Accepted sales share one
+     * guarded decrement per medicine and batched bill, rollup and ledger inserts.
+     *
+     * @return one SaleResult (single sales) or CartResult (carts) per request, in order
+     * @throws SQLException if the transaction fails before COMMIT (nothing of the group is
+     *         written then), or with SQLState COMMIT_UNKNOWN if COMMIT was sent and failed or
+     *         anything after it did (the group may have been written)
+     */
+    List<Object> applyGroup(Connection conn, List<GroupCommit.Request> requests) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        boolean commitSent = false;
+        try {
+            Set<String> keys = new HashSet<>();
+            for (GroupCommit.Request r : requests) {
+                for (CartLine line : r.lines) {
+                    keys.add(line.getMedicineId() > 0 ? "#" + line.getMedicineId() : key(line.getMedicineName()));
+                }
+            }
+            Map<String, PricedRow> rows = lockAndPrice(conn, keys);
+            Map<Integer, Integer> stockLeft = stockById(rows.values());
+            LocalDate today = LocalDate.now();
+            BatchBook.Allocation batches = BatchBook.get().begin(conn);
+            batches.prepare(stockLeft, versionById(rows.values()));
+
+            List<Object> results = new ArrayList<>(requests.size());
+            Map<Integer, Integer> decrements = new LinkedHashMap<>();
+            List<Integer> accepted = new ArrayList<>();
+            List<Map<PricedRow, Integer>> acceptedLines = new ArrayList<>();
+            for (GroupCommit.Request r : requests) {
+                // Lines per medicine, first-seen order
+                Map<PricedRow, Integer> need = new LinkedHashMap<>();
+                List<String> missing = new ArrayList<>();
+                for (CartLine line : r.lines) {
+                    PricedRow row = rows.get(line.getMedicineId() > 0 ? "#" + line.getMedicineId() : key(line.getMedicineName()));
+                    if (row == null) missing.add(line.getMedicineName());
+                    else need.merge(row, line.getQuantity(), Integer::sum);
+                }
+                Map<String, Integer> shortages = new LinkedHashMap<>();
+                for (Map.Entry<PricedRow, Integer> n : need.entrySet()) {
+                    int sellable = batches.sellable(n.getKey().id, today);
+                    if (sellable < n.getValue()) shortages.put(n.getKey().name, sellable);
+                }
+
+                if (r.single) {
+                    CartLine line = r.lines.get(0);
+                    if (!missing.isEmpty()) {
+                        results.add(SaleResult.notFound(line.getMedicineName(), line.getQuantity()));
+                        continue;
+                    }
+                    PricedRow row = need.keySet().iterator().next();
+                    if (!shortages.isEmpty()) {
+                        results.add(new SaleResult(SaleResult.Status.INSUFFICIENT_STOCK, row.name, row.id, line.getQuantity(),
+                                row.price, shortages.get(row.name)));
+                        continue;
+                    }
+                } else if (!missing.isEmpty() || !shortages.isEmpty()) {
+                    results.add(new CartResult(0L, 0.0, need.size() + missing.size(), missing, shortages));
+                    continue;
+                }
+
+                for (Map.Entry<PricedRow, Integer> n : need.entrySet()) {
+                    int id = n.getKey().id;
+                    batches.take(id, n.getValue(), today);
+                    stockLeft.put(id, stockLeft.get(id) - n.getValue());
+                    decrements.merge(id, n.getValue(), Integer::sum);
+                }
+                accepted.add(results.size());
+                acceptedLines.add(need);
+                results.add(null); // filled in once the bill id is known
+            }
+
+            long[] billIds = new long[0];
+            if (!accepted.isEmpty()) {
+                try (PreparedStatement pstUpdate = conn.prepareStatement(DECREMENT_BY_ID_SQL)) {
+                    for (Map.Entry<Integer, Integer> d : decrements.entrySet()) {
+                        pstUpdate.setInt(1, d.getValue());
+                        pstUpdate.setInt(2, d.getKey());
+                        pstUpdate.setInt(3, d.getValue());
+                        pstUpdate.addBatch();
+                    }
+                    for (int c : pstUpdate.executeBatch()) {
+                        // rows are locked above, so this only trips if the schema or data changed underneath us
+                        if (c == 0) throw new SQLException("Stock changed during group commit; no changes were made.");
+                    }
+                }
+
+                billIds = insertGroupBills(conn, requests, accepted, acceptedLines);
+
+                try (PreparedStatement pstLine = conn.prepareStatement(INSERT_LINE_SQL);
+                     RollupWriter rollups = new RollupWriter(conn);
+                     LedgerWriter ledger = new LedgerWriter(conn)) {
+                    boolean anyLines = false;
+                    for (int a = 0; a < accepted.size(); a++) {
+                        GroupCommit.Request r = requests.get(accepted.get(a));
+                        String ref = (r.single ? "bills/" : "bill_headers/") + billIds[a];
+                        for (Map.Entry<PricedRow, Integer> n : acceptedLines.get(a).entrySet()) {
+                            PricedRow row = n.getKey();
+                            int qty = n.getValue();
+                            if (!r.single) {
+                                pstLine.setLong(1, billIds[a]);
+                                pstLine.setInt(2, row.id);
+                                pstLine.setString(3, row.name);
+                                pstLine.setInt(4, qty);
+                                pstLine.setDouble(5, row.price);
+                                pstLine.setDouble(6, row.price * qty);
+                                pstLine.addBatch();
+                                anyLines = true;
+                            }
+                            rollups.add(row.id, row.name, qty, row.price * qty);
+                            ledger.add(row.id, null, -qty, StockLedger.Reason.SALE, ref);
+                        }
+                    }
+                    if (anyLines) pstLine.executeBatch();
+                    rollups.flush();
+                    ledger.flush();
+                }
+                batches.flush();
+            }
+
+            commitSent = true;
+            conn.commit();
+            batches.committed();
+
+            // Remaining stock as each sale left it, in arrival order
+            Map<Integer, Integer> running = stockById(rows.values());
+            for (int a = 0; a < accepted.size(); a++) {
+                GroupCommit.Request r = requests.get(accepted.get(a));
+                double total = 0.0;
+                for (Map.Entry<PricedRow, Integer> n : acceptedLines.get(a).entrySet()) {
+                    running.merge(n.getKey().id, -n.getValue(), Integer::sum);
+                    total += n.getKey().price * n.getValue();
+                }
+                if (r.single) {
+                    PricedRow row = acceptedLines.get(a).keySet().iterator().next();
+                    // Only the medicine's last sale in the group left the stock that was committed at version + 1
+                    int left = running.get(row.id);
+                    long version = left == stockLeft.get(row.id) ? row.version + 1 : Medicine.UNKNOWN_VERSION;
+                    results.set(accepted.get(a), new SaleResult(SaleResult.Status.OK, row.name, row.id,
+                            r.lines.get(0).getQuantity(), row.price, left, null, version));
+                } else {
+                    results.set(accepted.get(a), new CartResult(billIds[a], total, acceptedLines.get(a).size(),
+                            new ArrayList<String>(), new LinkedHashMap<String, Integer>()));
+                }
+            }
+            for (Map.Entry<Integer, Integer> left : stockLeft.entrySet()) {
+                if (decrements.containsKey(left.getKey())) {
+                    CatalogCache.get().updateStock(left.getKey(), left.getValue(), rows.get("#" + left.getKey()).version + 1);
+                }
+            }
+            return results;
+
+        } catch (SQLException | RuntimeException ex) {
+            // Once COMMIT is on the wire the group may be durable; running its sales again could sell twice
+            if (commitSent) {
+                throw new SQLException("Group commit outcome unknown: " + ex.getMessage(), COMMIT_UNKNOWN, ex);
+            }
+            try { conn.rollback(); } catch (SQLException ignored) {}
+            throw ex;
+        } finally {
+            try { conn.setAutoCommit(autoCommit); } catch (SQLException ignored) {}
+        }
+    }
+
+    // Bill rows for the accepted requests of a group: `bills` for single sales, `bill_headers` for carts; returns their ids
+    private static long[] insertGroupBills(Connection conn, List<GroupCommit.Request> requests, List<Integer> accepted,
+                                           List<Map<PricedRow, Integer>> acceptedLines) throws SQLException {
+        long[] ids = new long[accepted.size()];
+        try (PreparedStatement pstBill = conn.prepareStatement(INSERT_BILL_SQL, Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement pstHeader = conn.prepareStatement(INSERT_HEADER_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            List<Integer> singles = new ArrayList<>();
+            List<Integer> carts = new ArrayList<>();
+            for (int a = 0; a < accepted.size(); a++) {
+                Map<PricedRow, Integer> lines = acceptedLines.get(a);
+                if (requests.get(accepted.get(a)).single) {
+                    PricedRow row = lines.keySet().iterator().next();
+                    int qty = lines.get(row);
+                    pstBill.setString(1, row.name);
+                    pstBill.setInt(2, qty);
+                    pstBill.setDouble(3, row.price * qty);
+                    pstBill.addBatch();
+                    singles.add(a);
+                } else {
+                    double total = 0.0;
+                    for (Map.Entry<PricedRow, Integer> n : lines.entrySet()) {
+                        total += n.getKey().price * n.getValue();
+                    }
+                    pstHeader.setDouble(1, total);
+                    pstHeader.setInt(2, lines.size());
+                    pstHeader.addBatch();
+                    carts.add(a);
+                }
+            }
+            if (!singles.isEmpty()) readBatchKeys(pstBill, singles, ids);
+            if (!carts.isEmpty()) readBatchKeys(pstHeader, carts, ids);
+        }
+        return ids;
+    }
+
+    private static void readBatchKeys(PreparedStatement pst, List<Integer> slots, long[] ids) throws SQLException {
+        pst.executeBatch();
+        try (ResultSet keys = pst.getGeneratedKeys()) {
+            for (Integer slot : slots) {
+                if (!keys.next()) throw new SQLException("No bill id generated.");
+                ids[slot] = keys.getLong(1);
+            }
+        }
+    }
+
+    // Journal ids of these entries that an earlier replay already wrote
+    private static Set<String> replayedIds(Connection conn, List<SaleJournal.Entry> entries) throws SQLException {
+        Set<String> done = new HashSet<>();
+        if (entries.isEmpty()) return done;
+        String sql = "SELECT journal_id FROM offline_sales WHERE journal_id IN (" + placeholders(entries.size()) + ")";
+        try (PreparedStatement pst = conn.prepareStatement(sql)) {
+            for (int i = 0; i < entries.size(); i++) {
+                pst.setString(i + 1, entries.get(i).getId());
+            }
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    done.add(rs.getString(1));
+                }
+            }
+        }
+        return done;
+    }
+
+    private static void bindMarker(PreparedStatement pst, SaleJournal.Entry e, Timestamp soldAt, String status,
+                                   Long billId, String detail) throws SQLException {
+        pst.setString(1, e.getId());
+        pst.setString(2, e.getTerminal());
+        pst.setTimestamp(3, soldAt);
+        pst.setString(4, status);
+        if (billId != null) pst.setLong(5, billId); else pst.setNull(5, java.sql.Types.BIGINT);
+        pst.setDouble(6, e.getTotal());
+        pst.setString(7, detail);
+        pst.addBatch();
+    }
+
+    // Row locked by the cart lookup
+    private static final class PricedRow {
+        final int id;
+        final String name;
+        final double price;
+        final int stock;
+        final long version;
+
+        PricedRow(int id, String name, double price, int stock, long version) {
+            this.id = id;
+            this.name = name;
+            this.price = price;
+            this.stock = stock;
+            this.version = version;
+        }
+    }
+
+    // Locked stock per medicine id (rows are keyed by both id and name)
+    private static Map<Integer, Integer> stockById(Collection<PricedRow> rows) {
+        Map<Integer, Integer> out = new HashMap<>();
+        for (PricedRow row : rows) {
+            out.put(row.id, row.stock);
+        }
+        return out;
+    }
+
+    // Locked stock_version per medicine id, for BatchBook
+    private static Map<Integer, Long> versionById(Collection<PricedRow> rows) {
+        Map<Integer, Long> out = new HashMap<>();
+        for (PricedRow row : rows) {
+            out.put(row.id, row.version);
+        }
+        return out;
+    }
+
+    // MySQL compares names case-insensitively, so match result rows the same way
+    private static String key(String name) {
+        return name.toLowerCase(java.util.Locale.ROOT);
+    }
+
+    // SELECT ... WHERE id IN (...) OR name IN (...) FOR UPDATE; returns "#id" and lower-cased name -> row
+    private Map<String, PricedRow> lockAndPrice(Connection conn, Collection<String> keys) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (String k : keys) {
+            if (k.startsWith("#")) ids.add(Integer.parseInt(k.substring(1)));
+            else names.add(k);
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT id, name, price, stock, stock_version FROM medicine WHERE ");
+        if (!ids.isEmpty()) sql.append("id IN (").append(placeholders(ids.size())).append(")");
+        if (!ids.isEmpty() && !names.isEmpty()) sql.append(" OR ");
+        if (!names.isEmpty()) sql.append("name IN (").append(placeholders(names.size())).append(")");
+        sql.append(" FOR UPDATE");
+
+        Map<String, PricedRow> rows = new HashMap<>();
+        try (PreparedStatement pst = conn.prepareStatement(sql.toString())) {
+            int i = 1;
+            for (Integer id : ids) {
+                pst.setInt(i++, id);
+            }
+            for (String name : names) {
+                pst.setString(i++, name);
+            }
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString("name");
+                    PricedRow row = new PricedRow(rs.getInt("id"), name, rs.getDouble("price"), rs.getInt("stock"),
+                            rs.getLong("stock_version"));
+                    rows.put("#" + row.id, row);
+                    rows.put(key(name), row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    static String placeholders(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+}
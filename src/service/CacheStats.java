@@ -0,0 +1,47 @@
+package service;
+
+/**
+ * CacheStats
+ *
+ * Immutable snapshot of catalog cache counters: hit ratio and how old the data is.
+ */
+public class CacheStats {
+
+    private final int size;
+    private final long hits;
+    private final long misses;
+    private final long fullLoadAgeMillis;
+    private final long refreshAgeMillis;
+
+    CacheStats(int size, long hits, long misses, long fullLoadAgeMillis, long refreshAgeMillis) {
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.fullLoadAgeMillis = fullLoadAgeMillis;
+        this.refreshAgeMillis = refreshAgeMillis;
+    }
+
+    public int getSize() { return size; }
+
+    public long getHits() { return hits; }
+
+    public long getMisses() { return misses; }
+
+    public double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    // Milliseconds since the last full load, or -1 if never loaded
+    public long getFullLoadAgeMillis() { return fullLoadAgeMillis; }
+
+    // Milliseconds since the last refresh of any kind, or -1 if never loaded
+    public long getRefreshAgeMillis() { return refreshAgeMillis; }
+
+    @Override
+    public String toString() {
+        if (fullLoadAgeMillis < 0) return "Catalog cache: not loaded";
+        return String.format("Catalog cache: %d items, hit ratio %.1f%%, synced %ds ago",
+                size, getHitRatio() * 100.0, refreshAgeMillis / 1000);
+    }
+}
@@ -0,0 +1,31 @@
+package service;
+
+/**
+ * CartLine
+ *
+ * One requested line of a cart sale: a medicine (by id when known, otherwise
+ * by name) and the quantity wanted.
+ */
+public class CartLine {
+
+    private final int medicineId;
+    private final String medicineName;
+    private final int quantity;
+
+    public CartLine(String medicineName, int quantity) {
+        this(0, medicineName, quantity);
+    }
+
+    public CartLine(int medicineId, String medicineName, int quantity) {
+        this.medicineId = medicineId;
+        this.medicineName = medicineName;
+        this.quantity = quantity;
+    }
+
+    // Primary key of the medicine, or 0 when the line is identified by name only
+    public int getMedicineId() { return medicineId; }
+
+    public String getMedicineName() { return medicineName; }
+
+    public int getQuantity() { return quantity; }
+}
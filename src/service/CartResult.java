@@ -0,0 +1,57 @@
+package service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CartResult
+ *
+ * Outcome of a cart checkout. On success carries the new bill id and total;
+ * otherwise lists the unknown medicines and the lines that are short on stock
+ * (name to available quantity). A failed checkout changes nothing.
+ * An offline checkout has no bill id yet; it carries its SaleJournal entry id instead.
+ */
+public class CartResult {
+
+    private final long billId;
+    private final double total;
+    private final int lineCount;
+    private final List<String> missing;
+    private final Map<String, Integer> shortages;
+    private final String journalId;
+
+    CartResult(long billId, double total, int lineCount, List<String> missing, Map<String, Integer> shortages) {
+        this(billId, total, lineCount, missing, shortages, null);
+    }
+
+    CartResult(long billId, double total, int lineCount, List<String> missing, Map<String, Integer> shortages,
+               String journalId) {
+        this.billId = billId;
+        this.total = total;
+        this.lineCount = lineCount;
+        this.missing = Collections.unmodifiableList(missing);
+        this.shortages = Collections.unmodifiableMap(shortages);
+        this.journalId = journalId;
+    }
+
+    public boolean isOk() {
+        return missing.isEmpty() && shortages.isEmpty();
+    }
+
+    // bill_headers.id of the committed bill, or 0 when the checkout failed
+    public long getBillId() { return billId; }
+
+    public double getTotal() { return total; }
+
+    public int getLineCount() { return lineCount; }
+
+    public List<String> getMissing() { return missing; }
+
+    public Map<String, Integer> getShortages() { return shortages; }
+
+    // True when the cart was journaled offline and still has to be replayed into the database
+    public boolean isOffline() { return journalId != null; }
+
+    public String getJournalId() { return journalId; }
+}
@@ -0,0 +1,318 @@
+package service;
+
+import metrics.Metrics;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CatalogCache
+ *
+ * Process-wide in-memory copy of the `medicine` table, keyed by id and by
+ * normalized name (trimmed, lower-case, single spaces).
+ *
+ * The catalog is loaded once after login and then kept fresh by:
+ * - incremental refreshes that pick up rows other terminals added or changed since the
+ *   last sync (CatalogService.changesSince, driven by medicine.updated_at),
+ * - a periodic full reload that also drops rows deleted by hand,
+ * - local invalidation from StockService and write-through from sales.
+ *
+ * Name and company are also held in a TrigramIndex for substring search, and
+ * names in a FuzzyIndex for typo-tolerant autocomplete.
+ *
+ * Stock figures here are for display and offline sales only; the guarded UPDATEs in
+ * BillingService remain the authority on whether a sale can go through.
+ *
+ * Every write to the maps holds this cache's monitor and compares the row's
+ * stock_version (see Medicine): a snapshot older than the cached one, such as a refresh
+ * that read the row before a sale committed, or the second of two sales written through
+ * out of order, is ignored. Loads and refreshes query the database under a separate
+ * lock, so write-through after a sale never waits on a reload.
+ */
+public class CatalogCache {
+
+    private static final long REFRESH_INTERVAL_MS = 30_000L;
+    private static final long FULL_RELOAD_INTERVAL_MS = 10 * 60_000L;
+
+    private static final CatalogCache INSTANCE = new CatalogCache();
+
+    private final CatalogService source = new CatalogService();
+    private final ConcurrentHashMap<Integer, Medicine> byId = new ConcurrentHashMap<>();
+    // sorted, so autocomplete can read name prefixes as a range
+    private final ConcurrentSkipListMap<String, Medicine> byName = new ConcurrentSkipListMap<>();
+    private final TrigramIndex searchIndex = new TrigramIndex();
+    private volatile FuzzyIndex fuzzyIndex = new FuzzyIndex();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile boolean loaded;
+    private volatile long syncedAt;
+    private volatile long lastFullLoad;
+    private volatile long lastRefresh;
+    private ScheduledExecutorService refresher;
+    // Held while loading or refreshing from the database, so two never run at once
+    private final Object loading = new Object();
+
+    private CatalogCache() {
+    }
+
+    public static CatalogCache get() {
+        return INSTANCE;
+    }
+
+    public static String normalize(String name) {
+        if (name == null) return "";
+        return name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Replace the cache contents with the whole medicine table
+    public void loadAll() throws SQLException {
+        synchronized (loading) {
+            long synced = source.syncPoint("").getSyncedAt();
+            List<Medicine> rows = source.rowsAfter(0);
+            replaceAll(rows, synced);
+        }
+    }
+
+    // Overwrite in place, then drop rows deleted since, so readers never see an empty cache
+    private synchronized void replaceAll(List<Medicine> rows, long synced) {
+        Set<Integer> ids = new HashSet<>();
+        Set<String> names = new HashSet<>();
+        FuzzyIndex fuzzy = new FuzzyIndex();
+        for (Medicine m : rows) {
+            Medicine kept = isStale(m) ? byId.get(m.getId()) : m;
+            if (kept == m) store(m, false);
+            fuzzy.add(kept.getId(), normalize(kept.getName()));
+            ids.add(kept.getId());
+            names.add(normalize(kept.getName()));
+        }
+        for (Integer id : new ArrayList<>(byId.keySet())) {
+            if (!ids.contains(id)) {
+                byId.remove(id);
+                searchIndex.remove(id);
+            }
+        }
+        byName.keySet().retainAll(names);
+        fuzzyIndex = fuzzy; // fresh tree also drops tombstones
+        syncedAt = synced;
+        long now = System.currentTimeMillis();
+        lastFullLoad = now;
+        lastRefresh = now;
+        loaded = true;
+    }
+
+    // Load unless already loaded; a caller arriving during a load waits for it instead of loading twice
+    public void loadIfNeeded() throws SQLException {
+        synchronized (loading) {
+            if (!loaded) loadAll();
+        }
+    }
+
+    // Full reload after bulk changes (e.g. a CSV import); no-op before the first load
+    public void reloadIfLoaded() throws SQLException {
+        synchronized (loading) {
+            if (loaded) loadAll();
+        }
+    }
+
+    // Pick up rows inserted or updated since the last sync; falls back to a full load when due
+    public void refresh() throws SQLException {
+        synchronized (loading) {
+            if (!loaded || System.currentTimeMillis() - lastFullLoad >= FULL_RELOAD_INTERVAL_MS) {
+                loadAll();
+                return;
+            }
+            CatalogChanges changes = source.changesSince(syncedAt);
+            if (!changes.isComplete()) {
+                loadAll();
+                return;
+            }
+            synchronized (this) {
+                apply(changes);
+                syncedAt = changes.getSyncedAt();
+                lastRefresh = System.currentTimeMillis();
+            }
+        }
+    }
+
+    // Take in changes another reader fetched (e.g. Show Stocks' refresh); the cache's own sync point stays
+    public synchronized void apply(CatalogChanges changes) {
+        if (!loaded) return;
+        for (Medicine m : changes.getRows()) {
+            put(m);
+        }
+    }
+
+    // Database clock of the last sync; everything changed before it is in the cache
+    public long getSyncedAt() {
+        return syncedAt;
+    }
+
+    // Refresh in the background every 30 seconds (idempotent)
+    public synchronized void startAutoRefresh() {
+        if (refresher != null) return;
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (SQLException e) {
+                Metrics.increment("catalog.errors");
+                System.err.println("Catalog refresh failed: " + e.getMessage());
+            }
+        }, REFRESH_INTERVAL_MS, REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Looks a medicine up by name, reading through to the database on a miss.
+     *
+     * @return the medicine, or null if it does not exist
+     */
+    public Medicine lookup(String name) throws SQLException {
+        Medicine m = byName.get(normalize(name));
+        if (m != null) {
+            hits.incrementAndGet();
+            return m;
+        }
+        misses.incrementAndGet();
+        m = source.findByName(name);
+        if (m == null) return null;
+        put(m);
+        return m;
+    }
+
+    // Cache-only lookups for previews (no database access, not counted in the hit ratio); null when not cached
+    public Medicine peekByName(String name) {
+        return byName.get(normalize(name));
+    }
+
+    public Medicine peekById(int id) {
+        return byId.get(id);
+    }
+
+    public Collection<Medicine> all() {
+        return new ArrayList<>(byId.values());
+    }
+
+    // Store a row read from (or written to) the database, unless the cache already holds a newer one
+    public synchronized void put(Medicine m) {
+        if (isStale(m)) return;
+        Medicine old = byId.get(m.getId());
+        if (old != null && !normalize(old.getName()).equals(normalize(m.getName()))) {
+            byName.remove(normalize(old.getName()), old);
+        }
+        store(m, true);
+    }
+
+    // Write-through after a committed sale or stock change: the new stock and the stock_version it committed
+    public synchronized void updateStock(int id, int stock, long version) {
+        Medicine m = byId.get(id);
+        if (m != null) put(m.withStock(stock, version));
+    }
+
+    // Write-through whose version is not known (offline sales); keeps the cached version
+    public synchronized void updateStock(int id, int stock) {
+        Medicine m = byId.get(id);
+        if (m != null) put(m.withStock(stock));
+    }
+
+    // Drop a medicine after a local write; the next lookup reads it back from the database
+    public synchronized void invalidate(String name) {
+        Medicine m = byName.remove(normalize(name));
+        if (m != null && byId.remove(m.getId(), m)) {
+            searchIndex.remove(m.getId());
+            fuzzyIndex.remove(m.getId());
+        }
+    }
+
+    /**
+     * Autocomplete suggestions for a partly typed or misspelled name, best first:
+     * name prefix matches, then substring matches (name or company), then names
+     * within two edits (one for short input). Memory only.
+     */
+    public List<Medicine> suggest(String query, int limit) {
+        String q = normalize(query);
+        List<Medicine> out = new ArrayList<>();
+        if (q.isEmpty() || limit <= 0) return out;
+        Set<Integer> seen = new HashSet<>();
+
+        for (Medicine m : byName.subMap(q, true, q + Character.MAX_VALUE, true).values()) {
+            if (out.size() >= limit) return out;
+            if (seen.add(m.getId())) out.add(m);
+        }
+        if (q.length() >= 3) {
+            for (int id : searchIndex.search(q)) {
+                if (out.size() >= limit) return out;
+                Medicine m = byId.get(id);
+                if (m != null && seen.add(id)) out.add(m);
+            }
+        }
+        int maxEdits = q.length() <= 4 ? 1 : 2;
+        for (FuzzyIndex.Match match : fuzzyIndex.search(q, maxEdits, limit)) {
+            if (out.size() >= limit) return out;
+            Medicine m = byId.get(match.getId());
+            if (m != null && seen.add(m.getId())) out.add(m);
+        }
+        return out;
+    }
+
+    /**
+     * Substring search over name and company using the trigram index.
+     * Answers from memory only; results are ordered by id.
+     */
+    public List<Medicine> search(String query) {
+        int[] ids = searchIndex.search(normalize(query));
+        List<Medicine> out = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Medicine m = byId.get(id);
+            if (m != null) out.add(m);
+        }
+        return out;
+    }
+
+    // Ids of the medicines search() would return, in id order
+    public int[] searchIds(String query) {
+        return searchIndex.search(normalize(query));
+    }
+
+    public CacheStats stats() {
+        long now = System.currentTimeMillis();
+        return new CacheStats(byId.size(), hits.get(), misses.get(),
+                loaded ? now - lastFullLoad : -1L, loaded ? now - lastRefresh : -1L);
+    }
+
+    // True when m is an older snapshot of a cached row (unknown versions are always taken)
+    private boolean isStale(Medicine m) {
+        Medicine old = byId.get(m.getId());
+        return old != null && m.getVersion() != Medicine.UNKNOWN_VERSION && old.getVersion() > m.getVersion();
+    }
+
+    private void store(Medicine m, boolean indexFuzzy) {
+        Medicine old = byId.put(m.getId(), m);
+        byName.put(normalize(m.getName()), m);
+        boolean renamed = old == null || !old.getName().equals(m.getName());
+        if (renamed || !String.valueOf(old.getCompany()).equals(String.valueOf(m.getCompany()))) {
+            searchIndex.put(m.getId(), normalize(m.getName()), normalize(m.getCompany()));
+        }
+        if (renamed && indexFuzzy) fuzzyIndex.add(m.getId(), normalize(m.getName()));
+    }
+}
@@ -0,0 +1,44 @@
+package service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * CatalogChanges
+ *
+ * A sync point on the `medicine` table (CatalogService.syncPoint: how many rows match
+ * a filter and the highest id, as of the database clock) or the medicines inserted or
+ * updated since one (CatalogService.changesSince). Either way, getSyncedAt() is what
+ * to pass to the next changesSince call.
+ */
+public class CatalogChanges {
+
+    private final int count;
+    private final int maxId;
+    private final long syncedAt;
+    private final boolean complete;
+    private final List<Medicine> rows;
+
+    public CatalogChanges(int count, int maxId, long syncedAt, boolean complete, List<Medicine> rows) {
+        this.count = count;
+        this.maxId = maxId;
+        this.syncedAt = syncedAt;
+        this.complete = complete;
+        this.rows = Collections.unmodifiableList(rows);
+    }
+
+    // Rows matching the filter at the sync point; -1 for a list of changes
+    public int getCount() { return count; }
+
+    // Highest medicine id at the sync point, or among the changed rows
+    public int getMaxId() { return maxId; }
+
+    // Database clock (epoch millis) the sync point or changes were taken at
+    public long getSyncedAt() { return syncedAt; }
+
+    // False when too many rows changed to list; reload everything instead
+    public boolean isComplete() { return complete; }
+
+    // Changed rows in id order (inserts have ids above the previous maxId); empty for a sync point
+    public List<Medicine> getRows() { return rows; }
+}
@@ -0,0 +1,228 @@
+package service;
+
+import db.DBConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CatalogService
+ *
+ * Read access to the `medicine` table: counts and keyset pages for Show Stocks
+ * (`WHERE id > ? ORDER BY id LIMIT ?`, never OFFSET), single lookups by name and
+ * bulk reads for the catalog cache. Filters match a substring of name or company.
+ * Counts and pages may come from a read replica (DBConnection.openReadConnection);
+ * name lookups, cache reads and sync points / change lists (syncPoint, changesSince)
+ * always go to the primary, which has every sale and stamps updated_at.
+ *
+ * medicine.updated_at (set by MySQL on every insert and update) lets screens and the
+ * catalog cache fetch only what changed since their last sync (changesSince).
+ * Talks to the store server instead of the database in thin-client mode.
+ */
+public class CatalogService {
+
+    // Most rows one call returns; bulk reads page through in chunks this size
+    public static final int MAX_PAGE = 5000;
+
+    private static final String SELECT_COLUMNS = "SELECT id, name, company, price, stock, stock_version FROM medicine";
+    private static final String FILTER_SQL = " (name LIKE ? OR company LIKE ?)";
+    private static final String NOW_SQL = "SELECT NOW(3)";
+    private static final String CHANGES_SQL = SELECT_COLUMNS + " WHERE updated_at >= ? ORDER BY id LIMIT ?";
+    // Changes are re-read for this long so rows committed a while after updated_at was stamped are not missed
+    private static final long CHANGE_OVERLAP_MS = 5_000L;
+
+    // Rows whose name or company contains filter (all rows for an empty filter)
+    public int countRows(String filter) throws SQLException {
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            return RemoteClient.intValue(remote.get("/api/medicines/count", "q", filter).get("count"));
+        }
+
+        boolean filtered = filter != null && !filter.isEmpty();
+        String sql = "SELECT COUNT(*) FROM medicine" + (filtered ? " WHERE" + FILTER_SQL : "");
+        try (Connection conn = DBConnection.openReadConnection();
+             PreparedStatement pst = conn.prepareStatement(sql)) {
+            if (filtered) bindFilter(pst, 1, filter);
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // Keyset page: up to limit rows (at most MAX_PAGE) with id above afterId, in id order
+    public List<Medicine> page(String filter, long afterId, int limit) throws SQLException {
+        limit = Math.max(0, Math.min(limit, MAX_PAGE));
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            return RemoteClient.medicines(remote.get("/api/medicines", "q", filter, "after", afterId, "limit", limit).get("rows"));
+        }
+
+        boolean filtered = filter != null && !filter.isEmpty();
+        String sql = SELECT_COLUMNS + " WHERE id > ?" + (filtered ? " AND" + FILTER_SQL : "") + " ORDER BY id LIMIT ?";
+        List<Medicine> rows = new ArrayList<>(limit);
+        try (Connection conn = DBConnection.openReadConnection();
+             PreparedStatement pst = conn.prepareStatement(sql)) {
+            int i = 1;
+            pst.setLong(i++, afterId);
+            if (filtered) i = bindFilter(pst, i, filter);
+            pst.setInt(i, limit);
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(read(rs));
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Index-only walk over the primary key: the id `count` matching rows after afterId
+    public long skipAhead(String filter, long afterId, int count) throws SQLException {
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            Map<String, Object> json = remote.get("/api/medicines/skip", "q", filter, "after", afterId, "count", count);
+            return RemoteClient.longValue(json.get("id"));
+        }
+
+        boolean filtered = filter != null && !filter.isEmpty();
+        String sql = "SELECT MAX(id) FROM (SELECT id FROM medicine WHERE id > ?"
+                + (filtered ? " AND" + FILTER_SQL : "") + " ORDER BY id LIMIT ?) t";
+        try (Connection conn = DBConnection.openReadConnection();
+             PreparedStatement pst = conn.prepareStatement(sql)) {
+            int i = 1;
+            pst.setLong(i++, afterId);
+            if (filtered) i = bindFilter(pst, i, filter);
+            pst.setInt(i, count);
+            try (ResultSet rs = pst.executeQuery()) {
+                if (rs.next()) {
+                    long id = rs.getLong(1);
+                    if (!rs.wasNull()) return id;
+                }
+                return afterId;
+            }
+        }
+    }
+
+    /**
+     * Rows matching filter and the highest id, read together with the database clock
+     * so that changesSince(getSyncedAt()) picks up everything after this point.
+     */
+    public CatalogChanges syncPoint(String filter) throws SQLException {
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            return RemoteClient.catalogChanges(remote.get("/api/medicines/sync", "q", filter).get("sync"));
+        }
+
+        boolean filtered = filter != null && !filter.isEmpty();
+        String sql = "SELECT COUNT(*), COALESCE(MAX(id), 0), NOW(3) FROM medicine" + (filtered ? " WHERE" + FILTER_SQL : "");
+        try (Connection conn = DBConnection.openConnection();
+             PreparedStatement pst = conn.prepareStatement(sql)) {
+            if (filtered) bindFilter(pst, 1, filter);
+            try (ResultSet rs = pst.executeQuery()) {
+                rs.next();
+                return new CatalogChanges(rs.getInt(1), rs.getInt(2), rs.getTimestamp(3).getTime(), true, new ArrayList<Medicine>());
+            }
+        }
+    }
+
+    /**
+     * Medicines inserted or updated since a sync point, whatever the filter, in id
+     * order. Rows from shortly before it are included again; applying them twice is
+     * harmless. Deletions are not reported (the app never deletes medicines).
+     *
+     * The watermark and updated_at both come from the primary's clock. The window also
+     * reaches back by the most a replica read may be behind (getMaxReadStalenessMs), so
+     * Show Stocks pages read from the replica after the sync point still get patched.
+     *
+     * @param since getSyncedAt() of the previous sync point or changes
+     */
+    public CatalogChanges changesSince(long since) throws SQLException {
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            return RemoteClient.catalogChanges(remote.get("/api/medicines/changes", "since", since).get("changes"));
+        }
+
+        try (Connection conn = DBConnection.openConnection()) {
+            long now;
+            try (PreparedStatement pst = conn.prepareStatement(NOW_SQL);
+                 ResultSet rs = pst.executeQuery()) {
+                rs.next();
+                now = rs.getTimestamp(1).getTime();
+            }
+            List<Medicine> rows = new ArrayList<>();
+            int maxId = 0;
+            try (PreparedStatement pst = conn.prepareStatement(CHANGES_SQL)) {
+                pst.setTimestamp(1, new Timestamp(since - CHANGE_OVERLAP_MS - DBConnection.getMaxReadStalenessMs()));
+                pst.setInt(2, MAX_PAGE + 1);
+                try (ResultSet rs = pst.executeQuery()) {
+                    while (rs.next()) {
+                        Medicine m = read(rs);
+                        rows.add(m);
+                        maxId = Math.max(maxId, m.getId());
+                    }
+                }
+            }
+            boolean complete = rows.size() <= MAX_PAGE;
+            if (!complete) rows.subList(MAX_PAGE, rows.size()).clear();
+            return new CatalogChanges(-1, maxId, now, complete, rows);
+        }
+    }
+
+    // Exact name lookup straight from the primary (no cache, no replica); null when not found
+    public Medicine findByName(String name) throws SQLException {
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            return RemoteClient.medicine(remote.get("/api/medicines/by-name", "name", name.trim()).get("medicine"));
+        }
+
+        try (Connection conn = DBConnection.openConnection();
+             PreparedStatement pst = conn.prepareStatement(SELECT_COLUMNS + " WHERE name = ?")) {
+            pst.setString(1, name.trim());
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next() ? read(rs) : null;
+            }
+        }
+    }
+
+    // Every row with id above afterId, in id order (the whole table for afterId 0); used to fill the catalog cache
+    public List<Medicine> rowsAfter(long afterId) throws SQLException {
+        if (RemoteClient.get() != null) {
+            List<Medicine> all = new ArrayList<>();
+            while (true) {
+                List<Medicine> chunk = page("", afterId, MAX_PAGE);
+                all.addAll(chunk);
+                if (chunk.size() < MAX_PAGE) return all;
+                afterId = chunk.get(chunk.size() - 1).getId();
+            }
+        }
+
+        List<Medicine> rows = new ArrayList<>();
+        try (Connection conn = DBConnection.openConnection();
+             PreparedStatement pst = conn.prepareStatement(SELECT_COLUMNS + " WHERE id > ? ORDER BY id")) {
+            pst.setLong(1, afterId);
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(read(rs));
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static Medicine read(ResultSet rs) throws SQLException {
+        return new Medicine(rs.getInt("id"), rs.getString("name"), rs.getString("company"),
+                rs.getDouble("price"), rs.getInt("stock"), rs.getLong("stock_version"));
+    }
+
+    private static int bindFilter(PreparedStatement pst, int index, String filter) throws SQLException {
+        String pattern = "%" + filter + "%";
+        pst.setString(index++, pattern);
+        pst.setString(index++, pattern);
+        return index;
+    }
+}
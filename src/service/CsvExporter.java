@@ -0,0 +1,167 @@
+package service;
+
+import db.DBConnection;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * CsvExporter
+ *
+ * Writes a whole table to a CSV file (optionally gzip-compressed) without holding
+ * the result in memory. No Swing code here.
+ *
+ * MySQL Connector/J normally reads a complete result set into the heap before the
+ * first row is returned. The export query is therefore forward-only and read-only
+ * with a streaming fetch size: a cursor fetch of FETCH_SIZE rows when the URL
+ * enables `useCursorFetch=true`, otherwise Connector/J's row-by-row streaming mode.
+ * Rows are encoded into a large buffer and written through a FileChannel.
+ *
+ * The file is written under a ".part" name and renamed when complete, so a cancelled
+ * or failed export never leaves a truncated file behind. Interrupting the calling
+ * thread cancels the export.
+ */
+public class CsvExporter {
+
+    static final int FETCH_SIZE = 1000;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int PROGRESS_EVERY = 10_000;
+
+    // What can be exported, and the query that streams it
+    public enum Dataset {
+        MEDICINE("Medicines (current stock)", "SELECT id, name, company, price, stock FROM medicine ORDER BY id"),
+        BILLS("Bills (single sales)", "SELECT bill_id, medicine_name, quantity, total, bill_date FROM bills ORDER BY bill_id"),
+        BILL_LINES("Cart bill lines", "SELECT h.id AS bill_id, h.bill_date, l.medicine_id, l.medicine_name, l.quantity, l.price, l.line_total"
+                + " FROM bill_lines l JOIN bill_headers h ON h.id = l.bill_id ORDER BY l.id");
+
+        private final String label;
+        private final String sql;
+
+        Dataset(String label, String sql) {
+            this.label = label;
+            this.sql = sql;
+        }
+
+        public String getSql() { return sql; }
+
+        @Override
+        public String toString() { return label; }
+    }
+
+    /**
+     * Exports the dataset to the given file using a pooled read connection (the replica when one is configured).
+     *
+     * @param progress called every 10,000 rows with the rows written so far; may be null
+     * @return the number of data rows written
+     * @throws InterruptedIOException if the export was cancelled
+     */
+    public long export(Dataset dataset, Path target, boolean gzip, LongConsumer progress) throws IOException, SQLException {
+        try (Connection conn = DBConnection.openReadConnection()) {
+            return export(conn, dataset, target, gzip, progress);
+        }
+    }
+
+    /**
+     * Exports the dataset on the given connection. The connection is busy streaming
+     * until this returns and must not be shared meanwhile.
+     */
+    public long export(Connection conn, Dataset dataset, Path target, boolean gzip, LongConsumer progress) throws IOException, SQLException {
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        boolean done = false;
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             PreparedStatement pst = conn.prepareStatement(dataset.getSql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            pst.setFetchSize(streamingFetchSize(conn));
+            OutputStream out = Channels.newOutputStream(channel);
+            GZIPOutputStream gz = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+            if (gz != null) out = gz;
+            long rows = 0;
+            try (Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+                 ResultSet rs = pst.executeQuery()) {
+
+                ResultSetMetaData meta = rs.getMetaData();
+                int columns = meta.getColumnCount();
+                for (int i = 1; i <= columns; i++) {
+                    if (i > 1) w.write(',');
+                    writeField(w, meta.getColumnLabel(i));
+                }
+                w.write('\n');
+
+                while (rs.next()) {
+                    for (int i = 1; i <= columns; i++) {
+                        if (i > 1) w.write(',');
+                        writeField(w, rs.getString(i));
+                    }
+                    w.write('\n');
+                    if (++rows % PROGRESS_EVERY == 0) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            // a streaming result set would read every remaining row on close; stop the query first
+                            try { pst.cancel(); } catch (SQLException ignored) {}
+                            throw new InterruptedIOException("Export cancelled.");
+                        }
+                        if (progress != null) progress.accept(rows);
+                    }
+                }
+
+                // Closing the writer would close the channel, so flush and sync first
+                w.flush();
+                if (gz != null) gz.finish();
+                channel.force(false);
+            }
+            done = true;
+            if (progress != null) progress.accept(rows);
+            return rows;
+        } finally {
+            if (done) {
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(part);
+            }
+        }
+    }
+
+    // Positive cursor fetch when the URL asks for it, else Connector/J's streaming marker
+    static int streamingFetchSize(Connection conn) throws SQLException {
+        String driver = conn.getMetaData().getDriverName();
+        String url = conn.getMetaData().getURL();
+        boolean mysql = driver != null && driver.toLowerCase(Locale.ROOT).contains("mysql");
+        boolean cursorFetch = url != null && url.toLowerCase(Locale.ROOT).contains("usecursorfetch=true");
+        return mysql && !cursorFetch ? Integer.MIN_VALUE : FETCH_SIZE;
+    }
+
+    // RFC 4180 quoting: fields with a comma, quote or line break are quoted, quotes doubled
+    private static void writeField(Writer w, String value) throws IOException {
+        if (value == null) return;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            w.write(value);
+            return;
+        }
+        w.write('"');
+        w.write(value.replace("\"", "\"\""));
+        w.write('"');
+    }
+}
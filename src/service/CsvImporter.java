@@ -0,0 +1,334 @@
+package service;
+
+import db.DBConnection;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * CsvImporter
+ *
+ * Bulk import of supplier CSV files into the medicine table. No Swing code here.
+ *
+ * The file needs a header row with a "name" column; "company", "price" and
+ * "quantity" (or "stock") are optional. For each row the quantity is added to the
+ * medicine's stock and a non-blank price or company replaces the stored one; a
+ * medicine that does not exist yet is inserted, which requires a price.
+ *
+ * The file is streamed record by record and written in chunks: each chunk looks up
+ * its names with one query, then sends its updates and inserts as JDBC batches in
+ * a single transaction. Memory stays bounded by the chunk size however long the
+ * file is. Invalid rows are skipped and reported; a database error rolls back the
+ * current chunk and stops the import, keeping the chunks already committed.
+ * Interrupting the calling thread stops the import after the current chunk.
+ * Every stock change is appended to the stock ledger in the chunk's transaction.
+ *
+ * Batches are fastest with `rewriteBatchedStatements=true` in the MySQL JDBC URL.
+ */
+public class CsvImporter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    static final int MAX_REPORTED_ERRORS = 1000;
+    static final int MAX_NAME_LENGTH = 100;
+
+    static final String UPDATE_SQL = "UPDATE medicine SET stock = stock + ?, stock_version = stock_version + 1, price = COALESCE(?, price), company = COALESCE(?, company) WHERE id = ?";
+    static final String INSERT_SQL = "INSERT INTO medicine(name, company, price, stock) VALUES (?, ?, ?, ?)";
+
+    private final int chunkSize;
+
+    public CsvImporter() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public CsvImporter(int chunkSize) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Imports a UTF-8 CSV file using a pooled connection.
+     *
+     * @param progress called after every chunk with the running totals; may be null
+     * @throws IOException if the file cannot be read or has no usable header
+     * @throws SQLException if the database cannot be reached
+     */
+    public ImportReport importFile(Path file, Consumer<ImportReport> progress) throws IOException, SQLException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             Connection conn = DBConnection.openConnection()) {
+            return importCsv(conn, reader, progress);
+        }
+    }
+
+    /**
+     * Imports CSV text on the given connection, committing once per chunk.
+     * The connection's auto-commit mode is restored afterwards.
+     */
+    public ImportReport importCsv(Connection conn, Reader reader, Consumer<ImportReport> progress) throws IOException, SQLException {
+        Run run = new Run();
+        CsvReader csv = new CsvReader(reader);
+
+        List<String> header = csv.next();
+        if (header == null) throw new IOException("The file is empty.");
+        Columns cols = new Columns(header);
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        boolean finished;
+        try {
+            finished = importRows(conn, csv, cols, run, progress);
+        } finally {
+            try { conn.setAutoCommit(autoCommit); } catch (SQLException ignored) {}
+        }
+
+        if (run.inserted + run.updated > 0) {
+            try {
+                CatalogCache.get().reloadIfLoaded();
+            } catch (SQLException ignored) {
+                // the import itself is committed; the cache's periodic full reload catches up
+            }
+        }
+        return run.report(finished);
+    }
+
+    // Reads and writes chunk by chunk; false if the import stopped early
+    private boolean importRows(Connection conn, CsvReader csv, Columns cols, Run run, Consumer<ImportReport> progress) throws IOException {
+        List<Row> chunk = new ArrayList<>(chunkSize);
+        List<String> fields;
+        while ((fields = csv.next()) != null) {
+            if (fields.size() == 1 && fields.get(0).isEmpty()) continue; // blank line
+            run.rowsRead++;
+            Row row = cols.parse(fields, csv.getRecordLine(), run);
+            if (row != null) chunk.add(row);
+
+            if (chunk.size() == chunkSize) {
+                if (!writeChunk(conn, chunk, run, progress)) return false;
+                chunk.clear();
+            }
+        }
+        return chunk.isEmpty() || writeChunk(conn, chunk, run, progress);
+    }
+
+    // One chunk in one transaction; false if the import has to stop
+    private boolean writeChunk(Connection conn, List<Row> chunk, Run run, Consumer<ImportReport> progress) {
+        if (Thread.currentThread().isInterrupted()) {
+            run.failure = "Cancelled at line " + chunk.get(0).line + ".";
+            return false;
+        }
+
+        // Merge rows for the same medicine: quantities add up, the last price/company wins
+        Map<String, Row> merged = new LinkedHashMap<>();
+        for (Row r : chunk) {
+            Row prev = merged.get(r.key);
+            if (prev == null) {
+                merged.put(r.key, r);
+            } else {
+                prev.quantity += r.quantity;
+                if (r.price != null) prev.price = r.price;
+                if (r.company != null) prev.company = r.company;
+            }
+        }
+
+        long inserted = 0;
+        long updated = 0;
+        List<String> rejectedHere = new ArrayList<>();
+        try {
+            Map<String, Integer> ids = lockExisting(conn, merged.keySet());
+
+            try (PreparedStatement pstUpdate = conn.prepareStatement(UPDATE_SQL);
+                 PreparedStatement pstInsert = conn.prepareStatement(INSERT_SQL);
+                 LedgerWriter ledger = new LedgerWriter(conn)) {
+                for (Row r : merged.values()) {
+                    Integer id = ids.get(r.key);
+                    if (id != null) {
+                        pstUpdate.setInt(1, r.quantity);
+                        if (r.price != null) pstUpdate.setDouble(2, r.price); else pstUpdate.setNull(2, Types.DOUBLE);
+                        if (r.company != null) pstUpdate.setString(3, r.company); else pstUpdate.setNull(3, Types.VARCHAR);
+                        pstUpdate.setInt(4, id);
+                        pstUpdate.addBatch();
+                        ledger.add(id, null, r.quantity, StockLedger.Reason.IMPORT, null);
+                        updated++;
+                    } else if (r.price == null) {
+                        rejectedHere.add("line " + r.line + ": price is required for new medicine '" + r.name + "'");
+                    } else {
+                        pstInsert.setString(1, r.name);
+                        pstInsert.setString(2, r.company);
+                        pstInsert.setDouble(3, r.price);
+                        pstInsert.setInt(4, r.quantity);
+                        pstInsert.addBatch();
+                        ledger.addByName(r.name, r.quantity, StockLedger.Reason.IMPORT, null);
+                        inserted++;
+                    }
+                }
+                if (updated > 0) pstUpdate.executeBatch();
+                if (inserted > 0) pstInsert.executeBatch();
+                // After the inserts, so new medicines are found by name
+                ledger.flush();
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException ex) {
+            try { conn.rollback(); } catch (SQLException ignored) {}
+            run.failure = "Stopped at line " + chunk.get(0).line + ": " + ex.getMessage();
+            return false;
+        }
+
+        run.inserted += inserted;
+        run.updated += updated;
+        for (String err : rejectedHere) {
+            run.reject(err);
+        }
+        if (progress != null) progress.accept(run.report(false));
+        return true;
+    }
+
+    // SELECT ... WHERE name IN (...) FOR UPDATE; returns lower-cased name -> lowest matching id
+    private static Map<String, Integer> lockExisting(Connection conn, Collection<String> keys) throws SQLException {
+        String sql = "SELECT id, name FROM medicine WHERE name IN (" + BillingService.placeholders(keys.size()) + ") ORDER BY id FOR UPDATE";
+        Map<String, Integer> ids = new HashMap<>();
+        try (PreparedStatement pst = conn.prepareStatement(sql)) {
+            int i = 1;
+            for (String k : keys) {
+                pst.setString(i++, k);
+            }
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    ids.putIfAbsent(key(rs.getString("name")), rs.getInt("id"));
+                }
+            }
+        }
+        return ids;
+    }
+
+    // MySQL compares names case-insensitively, so merge and match rows the same way
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // A validated CSV row
+    private static final class Row {
+        final long line;
+        final String name;
+        final String key;
+        String company;
+        Double price;
+        int quantity;
+
+        Row(long line, String name, String company, Double price, int quantity) {
+            this.line = line;
+            this.name = name;
+            this.key = key(name);
+            this.company = company;
+            this.price = price;
+            this.quantity = quantity;
+        }
+    }
+
+    // Header positions and per-row validation
+    private static final class Columns {
+        final int name;
+        final int company;
+        final int price;
+        final int quantity;
+
+        Columns(List<String> header) throws IOException {
+            Map<String, Integer> pos = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                String h = header.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+                pos.putIfAbsent(h, i);
+            }
+            name = pos.getOrDefault("name", -1);
+            company = pos.getOrDefault("company", -1);
+            price = pos.getOrDefault("price", -1);
+            quantity = pos.containsKey("quantity") ? pos.get("quantity") : pos.getOrDefault("stock", -1);
+            if (name < 0) throw new IOException("The header row must contain a 'name' column.");
+        }
+
+        // Returns null (and records the reason) for an invalid row
+        Row parse(List<String> fields, long line, Run run) {
+            String n = field(fields, name);
+            if (n == null) {
+                run.reject("line " + line + ": name is missing");
+                return null;
+            }
+            if (n.length() > MAX_NAME_LENGTH) {
+                run.reject("line " + line + ": name is longer than " + MAX_NAME_LENGTH + " characters");
+                return null;
+            }
+
+            Double p = null;
+            String priceText = field(fields, price);
+            if (priceText != null) {
+                try {
+                    p = Double.valueOf(priceText);
+                } catch (NumberFormatException ex) {
+                    run.reject("line " + line + ": price '" + priceText + "' is not a number");
+                    return null;
+                }
+                if (p < 0 || p.isNaN() || p.isInfinite()) {
+                    run.reject("line " + line + ": price must be zero or more");
+                    return null;
+                }
+            }
+
+            int q = 0;
+            String qtyText = field(fields, quantity);
+            if (qtyText != null) {
+                try {
+                    q = Integer.parseInt(qtyText);
+                } catch (NumberFormatException ex) {
+                    run.reject("line " + line + ": quantity '" + qtyText + "' is not an integer");
+                    return null;
+                }
+                if (q < 0) {
+                    run.reject("line " + line + ": quantity must be zero or more");
+                    return null;
+                }
+            }
+
+            return new Row(line, n, field(fields, company), p, q);
+        }
+
+        // Trimmed field, or null if the column is absent or blank
+        private static String field(List<String> fields, int index) {
+            if (index < 0 || index >= fields.size()) return null;
+            String v = fields.get(index).trim();
+            return v.isEmpty() ? null : v;
+        }
+    }
+
+    // Running totals for one import
+    private static final class Run {
+        final long started = System.currentTimeMillis();
+        final List<String> errors = new ArrayList<>();
+        long rowsRead;
+        long inserted;
+        long updated;
+        long rejected;
+        String failure;
+
+        void reject(String message) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) errors.add(message);
+        }
+
+        ImportReport report(boolean finished) {
+            return new ImportReport(rowsRead, inserted, updated, rejected, new ArrayList<>(errors),
+                    System.currentTimeMillis() - started, finished, failure);
+        }
+    }
+}
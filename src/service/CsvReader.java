@@ -0,0 +1,117 @@
+package service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CsvReader
+ *
+ * Minimal streaming CSV parser (RFC 4180 style): comma separated, fields may be
+ * quoted with double quotes, quotes inside quoted fields are doubled, and quoted
+ * fields may span lines. Reads one record at a time, so memory use does not depend
+ * on file size.
+ */
+public class CsvReader implements Closeable {
+
+    private final Reader in;
+    private final char[] buf = new char[64 * 1024];
+    private int pos;
+    private int len;
+    private long line = 1;
+    private long recordLine;
+
+    public CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return the fields, or null at end of input
+     */
+    public List<String> next() throws IOException {
+        int c = read();
+        if (c == -1) return null;
+        recordLine = line;
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+
+        while (true) {
+            if (c == -1) {
+                fields.add(finish(field, wasQuoted));
+                return fields;
+            }
+            char ch = (char) c;
+            if (quoted) {
+                if (ch == '"') {
+                    int nextChar = peek();
+                    if (nextChar == '"') {
+                        read();
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    if (ch == '\n') line++;
+                    field.append(ch);
+                }
+            } else if (ch == '"' && field.length() == 0 && !wasQuoted) {
+                quoted = true;
+                wasQuoted = true;
+            } else if (ch == ',') {
+                fields.add(finish(field, wasQuoted));
+                field.setLength(0);
+                wasQuoted = false;
+            } else if (ch == '\r') {
+                // ignore; \n ends the record
+            } else if (ch == '\n') {
+                line++;
+                fields.add(finish(field, wasQuoted));
+                return fields;
+            } else {
+                field.append(ch);
+            }
+            c = read();
+        }
+    }
+
+    // 1-based line number where the last record returned by next() started
+    public long getRecordLine() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private static String finish(StringBuilder field, boolean quoted) {
+        return quoted ? field.toString() : field.toString().trim();
+    }
+
+    private int read() throws IOException {
+        if (pos == len && !fill()) return -1;
+        return buf[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos == len && !fill()) return -1;
+        return buf[pos];
+    }
+
+    private boolean fill() throws IOException {
+        len = in.read(buf, 0, buf.length);
+        pos = 0;
+        if (len <= 0) {
+            len = 0;
+            return false;
+        }
+        return true;
+    }
+}
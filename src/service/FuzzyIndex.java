@@ -0,0 +1,159 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FuzzyIndex
+ *
+ * Typo-tolerant lookup over normalized medicine names.
+ *
+ * Each name is padded ("^name$") and split into 2-character grams; each gram keeps
+ * the list of names containing it. A name within d edits of the query still has
+ * all but at most 2d of the query's distinct grams, so a query only counts hits
+ * over the posting lists of its own grams, keeps names that reach that bound and
+ * have a close enough length, and confirms them with an exact Levenshtein distance.
+ *
+ * Names are append-only slots; removals are tombstones dropped when the cache
+ * builds a fresh index on its next full load. Thread-safe (coarse lock).
+ */
+public class FuzzyIndex {
+
+    // Search hit: id plus its edit distance from the query
+    public static final class Match {
+        final int id;
+        final int distance;
+
+        Match(int id, int distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        public int getId() { return id; }
+
+        public int getDistance() { return distance; }
+    }
+
+    // Append-only list of slots; slots only grow, so lists stay sorted
+    private static final class Postings {
+        int[] slots = new int[4];
+        int size;
+    }
+
+    private final Map<Integer, Postings> postings = new HashMap<>();
+    private final Map<Integer, Integer> slotById = new HashMap<>();
+
+    private String[] terms = new String[64];
+    private int[] ids = new int[64];
+    private int slots;
+
+    // per-query scratch space, reused under the lock
+    private int[] counts = new int[64];
+    private int[] touched = new int[64];
+
+    public synchronized void add(int id, String term) {
+        removeLocked(id);
+        if (slots == terms.length) {
+            terms = Arrays.copyOf(terms, slots * 2);
+            ids = Arrays.copyOf(ids, slots * 2);
+        }
+        int slot = slots++;
+        terms[slot] = term;
+        ids[slot] = id;
+        slotById.put(id, slot);
+
+        String padded = "^" + term + "$";
+        for (int i = 0; i + 2 <= padded.length(); i++) {
+            Postings p = postings.computeIfAbsent(gram(padded, i), k -> new Postings());
+            if (p.size > 0 && p.slots[p.size - 1] == slot) continue; // gram repeats within this name
+            if (p.size == p.slots.length) p.slots = Arrays.copyOf(p.slots, p.size * 2);
+            p.slots[p.size++] = slot;
+        }
+    }
+
+    public synchronized void remove(int id) {
+        removeLocked(id);
+    }
+
+    public synchronized int size() {
+        return slotById.size();
+    }
+
+    /**
+     * Returns up to limit names within maxDistance edits of the query, closest first.
+     */
+    public synchronized List<Match> search(String query, int maxDistance, int limit) {
+        List<Match> out = new ArrayList<>();
+        if (limit <= 0 || slots == 0) return out;
+
+        // Each edit removes at most two of the query's distinct grams from a match
+        List<Integer> queryGrams = new ArrayList<>();
+        String padded = "^" + query + "$";
+        for (int i = 0; i + 2 <= padded.length(); i++) {
+            int g = gram(padded, i);
+            if (!queryGrams.contains(g)) queryGrams.add(g);
+        }
+        int bound = queryGrams.size() - 2 * maxDistance;
+        if (bound <= 0) return out; // too short to filter; prefix/substring matching covers it
+
+        if (counts.length < slots) {
+            counts = new int[terms.length];
+            touched = new int[terms.length];
+        }
+        int nTouched = 0;
+
+        // Count shared distinct grams per name
+        for (int g : queryGrams) {
+            Postings p = postings.get(g);
+            if (p == null) continue;
+            for (int k = 0; k < p.size; k++) {
+                int slot = p.slots[k];
+                if (counts[slot]++ == 0) touched[nTouched++] = slot;
+            }
+        }
+
+        for (int t = 0; t < nTouched; t++) {
+            int slot = touched[t];
+            int c = counts[slot];
+            counts[slot] = 0;
+            String term = terms[slot];
+            if (c < bound || term == null) continue;
+            if (Math.abs(term.length() - query.length()) > maxDistance) continue;
+            int d = distance(query, term);
+            if (d <= maxDistance) out.add(new Match(ids[slot], d));
+        }
+
+        out.sort((a, b) -> Integer.compare(a.distance, b.distance));
+        return out.size() > limit ? new ArrayList<>(out.subList(0, limit)) : out;
+    }
+
+    private void removeLocked(int id) {
+        Integer slot = slotById.remove(id);
+        if (slot != null) terms[slot] = null;
+    }
+
+    private static int gram(String s, int i) {
+        return (s.charAt(i) << 16) | s.charAt(i + 1);
+    }
+
+    // Levenshtein distance (two-row dynamic programming)
+    static int distance(String a, String b) {
+        int n = a.length(), m = b.length();
+        int[] prev = new int[m + 1];
+        int[] cur = new int[m + 1];
+        for (int j = 0; j <= m; j++) prev[j] = j;
+        for (int i = 1; i <= n; i++) {
+            cur[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+            }
+            int[] t = prev; prev = cur; cur = t;
+        }
+        return prev[m];
+    }
+}
@@ -0,0 +1,207 @@
+package service;
+
+import db.DBConnection;
+import db.DbExecutor;
+import metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GroupCommit
+ *
+ * Optional stage in front of BillingService for the store server, where sales from
+ * every counter meet. Sales and cart checkouts that arrive within a few milliseconds
+ * of each other are applied by one committer thread in a single transaction
+ * (BillingService.applyGroup): one locking lookup, one guarded decrement per
+ * medicine, batched bill inserts and one commit, so the redo log is flushed once per
+ * group instead of once per sale. While a group commits the next one collects, so
+ * groups grow with the load.
+ *
+ * Each caller still gets its own SaleResult or CartResult: a sale that is short on
+ * stock or names an unknown medicine is refused on its own without touching the rest
+ * of the group. If the group transaction fails before its COMMIT (no connection,
+ * deadlock, lock wait timeout, a bad statement), it was rolled back and every sale in
+ * it is run again on its own through BillingService on DbExecutor, with the usual
+ * retries and offline journal, so one failure never decides another caller's sale and
+ * the committer goes straight back to collecting the next group. When no pooled
+ * connection could be had at all, re-running each sale would only queue for the same
+ * pool again, so the whole group is refused at once (nothing was sold). If the COMMIT
+ * itself fails (e.g. the connection drops while it is in flight) the group may
+ * already be written, so nothing is run again: every caller gets an error telling the
+ * cashier to check the bill before selling again.
+ *
+ * At most MAX_QUEUED sales wait for a group. When the committer falls that far behind,
+ * callers block for up to QUEUE_WAIT_MS for room and are then refused, rather than
+ * piling up unbounded behind a slow or failing database.
+ */
+public final class GroupCommit {
+
+    static final int MAX_GROUP = 64;
+    static final int MAX_QUEUED = 16 * MAX_GROUP;
+    static final long QUEUE_WAIT_MS = 2000L;
+
+    // A sale (single) or cart waiting for its group
+    static final class Request {
+        final List<CartLine> lines;
+        final boolean single;
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        Request(List<CartLine> lines, boolean single) {
+            this.lines = lines;
+            this.single = single;
+        }
+    }
+
+    private final BillingService billing;
+    private final long windowNanos;
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>(MAX_QUEUED);
+
+    /**
+     * @param windowMs how long the first sale of a group waits for others to join
+     */
+    public GroupCommit(BillingService billing, int windowMs) {
+        if (windowMs <= 0) throw new IllegalArgumentException("Group commit window must be positive: " + windowMs);
+        this.billing = billing;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        Thread t = new Thread(this::run, "group-commit");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // Same contract as BillingService.sellById / sell (medicineId 0 means by name)
+    public SaleResult sell(int medicineId, String name, int qty) throws SQLException {
+        if (qty <= 0) throw new IllegalArgumentException("Quantity must be positive: " + qty);
+        return (SaleResult) submit(new Request(Collections.singletonList(new CartLine(medicineId, name, qty)), true));
+    }
+
+    // Same contract as BillingService.checkout
+    public CartResult checkout(List<CartLine> cart) throws SQLException {
+        if (cart.isEmpty()) throw new IllegalArgumentException("Cart is empty.");
+        for (CartLine line : cart) {
+            if (line.getQuantity() <= 0) throw new IllegalArgumentException("Quantity must be positive: " + line.getQuantity());
+        }
+        return (CartResult) submit(new Request(new ArrayList<>(cart), false));
+    }
+
+    private Object submit(Request request) throws SQLException {
+        try {
+            if (!queue.offer(request, QUEUE_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                Metrics.increment("group.rejected");
+                throw new SQLException("Too many sales waiting to commit; nothing was sold, try again.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting to queue the sale; nothing was sold.", ex);
+        }
+        try {
+            return request.result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the sale to commit; it may still go through.", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new SQLException(cause);
+        }
+    }
+
+    private void run() {
+        List<Request> group = new ArrayList<>(MAX_GROUP);
+        while (true) {
+            try {
+                group.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (group.size() < MAX_GROUP) {
+                    queue.drainTo(group, MAX_GROUP - group.size());
+                    long left = deadline - System.nanoTime();
+                    if (group.size() >= MAX_GROUP || left <= 0) break;
+                    Request next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    group.add(next);
+                }
+                commit(group);
+            } catch (InterruptedException ex) {
+                return;
+            } catch (RuntimeException | Error ex) {
+                for (Request r : group) {
+                    r.result.completeExceptionally(ex);
+                }
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void commit(List<Request> group) {
+        long start = System.nanoTime();
+        List<Object> results = null;
+        SQLException unknown = null;
+        SQLException noConnection = null;
+        boolean connected = false;
+        try (Connection conn = DBConnection.openConnection()) {
+            connected = true;
+            results = billing.applyGroup(conn, group);
+            Metrics.increment("group.commits");
+            Metrics.increment("group.sales", group.size());
+            Metrics.timer("group.commit").recordSince(start);
+        } catch (SQLException ex) {
+            if (BillingService.COMMIT_UNKNOWN.equals(ex.getSQLState())) {
+                Metrics.increment("group.unknown");
+                unknown = ex;
+            } else if (!connected && !isConnectFailure(ex)) {
+                // Pool exhausted or no driver: every sale run alone would wait for the same pool
+                Metrics.increment("group.refused");
+                noConnection = ex;
+            } else {
+                Metrics.increment("group.fallbacks");
+            }
+        } catch (RuntimeException ex) {
+            Metrics.increment("group.fallbacks");
+        }
+        for (int i = 0; i < group.size(); i++) {
+            Request r = group.get(i);
+            if (results != null) {
+                r.result.complete(results.get(i));
+            } else if (unknown != null) {
+                r.result.completeExceptionally(new SQLException("The sale may or may not have been recorded (the database"
+                        + " connection failed while committing). Check the bill before selling again.", BillingService.COMMIT_UNKNOWN, unknown));
+            } else if (noConnection != null) {
+                r.result.completeExceptionally(new SQLException("No database connection available; nothing was sold, try again. ("
+                        + noConnection.getMessage() + ")", noConnection.getSQLState(), noConnection));
+            } else {
+                DbExecutor.submit(() -> alone(r));
+            }
+        }
+    }
+
+    // Could not reach the database at all: run alone, such a sale falls back to the offline journal
+    private static boolean isConnectFailure(SQLException ex) {
+        String state = ex.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+
+    // The group failed as a whole: run this sale by itself
+    private void alone(Request r) {
+        try {
+            if (r.single) {
+                CartLine line = r.lines.get(0);
+                r.result.complete(line.getMedicineId() > 0
+                        ? billing.sellById(line.getMedicineId(), line.getMedicineName(), line.getQuantity())
+                        : billing.sell(line.getMedicineName(), line.getQuantity()));
+            } else {
+                r.result.complete(billing.checkout(r.lines));
+            }
+        } catch (SQLException | RuntimeException ex) {
+            r.result.completeExceptionally(ex);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ImportReport
+ *
+ * Progress or final outcome of a CSV import: row counts, the first rejected rows
+ * (line number and reason), throughput, and why the import stopped early if it did.
+ * Rows in committed chunks stay in the database even when a later chunk fails.
+ */
+public class ImportReport {
+
+    private final long rowsRead;
+    private final long inserted;
+    private final long updated;
+    private final long rejected;
+    private final List<String> errors;
+    private final long elapsedMs;
+    private final boolean finished;
+    private final String failure;
+
+    ImportReport(long rowsRead, long inserted, long updated, long rejected, List<String> errors,
+                 long elapsedMs, boolean finished, String failure) {
+        this.rowsRead = rowsRead;
+        this.inserted = inserted;
+        this.updated = updated;
+        this.rejected = rejected;
+        this.errors = Collections.unmodifiableList(errors);
+        this.elapsedMs = elapsedMs;
+        this.finished = finished;
+        this.failure = failure;
+    }
+
+    // Data rows read so far (header excluded)
+    public long getRowsRead() { return rowsRead; }
+
+    // New medicines created
+    public long getInserted() { return inserted; }
+
+    // Existing medicines whose stock/price/company were updated
+    public long getUpdated() { return updated; }
+
+    public long getRejected() { return rejected; }
+
+    // "line N: reason" for the first rejected rows; see getRejected() for the full count
+    public List<String> getErrors() { return errors; }
+
+    public long getElapsedMs() { return elapsedMs; }
+
+    public double getRowsPerSecond() {
+        return elapsedMs == 0 ? rowsRead : rowsRead * 1000.0 / elapsedMs;
+    }
+
+    // False while the import is still running or when it stopped early
+    public boolean isFinished() { return finished; }
+
+    // Reason the import stopped before the end of the file, or null
+    public String getFailure() { return failure; }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows read, %d inserted, %d updated, %d rejected in %.1fs (%.0f rows/s)",
+                rowsRead, inserted, updated, rejected, elapsedMs / 1000.0, getRowsPerSecond());
+    }
+}
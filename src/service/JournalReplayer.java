@@ -0,0 +1,82 @@
+package service;
+
+import metrics.Metrics;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * JournalReplayer
+ *
+ * Background thread that replays offline sales from the SaleJournal as soon as the
+ * database (or store server) answers again, checking every 15 seconds. Listeners hear
+ * about every replay that wrote or rejected something, so the UI can show conflicts.
+ */
+public final class JournalReplayer {
+
+    private static final long INTERVAL_MS = 15_000L;
+
+    private static final BillingService BILLING = new BillingService();
+    private static final List<Consumer<ReplayReport>> LISTENERS = new CopyOnWriteArrayList<>();
+    private static ScheduledExecutorService scheduler;
+    private static volatile String lastError;
+
+    private JournalReplayer() {
+    }
+
+    // Start checking in the background (idempotent); the first check runs immediately
+    public static synchronized void start() {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-replay");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(JournalReplayer::runOnce, 0L, INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Called on the replay thread
+    public static void addListener(Consumer<ReplayReport> listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(Consumer<ReplayReport> listener) {
+        LISTENERS.remove(listener);
+    }
+
+    // Offline sales still waiting in the journal (0 when the journal cannot be opened)
+    public static int pendingCount() {
+        try {
+            return SaleJournal.get().pendingCount();
+        } catch (java.io.IOException ex) {
+            return 0;
+        }
+    }
+
+    // Why the last replay attempt failed, or null after a successful one
+    public static String getLastError() {
+        return lastError;
+    }
+
+    // One replay attempt; only does work when something is pending or the terminal is offline
+    static void runOnce() {
+        if (pendingCount() == 0 && !BillingService.isOffline()) return;
+        try {
+            ReplayReport report = BILLING.replayJournal();
+            lastError = null;
+            if (report.getApplied() + report.getConflicts().size() == 0) return;
+            Metrics.increment("journal.conflicts", report.getConflicts().size());
+            System.err.println("Offline journal: " + report);
+            for (Consumer<ReplayReport> l : LISTENERS) {
+                l.accept(report);
+            }
+        } catch (SQLException | RuntimeException ex) {
+            lastError = ex.getMessage();
+        }
+    }
+}
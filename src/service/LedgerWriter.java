@@ -0,0 +1,82 @@
+package service;
+
+import metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * LedgerWriter
+ *
+ * Appends stock movements to `stock_ledger` inside the caller's transaction, so a
+ * movement is on record exactly when the medicine.stock change it describes commits.
+ * Ledger rows are only ever inserted; StockLedger folds them into snapshots.
+ *
+ * Queue movements with add() and send them with flush(); they go out as one batch.
+ * Movements of zero units are not recorded.
+ */
+final class LedgerWriter implements AutoCloseable {
+
+    static final String INSERT_SQL = "INSERT INTO stock_ledger(medicine_id, batch_id, delta, reason, ref, terminal) VALUES (?, ?, ?, ?, ?, ?)";
+    // For a medicine known only by name, e.g. one inserted earlier in the same transaction
+    static final String INSERT_BY_NAME_SQL = "INSERT INTO stock_ledger(medicine_id, batch_id, delta, reason, ref, terminal)"
+            + " SELECT id, NULL, ?, ?, ?, ? FROM medicine WHERE name = ?";
+
+    private final Connection conn;
+    private final PreparedStatement byId;
+    private PreparedStatement byName;
+    private int pending;
+    private int pendingByName;
+
+    LedgerWriter(Connection conn) throws SQLException {
+        this.conn = conn;
+        this.byId = conn.prepareStatement(INSERT_SQL);
+    }
+
+    void add(int medicineId, Long batchId, int delta, StockLedger.Reason reason, String ref) throws SQLException {
+        add(medicineId, batchId, delta, reason, ref, Metrics.getTerminalId());
+    }
+
+    // terminal: where the movement happened, when that is not this process (replayed offline sales)
+    void add(int medicineId, Long batchId, int delta, StockLedger.Reason reason, String ref, String terminal) throws SQLException {
+        if (delta == 0) return;
+        byId.setInt(1, medicineId);
+        if (batchId != null) byId.setLong(2, batchId); else byId.setNull(2, Types.BIGINT);
+        byId.setInt(3, delta);
+        byId.setString(4, reason.name());
+        byId.setString(5, ref);
+        byId.setString(6, terminal);
+        byId.addBatch();
+        pending++;
+    }
+
+    void addByName(String name, int delta, StockLedger.Reason reason, String ref) throws SQLException {
+        if (delta == 0) return;
+        if (byName == null) byName = conn.prepareStatement(INSERT_BY_NAME_SQL);
+        byName.setInt(1, delta);
+        byName.setString(2, reason.name());
+        byName.setString(3, ref);
+        byName.setString(4, Metrics.getTerminalId());
+        byName.setString(5, name);
+        byName.addBatch();
+        pendingByName++;
+    }
+
+    void flush() throws SQLException {
+        if (pending > 0) byId.executeBatch();
+        if (pendingByName > 0) byName.executeBatch();
+        pending = 0;
+        pendingByName = 0;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            byId.close();
+        } finally {
+            if (byName != null) byName.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package service;
+
+/**
+ * Medicine
+ *
+ * Immutable snapshot of one `medicine` row. The version is the row's stock_version when
+ * it was read (or written), UNKNOWN_VERSION when the source did not say; CatalogCache
+ * uses it to ignore snapshots older than the one it holds.
+ */
+public class Medicine {
+
+    private final int id;
+    private final String name;
+    private final String company;
+    private final double price;
+    private final int stock;
+    private final long version;
+
+    public static final long UNKNOWN_VERSION = -1L;
+
+    public Medicine(int id, String name, String company, double price, int stock) {
+        this(id, name, company, price, stock, UNKNOWN_VERSION);
+    }
+
+    public Medicine(int id, String name, String company, double price, int stock, long version) {
+        this.id = id;
+        this.name = name;
+        this.company = company;
+        this.price = price;
+        this.stock = stock;
+        this.version = version;
+    }
+
+    public int getId() { return id; }
+
+    public String getName() { return name; }
+
+    public String getCompany() { return company; }
+
+    public double getPrice() { return price; }
+
+    public int getStock() { return stock; }
+
+    public long getVersion() { return version; }
+
+    public Medicine withStock(int newStock) {
+        return new Medicine(id, name, company, price, newStock, version);
+    }
+
+    public Medicine withStock(int newStock, long newVersion) {
+        return new Medicine(id, name, company, price, newStock, newVersion);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
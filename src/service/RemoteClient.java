@@ -0,0 +1,422 @@
+package service;
+
+import api.Json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RemoteClient
+ *
+ * Thin-client mode: when MEDIXHUB_SERVER is set (e.g. http://store-server:8080),
+ * the services send their calls to that store server (api.ApiServer) instead of
+ * opening their own database connections. MEDIXHUB_API_KEY, if set, is sent with
+ * every request and must match the server's.
+ *
+ * Transport failures and server errors surface as SQLException, so callers handle them
+ * like database errors: SQLState 08001 when no connection could be made (the request
+ * was never sent), 08S01 when the link failed mid-request (outcome unknown). A request
+ * the server rejects as invalid surfaces as IllegalArgumentException.
+ */
+public final class RemoteClient {
+
+    // SQLState for "could not connect": nothing reached the server, so the call may be journaled offline
+    static final String CONNECT_FAILED = "08001";
+
+    private static final int CONNECT_TIMEOUT_MS = 5_000;
+    private static final int READ_TIMEOUT_MS = 30_000;
+
+    private static final RemoteClient INSTANCE = create();
+
+    private final String baseUrl;
+    private final String apiKey;
+
+    private RemoteClient(String baseUrl, String apiKey) {
+        this.baseUrl = baseUrl;
+        this.apiKey = apiKey;
+    }
+
+    // True when this process is a thin client of a store server
+    public static boolean isEnabled() {
+        return INSTANCE != null;
+    }
+
+    public static String getServerUrl() {
+        return INSTANCE != null ? INSTANCE.baseUrl : null;
+    }
+
+    // Reach the store server's health check. Returns null on success, otherwise an error message.
+    public static String testConnection() {
+        if (INSTANCE == null) return "No store server configured.";
+        try {
+            INSTANCE.get("/api/health");
+            return null;
+        } catch (SQLException | RuntimeException e) {
+            return e.getMessage();
+        }
+    }
+
+    // The configured client, or null when services talk to the database directly
+    static RemoteClient get() {
+        return INSTANCE;
+    }
+
+    private static RemoteClient create() {
+        String url = System.getenv("MEDIXHUB_SERVER");
+        if (url == null || url.trim().isEmpty()) return null;
+        url = url.trim();
+        while (url.endsWith("/")) url = url.substring(0, url.length() - 1);
+        String key = System.getenv("MEDIXHUB_API_KEY");
+        return new RemoteClient(url, key == null || key.isEmpty() ? null : key);
+    }
+
+    // GET path?k1=v1&k2=v2...; params are name/value pairs, null values are skipped
+    Map<String, Object> get(String path, Object... params) throws SQLException {
+        StringBuilder url = new StringBuilder(path);
+        char sep = '?';
+        for (int i = 0; i + 1 < params.length; i += 2) {
+            if (params[i + 1] == null) continue;
+            url.append(sep).append(params[i]).append('=').append(encode(String.valueOf(params[i + 1])));
+            sep = '&';
+        }
+        return call("GET", url.toString(), null);
+    }
+
+    Map<String, Object> post(String path, Map<String, Object> body) throws SQLException {
+        return call("POST", path, Json.write(body));
+    }
+
+    private Map<String, Object> call(String method, String path, String body) throws SQLException {
+        try {
+            HttpURLConnection http = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            http.setRequestMethod(method);
+            http.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            http.setReadTimeout(READ_TIMEOUT_MS);
+            http.setRequestProperty("Accept", "application/json");
+            if (apiKey != null) http.setRequestProperty("X-Api-Key", apiKey);
+            try {
+                http.connect();
+            } catch (IOException ex) {
+                throw new SQLException("Store server " + baseUrl + " unreachable: " + ex.getMessage(), CONNECT_FAILED, ex);
+            }
+            if (body != null) {
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                http.setDoOutput(true);
+                http.setFixedLengthStreamingMode(bytes.length);
+                http.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+                try (OutputStream out = http.getOutputStream()) {
+                    out.write(bytes);
+                }
+            }
+
+            int status = http.getResponseCode();
+            // Read the body fully so the keep-alive connection can be reused
+            InputStream in = status >= 400 ? http.getErrorStream() : http.getInputStream();
+            String text = in == null ? "" : readAll(in);
+            Map<String, Object> json;
+            try {
+                json = text.isEmpty() ? new LinkedHashMap<>() : Json.parseObject(text);
+            } catch (IllegalArgumentException ex) {
+                throw new SQLException("Store server sent an invalid response (HTTP " + status + "): " + ex.getMessage(), ex);
+            }
+            if (status == 400) throw new IllegalArgumentException(errorText(json, status));
+            if (status >= 300) throw new SQLException("Store server: " + errorText(json, status));
+            return json;
+        } catch (IOException ex) {
+            throw new SQLException("Store server " + baseUrl + " connection lost: " + ex.getMessage(), "08S01", ex);
+        }
+    }
+
+    private static String errorText(Map<String, Object> json, int status) {
+        Object error = json.get("error");
+        return error != null ? error.toString() : "HTTP " + status;
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = stream.read(chunk)) > 0) {
+                buf.write(chunk, 0, n);
+            }
+            return new String(buf.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String encode(String s) {
+        try {
+            return URLEncoder.encode(s, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // --- wire format, shared with api.ApiServer ---
+
+    public static Map<String, Object> toJson(Medicine m) {
+        if (m == null) return null;
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("id", m.getId());
+        out.put("name", m.getName());
+        out.put("company", m.getCompany());
+        out.put("price", m.getPrice());
+        out.put("stock", m.getStock());
+        out.put("version", m.getVersion());
+        return out;
+    }
+
+    public static Map<String, Object> toJson(SaleResult r) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("status", r.getStatus().name());
+        out.put("medicineId", r.getMedicineId());
+        out.put("medicineName", r.getMedicineName());
+        out.put("quantity", r.getQuantity());
+        out.put("price", r.getPrice());
+        out.put("remainingStock", r.getRemainingStock());
+        out.put("stockVersion", r.getStockVersion());
+        return out;
+    }
+
+    public static Map<String, Object> toJson(CartResult r) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("ok", r.isOk());
+        out.put("billId", r.getBillId());
+        out.put("total", r.getTotal());
+        out.put("lineCount", r.getLineCount());
+        out.put("missing", r.getMissing());
+        out.put("shortages", r.getShortages());
+        return out;
+    }
+
+    public static Map<String, Object> toJson(CartLine line) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("id", line.getMedicineId());
+        out.put("name", line.getMedicineName());
+        out.put("qty", line.getQuantity());
+        return out;
+    }
+
+    public static Map<String, Object> toJson(SaleJournal.Entry e) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("id", e.getId());
+        out.put("soldAt", e.getSoldAt());
+        out.put("terminal", e.getTerminal());
+        List<Object> lines = new ArrayList<>();
+        for (int i = 0; i < e.getLines().size(); i++) {
+            Map<String, Object> line = toJson(e.getLines().get(i));
+            line.put("price", e.getPrice(i));
+            lines.add(line);
+        }
+        out.put("lines", lines);
+        return out;
+    }
+
+    public static Map<String, Object> toJson(ReplayReport r) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("applied", r.getApplied());
+        out.put("alreadyApplied", r.getAlreadyApplied());
+        out.put("conflicts", r.getConflicts());
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static SaleJournal.Entry journalEntry(Map<String, Object> m) {
+        Object id = m.get("id");
+        Object list = m.get("lines");
+        if (!(id instanceof String) || !(list instanceof List)) throw new IllegalArgumentException("journal entry needs id and lines");
+        List<CartLine> lines = new ArrayList<>();
+        List<?> raw = (List<?>) list;
+        double[] prices = new double[raw.size()];
+        for (Object item : raw) {
+            if (!(item instanceof Map)) throw new IllegalArgumentException("each line must be an object");
+            Map<String, Object> line = (Map<String, Object>) item;
+            prices[lines.size()] = doubleValue(line.get("price"));
+            lines.add(cartLine(line));
+        }
+        Object terminal = m.get("terminal");
+        return new SaleJournal.Entry((String) id, longValue(m.get("soldAt")), terminal == null ? "" : terminal.toString(),
+                lines, prices, 0);
+    }
+
+    static ReplayReport replayReport(Map<String, Object> m) {
+        List<String> conflicts = new ArrayList<>();
+        Object list = m.get("conflicts");
+        if (list instanceof List) {
+            for (Object item : (List<?>) list) {
+                conflicts.add(String.valueOf(item));
+            }
+        }
+        return new ReplayReport(intValue(m.get("applied")), intValue(m.get("alreadyApplied")), conflicts);
+    }
+
+    public static Map<String, Object> toJson(StockBatch b) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("id", b.getId());
+        out.put("medicineId", b.getMedicineId());
+        out.put("medicineName", b.getMedicineName());
+        out.put("batchNo", b.getBatchNo());
+        out.put("expiry", b.getExpiry().toString());
+        out.put("quantity", b.getQuantity());
+        return out;
+    }
+
+    // "yyyy-MM-dd"
+    public static LocalDate dateValue(Object v) {
+        if (v == null) throw new IllegalArgumentException("date is required");
+        try {
+            return LocalDate.parse(v.toString());
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("dates must look like 2025-12-31: " + v);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<StockBatch> stockBatches(Object json) {
+        List<StockBatch> out = new ArrayList<>();
+        if (json instanceof List) {
+            for (Object item : (List<?>) json) {
+                Map<String, Object> m = (Map<String, Object>) item;
+                out.add(new StockBatch(longValue(m.get("id")), intValue(m.get("medicineId")), (String) m.get("medicineName"),
+                        (String) m.get("batchNo"), dateValue(m.get("expiry")), intValue(m.get("quantity"))));
+            }
+        }
+        return out;
+    }
+
+    // null history (unknown medicine) stays null
+    public static Map<String, Object> toJson(StockHistory h) {
+        if (h == null) return null;
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("medicineId", h.getMedicineId());
+        out.put("onHand", h.getOnHand());
+        out.put("recordedStock", h.getRecordedStock());
+        List<Object> entries = new ArrayList<>();
+        for (StockHistory.Entry e : h.getEntries()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id", e.getId());
+            m.put("batchNo", e.getBatchNo());
+            m.put("delta", e.getDelta());
+            m.put("reason", e.getReason());
+            m.put("ref", e.getRef());
+            m.put("terminal", e.getTerminal());
+            m.put("createdAt", e.getCreatedAt());
+            entries.add(m);
+        }
+        out.put("entries", entries);
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    static StockHistory stockHistory(Object json) {
+        if (!(json instanceof Map)) return null;
+        Map<String, Object> m = (Map<String, Object>) json;
+        List<StockHistory.Entry> entries = new ArrayList<>();
+        Object list = m.get("entries");
+        if (list instanceof List) {
+            for (Object item : (List<?>) list) {
+                Map<String, Object> e = (Map<String, Object>) item;
+                entries.add(new StockHistory.Entry(longValue(e.get("id")), (String) e.get("batchNo"), intValue(e.get("delta")),
+                        (String) e.get("reason"), (String) e.get("ref"), (String) e.get("terminal"), longValue(e.get("createdAt"))));
+            }
+        }
+        return new StockHistory(intValue(m.get("medicineId")), intValue(m.get("onHand")), intValue(m.get("recordedStock")), entries);
+    }
+
+    public static Map<String, Object> toJson(CatalogChanges c) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("count", c.getCount());
+        out.put("maxId", c.getMaxId());
+        out.put("syncedAt", c.getSyncedAt());
+        out.put("complete", c.isComplete());
+        List<Object> rows = new ArrayList<>();
+        for (Medicine m : c.getRows()) {
+            rows.add(toJson(m));
+        }
+        out.put("rows", rows);
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    static CatalogChanges catalogChanges(Object json) {
+        if (!(json instanceof Map)) throw new IllegalStateException("Server sent no catalog changes");
+        Map<String, Object> m = (Map<String, Object>) json;
+        return new CatalogChanges(intValue(m.get("count")), intValue(m.get("maxId")), longValue(m.get("syncedAt")),
+                Boolean.TRUE.equals(m.get("complete")), medicines(m.get("rows")));
+    }
+
+    @SuppressWarnings("unchecked")
+    static Medicine medicine(Object json) {
+        if (!(json instanceof Map)) return null;
+        Map<String, Object> m = (Map<String, Object>) json;
+        return new Medicine(intValue(m.get("id")), (String) m.get("name"), (String) m.get("company"),
+                doubleValue(m.get("price")), intValue(m.get("stock")),
+                m.get("version") != null ? longValue(m.get("version")) : Medicine.UNKNOWN_VERSION);
+    }
+
+    static List<Medicine> medicines(Object json) {
+        List<Medicine> out = new ArrayList<>();
+        if (json instanceof List) {
+            for (Object item : (List<?>) json) {
+                out.add(medicine(item));
+            }
+        }
+        return out;
+    }
+
+    static SaleResult saleResult(Map<String, Object> m) {
+        return new SaleResult(SaleResult.Status.valueOf((String) m.get("status")), (String) m.get("medicineName"),
+                intValue(m.get("medicineId")), intValue(m.get("quantity")), doubleValue(m.get("price")),
+                intValue(m.get("remainingStock")), null,
+                m.get("stockVersion") != null ? longValue(m.get("stockVersion")) : Medicine.UNKNOWN_VERSION);
+    }
+
+    static CartResult cartResult(Map<String, Object> m) {
+        List<String> missing = new ArrayList<>();
+        Object list = m.get("missing");
+        if (list instanceof List) {
+            for (Object item : (List<?>) list) {
+                missing.add(String.valueOf(item));
+            }
+        }
+        Map<String, Integer> shortages = new LinkedHashMap<>();
+        Object map = m.get("shortages");
+        if (map instanceof Map) {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) map).entrySet()) {
+                shortages.put(String.valueOf(e.getKey()), intValue(e.getValue()));
+            }
+        }
+        return new CartResult(longValue(m.get("billId")), doubleValue(m.get("total")), intValue(m.get("lineCount")),
+                missing, shortages);
+    }
+
+    public static CartLine cartLine(Map<String, Object> m) {
+        return new CartLine(intValue(m.get("id")), (String) m.get("name"), intValue(m.get("qty")));
+    }
+
+    public static int intValue(Object v) {
+        return v instanceof Number ? ((Number) v).intValue() : 0;
+    }
+
+    public static long longValue(Object v) {
+        return v instanceof Number ? ((Number) v).longValue() : 0L;
+    }
+
+    public static double doubleValue(Object v) {
+        return v instanceof Number ? ((Number) v).doubleValue() : 0.0;
+    }
+}
@@ -0,0 +1,40 @@
+package service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ReplayReport
+ *
+ * Outcome of replaying offline sales from the SaleJournal: how many were written
+ * to the database, how many had already been written by an earlier (interrupted)
+ * replay, and the ones that could not be applied as sold (unknown medicine or not
+ * enough stock left), which are recorded in `offline_sales` with status CONFLICT
+ * for someone to review.
+ */
+public class ReplayReport {
+
+    private final int applied;
+    private final int alreadyApplied;
+    private final List<String> conflicts;
+
+    ReplayReport(int applied, int alreadyApplied, List<String> conflicts) {
+        this.applied = applied;
+        this.alreadyApplied = alreadyApplied;
+        this.conflicts = Collections.unmodifiableList(conflicts);
+    }
+
+    public int getApplied() { return applied; }
+
+    // Entries found in offline_sales already (replayed before the journal was settled)
+    public int getAlreadyApplied() { return alreadyApplied; }
+
+    // One description per conflicting sale
+    public List<String> getConflicts() { return conflicts; }
+
+    @Override
+    public String toString() {
+        return String.format("%d offline sales replayed, %d already applied, %d conflicts",
+                applied, alreadyApplied, conflicts.size());
+    }
+}
@@ -0,0 +1,317 @@
+package service;
+
+import db.DBConnection;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ReportService
+ *
+ * Sales reports read from the sales_daily and sales_hourly rollups that
+ * BillingService maintains with every sale. Every query is a primary-key range scan
+ * over the requested period only, so the cost does not grow with the bill history.
+ * Reports read from the replica when one is configured and caught up.
+ * No Swing code here.
+ */
+public class ReportService {
+
+    static final String TOTALS_SQL = "SELECT COALESCE(SUM(revenue), 0), COALESCE(SUM(quantity), 0), COALESCE(SUM(sale_count), 0)"
+            + " FROM sales_daily WHERE sale_date >= ? AND sale_date < ?";
+    static final String TOP_SELLERS_SQL = "SELECT medicine_id, MAX(medicine_name), SUM(quantity) AS qty, SUM(revenue) AS rev"
+            + " FROM sales_daily WHERE sale_date >= ? AND sale_date < ?"
+            + " GROUP BY medicine_id ORDER BY qty DESC, rev DESC LIMIT ?";
+    static final String HOURLY_SQL = "SELECT HOUR(sale_hour), SUM(revenue), SUM(quantity)"
+            + " FROM sales_hourly WHERE sale_hour >= ? AND sale_hour < ? GROUP BY HOUR(sale_hour)";
+
+    // Backfill from the bill history, one day per transaction. The day's bills are read with share locks
+    // first, then its rollup rows are replaced: sales lock in the same order (bill row, then rollups), so a
+    // sale on the day being rebuilt just waits for that day, and no sale is counted twice or lost.
+
+    // Days to rebuild: from the first bill through today (sales keep adding to today while this runs)
+    static final String BILL_RANGE_SQL = "SELECT MIN(d), MAX(d) FROM (SELECT MIN(bill_date) AS d FROM bills UNION ALL SELECT MAX(bill_date) FROM bills"
+            + " UNION ALL SELECT MIN(bill_date) FROM bill_headers UNION ALL SELECT MAX(bill_date) FROM bill_headers"
+            + " UNION ALL SELECT NOW()) t";
+    static final String DAY_BILLS_SQL = "SELECT HOUR(bill_date), medicine_name, SUM(quantity), SUM(total), COUNT(*)"
+            + " FROM bills WHERE bill_date >= ? AND bill_date < ? GROUP BY HOUR(bill_date), medicine_name LOCK IN SHARE MODE";
+    static final String DAY_LINES_SQL = "SELECT HOUR(h.bill_date), l.medicine_id, MAX(l.medicine_name), SUM(l.quantity), SUM(l.line_total), COUNT(*)"
+            + " FROM bill_headers h JOIN bill_lines l ON l.bill_id = h.id"
+            + " WHERE h.bill_date >= ? AND h.bill_date < ? GROUP BY HOUR(h.bill_date), l.medicine_id LOCK IN SHARE MODE";
+    static final String DELETE_DAILY_SQL = "DELETE FROM sales_daily WHERE sale_date = ?";
+    static final String DELETE_HOURLY_SQL = "DELETE FROM sales_hourly WHERE sale_hour >= ? AND sale_hour < ?";
+    static final String DELETE_DAILY_OUTSIDE_SQL = "DELETE FROM sales_daily WHERE sale_date < ? OR sale_date > ?";
+    static final String DELETE_HOURLY_OUTSIDE_SQL = "DELETE FROM sales_hourly WHERE sale_hour < ? OR sale_hour >= ?";
+    static final String INSERT_DAILY_SQL = "INSERT INTO sales_daily(sale_date, medicine_id, medicine_name, quantity, revenue, sale_count)"
+            + " VALUES (?, ?, ?, ?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), revenue = revenue + VALUES(revenue), sale_count = sale_count + VALUES(sale_count)";
+    static final String INSERT_HOURLY_SQL = INSERT_DAILY_SQL.replace("sales_daily(sale_date,", "sales_hourly(sale_hour,");
+
+    // Attempts per day when the day's transaction is picked as a deadlock victim (a cart being inserted
+    // across the bill_lines gap the day holds) or times out on a lock
+    private static final int REBUILD_ATTEMPTS = 3;
+    private static final int MYSQL_DEADLOCK = 1213;
+    private static final int MYSQL_LOCK_WAIT_TIMEOUT = 1205;
+
+    // Revenue, units and sale lines over a period
+    public static final class Totals {
+        final double revenue;
+        final long quantity;
+        final long sales;
+
+        Totals(double revenue, long quantity, long sales) {
+            this.revenue = revenue;
+            this.quantity = quantity;
+            this.sales = sales;
+        }
+
+        public double getRevenue() { return revenue; }
+
+        public long getQuantity() { return quantity; }
+
+        public long getSales() { return sales; }
+    }
+
+    // One medicine's sales over a period (or one hour's sales, with medicineId = hour)
+    public static final class Row {
+        final int medicineId;
+        final String name;
+        final long quantity;
+        final double revenue;
+
+        Row(int medicineId, String name, long quantity, double revenue) {
+            this.medicineId = medicineId;
+            this.name = name;
+            this.quantity = quantity;
+            this.revenue = revenue;
+        }
+
+        public int getMedicineId() { return medicineId; }
+
+        public String getName() { return name; }
+
+        public long getQuantity() { return quantity; }
+
+        public double getRevenue() { return revenue; }
+    }
+
+    /**
+     * Totals for the days from (inclusive) to toExclusive.
+     */
+    public Totals totals(LocalDate from, LocalDate toExclusive) throws SQLException {
+        try (Connection conn = DBConnection.openReadConnection();
+             PreparedStatement pst = conn.prepareStatement(TOTALS_SQL)) {
+            pst.setDate(1, Date.valueOf(from));
+            pst.setDate(2, Date.valueOf(toExclusive));
+            try (ResultSet rs = pst.executeQuery()) {
+                rs.next();
+                return new Totals(rs.getDouble(1), rs.getLong(2), rs.getLong(3));
+            }
+        }
+    }
+
+    /**
+     * Best sellers by units for the days from (inclusive) to toExclusive.
+     */
+    public List<Row> topSellers(LocalDate from, LocalDate toExclusive, int limit) throws SQLException {
+        List<Row> out = new ArrayList<>();
+        try (Connection conn = DBConnection.openReadConnection();
+             PreparedStatement pst = conn.prepareStatement(TOP_SELLERS_SQL)) {
+            pst.setDate(1, Date.valueOf(from));
+            pst.setDate(2, Date.valueOf(toExclusive));
+            pst.setInt(3, limit);
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    out.add(new Row(rs.getInt(1), rs.getString(2), rs.getLong(3), rs.getDouble(4)));
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Sales per hour of the given day; hours without sales are returned as zero rows.
+     */
+    public List<Row> hourly(LocalDate day) throws SQLException {
+        long[] qty = new long[24];
+        double[] rev = new double[24];
+        try (Connection conn = DBConnection.openReadConnection();
+             PreparedStatement pst = conn.prepareStatement(HOURLY_SQL)) {
+            pst.setTimestamp(1, Timestamp.valueOf(day.atStartOfDay()));
+            pst.setTimestamp(2, Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    int h = rs.getInt(1);
+                    rev[h] = rs.getDouble(2);
+                    qty[h] = rs.getLong(3);
+                }
+            }
+        }
+        List<Row> out = new ArrayList<>(24);
+        for (int h = 0; h < 24; h++) {
+            out.add(new Row(h, String.format("%02d:00", h), qty[h], rev[h]));
+        }
+        return out;
+    }
+
+    /**
+     * Recomputes both rollup tables from bills and bill_lines, one day per short
+     * transaction, so the till keeps selling meanwhile. Rows for deleted medicines
+     * land under medicine_id 0. Meant for the first run after upgrading.
+     */
+    public void rebuild() throws SQLException {
+        try (Connection conn = DBConnection.openConnection()) {
+            Map<String, Integer> ids = medicineIds(conn);
+            LocalDate first;
+            LocalDate last;
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery(BILL_RANGE_SQL)) {
+                rs.next();
+                first = rs.getTimestamp(1).toLocalDateTime().toLocalDate();
+                last = rs.getTimestamp(2).toLocalDateTime().toLocalDate();
+            }
+            // Rollup rows outside the bill history (autocommit: sales only write today's)
+            try (PreparedStatement daily = conn.prepareStatement(DELETE_DAILY_OUTSIDE_SQL);
+                 PreparedStatement hourly = conn.prepareStatement(DELETE_HOURLY_OUTSIDE_SQL)) {
+                daily.setDate(1, Date.valueOf(first));
+                daily.setDate(2, Date.valueOf(last));
+                daily.executeUpdate();
+                hourly.setTimestamp(1, Timestamp.valueOf(first.atStartOfDay()));
+                hourly.setTimestamp(2, Timestamp.valueOf(last.plusDays(1).atStartOfDay()));
+                hourly.executeUpdate();
+            }
+            for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        rebuildDay(conn, day, ids);
+                        break;
+                    } catch (SQLException ex) {
+                        boolean retry = ex.getErrorCode() == MYSQL_DEADLOCK || ex.getErrorCode() == MYSQL_LOCK_WAIT_TIMEOUT
+                                || "40001".equals(ex.getSQLState());
+                        if (!retry || attempt >= REBUILD_ATTEMPTS) throw ex;
+                    }
+                }
+            }
+        }
+    }
+
+    // Replaces one day's rollup rows in one transaction
+    private static void rebuildDay(Connection conn, LocalDate day, Map<String, Integer> ids) throws SQLException {
+        Timestamp from = Timestamp.valueOf(day.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            // Per hour and medicine id: {quantity, revenue, sale count}, plus the name
+            Map<Long, double[]> hours = new LinkedHashMap<>();
+            Map<Long, String> names = new HashMap<>();
+            try (PreparedStatement pst = conn.prepareStatement(DAY_BILLS_SQL)) {
+                pst.setTimestamp(1, from);
+                pst.setTimestamp(2, to);
+                try (ResultSet rs = pst.executeQuery()) {
+                    while (rs.next()) {
+                        Integer id = ids.get(rs.getString(2));
+                        add(hours, names, rs.getInt(1), id == null ? 0 : id, rs.getString(2), rs.getLong(3), rs.getDouble(4), rs.getLong(5));
+                    }
+                }
+            }
+            try (PreparedStatement pst = conn.prepareStatement(DAY_LINES_SQL)) {
+                pst.setTimestamp(1, from);
+                pst.setTimestamp(2, to);
+                try (ResultSet rs = pst.executeQuery()) {
+                    while (rs.next()) {
+                        add(hours, names, rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4), rs.getDouble(5), rs.getLong(6));
+                    }
+                }
+            }
+
+            try (PreparedStatement daily = conn.prepareStatement(DELETE_DAILY_SQL);
+                 PreparedStatement hourly = conn.prepareStatement(DELETE_HOURLY_SQL)) {
+                daily.setDate(1, Date.valueOf(day));
+                daily.executeUpdate();
+                hourly.setTimestamp(1, from);
+                hourly.setTimestamp(2, to);
+                hourly.executeUpdate();
+            }
+            Map<Integer, double[]> days = new LinkedHashMap<>();
+            Map<Integer, String> dayNames = new HashMap<>();
+            try (PreparedStatement daily = conn.prepareStatement(INSERT_DAILY_SQL);
+                 PreparedStatement hourly = conn.prepareStatement(INSERT_HOURLY_SQL)) {
+                for (Map.Entry<Long, double[]> h : hours.entrySet()) {
+                    int hour = (int) (h.getKey() >>> 32);
+                    int id = (int) (long) h.getKey();
+                    double[] v = h.getValue();
+                    bind(hourly, Timestamp.valueOf(day.atTime(hour, 0)), id, names.get(h.getKey()), v);
+                    hourly.addBatch();
+                    double[] total = days.computeIfAbsent(id, k -> new double[3]);
+                    for (int i = 0; i < 3; i++) {
+                        total[i] += v[i];
+                    }
+                    dayNames.merge(id, names.get(h.getKey()), ReportService::maxName);
+                }
+                for (Map.Entry<Integer, double[]> d : days.entrySet()) {
+                    bind(daily, Date.valueOf(day), d.getKey(), dayNames.get(d.getKey()), d.getValue());
+                    daily.addBatch();
+                }
+                if (!hours.isEmpty()) {
+                    hourly.executeBatch();
+                    daily.executeBatch();
+                }
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException ex) {
+            try { conn.rollback(); } catch (SQLException ignored) {}
+            throw ex;
+        } finally {
+            try { conn.setAutoCommit(autoCommit); } catch (SQLException ignored) {}
+        }
+    }
+
+    // Medicine ids by name, for single-sale bills (which only record the name); a plain read, no locks
+    private static Map<String, Integer> medicineIds(Connection conn) throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id, name FROM medicine")) {
+            while (rs.next()) {
+                ids.put(rs.getString(2), rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    private static void add(Map<Long, double[]> hours, Map<Long, String> names, int hour, int medicineId, String name,
+                            long quantity, double revenue, long count) {
+        long key = ((long) hour << 32) | (medicineId & 0xFFFFFFFFL);
+        double[] v = hours.computeIfAbsent(key, k -> new double[3]);
+        v[0] += quantity;
+        v[1] += revenue;
+        v[2] += count;
+        names.merge(key, name, ReportService::maxName);
+    }
+
+    // Same pick as MAX(medicine_name)
+    private static String maxName(String a, String b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    private static void bind(PreparedStatement pst, Object bucket, int medicineId, String name, double[] v) throws SQLException {
+        pst.setObject(1, bucket);
+        pst.setInt(2, medicineId);
+        pst.setString(3, name);
+        pst.setLong(4, (long) v[0]);
+        pst.setDouble(5, v[1]);
+        pst.setInt(6, (int) v[2]);
+    }
+}
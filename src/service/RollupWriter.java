@@ -0,0 +1,94 @@
+package service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * RollupWriter
+ *
+ * Adds sales to the sales_daily and sales_hourly rollup tables inside the caller's
+ * transaction, so the rollups commit or roll back together with the sale itself.
+ * Rows are keyed by (day or hour, medicine id) and bumped with
+ * INSERT ... ON DUPLICATE KEY UPDATE; the database clock picks the bucket, the
+ * same clock that fills bills.bill_date. Replayed offline sales pass their own sale
+ * time instead (see the explicitTime constructor).
+ *
+ * Queue sales with add() and send them with flush(); both tables go out as one batch each.
+ */
+final class RollupWriter implements AutoCloseable {
+
+    static final String UPSERT_DAILY_SQL = "INSERT INTO sales_daily(sale_date, medicine_id, medicine_name, quantity, revenue, sale_count)"
+            + " VALUES (CURRENT_DATE, ?, ?, ?, ?, 1)"
+            + " ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), revenue = revenue + VALUES(revenue),"
+            + " sale_count = sale_count + 1, medicine_name = VALUES(medicine_name)";
+    static final String UPSERT_HOURLY_SQL = "INSERT INTO sales_hourly(sale_hour, medicine_id, medicine_name, quantity, revenue, sale_count)"
+            + " VALUES (DATE_FORMAT(NOW(), '%Y-%m-%d %H:00:00'), ?, ?, ?, ?, 1)"
+            + " ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), revenue = revenue + VALUES(revenue),"
+            + " sale_count = sale_count + 1, medicine_name = VALUES(medicine_name)";
+
+    static final String UPSERT_DAILY_AT_SQL = UPSERT_DAILY_SQL.replace("VALUES (CURRENT_DATE,", "VALUES (DATE(?),");
+    static final String UPSERT_HOURLY_AT_SQL = UPSERT_HOURLY_SQL.replace("DATE_FORMAT(NOW(),", "DATE_FORMAT(?,");
+
+    private final PreparedStatement daily;
+    private final PreparedStatement hourly;
+    private final boolean explicitTime;
+    private int pending;
+
+    RollupWriter(Connection conn) throws SQLException {
+        this(conn, false);
+    }
+
+    // explicitTime: every add() names the sale time instead of using the database clock
+    RollupWriter(Connection conn, boolean explicitTime) throws SQLException {
+        this.explicitTime = explicitTime;
+        daily = conn.prepareStatement(explicitTime ? UPSERT_DAILY_AT_SQL : UPSERT_DAILY_SQL);
+        try {
+            hourly = conn.prepareStatement(explicitTime ? UPSERT_HOURLY_AT_SQL : UPSERT_HOURLY_SQL);
+        } catch (SQLException ex) {
+            daily.close();
+            throw ex;
+        }
+    }
+
+    void add(int medicineId, String name, int quantity, double revenue) throws SQLException {
+        if (explicitTime) throw new IllegalStateException("Sale time required");
+        bind(daily, 1, medicineId, name, quantity, revenue);
+        bind(hourly, 1, medicineId, name, quantity, revenue);
+        pending++;
+    }
+
+    void add(Timestamp soldAt, int medicineId, String name, int quantity, double revenue) throws SQLException {
+        if (!explicitTime) throw new IllegalStateException("Writer uses the database clock");
+        daily.setTimestamp(1, soldAt);
+        hourly.setTimestamp(1, soldAt);
+        bind(daily, 2, medicineId, name, quantity, revenue);
+        bind(hourly, 2, medicineId, name, quantity, revenue);
+        pending++;
+    }
+
+    void flush() throws SQLException {
+        if (pending == 0) return;
+        daily.executeBatch();
+        hourly.executeBatch();
+        pending = 0;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            daily.close();
+        } finally {
+            hourly.close();
+        }
+    }
+
+    private static void bind(PreparedStatement pst, int first, int medicineId, String name, int quantity, double revenue) throws SQLException {
+        pst.setInt(first, medicineId);
+        pst.setString(first + 1, name);
+        pst.setInt(first + 2, quantity);
+        pst.setDouble(first + 3, revenue);
+        pst.addBatch();
+    }
+}
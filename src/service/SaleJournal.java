@@ -0,0 +1,266 @@
+package service;
+
+import metrics.Metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * SaleJournal
+ *
+ * Local, append-only journal of sales made while the database (or store server) was
+ * unreachable. The file is memory-mapped; every append is forced to disk before the
+ * sale is confirmed, so a confirmed offline sale survives a crash or power cut.
+ *
+ * Layout: a 64-byte header (magic, version, settled offset) followed by records of
+ * [int length][int crc32][payload]. A zero length or a CRC mismatch marks the end
+ * (a torn last write is simply dropped). Records before the settled offset have been
+ * replayed; once everything is settled the file is cleared and reused. The number of
+ * unsettled records is kept as they are appended and settled, so pendingCount() (polled
+ * by the billing window) never reads the file.
+ *
+ * The file is MEDIXHUB_JOURNAL, else medixhub-sales.journal in the working directory.
+ */
+public final class SaleJournal {
+
+    private static final int MAGIC = 0x4D584A31; // "MXJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SETTLED_AT = 8;
+    private static final int INITIAL_SIZE = 1 << 20;
+    private static final int MAX_RECORD = 1 << 20;
+
+    private static SaleJournal instance;
+
+    private final Path path;
+    private final FileChannel channel;
+    private MappedByteBuffer map;
+    private int writePos;
+    private int settledPos;
+    // Records between settledPos and writePos; written under the lock, read without it
+    private volatile int pending;
+
+    private SaleJournal(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_SIZE, channel.size()));
+        if (map.getInt(0) != MAGIC) {
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putLong(SETTLED_AT, HEADER_SIZE);
+            map.force();
+        }
+        settledPos = (int) map.getLong(SETTLED_AT);
+        writePos = settledPos;
+        int count = 0;
+        while (readRecord(writePos) != null) {
+            writePos += 8 + map.getInt(writePos);
+            count++;
+        }
+        pending = count;
+    }
+
+    /**
+     * The process-wide journal, opened on first use.
+     *
+     * @throws IOException if the journal file cannot be opened or mapped
+     */
+    public static synchronized SaleJournal get() throws IOException {
+        if (instance == null) {
+            String file = System.getenv("MEDIXHUB_JOURNAL");
+            instance = new SaleJournal(Paths.get(file != null && !file.isEmpty() ? file : "medixhub-sales.journal"));
+        }
+        return instance;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // Offline sales not yet replayed
+    public int pendingCount() {
+        return pending;
+    }
+
+    /**
+     * Appends one sale and forces it to disk.
+     *
+     * @return the stored entry (its id makes replays idempotent)
+     */
+    public synchronized Entry append(List<CartLine> lines, double[] prices) throws IOException {
+        Entry e = new Entry(UUID.randomUUID().toString(), System.currentTimeMillis(), Metrics.getTerminalId(),
+                new ArrayList<>(lines), prices.clone(), 0);
+        byte[] payload = encode(e);
+        if (payload.length > MAX_RECORD) throw new IOException("Sale too large for the journal");
+        ensureCapacity(writePos + 8 + payload.length + 4);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        for (int i = 0; i < payload.length; i++) {
+            map.put(writePos + 8 + i, payload[i]);
+        }
+        map.putInt(writePos + 4, (int) crc.getValue());
+        map.putInt(writePos, payload.length);
+        map.force();
+        writePos += 8 + payload.length;
+        pending++;
+        Metrics.increment("journal.appended");
+        return e.withEnd(writePos);
+    }
+
+    // Unsettled entries in the order they were sold
+    public synchronized List<Entry> pending() {
+        List<Entry> out = new ArrayList<>();
+        int pos = settledPos;
+        while (pos < writePos) {
+            byte[] payload = readRecord(pos);
+            if (payload == null) break;
+            pos += 8 + payload.length;
+            try {
+                out.add(decode(payload, pos));
+            } catch (IOException ex) {
+                throw new IllegalStateException("Corrupt journal record at " + (pos - 8 - payload.length) + " in " + path, ex);
+            }
+        }
+        return out;
+    }
+
+    // Mark everything up to (and including) the entry ending at endOffset as replayed
+    public synchronized void settle(int endOffset) {
+        if (endOffset <= settledPos) return;
+        int end = Math.min(endOffset, writePos);
+        // Only the record lengths are needed to count what is settled; they were checked when written or opened
+        int settled = 0;
+        for (int pos = settledPos; pos < end; pos += 8 + map.getInt(pos)) {
+            settled++;
+        }
+        settledPos = end;
+        pending -= settled;
+        if (settledPos == writePos) {
+            // All replayed: clear the records so the file starts over
+            for (int i = HEADER_SIZE; i < writePos; i++) {
+                map.put(i, (byte) 0);
+            }
+            settledPos = writePos = HEADER_SIZE;
+            pending = 0;
+        }
+        map.putLong(SETTLED_AT, settledPos);
+        map.force();
+    }
+
+    private void ensureCapacity(int needed) throws IOException {
+        if (needed <= map.capacity()) return;
+        long size = map.capacity();
+        while (size < needed) size *= 2;
+        map.force();
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    // Payload of the record at pos, or null at the end of the journal
+    private byte[] readRecord(int pos) {
+        if (pos + 8 > map.capacity()) return null;
+        int len = map.getInt(pos);
+        if (len <= 0 || len > MAX_RECORD || pos + 8 + len > map.capacity()) return null;
+        byte[] payload = new byte[len];
+        for (int i = 0; i < len; i++) {
+            payload[i] = map.get(pos + 8 + i);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == map.getInt(pos + 4) ? payload : null;
+    }
+
+    private static byte[] encode(Entry e) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(buf)) {
+            out.writeUTF(e.id);
+            out.writeLong(e.soldAt);
+            out.writeUTF(e.terminal);
+            out.writeInt(e.lines.size());
+            for (int i = 0; i < e.lines.size(); i++) {
+                CartLine line = e.lines.get(i);
+                out.writeInt(line.getMedicineId());
+                out.writeUTF(line.getMedicineName() == null ? "" : line.getMedicineName());
+                out.writeInt(line.getQuantity());
+                out.writeDouble(e.prices[i]);
+            }
+        }
+        return buf.toByteArray();
+    }
+
+    private static Entry decode(byte[] payload, int end) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            String id = in.readUTF();
+            long soldAt = in.readLong();
+            String terminal = in.readUTF();
+            int n = in.readInt();
+            List<CartLine> lines = new ArrayList<>(n);
+            double[] prices = new double[n];
+            for (int i = 0; i < n; i++) {
+                lines.add(new CartLine(in.readInt(), in.readUTF(), in.readInt()));
+                prices[i] = in.readDouble();
+            }
+            return new Entry(id, soldAt, terminal, lines, prices, end);
+        }
+    }
+
+    /**
+     * One offline sale: the lines sold with the prices charged at the counter.
+     */
+    public static final class Entry {
+        private final String id;
+        private final long soldAt;
+        private final String terminal;
+        private final List<CartLine> lines;
+        private final double[] prices;
+        private final int end;
+
+        Entry(String id, long soldAt, String terminal, List<CartLine> lines, double[] prices, int end) {
+            this.id = id;
+            this.soldAt = soldAt;
+            this.terminal = terminal;
+            this.lines = Collections.unmodifiableList(lines);
+            this.prices = prices;
+            this.end = end;
+        }
+
+        Entry withEnd(int newEnd) {
+            return new Entry(id, soldAt, terminal, lines, prices, newEnd);
+        }
+
+        public String getId() { return id; }
+
+        // Epoch millis on the terminal's clock
+        public long getSoldAt() { return soldAt; }
+
+        public String getTerminal() { return terminal; }
+
+        public List<CartLine> getLines() { return lines; }
+
+        public double getPrice(int line) { return prices[line]; }
+
+        public double getTotal() {
+            double total = 0.0;
+            for (int i = 0; i < lines.size(); i++) {
+                total += prices[i] * lines.get(i).getQuantity();
+            }
+            return total;
+        }
+
+        // Journal offset just past this entry (pass to settle())
+        int getEnd() { return end; }
+    }
+}
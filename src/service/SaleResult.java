@@ -0,0 +1,73 @@
+package service;
+
+/**
+ * SaleResult
+ *
+ * Outcome of a single sale: either the sale went through (with price, total and
+ * remaining stock), or it was rejected because the medicine is unknown or short on stock.
+ * A sale made while the database was unreachable is checked against the catalog cache
+ * and carries the id of its SaleJournal entry.
+ */
+public class SaleResult {
+
+    public enum Status { OK, NOT_FOUND, INSUFFICIENT_STOCK }
+
+    private final Status status;
+    private final String medicineName;
+    private final int medicineId;
+    private final int quantity;
+    private final double price;
+    private final int remainingStock;
+    private final String journalId;
+    private final long stockVersion;
+
+    SaleResult(Status status, String medicineName, int medicineId, int quantity, double price, int remainingStock) {
+        this(status, medicineName, medicineId, quantity, price, remainingStock, null);
+    }
+
+    SaleResult(Status status, String medicineName, int medicineId, int quantity, double price, int remainingStock,
+               String journalId) {
+        this(status, medicineName, medicineId, quantity, price, remainingStock, journalId, Medicine.UNKNOWN_VERSION);
+    }
+
+    SaleResult(Status status, String medicineName, int medicineId, int quantity, double price, int remainingStock,
+               String journalId, long stockVersion) {
+        this.status = status;
+        this.medicineName = medicineName;
+        this.medicineId = medicineId;
+        this.quantity = quantity;
+        this.price = price;
+        this.remainingStock = remainingStock;
+        this.journalId = journalId;
+        this.stockVersion = stockVersion;
+    }
+
+    static SaleResult notFound(String medicineName, int quantity) {
+        return new SaleResult(Status.NOT_FOUND, medicineName, 0, quantity, 0.0, 0);
+    }
+
+    public Status getStatus() { return status; }
+
+    public boolean isOk() { return status == Status.OK; }
+
+    public String getMedicineName() { return medicineName; }
+
+    public int getMedicineId() { return medicineId; }
+
+    public int getQuantity() { return quantity; }
+
+    public double getPrice() { return price; }
+
+    public double getTotal() { return price * quantity; }
+
+    // Stock left after the sale, or the available stock when the sale was rejected
+    public int getRemainingStock() { return remainingStock; }
+
+    // True when the sale was journaled offline and still has to be replayed into the database
+    public boolean isOffline() { return journalId != null; }
+
+    public String getJournalId() { return journalId; }
+
+    // medicine.stock_version once the remaining stock above was committed; Medicine.UNKNOWN_VERSION if not known
+    public long getStockVersion() { return stockVersion; }
+}
@@ -0,0 +1,55 @@
+package service;
+
+import java.time.LocalDate;
+
+/**
+ * StockBatch
+ *
+ * Immutable snapshot of one `medicine_batches` row: units of a medicine received
+ * under one batch number, all expiring on the same date.
+ */
+public class StockBatch {
+
+    private final long id;
+    private final int medicineId;
+    private final String medicineName;
+    private final String batchNo;
+    private final LocalDate expiry;
+    private final int quantity;
+
+    public StockBatch(long id, int medicineId, String medicineName, String batchNo, LocalDate expiry, int quantity) {
+        this.id = id;
+        this.medicineId = medicineId;
+        this.medicineName = medicineName;
+        this.batchNo = batchNo;
+        this.expiry = expiry;
+        this.quantity = quantity;
+    }
+
+    public long getId() { return id; }
+
+    public int getMedicineId() { return medicineId; }
+
+    // May be null when the batch was read without its medicine
+    public String getMedicineName() { return medicineName; }
+
+    public String getBatchNo() { return batchNo; }
+
+    public LocalDate getExpiry() { return expiry; }
+
+    public int getQuantity() { return quantity; }
+
+    // Sellable through its expiry date, not after
+    public boolean isExpired(LocalDate today) {
+        return expiry.isBefore(today);
+    }
+
+    public StockBatch withQuantity(int newQuantity) {
+        return new StockBatch(id, medicineId, medicineName, batchNo, expiry, newQuantity);
+    }
+
+    @Override
+    public String toString() {
+        return batchNo + " (exp " + expiry + ", " + quantity + ")";
+    }
+}
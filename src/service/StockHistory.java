@@ -0,0 +1,79 @@
+package service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * StockHistory
+ *
+ * A medicine's latest stock movements from `stock_ledger`, newest first, with the
+ * on-hand figure the ledger adds up to (latest snapshot plus the movements after it)
+ * and, for comparison, the medicine.stock column that sales check against.
+ */
+public class StockHistory {
+
+    // One stock_ledger row
+    public static class Entry {
+        private final long id;
+        private final String batchNo;
+        private final int delta;
+        private final String reason;
+        private final String ref;
+        private final String terminal;
+        private final long createdAt;
+
+        public Entry(long id, String batchNo, int delta, String reason, String ref, String terminal, long createdAt) {
+            this.id = id;
+            this.batchNo = batchNo;
+            this.delta = delta;
+            this.reason = reason;
+            this.ref = ref;
+            this.terminal = terminal;
+            this.createdAt = createdAt;
+        }
+
+        public long getId() { return id; }
+
+        // Null unless the movement belongs to one batch (receipts and write-offs)
+        public String getBatchNo() { return batchNo; }
+
+        // Units added (positive) or removed (negative)
+        public int getDelta() { return delta; }
+
+        // A StockLedger.Reason name
+        public String getReason() { return reason; }
+
+        // What caused it, e.g. "bill_headers/42"; may be null
+        public String getRef() { return ref; }
+
+        public String getTerminal() { return terminal; }
+
+        // Epoch millis
+        public long getCreatedAt() { return createdAt; }
+    }
+
+    private final int medicineId;
+    private final int onHand;
+    private final int recordedStock;
+    private final List<Entry> entries;
+
+    public StockHistory(int medicineId, int onHand, int recordedStock, List<Entry> entries) {
+        this.medicineId = medicineId;
+        this.onHand = onHand;
+        this.recordedStock = recordedStock;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public int getMedicineId() { return medicineId; }
+
+    // Snapshot plus later ledger movements
+    public int getOnHand() { return onHand; }
+
+    // medicine.stock as read in the same query
+    public int getRecordedStock() { return recordedStock; }
+
+    // True when stock was changed without going through the app (by hand, bench tools)
+    public boolean isDrifted() { return onHand != recordedStock; }
+
+    public List<Entry> getEntries() { return entries; }
+}
@@ -0,0 +1,231 @@
+package service;
+
+import db.DBConnection;
+import metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StockLedger
+ *
+ * Every stock movement (opening stock, receipt, sale, write-off, CSV import) is
+ * appended to `stock_ledger` by LedgerWriter in the transaction that changes
+ * medicine.stock, which gives a full audit trail of how each figure came about.
+ * On hand according to the ledger is the medicine's row in `stock_snapshots` plus
+ * its ledger rows not yet folded into it; compact() periodically folds those rows
+ * into the snapshots and sets their `folded` flag, so that sum only ever reads the
+ * last few minutes of movements. Folded rows are kept for the audit trail.
+ *
+ * Rows are folded by flag rather than below an id high-water mark: ids are assigned
+ * at insert, so a sale that waited on a lock after its ledger insert commits a row
+ * below ids already folded. Compaction only sees committed rows and marks exactly the
+ * rows it summed, so such a row is simply folded on a later run.
+ *
+ * medicine.stock stays the figure sales are checked against: its guarded UPDATE is
+ * what stops two terminals overselling. After each compaction the two are compared
+ * and any medicine whose stock was changed outside the app is reported.
+ */
+public class StockLedger {
+
+    // Why stock moved; stored in stock_ledger.reason
+    public enum Reason { OPENING, RECEIVE, SALE, WRITE_OFF, IMPORT }
+
+    static final String ON_HAND_SQL = "SELECT m.stock, COALESCE(s.on_hand, 0)"
+            + " + COALESCE((SELECT SUM(l.delta) FROM stock_ledger l WHERE l.folded = 0 AND l.medicine_id = m.id), 0) AS on_hand"
+            + " FROM medicine m LEFT JOIN stock_snapshots s ON s.medicine_id = m.id WHERE m.id = ?";
+    static final String HISTORY_SQL = "SELECT l.id, b.batch_no, l.delta, l.reason, l.ref, l.terminal, l.created_at"
+            + " FROM stock_ledger l LEFT JOIN medicine_batches b ON b.id = l.batch_id"
+            + " WHERE l.medicine_id = ? ORDER BY l.id DESC LIMIT ?";
+    static final String DRIFT_SQL = "SELECT m.name, m.stock, COALESCE(s.on_hand, 0) + COALESCE(SUM(l.delta), 0) AS on_hand"
+            + " FROM medicine m LEFT JOIN stock_snapshots s ON s.medicine_id = m.id"
+            + " LEFT JOIN stock_ledger l ON l.folded = 0 AND l.medicine_id = m.id"
+            + " GROUP BY m.id, m.name, m.stock, s.on_hand HAVING m.stock <> on_hand ORDER BY m.name";
+
+    // Serializes compactions; folded_to records the highest ledger id folded so far
+    static final String WATERMARK_SQL = "SELECT folded_to FROM ledger_compaction WHERE id = 1 FOR UPDATE";
+    // Plain (snapshot) read on ix_ledger_unfolded: committed rows only, no locks that would hold up sales
+    static final String PENDING_SQL = "SELECT id, medicine_id, delta FROM stock_ledger WHERE folded = 0 ORDER BY id LIMIT ?";
+    static final String FOLD_SQL = "INSERT INTO stock_snapshots(medicine_id, on_hand, ledger_id) VALUES (?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE on_hand = on_hand + VALUES(on_hand), ledger_id = GREATEST(ledger_id, VALUES(ledger_id))";
+    static final String MARK_SQL = "UPDATE stock_ledger SET folded = 1 WHERE folded = 0 AND id IN (%s)";
+    static final String ADVANCE_SQL = "UPDATE ledger_compaction SET folded_to = GREATEST(folded_to, ?), compacted_at = NOW() WHERE id = 1";
+
+    private static final long COMPACT_INTERVAL_MS = 5 * 60_000L;
+    // Ledger rows folded per transaction
+    private static final int FOLD_BATCH = 1000;
+    private static final int MAX_DRIFT_LOGGED = 10;
+
+    private static ScheduledExecutorService scheduler;
+
+    /**
+     * The latest movements of one medicine and what they add up to.
+     *
+     * @return null when the medicine does not exist
+     */
+    public StockHistory history(int medicineId, int limit) throws SQLException {
+        if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            return RemoteClient.stockHistory(remote.get("/api/ledger", "id", medicineId, "limit", limit).get("history"));
+        }
+
+        try (Connection conn = DBConnection.openConnection()) {
+            int stock;
+            int onHand;
+            try (PreparedStatement pst = conn.prepareStatement(ON_HAND_SQL)) {
+                pst.setInt(1, medicineId);
+                try (ResultSet rs = pst.executeQuery()) {
+                    if (!rs.next()) return null;
+                    stock = rs.getInt("stock");
+                    onHand = rs.getInt("on_hand");
+                }
+            }
+
+            List<StockHistory.Entry> entries = new ArrayList<>();
+            try (PreparedStatement pst = conn.prepareStatement(HISTORY_SQL)) {
+                pst.setInt(1, medicineId);
+                pst.setInt(2, limit);
+                try (ResultSet rs = pst.executeQuery()) {
+                    while (rs.next()) {
+                        entries.add(new StockHistory.Entry(rs.getLong("id"), rs.getString("batch_no"), rs.getInt("delta"),
+                                rs.getString("reason"), rs.getString("ref"), rs.getString("terminal"),
+                                rs.getTimestamp("created_at").getTime()));
+                    }
+                }
+            }
+            return new StockHistory(medicineId, onHand, stock, entries);
+        }
+    }
+
+    /**
+     * Folds every committed, not yet folded ledger row into stock_snapshots and marks it
+     * folded, FOLD_BATCH rows per transaction. Terminals that compact at the same time
+     * queue on the ledger_compaction row.
+     *
+     * @return the number of ledger rows folded
+     */
+    public int compact() throws SQLException {
+        long start = System.nanoTime();
+        try (Connection conn = DBConnection.openConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                int folded = 0;
+                int n;
+                do {
+                    n = foldBatch(conn);
+                    folded += n;
+                } while (n == FOLD_BATCH);
+                return folded;
+            } finally {
+                try { conn.setAutoCommit(autoCommit); } catch (SQLException ignored) {}
+                Metrics.timer("ledger.compact").recordSince(start);
+            }
+        }
+    }
+
+    // One transaction: sum up to FOLD_BATCH unfolded rows per medicine, add them to the snapshots, mark exactly those rows
+    private int foldBatch(Connection conn) throws SQLException {
+        try {
+            try (PreparedStatement pst = conn.prepareStatement(WATERMARK_SQL);
+                 ResultSet rs = pst.executeQuery()) {
+                if (!rs.next()) throw new SQLException("ledger_compaction has no watermark row; run the schema migration.");
+            }
+
+            List<Long> ids = new ArrayList<>();
+            Map<Integer, long[]> perMedicine = new LinkedHashMap<>(); // medicine id -> {sum of deltas, max ledger id}
+            try (PreparedStatement pst = conn.prepareStatement(PENDING_SQL)) {
+                pst.setInt(1, FOLD_BATCH);
+                try (ResultSet rs = pst.executeQuery()) {
+                    while (rs.next()) {
+                        long id = rs.getLong(1);
+                        long[] acc = perMedicine.computeIfAbsent(rs.getInt(2), k -> new long[2]);
+                        acc[0] += rs.getInt(3);
+                        acc[1] = Math.max(acc[1], id);
+                        ids.add(id);
+                    }
+                }
+            }
+            if (ids.isEmpty()) {
+                conn.rollback();
+                return 0;
+            }
+
+            try (PreparedStatement pstFold = conn.prepareStatement(FOLD_SQL)) {
+                for (Map.Entry<Integer, long[]> e : perMedicine.entrySet()) {
+                    pstFold.setInt(1, e.getKey());
+                    pstFold.setLong(2, e.getValue()[0]);
+                    pstFold.setLong(3, e.getValue()[1]);
+                    pstFold.addBatch();
+                }
+                pstFold.executeBatch();
+            }
+            try (PreparedStatement pst = conn.prepareStatement(String.format(MARK_SQL, BillingService.placeholders(ids.size())))) {
+                for (int i = 0; i < ids.size(); i++) {
+                    pst.setLong(i + 1, ids.get(i));
+                }
+                // Anything else folding these rows would have queued on the watermark row
+                if (pst.executeUpdate() != ids.size()) throw new SQLException("Ledger rows were folded concurrently; nothing was changed.");
+            }
+            try (PreparedStatement pst = conn.prepareStatement(ADVANCE_SQL)) {
+                pst.setLong(1, ids.get(ids.size() - 1));
+                pst.executeUpdate();
+            }
+            conn.commit();
+            return ids.size();
+        } catch (SQLException | RuntimeException ex) {
+            try { conn.rollback(); } catch (SQLException ignored) {}
+            throw ex;
+        }
+    }
+
+    // Medicines whose medicine.stock differs from what the ledger adds up to, e.g. "Cetirizine: stock 40, ledger 52"
+    public List<String> drift() throws SQLException {
+        List<String> out = new ArrayList<>();
+        try (Connection conn = DBConnection.openConnection();
+             PreparedStatement pst = conn.prepareStatement(DRIFT_SQL);
+             ResultSet rs = pst.executeQuery()) {
+            while (rs.next()) {
+                out.add(rs.getString("name") + ": stock " + rs.getInt("stock") + ", ledger " + rs.getInt("on_hand"));
+            }
+        }
+        return out;
+    }
+
+    // Compact in the background every few minutes (idempotent); thin clients leave it to the store server
+    public static synchronized void startCompaction() {
+        if (scheduler != null || RemoteClient.get() != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ledger-compaction");
+            t.setDaemon(true);
+            return t;
+        });
+        StockLedger ledger = new StockLedger();
+        scheduler.scheduleWithFixedDelay(ledger::compactOnce, COMPACT_INTERVAL_MS, COMPACT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void compactOnce() {
+        try {
+            if (compact() == 0) return;
+            List<String> drifted = drift();
+            if (drifted.isEmpty()) return;
+            Metrics.increment("ledger.drift");
+            System.err.println("Stock ledger: " + drifted.size() + " medicines differ from medicine.stock: "
+                    + String.join("; ", drifted.subList(0, Math.min(MAX_DRIFT_LOGGED, drifted.size())))
+                    + (drifted.size() > MAX_DRIFT_LOGGED ? "; ..." : ""));
+        } catch (SQLException | RuntimeException ex) {
+            Metrics.increment("ledger.errors");
+            System.err.println("Stock ledger compaction failed: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package service;
+
+import db.DBConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * StockService
+ *
+ * Adds medicines and receives stock, keeping the catalog cache in step.
+ * Stock received with a batch number and expiry date goes into `medicine_batches`
+ * as well as `medicine.stock`, in one transaction, so billing can sell it
+ * first-expiry-first-out (see BatchBook). Every change to medicine.stock is also
+ * appended to the stock ledger (see StockLedger) in the same transaction.
+ * Talks to the store server instead of the database in thin-client mode.
+ */
+public class StockService {
+
+    static final String INSERT_SQL = "INSERT INTO medicine(name, company, price, stock) VALUES (?, ?, ?, ?)";
+    // Stock and batch writes bump stock_version so other terminals' BatchBook shelves go stale
+    static final String ADD_BY_ID_SQL = "UPDATE medicine SET stock = stock + ?, stock_version = stock_version + 1 WHERE id = ?";
+    static final String ADD_BY_NAME_SQL = "UPDATE medicine SET stock = stock + ?, stock_version = stock_version + 1 WHERE name = ?";
+
+    static final String LOCK_BY_ID_SQL = "SELECT id, stock, stock_version FROM medicine WHERE id = ? FOR UPDATE";
+    static final String LOCK_BY_NAME_SQL = "SELECT id, stock, stock_version FROM medicine WHERE name = ? FOR UPDATE";
+    static final String FIND_BATCH_SQL = "SELECT id, expiry FROM medicine_batches WHERE medicine_id = ? AND batch_no = ?";
+    static final String UPSERT_BATCH_SQL = "INSERT INTO medicine_batches(medicine_id, batch_no, expiry, quantity) VALUES (?, ?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity)";
+    static final String BATCH_OWNER_SQL = "SELECT medicine_id FROM medicine_batches WHERE id = ?";
+    static final String LOCK_BATCH_SQL = "SELECT quantity FROM medicine_batches WHERE id = ? FOR UPDATE";
+    static final String EMPTY_BATCH_SQL = "UPDATE medicine_batches SET quantity = 0 WHERE id = ?";
+    static final String REMOVE_STOCK_SQL = "UPDATE medicine SET stock = GREATEST(stock - ?, 0), stock_version = stock_version + 1 WHERE id = ?";
+    // Range scan on ix_batches_open_expiry: used-up batches have no open_expiry and are never read
+    static final String EXPIRING_SQL = "SELECT b.id, b.medicine_id, m.name, b.batch_no, b.expiry, b.quantity"
+            + " FROM medicine_batches b JOIN medicine m ON m.id = b.medicine_id"
+            + " WHERE b.open_expiry <= ? ORDER BY b.open_expiry, m.name";
+
+    private static final int MYSQL_DUPLICATE_KEY = 1062;
+
+    /**
+     * Adds qty units to a medicine's stock, by id when known (id > 0), else by name.
+     *
+     * @return the number of rows updated (0 when the medicine does not exist)
+     */
+    public int addStock(int id, String name, int qty) throws SQLException {
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("id", id);
+            body.put("name", name);
+            body.put("qty", qty);
+            int affected = RemoteClient.intValue(remote.post("/api/stock", body).get("updated"));
+            CatalogCache.get().invalidate(name);
+            return affected;
+        }
+
+        try (Connection conn = DBConnection.openConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pst = conn.prepareStatement(id > 0 ? ADD_BY_ID_SQL : ADD_BY_NAME_SQL);
+                 LedgerWriter ledger = new LedgerWriter(conn)) {
+                pst.setInt(1, qty);
+                if (id > 0) pst.setInt(2, id); else pst.setString(2, name);
+                int affected = pst.executeUpdate();
+                if (affected > 0) {
+                    if (id > 0) ledger.add(id, null, qty, StockLedger.Reason.RECEIVE, null);
+                    else ledger.addByName(name, qty, StockLedger.Reason.RECEIVE, null);
+                    ledger.flush();
+                }
+                conn.commit();
+                CatalogCache.get().invalidate(name);
+                return affected;
+            } catch (SQLException | RuntimeException ex) {
+                try { conn.rollback(); } catch (SQLException ignored) {}
+                throw ex;
+            } finally {
+                try { conn.setAutoCommit(autoCommit); } catch (SQLException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Inserts a new medicine.
+     *
+     * @return the stored medicine with its generated id, or null if nothing was inserted
+     * @throws IllegalArgumentException if a medicine with that name already exists
+     */
+    public Medicine addMedicine(String name, String company, double price, int stock) throws SQLException {
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("name", name);
+            body.put("company", company);
+            body.put("price", price);
+            body.put("stock", stock);
+            Medicine m = RemoteClient.medicine(remote.post("/api/medicines", body).get("medicine"));
+            if (m != null) CatalogCache.get().put(m);
+            return m;
+        }
+
+        try (Connection conn = DBConnection.openConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pst = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                pst.setString(1, name);
+                pst.setString(2, company);
+                pst.setDouble(3, price);
+                pst.setInt(4, stock);
+                try {
+                    if (pst.executeUpdate() == 0) {
+                        conn.rollback();
+                        return null;
+                    }
+                } catch (SQLException ex) {
+                    // medicine.name is unique (schema migration 4)
+                    if (ex.getErrorCode() == MYSQL_DUPLICATE_KEY) {
+                        throw new IllegalArgumentException("A medicine named '" + name + "' already exists; use Add Stock instead.");
+                    }
+                    throw ex;
+                }
+
+                int id;
+                try (ResultSet keys = pst.getGeneratedKeys()) {
+                    if (!keys.next()) throw new SQLException("No medicine id generated.");
+                    id = keys.getInt(1);
+                }
+                try (LedgerWriter ledger = new LedgerWriter(conn)) {
+                    ledger.add(id, null, stock, StockLedger.Reason.OPENING, null);
+                    ledger.flush();
+                }
+                conn.commit();
+
+                // Make the new medicine visible to the catalog cache without another query
+                Medicine m = new Medicine(id, name, company, price, stock, 0L);
+                CatalogCache.get().put(m);
+                return m;
+            } catch (SQLException | RuntimeException ex) {
+                try { conn.rollback(); } catch (SQLException ignored) {}
+                throw ex;
+            } finally {
+                try { conn.setAutoCommit(autoCommit); } catch (SQLException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Receives qty units of a medicine (by id when known, else by name) as batch batchNo
+     * expiring on expiry. Receiving more of a batch already on record adds to it.
+     *
+     * @return 1, or 0 when the medicine does not exist
+     * @throws IllegalArgumentException if that batch is already recorded with another expiry date
+     */
+    public int receiveBatch(int id, String name, String batchNo, LocalDate expiry, int qty) throws SQLException {
+        if (qty <= 0) throw new IllegalArgumentException("Quantity must be positive: " + qty);
+        if (batchNo == null || batchNo.trim().isEmpty() || expiry == null) {
+            throw new IllegalArgumentException("Batch number and expiry date are required.");
+        }
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("id", id);
+            body.put("name", name);
+            body.put("batchNo", batchNo);
+            body.put("expiry", expiry.toString());
+            body.put("qty", qty);
+            int affected = RemoteClient.intValue(remote.post("/api/batches", body).get("updated"));
+            CatalogCache.get().invalidate(name);
+            return affected;
+        }
+
+        try (Connection conn = DBConnection.openConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                // Lock the medicine row first, in the same order as a sale
+                int medicineId;
+                int stock;
+                long version;
+                try (PreparedStatement pst = conn.prepareStatement(id > 0 ? LOCK_BY_ID_SQL : LOCK_BY_NAME_SQL)) {
+                    if (id > 0) pst.setInt(1, id); else pst.setString(1, name);
+                    try (ResultSet rs = pst.executeQuery()) {
+                        if (!rs.next()) {
+                            conn.rollback();
+                            return 0;
+                        }
+                        medicineId = rs.getInt("id");
+                        stock = rs.getInt("stock");
+                        version = rs.getLong("stock_version");
+                    }
+                }
+
+                Long batchId = null;
+                try (PreparedStatement pst = conn.prepareStatement(FIND_BATCH_SQL)) {
+                    pst.setInt(1, medicineId);
+                    pst.setString(2, batchNo);
+                    try (ResultSet rs = pst.executeQuery()) {
+                        if (rs.next()) {
+                            if (!rs.getDate("expiry").toLocalDate().equals(expiry)) {
+                                throw new IllegalArgumentException("Batch " + batchNo + " is already recorded with expiry "
+                                        + rs.getDate("expiry").toLocalDate() + ".");
+                            }
+                            batchId = rs.getLong("id");
+                        }
+                    }
+                }
+
+                try (PreparedStatement pstBatch = conn.prepareStatement(UPSERT_BATCH_SQL, Statement.RETURN_GENERATED_KEYS);
+                     PreparedStatement pstStock = conn.prepareStatement(ADD_BY_ID_SQL);
+                     LedgerWriter ledger = new LedgerWriter(conn)) {
+                    pstBatch.setInt(1, medicineId);
+                    pstBatch.setString(2, batchNo);
+                    pstBatch.setDate(3, java.sql.Date.valueOf(expiry));
+                    pstBatch.setInt(4, qty);
+                    pstBatch.executeUpdate();
+                    if (batchId == null) {
+                        try (ResultSet keys = pstBatch.getGeneratedKeys()) {
+                            if (!keys.next()) throw new SQLException("No batch id generated.");
+                            batchId = keys.getLong(1);
+                        }
+                    }
+                    pstStock.setInt(1, qty);
+                    pstStock.setInt(2, medicineId);
+                    pstStock.executeUpdate();
+                    ledger.add(medicineId, batchId, qty, StockLedger.Reason.RECEIVE, null);
+                    ledger.flush();
+                }
+
+                conn.commit();
+                BatchBook.get().invalidate(medicineId);
+                CatalogCache.get().updateStock(medicineId, stock + qty, version + 1);
+                return 1;
+            } catch (SQLException | RuntimeException ex) {
+                try { conn.rollback(); } catch (SQLException ignored) {}
+                throw ex;
+            } finally {
+                try { conn.setAutoCommit(autoCommit); } catch (SQLException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Removes whatever is left of a batch (expired or damaged) from the batch and from
+     * the medicine's stock.
+     *
+     * @return the units written off (0 if the batch was already empty or does not exist)
+     */
+    public int writeOffBatch(StockBatch batch) throws SQLException {
+        long batchId = batch.getId();
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("id", batchId);
+            int units = RemoteClient.intValue(remote.post("/api/batches/write-off", body).get("units"));
+            if (batch.getMedicineName() != null) CatalogCache.get().invalidate(batch.getMedicineName());
+            return units;
+        }
+
+        try (Connection conn = DBConnection.openConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                Integer medicineId = null;
+                try (PreparedStatement pst = conn.prepareStatement(BATCH_OWNER_SQL)) {
+                    pst.setLong(1, batchId);
+                    try (ResultSet rs = pst.executeQuery()) {
+                        if (rs.next()) medicineId = rs.getInt(1);
+                    }
+                }
+                if (medicineId == null) {
+                    conn.rollback();
+                    return 0;
+                }
+
+                // Medicine row before batch row, in the same order as a sale
+                int stock;
+                long version;
+                try (PreparedStatement pst = conn.prepareStatement(LOCK_BY_ID_SQL)) {
+                    pst.setInt(1, medicineId);
+                    try (ResultSet rs = pst.executeQuery()) {
+                        if (!rs.next()) {
+                            conn.rollback();
+                            return 0;
+                        }
+                        stock = rs.getInt("stock");
+                        version = rs.getLong("stock_version");
+                    }
+                }
+                int units;
+                try (PreparedStatement pst = conn.prepareStatement(LOCK_BATCH_SQL)) {
+                    pst.setLong(1, batchId);
+                    try (ResultSet rs = pst.executeQuery()) {
+                        units = rs.next() ? rs.getInt(1) : 0;
+                    }
+                }
+                if (units <= 0) {
+                    conn.rollback();
+                    return 0;
+                }
+
+                try (PreparedStatement pstBatch = conn.prepareStatement(EMPTY_BATCH_SQL);
+                     PreparedStatement pstStock = conn.prepareStatement(REMOVE_STOCK_SQL);
+                     LedgerWriter ledger = new LedgerWriter(conn)) {
+                    pstBatch.setLong(1, batchId);
+                    pstBatch.executeUpdate();
+                    pstStock.setInt(1, units);
+                    pstStock.setInt(2, medicineId);
+                    pstStock.executeUpdate();
+                    // REMOVE_STOCK_SQL stops at zero; record what actually left medicine.stock
+                    ledger.add(medicineId, batchId, -Math.min(units, stock), StockLedger.Reason.WRITE_OFF, null);
+                    ledger.flush();
+                }
+
+                conn.commit();
+                BatchBook.get().invalidate(medicineId);
+                CatalogCache.get().updateStock(medicineId, Math.max(0, stock - units), version + 1);
+                return units;
+            } catch (SQLException | RuntimeException ex) {
+                try { conn.rollback(); } catch (SQLException ignored) {}
+                throw ex;
+            } finally {
+                try { conn.setAutoCommit(autoCommit); } catch (SQLException ignored) {}
+            }
+        }
+    }
+
+    // Batches with stock left that have expired or expire within the next days days, soonest first
+    public List<StockBatch> expiringWithin(int days) throws SQLException {
+        if (days < 0) throw new IllegalArgumentException("days must not be negative");
+        RemoteClient remote = RemoteClient.get();
+        if (remote != null) {
+            return RemoteClient.stockBatches(remote.get("/api/batches/expiring", "days", days).get("batches"));
+        }
+
+        List<StockBatch> out = new ArrayList<>();
+        try (Connection conn = DBConnection.openConnection();
+             PreparedStatement pst = conn.prepareStatement(EXPIRING_SQL)) {
+            pst.setDate(1, java.sql.Date.valueOf(LocalDate.now().plusDays(days)));
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    out.add(new StockBatch(rs.getLong("id"), rs.getInt("medicine_id"), rs.getString("name"),
+                            rs.getString("batch_no"), rs.getDate("expiry").toLocalDate(), rs.getInt("quantity")));
+                }
+            }
+        }
+        return out;
+    }
+}
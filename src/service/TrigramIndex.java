@@ -0,0 +1,181 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * TrigramIndex
+ *
+ * In-memory substring index over medicine name and company. Every indexed text is
+ * split into overlapping 3-character grams; each gram maps to a sorted list of ids.
+ * A query intersects the posting lists of its own grams (smallest first) and then
+ * confirms each candidate with a plain contains() check, so results are exact.
+ * Queries shorter than three characters fall back to a scan of the stored texts.
+ *
+ * Texts are expected to be normalized (see CatalogCache.normalize). Thread-safe.
+ */
+public class TrigramIndex {
+
+    // Growable sorted int list used for posting lists
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) return;
+            pos = -pos - 1;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) return;
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Postings> grams = new HashMap<>();
+    private final Map<Integer, String[]> docs = new HashMap<>();
+
+    // Index (or re-index) the given fields under id
+    public void put(int id, String... fields) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            String[] copy = fields.clone();
+            docs.put(id, copy);
+            for (String f : copy) {
+                if (f == null) continue;
+                for (int i = 0; i + 3 <= f.length(); i++) {
+                    grams.computeIfAbsent(gram(f, i), k -> new Postings()).add(id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            grams.clear();
+            docs.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids (ascending) whose fields contain the normalized query.
+     * An empty query matches nothing.
+     */
+    public int[] search(String query) {
+        if (query == null || query.isEmpty()) return new int[0];
+        lock.readLock().lock();
+        try {
+            if (query.length() < 3) return scan(query);
+
+            // Distinct grams of the query, smallest posting list first
+            List<Postings> lists = new ArrayList<>();
+            for (int i = 0; i + 3 <= query.length(); i++) {
+                Postings p = grams.get(gram(query, i));
+                if (p == null || p.size == 0) return new int[0];
+                if (!lists.contains(p)) lists.add(p);
+            }
+            lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+            int[] candidates = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+            int n = candidates.length;
+            for (int l = 1; l < lists.size() && n > 0; l++) {
+                n = intersect(candidates, n, lists.get(l));
+            }
+
+            // Grams can match out of order; confirm with a real substring check
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                if (matches(docs.get(candidates[i]), query)) candidates[m++] = candidates[i];
+            }
+            return Arrays.copyOf(candidates, m);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeLocked(int id) {
+        String[] old = docs.remove(id);
+        if (old == null) return;
+        for (String f : old) {
+            if (f == null) continue;
+            for (int i = 0; i + 3 <= f.length(); i++) {
+                long g = gram(f, i);
+                Postings p = grams.get(g);
+                if (p != null) {
+                    p.remove(id);
+                    if (p.size == 0) grams.remove(g);
+                }
+            }
+        }
+    }
+
+    private int[] scan(String query) {
+        int[] out = new int[docs.size()];
+        int n = 0;
+        for (Map.Entry<Integer, String[]> e : docs.entrySet()) {
+            if (matches(e.getValue(), query)) out[n++] = e.getKey();
+        }
+        out = Arrays.copyOf(out, n);
+        Arrays.sort(out);
+        return out;
+    }
+
+    // Keep in `ids[0..n)` only values also present in p; returns the new length
+    private static int intersect(int[] ids, int n, Postings p) {
+        int i = 0, j = 0, k = 0;
+        while (i < n && j < p.size) {
+            if (ids[i] < p.ids[j]) i++;
+            else if (ids[i] > p.ids[j]) j++;
+            else { ids[k++] = ids[i]; i++; j++; }
+        }
+        return k;
+    }
+
+    private static boolean matches(String[] fields, String query) {
+        for (String f : fields) {
+            if (f != null && f.contains(query)) return true;
+        }
+        return false;
+    }
+
+    // Three UTF-16 chars packed into one long key
+    private static long gram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+}
@@ -1,14 +1,11 @@
 package ui;
 
-import db.DBConnection;
+import service.StockService;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
 
 /**
  * AddMedicineFrame
@@ -21,6 +18,8 @@ public class AddMedicineFrame extends JFrame {
     private JTextField companyField;
     private JTextField priceField;
     private JTextField stockField;
+    private DbWorker worker;
+    private final StockService stockService = new StockService();
 
     public AddMedicineFrame() {
         super();
@@ -52,9 +51,12 @@ public class AddMedicineFrame extends JFrame {
     JButton addBtn = new JButton("Add Medicine");
     JButton cancelBtn = new JButton("Cancel");
 
+    worker = new DbWorker(this, addBtn);
+
     JPanel btnPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
     btnPanel.add(addBtn);
     btnPanel.add(cancelBtn);
+    btnPanel.add(worker.getProgressBar());
 
     add(form, BorderLayout.CENTER);
     add(btnPanel, BorderLayout.SOUTH);
@@ -74,7 +76,7 @@ public class AddMedicineFrame extends JFrame {
         });
     }
 
-    // Insert medicine into DB using PreparedStatement
+    // Validate the form and insert the medicine in the background
     private void addMedicine() {
         String name = nameField.getText().trim();
         String company = companyField.getText().trim();
@@ -98,25 +100,10 @@ public class AddMedicineFrame extends JFrame {
             return;
         }
 
-        Connection conn = null;
-        PreparedStatement pst = null;
-
-        try {
-            conn = DBConnection.getConnection();
-            if (conn == null) {
-                JOptionPane.showMessageDialog(this, "Cannot connect to database.", "DB Error", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-
-            String sql = "INSERT INTO medicine(name, company, price, stock) VALUES (?, ?, ?, ?)";
-            pst = conn.prepareStatement(sql);
-            pst.setString(1, name);
-            pst.setString(2, company);
-            pst.setDouble(3, price);
-            pst.setInt(4, stock);
-
-            int affected = pst.executeUpdate();
-            if (affected > 0) {
+        final double priceValue = price;
+        final int stockValue = stock;
+        worker.run("Saving medicine...", () -> stockService.addMedicine(name, company, priceValue, stockValue), added -> {
+            if (added != null) {
                 JOptionPane.showMessageDialog(this, "Medicine added successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
                 // clear fields
                 nameField.setText("");
@@ -126,13 +113,7 @@ public class AddMedicineFrame extends JFrame {
             } else {
                 JOptionPane.showMessageDialog(this, "Failed to add medicine.", "Failure", JOptionPane.ERROR_MESSAGE);
             }
-
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(this, "Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
-        } finally {
-            try { if (pst != null) pst.close(); } catch (SQLException ignored) {}
-            try { if (conn != null) conn.close(); } catch (SQLException ignored) {}
-        }
+        });
     }
 
 }
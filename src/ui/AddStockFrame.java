@@ -1,24 +1,32 @@
 package ui;
 
-import db.DBConnection;
+import metrics.Metrics;
+import service.Medicine;
+import service.StockService;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 
 /**
  * AddStockFrame
  *
  * Simple UI to add stock quantity to an existing medicine by name.
+ * With a batch number and expiry date the stock is received as a batch,
+ * which billing sells first-expiry-first-out.
  */
 public class AddStockFrame extends JFrame {
 
     private JTextField nameField;
     private JTextField qtyField;
+    private JTextField batchField;
+    private JTextField expiryField;
+    private MedicineAutoComplete autoComplete;
+    private DbWorker worker;
+    private final StockService stockService = new StockService();
 
     public AddStockFrame() {
         super();
@@ -37,16 +45,26 @@ public class AddStockFrame extends JFrame {
 
     gbc.gridx=0; gbc.gridy=0; gbc.weightx = 0; form.add(new JLabel("Medicine Name:"), gbc);
     gbc.gridx=1; gbc.gridy=0; gbc.weightx = 1.0; gbc.gridwidth = GridBagConstraints.REMAINDER; nameField = new JTextField(20); form.add(nameField, gbc);
+    autoComplete = new MedicineAutoComplete(nameField);
 
     gbc.gridx=0; gbc.gridy=1; gbc.weightx = 0; gbc.gridwidth = 1; form.add(new JLabel("Quantity to Add:"), gbc);
     gbc.gridx=1; gbc.gridy=1; gbc.weightx = 1.0; gbc.gridwidth = GridBagConstraints.REMAINDER; qtyField = new JTextField(10); form.add(qtyField, gbc);
 
+    gbc.gridx=0; gbc.gridy=2; gbc.weightx = 0; gbc.gridwidth = 1; form.add(new JLabel("Batch No (optional):"), gbc);
+    gbc.gridx=1; gbc.gridy=2; gbc.weightx = 1.0; gbc.gridwidth = GridBagConstraints.REMAINDER; batchField = new JTextField(12); form.add(batchField, gbc);
+
+    gbc.gridx=0; gbc.gridy=3; gbc.weightx = 0; gbc.gridwidth = 1; form.add(new JLabel("Expiry (yyyy-mm-dd):"), gbc);
+    gbc.gridx=1; gbc.gridy=3; gbc.weightx = 1.0; gbc.gridwidth = GridBagConstraints.REMAINDER; expiryField = new JTextField(10); form.add(expiryField, gbc);
+
     JButton addBtn = new JButton("Update Stock");
     JButton cancelBtn = new JButton("Cancel");
 
+    worker = new DbWorker(this, addBtn);
+
     JPanel btnPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
     btnPanel.add(addBtn);
     btnPanel.add(cancelBtn);
+    btnPanel.add(worker.getProgressBar());
 
     add(form, BorderLayout.CENTER);
     add(btnPanel, BorderLayout.SOUTH);
@@ -88,36 +106,45 @@ public class AddStockFrame extends JFrame {
             return;
         }
 
-        Connection conn = null;
-        PreparedStatement pst = null;
-
-        try {
-            conn = DBConnection.getConnection();
-            if (conn == null) {
-                JOptionPane.showMessageDialog(this, "Cannot connect to database.", "DB Error", JOptionPane.ERROR_MESSAGE);
+        // Batch number and expiry go together; without them the stock is added unbatched
+        String batchNo = batchField.getText().trim();
+        String expiryText = expiryField.getText().trim();
+        if (batchNo.isEmpty() != expiryText.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Enter both batch number and expiry date, or neither.", "Validation", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        LocalDate expiry = null;
+        if (!expiryText.isEmpty()) {
+            try {
+                expiry = LocalDate.parse(expiryText);
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(this, "Expiry must be a date like 2026-12-31.", "Validation", JOptionPane.WARNING_MESSAGE);
                 return;
             }
-
-            String sql = "UPDATE medicine SET stock = stock + ? WHERE name = ?";
-            pst = conn.prepareStatement(sql);
-            pst.setInt(1, qty);
-            pst.setString(2, name);
-
-            int affected = pst.executeUpdate();
+            if (expiry.isBefore(LocalDate.now())) {
+                JOptionPane.showMessageDialog(this, "This batch has already expired.", "Validation", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+        }
+        LocalDate batchExpiry = expiry;
+
+        // A medicine picked from the suggestions is updated by primary key
+        Medicine picked = autoComplete.getSelected();
+        int id = picked != null ? picked.getId() : 0;
+        worker.run("Updating stock...", Metrics.timed("ui.stock-add", () -> batchExpiry != null
+                ? stockService.receiveBatch(id, name, batchNo, batchExpiry, qty)
+                : stockService.addStock(id, name, qty)), affected -> {
             if (affected > 0) {
                 JOptionPane.showMessageDialog(this, "Stock updated successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
                 nameField.setText("");
                 qtyField.setText("");
+                batchField.setText("");
+                expiryField.setText("");
+                autoComplete.clear();
             } else {
                 JOptionPane.showMessageDialog(this, "Medicine not found. Check the name.", "Not Found", JOptionPane.ERROR_MESSAGE);
             }
-
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(this, "Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
-        } finally {
-            try { if (pst != null) pst.close(); } catch (SQLException ignored) {}
-            try { if (conn != null) conn.close(); } catch (SQLException ignored) {}
-        }
+        });
     }
 
     // Quick test
@@ -1,32 +1,62 @@
 package ui;
 
-import db.DBConnection;
+import metrics.Metrics;
+import service.BillingService;
+import service.CartLine;
+import service.CatalogCache;
+import service.JournalReplayer;
+import service.Medicine;
+import service.ReplayReport;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * BillingFrame
  *
  * Handles selling a medicine: fetches price, calculates total, updates stock,
  * and inserts a record into the `bills` table.
+ * Cart mode collects several lines and checks them out as one bill
+ * (`bill_headers` + `bill_lines`) in a single transaction.
+ * If the database cannot be reached, sales are journaled locally and replayed later;
+ * the status line shows how many are still waiting.
  */
 public class BillingFrame extends JFrame {
 
+    private static final int OFFLINE_REFRESH_MS = 2000;
+    private static final String OFFLINE_NOTE = "Database unreachable: sale saved offline and will sync automatically.";
+
     private JTextField nameField;
     private JTextField qtyField;
+    private DbWorker worker;
+    private DefaultTableModel cartModel;
+    private JTable cartTable;
+    private JLabel totalLabel;
+    private JLabel previewLabel;
+    private MedicineAutoComplete autoComplete;
+    private JLabel offlineLabel;
+    private Timer offlineTimer;
+    private Consumer<ReplayReport> replayListener;
+    private final BillingService billing = new BillingService();
 
     public BillingFrame() {
         super();
         UIUtils.init();
         initComponents();
         UIUtils.styleFrame(this, "Billing");
+        setSize(760, 480);
+        setLocationRelativeTo(null);
     }
 
     private void initComponents() {
@@ -43,14 +73,55 @@ public class BillingFrame extends JFrame {
     gbc.gridx=0; gbc.gridy=1; gbc.weightx = 0; gbc.gridwidth = 1; form.add(new JLabel("Quantity Sold:"), gbc);
     gbc.gridx=1; gbc.gridy=1; gbc.weightx = 1.0; gbc.gridwidth = GridBagConstraints.REMAINDER; qtyField = new JTextField(10); form.add(qtyField, gbc);
 
+    gbc.gridx=1; gbc.gridy=2; gbc.weightx = 1.0; gbc.gridwidth = GridBagConstraints.REMAINDER; previewLabel = new JLabel(" "); previewLabel.setForeground(Color.GRAY); form.add(previewLabel, gbc);
+
+    DocumentListener preview = new DocumentListener() {
+        @Override public void insertUpdate(DocumentEvent e) { updatePreview(); }
+        @Override public void removeUpdate(DocumentEvent e) { updatePreview(); }
+        @Override public void changedUpdate(DocumentEvent e) { updatePreview(); }
+    };
+    nameField.getDocument().addDocumentListener(preview);
+    autoComplete = new MedicineAutoComplete(nameField);
+    qtyField.getDocument().addDocumentListener(preview);
+
     JButton sellBtn = new JButton("Process Sale");
+    JButton addLineBtn = new JButton("Add to Cart");
+    JButton removeLineBtn = new JButton("Remove Line");
+    JButton checkoutBtn = new JButton("Checkout Cart");
     JButton cancelBtn = new JButton("Cancel");
 
+    // Cart: one row per line, priced in a single lookup at checkout
+    cartModel = new DefaultTableModel(new Object[]{"Medicine", "Quantity", "Price", "Line Total"}, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    cartTable = new JTable(cartModel);
+    totalLabel = new JLabel("Cart: 0 lines");
+
+    JPanel cartPanel = new JPanel(new BorderLayout(6,6));
+    cartPanel.setBorder(BorderFactory.createTitledBorder("Cart"));
+    cartPanel.add(new JScrollPane(cartTable), BorderLayout.CENTER);
+    offlineLabel = new JLabel(" ");
+    offlineLabel.setForeground(new Color(180, 90, 0));
+    JPanel cartStatus = new JPanel(new GridLayout(2, 1));
+    cartStatus.add(totalLabel);
+    cartStatus.add(offlineLabel);
+    cartPanel.add(cartStatus, BorderLayout.SOUTH);
+
+    worker = new DbWorker(this, sellBtn, checkoutBtn, addLineBtn, removeLineBtn);
+
     JPanel btnPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
     btnPanel.add(sellBtn);
+    btnPanel.add(addLineBtn);
+    btnPanel.add(removeLineBtn);
+    btnPanel.add(checkoutBtn);
     btnPanel.add(cancelBtn);
+    btnPanel.add(worker.getProgressBar());
 
-    add(form, BorderLayout.CENTER);
+    add(form, BorderLayout.NORTH);
+    add(cartPanel, BorderLayout.CENTER);
     add(btnPanel, BorderLayout.SOUTH);
 
         sellBtn.addActionListener(new ActionListener() {
@@ -60,111 +131,216 @@ public class BillingFrame extends JFrame {
             }
         });
 
+        addLineBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                addToCart();
+            }
+        });
+
+        removeLineBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                int row = cartTable.getSelectedRow();
+                if (row >= 0) {
+                    cartModel.removeRow(row);
+                    updateCartLabel();
+                }
+            }
+        });
+
+        checkoutBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                checkoutCart();
+            }
+        });
+
         cancelBtn.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
                 dispose();
             }
         });
+
+        offlineTimer = new Timer(OFFLINE_REFRESH_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateOfflineLabel();
+            }
+        });
+        offlineTimer.start();
+
+        // Replays run in the background; conflicts need a person to look at them
+        replayListener = report -> {
+            if (report.getConflicts().isEmpty()) return;
+            SwingUtilities.invokeLater(() -> showConflicts(report));
+        };
+        JournalReplayer.addListener(replayListener);
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                offlineTimer.stop();
+                JournalReplayer.removeListener(replayListener);
+            }
+        });
     }
 
-    // Process the sale: check stock, deduct, insert bill (transactional)
+    // Validate input and hand the sale to BillingService in the background
     private void processSale() {
         String name = nameField.getText().trim();
-        String qtyText = qtyField.getText().trim();
+        Integer qty = readInput(name);
+        if (qty == null) return;
 
-        if (name.isEmpty() || qtyText.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Please enter medicine name and quantity.", "Validation", JOptionPane.WARNING_MESSAGE);
-            return;
-        }
+        // A medicine picked from the suggestions is sold by primary key
+        Medicine picked = autoComplete.getSelected();
+        worker.run("Processing sale...", Metrics.timed("ui.sale", () -> picked != null
+                ? billing.sellById(picked.getId(), picked.getName(), qty)
+                : billing.sell(name, qty)), result -> {
+            if (!result.isOk()) Metrics.increment("sale.refused");
+            switch (result.getStatus()) {
+                case OK:
+                    JOptionPane.showMessageDialog(this, (result.isOffline() ? OFFLINE_NOTE : "Sale processed.")
+                            + " Total: " + result.getTotal()
+                            + "\nRemaining stock: " + result.getRemainingStock(), "Success", JOptionPane.INFORMATION_MESSAGE);
+                    updateOfflineLabel();
+                    nameField.setText("");
+                    qtyField.setText("");
+                    autoComplete.clear();
+                    break;
+                case NOT_FOUND:
+                    JOptionPane.showMessageDialog(this, "Medicine not found.", "Not Found", JOptionPane.ERROR_MESSAGE);
+                    break;
+                default:
+                    JOptionPane.showMessageDialog(this, "Insufficient stock. Available: " + result.getRemainingStock(), "Stock Error", JOptionPane.ERROR_MESSAGE);
+                    break;
+            }
+        });
+    }
 
-        int qty;
-        try {
-            qty = Integer.parseInt(qtyText);
-            if (qty <= 0) {
-                JOptionPane.showMessageDialog(this, "Quantity must be a positive integer.", "Validation", JOptionPane.WARNING_MESSAGE);
+    // Add the current name/quantity as a cart line, priced from the catalog cache
+    // (the database is only consulted on a cache miss; checkout re-prices authoritatively)
+    private void addToCart() {
+        String name = nameField.getText().trim();
+        Integer qty = readInput(name);
+        if (qty == null) return;
+
+        Medicine picked = autoComplete.getSelected();
+        worker.run("Looking up...", () -> picked != null ? picked : CatalogCache.get().lookup(name), med -> {
+            if (med == null) {
+                JOptionPane.showMessageDialog(this, "Medicine not found.", "Not Found", JOptionPane.ERROR_MESSAGE);
                 return;
             }
-        } catch (NumberFormatException ex) {
-            JOptionPane.showMessageDialog(this, "Quantity must be an integer.", "Validation", JOptionPane.WARNING_MESSAGE);
+            // the Medicine itself sits in the first column (renders as its name) so checkout can use its id
+            cartModel.addRow(new Object[]{med, qty, med.getPrice(), med.getPrice() * qty});
+            updateCartLabel();
+            nameField.setText("");
+            qtyField.setText("");
+            autoComplete.clear();
+            nameField.requestFocusInWindow();
+        });
+    }
+
+    // Commit every cart line as one bill in a single transaction
+    private void checkoutCart() {
+        if (cartModel.getRowCount() == 0) {
+            JOptionPane.showMessageDialog(this, "The cart is empty.", "Validation", JOptionPane.WARNING_MESSAGE);
             return;
         }
 
-        Connection conn = null;
-        PreparedStatement pstSelect = null;
-        PreparedStatement pstUpdate = null;
-        PreparedStatement pstInsert = null;
-        ResultSet rs = null;
+        List<CartLine> cart = new ArrayList<>();
+        for (int i = 0; i < cartModel.getRowCount(); i++) {
+            Medicine med = (Medicine) cartModel.getValueAt(i, 0);
+            cart.add(new CartLine(med.getId(), med.getName(), (Integer) cartModel.getValueAt(i, 1)));
+        }
 
-        try {
-            conn = DBConnection.getConnection();
-            if (conn == null) {
-                JOptionPane.showMessageDialog(this, "Cannot connect to database.", "DB Error", JOptionPane.ERROR_MESSAGE);
+        worker.run("Checking out...", Metrics.timed("ui.checkout", () -> billing.checkout(cart)), result -> {
+            if (result.isOk()) {
+                JOptionPane.showMessageDialog(this, (result.isOffline() ? OFFLINE_NOTE : "Bill #" + result.getBillId() + " saved.")
+                        + " Total: " + result.getTotal(), "Success", JOptionPane.INFORMATION_MESSAGE);
+                updateOfflineLabel();
+                cartModel.setRowCount(0);
+                updateCartLabel();
                 return;
             }
+            Metrics.increment("sale.refused");
+            StringBuilder msg = new StringBuilder("Checkout failed; nothing was sold.");
+            for (String missing : result.getMissing()) {
+                msg.append("\nNot found: ").append(missing);
+            }
+            for (Map.Entry<String, Integer> e : result.getShortages().entrySet()) {
+                msg.append("\nInsufficient stock for ").append(e.getKey()).append(". Available: ").append(e.getValue());
+            }
+            JOptionPane.showMessageDialog(this, msg.toString(), "Checkout Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
 
-            // Fetch price and stock for the medicine
-            String selectSql = "SELECT id, price, stock FROM medicine WHERE name = ?";
-            pstSelect = conn.prepareStatement(selectSql);
-            pstSelect.setString(1, name);
-            rs = pstSelect.executeQuery();
+    // Pending offline sales, and whether this terminal is currently selling offline
+    private void updateOfflineLabel() {
+        int pending = JournalReplayer.pendingCount();
+        if (pending == 0 && !BillingService.isOffline()) {
+            offlineLabel.setText(" ");
+            return;
+        }
+        String text = BillingService.isOffline() ? "Offline. " : "";
+        text += pending + " offline sale(s) waiting to sync";
+        if (JournalReplayer.getLastError() != null) text += " (" + JournalReplayer.getLastError() + ")";
+        offlineLabel.setText(text);
+    }
 
-            if (!rs.next()) {
-                JOptionPane.showMessageDialog(this, "Medicine not found.", "Not Found", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
+    private void showConflicts(ReplayReport report) {
+        StringBuilder msg = new StringBuilder("Some offline sales could not be applied (they are recorded in offline_sales):");
+        for (String conflict : report.getConflicts()) {
+            msg.append("\n").append(conflict);
+        }
+        JOptionPane.showMessageDialog(this, msg.toString(), "Offline Sales", JOptionPane.WARNING_MESSAGE);
+    }
 
-            int id = rs.getInt("id");
-            double price = rs.getDouble("price");
-            int stock = rs.getInt("stock");
+    private void updateCartLabel() {
+        double total = 0.0;
+        for (int i = 0; i < cartModel.getRowCount(); i++) {
+            total += (Double) cartModel.getValueAt(i, 3);
+        }
+        totalLabel.setText("Cart: " + cartModel.getRowCount() + " lines, estimated total " + total);
+    }
 
-            if (stock < qty) {
-                JOptionPane.showMessageDialog(this, "Insufficient stock. Available: " + stock, "Stock Error", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
+    // Show price and stock for the typed name straight from the cache (no DB access)
+    private void updatePreview() {
+        Medicine med = CatalogCache.get().peekByName(nameField.getText());
+        if (med == null) {
+            previewLabel.setText(" ");
+            return;
+        }
+        String text = "Price: " + med.getPrice() + "   In stock: " + med.getStock();
+        try {
+            int qty = Integer.parseInt(qtyField.getText().trim());
+            if (qty > 0) text += "   Total: " + med.getPrice() * qty;
+        } catch (NumberFormatException ignored) {
+            // no quantity yet
+        }
+        previewLabel.setText(text);
+    }
 
-            double total = price * qty;
-
-            // Transaction: deduct stock and insert bill
-            conn.setAutoCommit(false);
-
-            String updateSql = "UPDATE medicine SET stock = stock - ? WHERE id = ?";
-            pstUpdate = conn.prepareStatement(updateSql);
-            pstUpdate.setInt(1, qty);
-            pstUpdate.setInt(2, id);
-            int upd = pstUpdate.executeUpdate();
-
-            String insertSql = "INSERT INTO bills(medicine_name, quantity, total) VALUES (?, ?, ?)";
-            pstInsert = conn.prepareStatement(insertSql);
-            pstInsert.setString(1, name);
-            pstInsert.setInt(2, qty);
-            pstInsert.setDouble(3, total);
-            int ins = pstInsert.executeUpdate();
-
-            if (upd > 0 && ins > 0) {
-                conn.commit();
-                JOptionPane.showMessageDialog(this, "Sale processed. Total: " + total, "Success", JOptionPane.INFORMATION_MESSAGE);
-                nameField.setText("");
-                qtyField.setText("");
-            } else {
-                conn.rollback();
-                JOptionPane.showMessageDialog(this, "Failed to process sale.", "Failure", JOptionPane.ERROR_MESSAGE);
-            }
+    // Validate name and quantity fields; returns the quantity, or null after showing a warning
+    private Integer readInput(String name) {
+        String qtyText = qtyField.getText().trim();
 
-        } catch (SQLException ex) {
-            try { if (conn != null) conn.rollback(); } catch (SQLException ignored) {}
-            JOptionPane.showMessageDialog(this, "Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
-        } finally {
-            try { if (rs != null) rs.close(); } catch (SQLException ignored) {}
-            try { if (pstSelect != null) pstSelect.close(); } catch (SQLException ignored) {}
-            try { if (pstUpdate != null) pstUpdate.close(); } catch (SQLException ignored) {}
-            try { if (pstInsert != null) pstInsert.close(); } catch (SQLException ignored) {}
-            try {
-                if (conn != null) {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                }
-            } catch (SQLException ignored) {}
+        if (name.isEmpty() || qtyText.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Please enter medicine name and quantity.", "Validation", JOptionPane.WARNING_MESSAGE);
+            return null;
+        }
+
+        try {
+            int qty = Integer.parseInt(qtyText);
+            if (qty <= 0) {
+                JOptionPane.showMessageDialog(this, "Quantity must be a positive integer.", "Validation", JOptionPane.WARNING_MESSAGE);
+                return null;
+            }
+            return qty;
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this, "Quantity must be an integer.", "Validation", JOptionPane.WARNING_MESSAGE);
+            return null;
         }
     }
 
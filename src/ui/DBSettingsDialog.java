@@ -10,13 +10,19 @@ import java.awt.*;
  * DBSettingsDialog
  *
  * Simple dialog to update DB URL/user/password at runtime and test the connection.
+ * The optional replica settings point read-only screens (stock browsing, reports,
+ * exports) at a MySQL replica; leave the replica URL empty to read from the primary.
  */
 public class DBSettingsDialog extends JDialog {
 
     private JTextField urlField;
     private JTextField userField;
     private JPasswordField passField;
+    private JTextField replicaUrlField;
+    private JTextField replicaUserField;
+    private JPasswordField replicaPassField;
     private JLabel resultLabel;
+    private DbWorker worker;
 
     public DBSettingsDialog(JFrame parent) {
         super(parent, "DB Settings", true);
@@ -42,9 +48,19 @@ public class DBSettingsDialog extends JDialog {
         gbc.gridx=0; gbc.gridy=2; form.add(new JLabel("DB Password:"), gbc);
         gbc.gridx=1; gbc.gridy=2; passField = new JPasswordField(20); form.add(passField, gbc);
 
+        gbc.gridx=0; gbc.gridy=3; form.add(new JLabel("Replica URL (optional):"), gbc);
+        gbc.gridx=1; gbc.gridy=3; replicaUrlField = new JTextField(40); form.add(replicaUrlField, gbc);
+
+        gbc.gridx=0; gbc.gridy=4; form.add(new JLabel("Replica User:"), gbc);
+        gbc.gridx=1; gbc.gridy=4; replicaUserField = new JTextField(20); form.add(replicaUserField, gbc);
+
+        gbc.gridx=0; gbc.gridy=5; form.add(new JLabel("Replica Password:"), gbc);
+        gbc.gridx=1; gbc.gridy=5; replicaPassField = new JPasswordField(20); form.add(replicaPassField, gbc);
+        replicaPassField.setToolTipText("Leave empty to keep the current replica password");
+
         add(form, BorderLayout.CENTER);
 
-        resultLabel = new JLabel(" ");
+        resultLabel = new JLabel(DBConnection.getReplicaStatus());
         add(resultLabel, BorderLayout.NORTH);
 
         JPanel btnPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
@@ -55,12 +71,16 @@ public class DBSettingsDialog extends JDialog {
         btnPanel.add(testBtn);
         btnPanel.add(saveBtn);
         btnPanel.add(cancelBtn);
+        worker = new DbWorker(this, testBtn, saveBtn);
+        btnPanel.add(worker.getProgressBar());
 
         add(btnPanel, BorderLayout.SOUTH);
 
     // load current settings into fields from DBConnection
     urlField.setText(DBConnection.getDbUrl());
     userField.setText(DBConnection.getDbUser());
+    replicaUrlField.setText(DBConnection.getReplicaUrl());
+    replicaUserField.setText(DBConnection.getReplicaUser());
 
         testBtn.addActionListener(new java.awt.event.ActionListener() {
             @Override
@@ -73,13 +93,17 @@ public class DBSettingsDialog extends JDialog {
             @Override
             public void actionPerformed(java.awt.event.ActionEvent e) {
                 DBConnection.setConfig(urlField.getText().trim(), userField.getText().trim(), new String(passField.getPassword()));
-                String res = DBConnection.testConnection();
-                if (res == null) {
-                    JOptionPane.showMessageDialog(DBSettingsDialog.this, "Connection successful. Settings saved.", "Success", JOptionPane.INFORMATION_MESSAGE);
-                    dispose();
-                } else {
-                    JOptionPane.showMessageDialog(DBSettingsDialog.this, "Failed: " + res, "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                String replicaPass = new String(replicaPassField.getPassword());
+                DBConnection.setReplicaConfig(replicaUrlField.getText().trim(), replicaUserField.getText().trim(),
+                        replicaPass.isEmpty() ? null : replicaPass);
+                worker.run("Connecting...", DBConnection::testConnection, res -> {
+                    if (res == null) {
+                        JOptionPane.showMessageDialog(DBSettingsDialog.this, "Connection successful. Settings saved.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                        dispose();
+                    } else {
+                        JOptionPane.showMessageDialog(DBSettingsDialog.this, "Failed: " + res, "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                });
             }
         });
 
@@ -95,13 +119,22 @@ public class DBSettingsDialog extends JDialog {
         String url = urlField.getText().trim();
         String user = userField.getText().trim();
         String pass = new String(passField.getPassword());
-        String res = DBConnection.testConnection(url, user, pass);
-        if (res == null) {
-            resultLabel.setText("Connection successful");
-            resultLabel.setForeground(new Color(0,128,0));
-        } else {
-            resultLabel.setText("Failed: " + res);
-            resultLabel.setForeground(Color.RED);
-        }
+        String replicaUrl = replicaUrlField.getText().trim();
+        String replicaUser = replicaUserField.getText().trim();
+        String replicaPass = new String(replicaPassField.getPassword());
+        worker.run("Testing...", () -> {
+            String res = DBConnection.testConnection(url, user, pass);
+            if (res != null || replicaUrl.isEmpty()) return res;
+            String replicaRes = DBConnection.testReplica(replicaUrl, replicaUser, replicaPass.isEmpty() ? null : replicaPass);
+            return replicaRes == null ? null : "replica: " + replicaRes;
+        }, res -> {
+            if (res == null) {
+                resultLabel.setText("Connection successful");
+                resultLabel.setForeground(new Color(0,128,0));
+            } else {
+                resultLabel.setText("Failed: " + res);
+                resultLabel.setForeground(Color.RED);
+            }
+        });
     }
 }
@@ -1,5 +1,7 @@
 package ui;
 
+import service.RemoteClient;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
@@ -8,7 +10,7 @@ import java.awt.event.ActionListener;
 /**
  * Dashboard
  *
- * Main menu window with four buttons to open other frames.
+ * Main menu window with buttons to open the other frames.
  */
 public class Dashboard extends JFrame {
 
@@ -25,25 +27,48 @@ public class Dashboard extends JFrame {
     setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
     setLayout(new BorderLayout(12,12));
 
-    JPanel panel = new JPanel(new GridLayout(2, 2, 12, 12));
+    JPanel panel = new JPanel(new GridLayout(5, 2, 12, 12));
 
     JButton addMedBtn = new JButton("Add New Medicine");
     JButton addStockBtn = new JButton("Add Stock");
     JButton billingBtn = new JButton("Billing");
     JButton showStockBtn = new JButton("Show Stocks");
+    JButton importBtn = new JButton("Import CSV");
+    JButton exportBtn = new JButton("Export CSV");
+    JButton reportsBtn = new JButton("Reports");
+    JButton metricsBtn = new JButton("Metrics");
+    JButton expiryBtn = new JButton("Expiring Stock");
 
     addMedBtn.setPreferredSize(new java.awt.Dimension(180, 80));
     addStockBtn.setPreferredSize(new java.awt.Dimension(180, 80));
     billingBtn.setPreferredSize(new java.awt.Dimension(180, 80));
     showStockBtn.setPreferredSize(new java.awt.Dimension(180, 80));
+    importBtn.setPreferredSize(new java.awt.Dimension(180, 80));
+    exportBtn.setPreferredSize(new java.awt.Dimension(180, 80));
+    reportsBtn.setPreferredSize(new java.awt.Dimension(180, 80));
+    metricsBtn.setPreferredSize(new java.awt.Dimension(180, 80));
+    expiryBtn.setPreferredSize(new java.awt.Dimension(180, 80));
 
     panel.add(addMedBtn);
     panel.add(addStockBtn);
     panel.add(billingBtn);
     panel.add(showStockBtn);
+    panel.add(importBtn);
+    panel.add(exportBtn);
+    panel.add(reportsBtn);
+    panel.add(metricsBtn);
+    panel.add(expiryBtn);
 
     add(panel, BorderLayout.CENTER);
 
+    // Bulk import/export and reports read the database directly; thin clients run them on the store server's host
+    if (RemoteClient.isEnabled()) {
+        for (JButton b : new JButton[]{importBtn, exportBtn, reportsBtn}) {
+            b.setEnabled(false);
+            b.setToolTipText("Not available on a thin client (" + RemoteClient.getServerUrl() + ")");
+        }
+    }
+
         // Button actions: open respective frames
         addMedBtn.addActionListener(new ActionListener() {
             @Override
@@ -72,6 +97,41 @@ public class Dashboard extends JFrame {
                 new ShowStockFrame().setVisible(true);
             }
         });
+
+        importBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                new ImportFrame().setVisible(true);
+            }
+        });
+
+        exportBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                new ExportFrame().setVisible(true);
+            }
+        });
+
+        reportsBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                new ReportsFrame().setVisible(true);
+            }
+        });
+
+        metricsBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                new MetricsFrame().setVisible(true);
+            }
+        });
+
+        expiryBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                new ExpiryFrame().setVisible(true);
+            }
+        });
     }
 
     // For quick manual testing
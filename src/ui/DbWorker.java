@@ -0,0 +1,111 @@
+package ui;
+
+import db.DbExecutor;
+import metrics.Metrics;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * DbWorker
+ *
+ * Runs database work for one window on the shared DbExecutor and hands the
+ * result back on the event thread. While work is in flight the given controls
+ * are disabled and a progress bar is shown. Submitting new work supersedes
+ * (cancels) whatever the same worker was still running, so stale results such
+ * as an older search are never shown.
+ *
+ * All methods must be called on the event thread.
+ */
+public class DbWorker {
+
+    private final Component owner;
+    private final JComponent[] controls;
+    private final JProgressBar progressBar;
+
+    private Future<?> inFlight;
+    private long generation;
+
+    public DbWorker(Component owner, JComponent... controls) {
+        this.owner = owner;
+        this.controls = controls;
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+    }
+
+    // Progress bar to place in the window's layout; hidden while idle
+    public JProgressBar getProgressBar() {
+        return progressBar;
+    }
+
+    public boolean isBusy() {
+        return inFlight != null;
+    }
+
+    // Run work in the background; errors are shown as a "Database error" dialog
+    public <T> void run(String message, Callable<T> work, Consumer<T> onSuccess) {
+        run(message, work, onSuccess, this::showError);
+    }
+
+    public <T> void run(String message, Callable<T> work, Consumer<T> onSuccess, Consumer<Exception> onError) {
+        cancel();
+        final long ticket = ++generation;
+        setBusy(true, message);
+
+        inFlight = DbExecutor.submit(() -> {
+            try {
+                T result = work.call();
+                SwingUtilities.invokeLater(() -> {
+                    if (ticket != generation) return; // superseded
+                    setBusy(false, null);
+                    onSuccess.accept(result);
+                });
+            } catch (Exception ex) {
+                SwingUtilities.invokeLater(() -> {
+                    if (ticket != generation) return;
+                    setBusy(false, null);
+                    onError.accept(ex);
+                });
+            }
+            return null;
+        });
+    }
+
+    // Update the progress text from any thread; ignored once the worker is idle
+    public void progress(String message) {
+        SwingUtilities.invokeLater(() -> {
+            if (inFlight != null) progressBar.setString(message);
+        });
+    }
+
+    // Abandon any in-flight work; its result will be ignored
+    public void cancel() {
+        if (inFlight != null) {
+            inFlight.cancel(true);
+            inFlight = null;
+            generation++;
+            setBusy(false, null);
+        }
+    }
+
+    private void setBusy(boolean busy, String message) {
+        if (!busy) inFlight = null;
+        for (JComponent c : controls) {
+            c.setEnabled(!busy);
+        }
+        progressBar.setString(message != null ? message : "");
+        progressBar.setVisible(busy);
+        owner.setCursor(busy ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : Cursor.getDefaultCursor());
+        if (progressBar.getParent() != null) progressBar.getParent().revalidate();
+    }
+
+    private void showError(Exception ex) {
+        Metrics.increment("ui.errors");
+        JOptionPane.showMessageDialog(owner, "Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
+    }
+}
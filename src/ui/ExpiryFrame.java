@@ -0,0 +1,148 @@
+package ui;
+
+import service.StockBatch;
+import service.StockService;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ExpiryFrame
+ *
+ * Stock batches that have expired or expire within the chosen number of days,
+ * soonest first, with a button to write off what is left of a batch.
+ */
+public class ExpiryFrame extends JFrame {
+
+    private static final Integer[] WINDOWS = {7, 30, 60, 90, 180};
+
+    private JComboBox<Integer> daysBox;
+    private DefaultTableModel model;
+    private JTable table;
+    private JLabel summaryLabel;
+    private DbWorker worker;
+    private List<StockBatch> shown = new ArrayList<>();
+    private final StockService stockService = new StockService();
+
+    public ExpiryFrame() {
+        super();
+        UIUtils.init();
+        initComponents();
+        UIUtils.styleFrame(this, "Expiring Stock");
+        setSize(720, 420);
+        setLocationRelativeTo(null);
+        loadBatches();
+    }
+
+    private void initComponents() {
+    setLayout(new BorderLayout(8,8));
+
+    JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    top.add(new JLabel("Expired or expiring within"));
+    daysBox = new JComboBox<>(WINDOWS);
+    daysBox.setSelectedItem(30);
+    top.add(daysBox);
+    top.add(new JLabel("days"));
+    JButton refreshBtn = new JButton("Refresh");
+    JButton writeOffBtn = new JButton("Write Off Batch");
+    top.add(refreshBtn);
+    top.add(writeOffBtn);
+    worker = new DbWorker(this, daysBox, refreshBtn, writeOffBtn);
+    top.add(worker.getProgressBar());
+
+    model = new DefaultTableModel(new String[]{"Medicine", "Batch", "Expiry", "Days Left", "Units"}, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    table = new JTable(model);
+    table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+    summaryLabel = new JLabel(" ");
+    summaryLabel.setBorder(BorderFactory.createEmptyBorder(0, 8, 4, 8));
+
+    add(top, BorderLayout.NORTH);
+    add(new JScrollPane(table), BorderLayout.CENTER);
+    add(summaryLabel, BorderLayout.SOUTH);
+
+        daysBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                loadBatches();
+            }
+        });
+
+        refreshBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                loadBatches();
+            }
+        });
+
+        writeOffBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                writeOffSelected();
+            }
+        });
+    }
+
+    private void loadBatches() {
+        int days = (Integer) daysBox.getSelectedItem();
+        worker.run("Loading...", () -> stockService.expiringWithin(days), this::showBatches);
+    }
+
+    private void showBatches(List<StockBatch> batches) {
+        shown = batches;
+        LocalDate today = LocalDate.now();
+        int expired = 0;
+        long units = 0;
+        model.setRowCount(0);
+        for (StockBatch b : batches) {
+            long daysLeft = ChronoUnit.DAYS.between(today, b.getExpiry());
+            if (daysLeft < 0) expired++;
+            units += b.getQuantity();
+            model.addRow(new Object[]{b.getMedicineName(), b.getBatchNo(), b.getExpiry().toString(),
+                    daysLeft < 0 ? "expired" : String.valueOf(daysLeft), b.getQuantity()});
+        }
+        summaryLabel.setText(String.format("%d batches, %,d units; %d already expired (cannot be sold)",
+                batches.size(), units, expired));
+    }
+
+    // Remove the rest of the selected batch from stock (expired, damaged or recalled)
+    private void writeOffSelected() {
+        int row = table.getSelectedRow();
+        if (row < 0) {
+            JOptionPane.showMessageDialog(this, "Select a batch first.", "Validation", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        StockBatch batch = shown.get(row);
+        int answer = JOptionPane.showConfirmDialog(this, "Write off " + batch.getQuantity() + " units of "
+                + batch.getMedicineName() + ", batch " + batch.getBatchNo() + "?", "Write Off", JOptionPane.OK_CANCEL_OPTION);
+        if (answer != JOptionPane.OK_OPTION) return;
+
+        int days = (Integer) daysBox.getSelectedItem();
+        worker.run("Writing off...", () -> {
+            stockService.writeOffBatch(batch);
+            return stockService.expiringWithin(days);
+        }, this::showBatches);
+    }
+
+    // Quick test
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                new ExpiryFrame().setVisible(true);
+            }
+        });
+    }
+}
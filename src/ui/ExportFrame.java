@@ -0,0 +1,148 @@
+package ui;
+
+import service.CsvExporter;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.nio.file.Paths;
+
+/**
+ * ExportFrame
+ *
+ * Exports the medicine table or the bill history to a CSV file (optionally gzip),
+ * streaming rows from the database with live progress and cancel.
+ */
+public class ExportFrame extends JFrame {
+
+    private JComboBox<CsvExporter.Dataset> datasetBox;
+    private JTextField fileField;
+    private JCheckBox gzipBox;
+    private JLabel statusLabel;
+    private JButton cancelExportBtn;
+    private DbWorker worker;
+
+    public ExportFrame() {
+        super();
+        UIUtils.init();
+        initComponents();
+        UIUtils.styleFrame(this, "Export to CSV");
+    }
+
+    private void initComponents() {
+    setLayout(new BorderLayout(12,12));
+
+    JPanel form = new JPanel(new GridBagLayout());
+    GridBagConstraints gbc = new GridBagConstraints();
+    gbc.insets = new Insets(6,6,6,6);
+    gbc.fill = GridBagConstraints.HORIZONTAL;
+
+    JButton browseBtn = new JButton("Browse...");
+    gbc.gridx=0; gbc.gridy=0; gbc.weightx = 0; form.add(new JLabel("Data:"), gbc);
+    gbc.gridx=1; gbc.gridy=0; gbc.weightx = 1.0; gbc.gridwidth = 2; datasetBox = new JComboBox<>(CsvExporter.Dataset.values()); form.add(datasetBox, gbc);
+
+    gbc.gridx=0; gbc.gridy=1; gbc.weightx = 0; gbc.gridwidth = 1; form.add(new JLabel("File:"), gbc);
+    gbc.gridx=1; gbc.gridy=1; gbc.weightx = 1.0; fileField = new JTextField(25); form.add(fileField, gbc);
+    gbc.gridx=2; gbc.gridy=1; gbc.weightx = 0; form.add(browseBtn, gbc);
+
+    gbc.gridx=1; gbc.gridy=2; gbc.gridwidth = 2; gzipBox = new JCheckBox("Compress (gzip)"); form.add(gzipBox, gbc);
+
+    statusLabel = new JLabel(" ");
+    statusLabel.setHorizontalAlignment(SwingConstants.CENTER);
+
+    JButton exportBtn = new JButton("Start Export");
+    cancelExportBtn = new JButton("Cancel Export");
+    cancelExportBtn.setEnabled(false);
+    JButton closeBtn = new JButton("Close");
+
+    worker = new DbWorker(this, exportBtn, browseBtn, datasetBox, gzipBox);
+
+    JPanel btnPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+    btnPanel.add(exportBtn);
+    btnPanel.add(cancelExportBtn);
+    btnPanel.add(closeBtn);
+    btnPanel.add(worker.getProgressBar());
+
+    add(form, BorderLayout.NORTH);
+    add(statusLabel, BorderLayout.CENTER);
+    add(btnPanel, BorderLayout.SOUTH);
+
+        browseBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                JFileChooser chooser = new JFileChooser();
+                chooser.setSelectedFile(new File(defaultFileName()));
+                if (chooser.showSaveDialog(ExportFrame.this) == JFileChooser.APPROVE_OPTION) {
+                    fileField.setText(chooser.getSelectedFile().getAbsolutePath());
+                }
+            }
+        });
+
+        exportBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startExport();
+            }
+        });
+
+        cancelExportBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                worker.cancel();
+                cancelExportBtn.setEnabled(false);
+                statusLabel.setText("Export cancelled.");
+            }
+        });
+
+        closeBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                worker.cancel();
+                dispose();
+            }
+        });
+    }
+
+    private String defaultFileName() {
+        CsvExporter.Dataset ds = (CsvExporter.Dataset) datasetBox.getSelectedItem();
+        return ds.name().toLowerCase(java.util.Locale.ROOT) + (gzipBox.isSelected() ? ".csv.gz" : ".csv");
+    }
+
+    private void startExport() {
+        String path = fileField.getText().trim();
+        if (path.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Please choose a file to export to.", "Validation", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
+        CsvExporter.Dataset dataset = (CsvExporter.Dataset) datasetBox.getSelectedItem();
+        boolean gzip = gzipBox.isSelected();
+        long started = System.currentTimeMillis();
+        statusLabel.setText(" ");
+        cancelExportBtn.setEnabled(true);
+        worker.run("Exporting...",
+                () -> new CsvExporter().export(dataset, Paths.get(path), gzip, rows -> worker.progress(String.format("%,d rows", rows))),
+                rows -> {
+                    cancelExportBtn.setEnabled(false);
+                    statusLabel.setText(String.format("Exported %,d rows in %.1fs to %s", rows,
+                            (System.currentTimeMillis() - started) / 1000.0, path));
+                },
+                ex -> {
+                    cancelExportBtn.setEnabled(false);
+                    statusLabel.setText(" ");
+                    JOptionPane.showMessageDialog(this, "Export failed: " + ex.getMessage(), "Export Error", JOptionPane.ERROR_MESSAGE);
+                });
+    }
+
+    // Quick test
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                new ExportFrame().setVisible(true);
+            }
+        });
+    }
+}
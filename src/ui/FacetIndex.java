@@ -0,0 +1,142 @@
+package ui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FacetIndex
+ *
+ * Bitmap indexes over MedicineColumns rows for faceted filtering: one RowBitmap per
+ * company, per stock band and per price band. MedicineColumns keeps it in step as
+ * rows are added or change (a sale moving a medicine into a lower stock band moves
+ * one bit), so it is never rebuilt after the first load.
+ *
+ * A selection picks values per facet: rows match any selected value within a facet
+ * and every facet that has a selection. Alongside the matching rows, query() counts
+ * for every value how many rows it would match given the selections in the other
+ * facets, so the counts next to the check boxes stay right as facets are combined.
+ */
+final class FacetIndex {
+
+    static final int COMPANY = 0;
+    static final int STOCK = 1;
+    static final int PRICE = 2;
+    static final int FACETS = 3;
+
+    static final String[] STOCK_BANDS = {"Out of stock", "1 - 9", "10 - 49", "50 - 99", "100 or more"};
+    static final String[] PRICE_BANDS = {"Under 50", "50 - 99.99", "100 - 499.99", "500 - 999.99", "1000 or more"};
+    // Lowest value of every band after the first
+    private static final int[] STOCK_FLOORS = {1, 10, 50, 100};
+    private static final double[] PRICE_FLOORS = {50, 100, 500, 1000};
+
+    // Matching rows (a mask over every row) and, per facet and value, the rows it would match
+    static final class Result {
+        final long[] rows;
+        final int[][] counts;
+
+        Result(long[] rows, int[][] counts) {
+            this.rows = rows;
+            this.counts = counts;
+        }
+    }
+
+    private final List<RowBitmap> companies = new ArrayList<>(); // by MedicineColumns company code
+    private final RowBitmap[] stockBands = bitmaps(STOCK_BANDS.length);
+    private final RowBitmap[] priceBands = bitmaps(PRICE_BANDS.length);
+
+    static int stockBand(int stock) {
+        int band = 0;
+        while (band < STOCK_FLOORS.length && stock >= STOCK_FLOORS[band]) band++;
+        return band;
+    }
+
+    static int priceBand(double price) {
+        int band = 0;
+        while (band < PRICE_FLOORS.length && price >= PRICE_FLOORS[band]) band++;
+        return band;
+    }
+
+    void add(int row, int company, int stock, double price) {
+        company(company).add(row);
+        stockBands[stockBand(stock)].add(row);
+        priceBands[priceBand(price)].add(row);
+    }
+
+    void move(int row, int oldCompany, int oldStock, double oldPrice, int company, int stock, double price) {
+        if (oldCompany != company) {
+            company(oldCompany).remove(row);
+            company(company).add(row);
+        }
+        move(stockBands, row, stockBand(oldStock), stockBand(stock));
+        move(priceBands, row, priceBand(oldPrice), priceBand(price));
+    }
+
+    /**
+     * @param base     mask of the rows to consider (other filters already applied)
+     * @param selected per facet, the selected values (company codes or band numbers); empty for no restriction
+     */
+    Result query(long[] base, int[][] selected) {
+        long[][] chosen = new long[FACETS][];
+        for (int f = 0; f < FACETS; f++) {
+            if (selected[f].length == 0) continue;
+            RowBitmap[] values = values(f);
+            long[] mask = new long[base.length];
+            for (int v : selected[f]) {
+                if (v < values.length) values[v].orInto(mask);
+            }
+            chosen[f] = mask;
+        }
+
+        int[][] counts = new int[FACETS][];
+        for (int f = 0; f < FACETS; f++) {
+            long[] mask = base.clone();
+            for (int g = 0; g < FACETS; g++) {
+                if (g != f && chosen[g] != null) and(mask, chosen[g]);
+            }
+            RowBitmap[] values = values(f);
+            counts[f] = new int[values.length];
+            for (int v = 0; v < values.length; v++) {
+                counts[f][v] = values[v].andCardinality(mask);
+            }
+        }
+
+        long[] rows = base.clone();
+        for (int f = 0; f < FACETS; f++) {
+            if (chosen[f] != null) and(rows, chosen[f]);
+        }
+        return new Result(rows, counts);
+    }
+
+    private RowBitmap[] values(int facet) {
+        switch (facet) {
+            case COMPANY: return companies.toArray(new RowBitmap[0]);
+            case STOCK: return stockBands;
+            default: return priceBands;
+        }
+    }
+
+    private RowBitmap company(int code) {
+        while (companies.size() <= code) companies.add(new RowBitmap());
+        return companies.get(code);
+    }
+
+    private static void move(RowBitmap[] bands, int row, int from, int to) {
+        if (from == to) return;
+        bands[from].remove(row);
+        bands[to].add(row);
+    }
+
+    private static void and(long[] mask, long[] other) {
+        for (int w = 0; w < mask.length; w++) {
+            mask[w] &= other[w];
+        }
+    }
+
+    private static RowBitmap[] bitmaps(int n) {
+        RowBitmap[] out = new RowBitmap[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = new RowBitmap();
+        }
+        return out;
+    }
+}
@@ -0,0 +1,151 @@
+package ui;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * FacetPanel
+ *
+ * Check boxes for the Show Stocks facets (company, stock band, price band), each with
+ * the number of rows it would match given the other filters and facets. Ticking boxes
+ * within a facet widens the selection, ticking in another facet narrows it.
+ *
+ * Selections are kept by label, so they survive the table being rebuilt (company codes
+ * change then). Companies that match nothing are left out unless ticked; bands that
+ * match nothing are greyed out.
+ *
+ * All methods must be called on the event thread.
+ */
+public class FacetPanel {
+
+    private static final String[] TITLES = {"Company", "Stock", "Price"};
+
+    private final JPanel panel = new JPanel();
+    private final JScrollPane scroll;
+    private final Runnable onChange;
+
+    // Per facet: ticked labels, and the facet values (indexes) behind each label last shown
+    private final List<Set<String>> selected = new ArrayList<>();
+    private final List<Map<String, List<Integer>>> values = new ArrayList<>();
+
+    /**
+     * @param onChange run after the user ticks or clears a box
+     */
+    public FacetPanel(Runnable onChange) {
+        this.onChange = onChange;
+        for (int f = 0; f < FacetIndex.FACETS; f++) {
+            selected.add(new HashSet<>());
+            values.add(new LinkedHashMap<>());
+        }
+        panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+        panel.setBorder(BorderFactory.createEmptyBorder(4, 4, 4, 4));
+        scroll = new JScrollPane(panel);
+        scroll.setPreferredSize(new Dimension(190, 0));
+        scroll.getVerticalScrollBar().setUnitIncrement(16);
+        show(new String[FacetIndex.FACETS][0], new int[FacetIndex.FACETS][0]);
+    }
+
+    public JComponent getComponent() {
+        return scroll;
+    }
+
+    /**
+     * Redraws the boxes with new counts, keeping what is ticked.
+     *
+     * @param labels per facet, the label of every value (several values may share one)
+     * @param counts per facet and value, the rows it would match
+     */
+    public void show(String[][] labels, int[][] counts) {
+        panel.removeAll();
+        boolean any = false;
+        for (int f = 0; f < FacetIndex.FACETS; f++) {
+            Map<String, List<Integer>> byLabel = new LinkedHashMap<>();
+            Map<String, Integer> totals = new LinkedHashMap<>();
+            for (int v = 0; v < labels[f].length; v++) {
+                byLabel.computeIfAbsent(labels[f][v], k -> new ArrayList<>()).add(v);
+                totals.merge(labels[f][v], v < counts[f].length ? counts[f][v] : 0, Integer::sum);
+            }
+            values.set(f, byLabel);
+            if (byLabel.isEmpty()) continue;
+            any = true;
+
+            List<String> order = new ArrayList<>(byLabel.keySet());
+            if (f == FacetIndex.COMPANY) order.sort(String.CASE_INSENSITIVE_ORDER);
+            JLabel title = new JLabel(TITLES[f]);
+            title.setFont(title.getFont().deriveFont(Font.BOLD));
+            title.setBorder(BorderFactory.createEmptyBorder(f == 0 ? 0 : 8, 0, 2, 0));
+            panel.add(title);
+            for (String label : order) {
+                int count = totals.get(label);
+                boolean ticked = selected.get(f).contains(label);
+                if (f == FacetIndex.COMPANY && count == 0 && !ticked) continue;
+                panel.add(checkBox(f, label, count, ticked));
+            }
+        }
+        if (any) {
+            JButton clear = new JButton("Clear facets");
+            clear.setEnabled(hasSelection());
+            clear.addActionListener(e -> clear());
+            panel.add(Box.createVerticalStrut(8));
+            panel.add(clear);
+        } else {
+            JLabel hint = new JLabel("<html>Facets appear once the catalog is loaded.</html>");
+            hint.setForeground(Color.GRAY);
+            panel.add(hint);
+        }
+        panel.revalidate();
+        panel.repaint();
+    }
+
+    // Per facet, the values (as indexed in the last show) of the ticked labels
+    public int[][] getSelected() {
+        int[][] out = new int[FacetIndex.FACETS][];
+        for (int f = 0; f < FacetIndex.FACETS; f++) {
+            List<Integer> picked = new ArrayList<>();
+            for (String label : selected.get(f)) {
+                List<Integer> v = values.get(f).get(label);
+                if (v != null) picked.addAll(v);
+            }
+            out[f] = new int[picked.size()];
+            for (int i = 0; i < out[f].length; i++) {
+                out[f][i] = picked.get(i);
+            }
+        }
+        return out;
+    }
+
+    public boolean hasSelection() {
+        for (Set<String> s : selected) {
+            if (!s.isEmpty()) return true;
+        }
+        return false;
+    }
+
+    // Untick everything without notifying; the caller reloads
+    public void clearSelection() {
+        for (Set<String> s : selected) {
+            s.clear();
+        }
+    }
+
+    private void clear() {
+        clearSelection();
+        onChange.run();
+    }
+
+    private JCheckBox checkBox(int facet, String label, int count, boolean ticked) {
+        JCheckBox box = new JCheckBox(label + " (" + count + ")", ticked);
+        box.setEnabled(count > 0 || ticked);
+        box.addActionListener(e -> {
+            if (box.isSelected()) selected.get(facet).add(label); else selected.get(facet).remove(label);
+            onChange.run();
+        });
+        return box;
+    }
+}
@@ -0,0 +1,156 @@
+package ui;
+
+import service.CsvImporter;
+import service.ImportReport;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.nio.file.Paths;
+
+/**
+ * ImportFrame
+ *
+ * Bulk import of a supplier CSV file (name, company, price, quantity) into the
+ * medicine table, with live progress, cancel and a summary of rejected rows.
+ */
+public class ImportFrame extends JFrame {
+
+    // Rejected rows listed in the summary; the report keeps more
+    private static final int SHOWN_ERRORS = 200;
+
+    private JTextField fileField;
+    private JTextArea resultArea;
+    private JButton cancelImportBtn;
+    private DbWorker worker;
+
+    public ImportFrame() {
+        super();
+        UIUtils.init();
+        initComponents();
+        UIUtils.styleFrame(this, "Import Medicines from CSV");
+    }
+
+    private void initComponents() {
+    setLayout(new BorderLayout(12,12));
+
+    JPanel form = new JPanel(new GridBagLayout());
+    GridBagConstraints gbc = new GridBagConstraints();
+    gbc.insets = new Insets(6,6,6,6);
+    gbc.fill = GridBagConstraints.HORIZONTAL;
+
+    JButton browseBtn = new JButton("Browse...");
+    gbc.gridx=0; gbc.gridy=0; gbc.weightx = 0; form.add(new JLabel("CSV File:"), gbc);
+    gbc.gridx=1; gbc.gridy=0; gbc.weightx = 1.0; fileField = new JTextField(25); form.add(fileField, gbc);
+    gbc.gridx=2; gbc.gridy=0; gbc.weightx = 0; form.add(browseBtn, gbc);
+    gbc.gridx=0; gbc.gridy=1; gbc.gridwidth = 3;
+    form.add(new JLabel("Header row: name, company, price, quantity (new medicines need a price)"), gbc);
+
+    resultArea = new JTextArea();
+    resultArea.setEditable(false);
+
+    JButton importBtn = new JButton("Start Import");
+    cancelImportBtn = new JButton("Cancel Import");
+    cancelImportBtn.setEnabled(false);
+    JButton closeBtn = new JButton("Close");
+
+    worker = new DbWorker(this, importBtn, browseBtn);
+
+    JPanel btnPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+    btnPanel.add(importBtn);
+    btnPanel.add(cancelImportBtn);
+    btnPanel.add(closeBtn);
+    btnPanel.add(worker.getProgressBar());
+
+    add(form, BorderLayout.NORTH);
+    add(new JScrollPane(resultArea), BorderLayout.CENTER);
+    add(btnPanel, BorderLayout.SOUTH);
+
+        browseBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                JFileChooser chooser = new JFileChooser();
+                if (chooser.showOpenDialog(ImportFrame.this) == JFileChooser.APPROVE_OPTION) {
+                    fileField.setText(chooser.getSelectedFile().getAbsolutePath());
+                }
+            }
+        });
+
+        importBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startImport();
+            }
+        });
+
+        cancelImportBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                worker.cancel();
+                cancelImportBtn.setEnabled(false);
+                resultArea.setText("Import cancelled. Chunks committed before the cancel stay in the database.");
+            }
+        });
+
+        closeBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                worker.cancel();
+                dispose();
+            }
+        });
+    }
+
+    private void startImport() {
+        String path = fileField.getText().trim();
+        if (path.isEmpty() || !new File(path).isFile()) {
+            JOptionPane.showMessageDialog(this, "Please choose a CSV file.", "Validation", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
+        resultArea.setText("");
+        cancelImportBtn.setEnabled(true);
+        CsvImporter importer = new CsvImporter();
+        worker.run("Importing...",
+                () -> importer.importFile(Paths.get(path), progress -> worker.progress(
+                        String.format("%,d rows (%,.0f rows/s)", progress.getRowsRead(), progress.getRowsPerSecond()))),
+                report -> {
+                    cancelImportBtn.setEnabled(false);
+                    showReport(report);
+                },
+                ex -> {
+                    cancelImportBtn.setEnabled(false);
+                    JOptionPane.showMessageDialog(this, "Import failed: " + ex.getMessage(), "Import Error", JOptionPane.ERROR_MESSAGE);
+                });
+    }
+
+    private void showReport(ImportReport report) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(report.isFinished() ? "Import complete: " : "Import stopped: ").append(report).append('\n');
+        if (report.getFailure() != null) sb.append(report.getFailure()).append('\n');
+        if (report.getRejected() > 0) {
+            sb.append('\n').append("Rejected rows:").append('\n');
+            int shown = Math.min(SHOWN_ERRORS, report.getErrors().size());
+            for (String err : report.getErrors().subList(0, shown)) {
+                sb.append(err).append('\n');
+            }
+            if (report.getRejected() > shown) {
+                sb.append("... and ").append(report.getRejected() - shown).append(" more").append('\n');
+            }
+        }
+        resultArea.setText(sb.toString());
+        resultArea.setCaretPosition(0);
+    }
+
+    // Quick test
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                new ImportFrame().setVisible(true);
+            }
+        });
+    }
+}
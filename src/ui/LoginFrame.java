@@ -1,14 +1,18 @@
 package ui;
 
 import db.DBConnection;
+import db.DbExecutor;
+import metrics.Metrics;
+import service.AuthService;
+import service.CatalogCache;
+import service.JournalReplayer;
+import service.RemoteClient;
+import service.StockLedger;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 /**
@@ -22,6 +26,9 @@ public class LoginFrame extends JFrame {
     private JTextField usernameField;
     private JPasswordField passwordField;
     private JLabel statusLabel;
+    private DbWorker worker;
+    private DbWorker statusWorker;
+    private final AuthService auth = new AuthService();
 
     public LoginFrame() {
         super();
@@ -65,6 +72,9 @@ public class LoginFrame extends JFrame {
     buttonPanel.add(loginBtn);
     buttonPanel.add(settingsBtn);
     buttonPanel.add(exitBtn);
+    worker = new DbWorker(this, loginBtn, settingsBtn);
+    buttonPanel.add(worker.getProgressBar());
+    statusWorker = new DbWorker(statusLabel);
 
     add(centerPanel, BorderLayout.CENTER);
     add(buttonPanel, BorderLayout.SOUTH);
@@ -102,24 +112,27 @@ public class LoginFrame extends JFrame {
         checkDbConnection();
     }
 
-    // Check DB connectivity and display status
+    // Check DB (or store server) connectivity in the background and display status
     private void checkDbConnection() {
-        try (Connection conn = DBConnection.getConnection()) {
-            if (conn == null || conn.isClosed()) {
-                statusLabel.setText("DB: Not connected");
-                statusLabel.setForeground(Color.RED);
-            } else {
-                statusLabel.setText("DB: Connected");
+        boolean remote = RemoteClient.isEnabled();
+        String target = remote ? "Server" : "DB";
+        statusLabel.setText(target + ": Checking...");
+        statusLabel.setForeground(Color.GRAY);
+        statusWorker.run("Checking...", () -> remote ? RemoteClient.testConnection() : DBConnection.testConnection(), err -> {
+            if (err == null) {
+                statusLabel.setText(target + ": Connected");
                 statusLabel.setForeground(new Color(0, 128, 0));
+            } else {
+                statusLabel.setText(target + ": Not connected");
+                statusLabel.setForeground(Color.RED);
             }
-        } catch (SQLException ex) {
+        }, ex -> {
             statusLabel.setText("DB Error: " + ex.getMessage());
             statusLabel.setForeground(Color.RED);
-            ex.printStackTrace();
-        }
+        });
     }
 
-    // Authenticate user against the users table using PreparedStatement
+    // Authenticate the user in the background (users table, or the store server in thin-client mode)
     private void authenticate() {
         String username = usernameField.getText().trim();
         String password = new String(passwordField.getPassword());
@@ -129,37 +142,36 @@ public class LoginFrame extends JFrame {
             return;
         }
 
-        // Use try-with-resources to ensure resources are closed
-        try (Connection conn = DBConnection.getConnection() ) {
-            if (conn == null) {
-                JOptionPane.showMessageDialog(this, "Unable to connect to database.\nPlease check that MySQL is running and that DB_USER/DB_PASS environment variables (if used) are correct.", "DB Error", JOptionPane.ERROR_MESSAGE);
-                return;
+        worker.run("Signing in...", Metrics.timed("ui.login", () -> auth.checkCredentials(username, password)), ok -> {
+            if (ok) {
+                // Login successful
+                JOptionPane.showMessageDialog(this, "Login successful!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                dispose();
+                new Dashboard().setVisible(true);
+                loadCatalog();
+            } else {
+                JOptionPane.showMessageDialog(this, "Invalid username or password.", "Login Failed", JOptionPane.ERROR_MESSAGE);
             }
+        });
+    }
 
-            String sql = "SELECT id FROM users WHERE username = ? AND password = ?";
-            try (PreparedStatement pst = conn.prepareStatement(sql)) {
-                pst.setString(1, username);
-                pst.setString(2, password);
-                try (ResultSet rs = pst.executeQuery()) {
-                    if (rs.next()) {
-                        // Login successful
-                        JOptionPane.showMessageDialog(this, "Login successful!", "Success", JOptionPane.INFORMATION_MESSAGE);
-                        // Open Dashboard on EDT
-                        SwingUtilities.invokeLater(() -> {
-                            dispose();
-                            new Dashboard().setVisible(true);
-                        });
-                    } else {
-                        JOptionPane.showMessageDialog(this, "Invalid username or password.", "Login Failed", JOptionPane.ERROR_MESSAGE);
-                    }
-                }
+    // Load the medicine catalog cache once per session, in the background
+    // (usually already prefetched by Startup while the user was typing).
+    // The background jobs start even if the database is down: the refresher keeps
+    // retrying the full load and the replayer is what drains the offline journal.
+    private static void loadCatalog() {
+        DbExecutor.submit(() -> {
+            Startup.prepareDatabase();
+            try {
+                CatalogCache.get().loadIfNeeded();
+            } catch (SQLException ex) {
+                Metrics.increment("catalog.errors");
+                System.err.println("Catalog load failed: " + ex.getMessage());
             }
-
-        } catch (SQLException ex) {
-            // show the SQL error message to help debugging
-            JOptionPane.showMessageDialog(this, "Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
-            ex.printStackTrace();
-        }
+            CatalogCache.get().startAutoRefresh();
+            JournalReplayer.start();
+            StockLedger.startCompaction();
+        });
     }
 
     // For quick manual testing
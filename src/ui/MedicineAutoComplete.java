@@ -0,0 +1,164 @@
+package ui;
+
+import service.CatalogCache;
+import service.Medicine;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+/**
+ * MedicineAutoComplete
+ *
+ * Drop-down suggestions for a medicine name field, served from the catalog cache
+ * (prefix, substring and typo-tolerant matches). Up/Down move through the list,
+ * Enter or a click picks a medicine, Escape closes the list.
+ *
+ * The picked medicine is remembered so callers can use its id in SQL; typing
+ * anything else clears it again.
+ */
+public class MedicineAutoComplete {
+
+    private static final int MAX_SUGGESTIONS = 8;
+    private static final int DEBOUNCE_MS = 80;
+
+    private final JTextField field;
+    private final DefaultListModel<Medicine> listModel = new DefaultListModel<>();
+    private final JList<Medicine> list = new JList<>(listModel);
+    private final JPopupMenu popup = new JPopupMenu();
+    private final Timer debounce;
+
+    private Medicine selected;
+    private boolean updatingText;
+
+    public MedicineAutoComplete(JTextField field) {
+        this.field = field;
+
+        list.setFocusable(false);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> l, Object value, int index, boolean sel, boolean focus) {
+                Medicine m = (Medicine) value;
+                String text = m.getName() + "  (" + (m.getCompany() == null ? "" : m.getCompany())
+                        + ", " + m.getPrice() + ", stock " + m.getStock() + ")";
+                return super.getListCellRendererComponent(l, text, index, sel, focus);
+            }
+        });
+        popup.setFocusable(false);
+        popup.add(new JScrollPane(list));
+
+        debounce = new Timer(DEBOUNCE_MS, e -> refreshSuggestions());
+        debounce.setRepeats(false);
+
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { textEdited(); }
+            @Override public void removeUpdate(DocumentEvent e) { textEdited(); }
+            @Override public void changedUpdate(DocumentEvent e) { textEdited(); }
+        });
+
+        field.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!popup.isVisible()) return;
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN:
+                        move(1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_UP:
+                        move(-1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ENTER:
+                        if (list.getSelectedValue() != null) {
+                            choose(list.getSelectedValue());
+                            e.consume();
+                        }
+                        break;
+                    case KeyEvent.VK_ESCAPE:
+                        popup.setVisible(false);
+                        e.consume();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = list.locationToIndex(e.getPoint());
+                if (index >= 0) choose(listModel.get(index));
+            }
+        });
+    }
+
+    /**
+     * The medicine picked from the list, or null if the field no longer shows
+     * exactly that medicine's name.
+     */
+    public Medicine getSelected() {
+        if (selected == null) return null;
+        return CatalogCache.normalize(field.getText()).equals(CatalogCache.normalize(selected.getName())) ? selected : null;
+    }
+
+    public void clear() {
+        selected = null;
+        popup.setVisible(false);
+    }
+
+    private void textEdited() {
+        if (updatingText) return;
+        selected = null;
+        debounce.restart();
+    }
+
+    private void refreshSuggestions() {
+        String text = field.getText();
+        if (!field.isShowing() || text.trim().isEmpty() || !CatalogCache.get().isLoaded()) {
+            popup.setVisible(false);
+            return;
+        }
+        List<Medicine> matches = CatalogCache.get().suggest(text, MAX_SUGGESTIONS);
+        listModel.clear();
+        for (Medicine m : matches) {
+            listModel.addElement(m);
+        }
+        if (matches.isEmpty()) {
+            popup.setVisible(false);
+            return;
+        }
+        list.setSelectedIndex(0);
+        list.setVisibleRowCount(Math.min(MAX_SUGGESTIONS, matches.size()));
+        popup.setPopupSize(Math.max(field.getWidth(), 320), list.getPreferredScrollableViewportSize().height + 6);
+        if (!popup.isVisible()) popup.show(field, 0, field.getHeight());
+        else popup.pack();
+    }
+
+    private void move(int delta) {
+        int n = listModel.getSize();
+        if (n == 0) return;
+        int i = Math.max(0, Math.min(n - 1, list.getSelectedIndex() + delta));
+        list.setSelectedIndex(i);
+        list.ensureIndexIsVisible(i);
+    }
+
+    private void choose(Medicine m) {
+        updatingText = true;
+        try {
+            field.setText(m.getName());
+        } finally {
+            updatingText = false;
+        }
+        selected = m;
+        popup.setVisible(false);
+    }
+}
@@ -0,0 +1,346 @@
+package ui;
+
+import service.Medicine;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MedicineColumns
+ *
+ * The whole catalog held column-wise for MedicineTableModel: ids, prices and stock in
+ * primitive arrays, company names dictionary-encoded (one String per company, an int
+ * code per row). Rows are stored in id order and never move; filtering and sorting
+ * produce an int[] of row numbers (the view) instead of reordering the columns.
+ *
+ * Sorting packs (rank of the sort value, row) into one long per row and sorts those,
+ * in parallel for large catalogs, so no value is boxed and no comparator runs per
+ * comparison. Filters compare the primitive columns directly; facet selections (company,
+ * stock band, price band) are answered from bitmap indexes in FacetIndex.
+ *
+ * Must be used from the event thread.
+ */
+final class MedicineColumns {
+
+    static final int ID = 0;
+    static final int NAME = 1;
+    static final int COMPANY = 2;
+    static final int PRICE = 3;
+    static final int STOCK = 4;
+
+    // Below this many rows a plain sort beats splitting the work across cores
+    private static final int PARALLEL_SORT_MIN = 1 << 14;
+
+    private static final Comparator<String> TEXT_ORDER = Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER);
+
+    private static final int[][] NO_FACETS = new int[FacetIndex.FACETS][0];
+
+    // What to show; the defaults let every row through
+    static final class Filter {
+        final String text;
+        final int stockBelow;
+        final double minPrice;
+        final double maxPrice;
+        final String company;
+        // Per FacetIndex facet, the selected values; empty for no restriction
+        final int[][] facets;
+
+        Filter(String text, int stockBelow, double minPrice, double maxPrice, String company) {
+            this(text, stockBelow, minPrice, maxPrice, company, NO_FACETS);
+        }
+
+        Filter(String text, int stockBelow, double minPrice, double maxPrice, String company, int[][] facets) {
+            this.text = text == null ? "" : text;
+            this.stockBelow = stockBelow;
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+            this.company = company;
+            this.facets = facets;
+        }
+
+        Filter withFacets(int[][] facets) {
+            return new Filter(text, stockBelow, minPrice, maxPrice, company, facets);
+        }
+
+        static Filter text(String text) {
+            return new Filter(text, Integer.MAX_VALUE, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, null);
+        }
+    }
+
+    int size;
+    int[] ids;
+    String[] names;
+    int[] companyCodes;
+    double[] prices;
+    int[] stocks;
+
+    // Company dictionary: code -> name and back
+    private String[] companies = new String[16];
+    private int companyCount;
+    private final Map<String, Integer> companyCodesByName = new HashMap<>();
+
+    private final FacetIndex facets = new FacetIndex();
+    // Rows per facet value from the last select()
+    private int[][] facetCounts = new int[FacetIndex.FACETS][0];
+
+    // Rank of each row's value in the column's order; kept until a value in that column changes or a row is added
+    private int[] nameRanks;
+    private int[] companyRanks;
+    private int[] priceRanks;
+
+    private MedicineColumns(int capacity) {
+        capacity = Math.max(capacity, 16);
+        ids = new int[capacity];
+        names = new String[capacity];
+        companyCodes = new int[capacity];
+        prices = new double[capacity];
+        stocks = new int[capacity];
+    }
+
+    static MedicineColumns of(Collection<Medicine> rows) {
+        Medicine[] sorted = rows.toArray(new Medicine[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(Medicine::getId));
+        MedicineColumns columns = new MedicineColumns(sorted.length);
+        for (Medicine m : sorted) {
+            columns.append(m);
+        }
+        return columns;
+    }
+
+    String company(int row) {
+        return companies[companyCodes[row]];
+    }
+
+    int companyCount() {
+        return companyCount;
+    }
+
+    // Company name for a dictionary code (the company facet's values); may be null
+    String companyName(int code) {
+        return companies[code];
+    }
+
+    // Dictionary code of a company, or -1 when no row has it
+    int companyCode(String name) {
+        Integer code = companyCodesByName.get(name);
+        return code == null ? -1 : code;
+    }
+
+    // Per facet, rows each value would match under the last select()'s filter and the other facets' selections
+    int[][] facetCounts() {
+        return facetCounts;
+    }
+
+    // Distinct company names, sorted, for a filter drop-down
+    String[] companyNames() {
+        String[] out = new String[companyCount];
+        int n = 0;
+        for (int i = 0; i < companyCount; i++) {
+            if (companies[i] != null && !companies[i].isEmpty()) out[n++] = companies[i];
+        }
+        out = Arrays.copyOf(out, n);
+        Arrays.sort(out, String.CASE_INSENSITIVE_ORDER);
+        return out;
+    }
+
+    // Row holding id, or a negative number when there is none
+    int indexOf(int id) {
+        return Arrays.binarySearch(ids, 0, size, id);
+    }
+
+    /**
+     * Writes changed medicines into their rows and appends new ones.
+     *
+     * @return the rows whose values changed, or null when a medicine would have to go
+     *         between existing rows (an id below the highest, e.g. inserted by hand)
+     *         and the columns must be rebuilt
+     */
+    int[] apply(List<Medicine> changed) {
+        int[] touched = new int[changed.size()];
+        int n = 0;
+        for (Medicine m : changed) {
+            int row = indexOf(m.getId());
+            if (row < 0) {
+                if (size > 0 && m.getId() < ids[size - 1]) return null;
+                row = size;
+                append(m);
+            } else if (same(row, m)) {
+                continue;
+            } else {
+                set(row, m);
+            }
+            touched[n++] = row;
+        }
+        return Arrays.copyOf(touched, n);
+    }
+
+    /**
+     * Rows passing the filter and its facet selection, in the given sort order. Also
+     * refreshes facetCounts().
+     *
+     * @param textMatches ids matching filter.text (from the catalog cache's search index), or null for no text filter
+     */
+    int[] select(Filter filter, int[] textMatches, int sortColumn, boolean ascending) {
+        boolean[] textMask = null;
+        if (textMatches != null) {
+            textMask = new boolean[size];
+            for (int id : textMatches) {
+                int row = indexOf(id);
+                if (row >= 0) textMask[row] = true;
+            }
+        }
+        int company = -1;
+        if (filter.company != null) {
+            Integer code = companyCodesByName.get(filter.company);
+            if (code == null) return new int[0];
+            company = code;
+        }
+
+        int[] rows = new int[size];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (textMask != null && !textMask[i]) continue;
+            if (stocks[i] >= filter.stockBelow) continue;
+            if (prices[i] < filter.minPrice || prices[i] > filter.maxPrice) continue;
+            if (company >= 0 && companyCodes[i] != company) continue;
+            rows[n++] = i;
+        }
+
+        long[] base = new long[(size + 63) >>> 6];
+        for (int k = 0; k < n; k++) {
+            base[rows[k] >>> 6] |= 1L << rows[k];
+        }
+        FacetIndex.Result faceted = facets.query(base, filter.facets);
+        facetCounts = faceted.counts;
+        int kept = 0;
+        for (int k = 0; k < n; k++) {
+            int row = rows[k];
+            if ((faceted.rows[row >>> 6] & (1L << row)) != 0) rows[kept++] = row;
+        }
+        rows = Arrays.copyOf(rows, kept);
+        sort(rows, sortColumn, ascending);
+        return rows;
+    }
+
+    // Rows are stored in id order, so ties keep id order (reversed when descending)
+    private void sort(int[] rows, int column, boolean ascending) {
+        int n = rows.length;
+        if (column == ID && ascending) return;
+        int[] rank = ranks(column);
+        long[] keys = new long[n];
+        for (int k = 0; k < n; k++) {
+            keys[k] = ((long) rank[rows[k]] << 32) | rows[k];
+        }
+        if (n >= PARALLEL_SORT_MIN) Arrays.parallelSort(keys); else Arrays.sort(keys);
+        for (int k = 0; k < n; k++) {
+            rows[ascending ? k : n - 1 - k] = (int) keys[k];
+        }
+    }
+
+    // Per row, an int that orders rows the way the column's values do
+    private int[] ranks(int column) {
+        switch (column) {
+            case ID: return ids;
+            case STOCK: return stocks;
+            case NAME: return nameRanks();
+            case COMPANY: return companyRanks();
+            default: return priceRanks();
+        }
+    }
+
+    private int[] nameRanks() {
+        if (nameRanks != null) return nameRanks;
+        String[] sorted = Arrays.copyOf(names, size);
+        if (size >= PARALLEL_SORT_MIN) Arrays.parallelSort(sorted, TEXT_ORDER); else Arrays.sort(sorted, TEXT_ORDER);
+        int[] rank = new int[size];
+        for (int i = 0; i < size; i++) {
+            rank[i] = Arrays.binarySearch(sorted, names[i], TEXT_ORDER);
+        }
+        nameRanks = rank;
+        return rank;
+    }
+
+    // Only the dictionary is sorted; rows take their company's place in it
+    private int[] companyRanks() {
+        if (companyRanks != null) return companyRanks;
+        String[] sorted = Arrays.copyOf(companies, companyCount);
+        Arrays.sort(sorted, TEXT_ORDER);
+        int[] codeRank = new int[companyCount];
+        for (int c = 0; c < companyCount; c++) {
+            codeRank[c] = Arrays.binarySearch(sorted, companies[c], TEXT_ORDER);
+        }
+        int[] rank = new int[size];
+        for (int i = 0; i < size; i++) {
+            rank[i] = codeRank[companyCodes[i]];
+        }
+        companyRanks = rank;
+        return rank;
+    }
+
+    private int[] priceRanks() {
+        if (priceRanks != null) return priceRanks;
+        double[] sorted = Arrays.copyOf(prices, size);
+        if (size >= PARALLEL_SORT_MIN) Arrays.parallelSort(sorted); else Arrays.sort(sorted);
+        int[] rank = new int[size];
+        for (int i = 0; i < size; i++) {
+            rank[i] = Arrays.binarySearch(sorted, prices[i]);
+        }
+        priceRanks = rank;
+        return rank;
+    }
+
+    private void append(Medicine m) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            companyCodes = Arrays.copyOf(companyCodes, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            stocks = Arrays.copyOf(stocks, capacity);
+        }
+        int row = size++;
+        nameRanks = null;
+        companyRanks = null;
+        priceRanks = null;
+        write(row, m);
+        facets.add(row, companyCodes[row], stocks[row], prices[row]);
+    }
+
+    private void set(int row, Medicine m) {
+        int oldCompany = companyCodes[row];
+        int oldStock = stocks[row];
+        double oldPrice = prices[row];
+        write(row, m);
+        facets.move(row, oldCompany, oldStock, oldPrice, companyCodes[row], stocks[row], prices[row]);
+    }
+
+    private void write(int row, Medicine m) {
+        int company = encode(m.getCompany());
+        if (!m.getName().equals(names[row])) nameRanks = null;
+        if (company != companyCodes[row]) companyRanks = null;
+        if (m.getPrice() != prices[row]) priceRanks = null;
+        ids[row] = m.getId();
+        names[row] = m.getName();
+        companyCodes[row] = company;
+        prices[row] = m.getPrice();
+        stocks[row] = m.getStock();
+    }
+
+    private int encode(String company) {
+        Integer code = companyCodesByName.get(company);
+        if (code != null) return code;
+        if (companyCount == companies.length) companies = Arrays.copyOf(companies, companyCount * 2);
+        companies[companyCount] = company;
+        companyCodesByName.put(company, companyCount);
+        return companyCount++;
+    }
+
+    private boolean same(int row, Medicine m) {
+        return stocks[row] == m.getStock() && prices[row] == m.getPrice() && names[row].equals(m.getName())
+                && String.valueOf(company(row)).equals(String.valueOf(m.getCompany()));
+    }
+}
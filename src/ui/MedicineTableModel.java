@@ -0,0 +1,512 @@
+package ui;
+
+import db.DbExecutor;
+import metrics.Metrics;
+import service.CatalogCache;
+import service.CatalogChanges;
+import service.CatalogService;
+import service.Medicine;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * MedicineTableModel
+ *
+ * Read-only table model over the `medicine` table that only keeps a few pages in memory.
+ * Pages are fetched on demand as the JTable asks for rows, using keyset pagination on
+ * `id` (`WHERE id > ? ORDER BY id LIMIT ?`) instead of OFFSET. Loaded pages live in a
+ * small LRU, and the page after the one just loaded is prefetched in the background.
+ *
+ * Once the catalog cache is loaded the whole catalog is shown from memory instead
+ * (showInMemory), held column-wise in MedicineColumns; only then can rows be sorted
+ * (sortBy) and filtered by stock, price and company as well as by text, and narrowed
+ * by facets (company, stock band, price band) with per-value counts (getFacetCounts).
+ *
+ * apply() patches in the medicines changed since the last sync (CatalogService.changesSince)
+ * with row-level events, so a refresh keeps the selection and scroll position. In
+ * memory every changed row is updated, and rows that join or leave the filter are
+ * inserted or deleted in place. From the database, changed rows that are on screen or
+ * cached are updated and new medicines (ids above the highest one at the sync point)
+ * are appended; rows of a page not in memory are simply read fresh when next shown.
+ *
+ * A page that fails to load is not asked for again until a backoff has passed (1 s,
+ * doubling with each failure in a row up to 30 s); its rows are then repainted so a
+ * page still on screen is requested again. The page error handler is told about each
+ * failure and, with null, when pages load again.
+ *
+ * Must be used from the event thread; SQL runs on DbExecutor.
+ */
+public class MedicineTableModel extends AbstractTableModel {
+
+    static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 16;
+    private static final int RETRY_MIN_MS = 1000;
+    private static final int RETRY_MAX_MS = 30_000;
+
+    private static final CatalogService CATALOG = new CatalogService();
+
+    private static final String[] COLUMNS = {"ID", "Name", "Company", "Price", "Stock"};
+    static final String NO_COMPANY = "(no company)";
+    private static final String[] SORT_ARROWS = {" \u25B2", " \u25BC"};
+    private static final Class<?>[] COLUMN_CLASSES = {Integer.class, String.class, String.class, Double.class, Integer.class};
+
+    // One page of rows, stored column-wise
+    static final class Page {
+        final int[] ids;
+        final String[] names;
+        final String[] companies;
+        final double[] prices;
+        final int[] stocks;
+        int size;
+
+        Page(int capacity) {
+            ids = new int[capacity];
+            names = new String[capacity];
+            companies = new String[capacity];
+            prices = new double[capacity];
+            stocks = new int[capacity];
+        }
+    }
+
+    private final Map<Integer, Page> pages = new LinkedHashMap<Integer, Page>(MAX_CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    // page number -> id the page starts after (learned as pages are read)
+    private final TreeMap<Integer, Long> pageStarts = new TreeMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    // page number -> time (ms) before which a page that failed to load is not asked for again
+    private final Map<Integer, Long> failed = new HashMap<>();
+    // Page loads failed in a row, for the backoff
+    private int failures;
+    private Consumer<String> pageErrorHandler;
+
+    // When set, rows come from the whole catalog in memory instead of the database: view holds the rows shown
+    private MedicineColumns columns;
+    private MedicineColumns.Filter filter;
+    private int[] view;
+    private int sortColumn = MedicineColumns.ID;
+    private boolean ascending = true;
+
+    private String nameFilter = "";
+    private int rowCount;
+    private long generation;
+    // Sync point the rows shown are current as of, and the highest id at that point
+    private long syncedAt;
+    private int knownMaxId;
+
+    public MedicineTableModel() {
+        pageStarts.put(0, Long.MIN_VALUE);
+    }
+
+    /**
+     * The database work ShowStockFrame does before the first rows appear: the count
+     * plus the first keyset page. Returns the number of rows loaded. Used by the
+     * data-access benchmarks.
+     */
+    public static int loadFirstPage(String nameFilter) throws SQLException {
+        String filter = nameFilter == null ? "" : nameFilter;
+        if (CATALOG.countRows(filter) == 0) return 0;
+        return fetchPage(filter, Long.MIN_VALUE).size;
+    }
+
+    // Told (on the event thread) why a page could not be loaded, and null once pages load again
+    public void setPageErrorHandler(Consumer<String> handler) {
+        this.pageErrorHandler = handler;
+    }
+
+    // Drop all cached pages and show the rows matching nameFilter as counted at the sync point
+    public void reset(String nameFilter, CatalogChanges at) {
+        generation++;
+        this.nameFilter = nameFilter == null ? "" : nameFilter;
+        this.rowCount = at.getCount();
+        syncedAt = at.getSyncedAt();
+        knownMaxId = at.getMaxId();
+        columns = null;
+        view = null;
+        pages.clear();
+        loading.clear();
+        failed.clear();
+        failures = 0;
+        pageStarts.clear();
+        pageStarts.put(0, Long.MIN_VALUE);
+        fireTableDataChanged();
+    }
+
+    // Show the whole catalog from memory (current as of syncedAt), filtered and in the current sort order
+    void showInMemory(Collection<Medicine> catalog, MedicineColumns.Filter filter, long syncedAt) {
+        generation++;
+        MedicineColumns old = columns;
+        columns = MedicineColumns.of(catalog);
+        this.syncedAt = syncedAt;
+        pages.clear();
+        loading.clear();
+        failed.clear();
+        failures = 0;
+        setFilter(old == null ? filter : sameCompanies(filter, old));
+    }
+
+    // The filter with its company facet moved from old's dictionary codes to the new columns'
+    private MedicineColumns.Filter sameCompanies(MedicineColumns.Filter filter, MedicineColumns old) {
+        int[] codes = filter.facets[FacetIndex.COMPANY];
+        int[] moved = new int[codes.length];
+        int n = 0;
+        for (int code : codes) {
+            int now = code < old.companyCount() ? columns.companyCode(old.companyName(code)) : -1;
+            if (now >= 0) moved[n++] = now;
+        }
+        int[][] facets = filter.facets.clone();
+        facets[FacetIndex.COMPANY] = Arrays.copyOf(moved, n);
+        return filter.withFacets(facets);
+    }
+
+    // Filter the catalog in memory; no-op unless isInMemory()
+    void setFilter(MedicineColumns.Filter filter) {
+        if (columns == null) return;
+        this.filter = filter;
+        nameFilter = filter.text;
+        view = select();
+        rowCount = view.length;
+        fireTableDataChanged();
+    }
+
+    // Current in-memory filter; null unless isInMemory()
+    MedicineColumns.Filter getFilter() {
+        return filter;
+    }
+
+    public boolean isInMemory() {
+        return columns != null;
+    }
+
+    // Sort by a column, or reverse the order when it already is; no-op unless isInMemory()
+    public void sortBy(int column) {
+        if (columns == null) return;
+        ascending = column != sortColumn || !ascending;
+        sortColumn = column;
+        view = select();
+        fireTableDataChanged();
+    }
+
+    // Companies in the catalog, for the company filter; empty unless isInMemory()
+    public String[] getCompanies() {
+        return columns == null ? new String[0] : columns.companyNames();
+    }
+
+    // Values of a FacetIndex facet, indexed as in the filter's facet selection; empty unless isInMemory()
+    public String[] getFacetLabels(int facet) {
+        if (columns == null) return new String[0];
+        switch (facet) {
+            case FacetIndex.STOCK: return FacetIndex.STOCK_BANDS.clone();
+            case FacetIndex.PRICE: return FacetIndex.PRICE_BANDS.clone();
+            default:
+                String[] labels = new String[columns.companyCount()];
+                for (int code = 0; code < labels.length; code++) {
+                    String name = columns.companyName(code);
+                    labels[code] = name == null || name.isEmpty() ? NO_COMPANY : name;
+                }
+                return labels;
+        }
+    }
+
+    // Per facet and value, the rows it would match under the current filter; empty unless isInMemory()
+    public int[][] getFacetCounts() {
+        return columns == null ? new int[FacetIndex.FACETS][0] : columns.facetCounts();
+    }
+
+    // Row showing the medicine, or -1 (in memory only)
+    public int rowOf(int id) {
+        if (columns == null) return -1;
+        int stored = columns.indexOf(id);
+        for (int r = 0; stored >= 0 && r < view.length; r++) {
+            if (view[r] == stored) return r;
+        }
+        return -1;
+    }
+
+    private int[] select() {
+        int[] textMatches = filter.text.isEmpty() ? null : CatalogCache.get().searchIds(filter.text);
+        return columns.select(filter, textMatches, sortColumn, ascending);
+    }
+
+    // Pass to CatalogService.changesSince to fetch what changed after the rows shown
+    public long getSyncedAt() {
+        return syncedAt;
+    }
+
+    /**
+     * Applies medicines changed since the sync point `since` (getSyncedAt() when they
+     * were requested). Changes fetched before a reset are ignored.
+     *
+     * @return false when the table cannot be patched and must be reloaded: too many
+     *         changes, or a shown row no longer matches a database-paged filter
+     */
+    public boolean apply(long since, CatalogChanges changes) {
+        if (since != syncedAt) return true;
+        if (!changes.isComplete()) return false;
+        boolean patched = columns != null ? applyInMemory(changes.getRows()) : applyToPages(changes.getRows());
+        if (patched) syncedAt = changes.getSyncedAt();
+        return patched;
+    }
+
+    // Whole catalog: write the changes into the columns, then move from the old view to the new one
+    // with deletes, inserts and updates when the rows that stay keep their order
+    private boolean applyInMemory(List<Medicine> changed) {
+        int[] touched = columns.apply(changed);
+        if (touched == null) return false;
+        if (touched.length == 0) return true;
+        int[] before = view;
+        view = select();
+        rowCount = view.length;
+
+        boolean[] inBefore = new boolean[columns.size];
+        boolean[] inAfter = new boolean[columns.size];
+        for (int row : before) inBefore[row] = true;
+        for (int row : view) inAfter[row] = true;
+        int k = 0;
+        for (int row : before) {
+            if (!inAfter[row]) continue;
+            while (!inBefore[view[k]]) k++;
+            if (view[k++] != row) {
+                fireTableDataChanged(); // a change moved rows in the sort order
+                return true;
+            }
+        }
+        for (int r = before.length - 1; r >= 0; r--) {
+            if (!inAfter[before[r]]) fireTableRowsDeleted(r, r);
+        }
+        for (int r = 0; r < view.length; r++) {
+            if (!inBefore[view[r]]) fireTableRowsInserted(r, r);
+        }
+        int[] position = new int[columns.size];
+        for (int r = 0; r < view.length; r++) position[view[r]] = r;
+        for (int row : touched) {
+            if (inBefore[row] && inAfter[row]) fireTableRowsUpdated(position[row], position[row]);
+        }
+        return true;
+    }
+
+    // Database pages: update rows held in memory, append new medicines at the end (ids only grow)
+    private boolean applyToPages(List<Medicine> changed) {
+        int firstNew = rowCount;
+        for (Medicine m : changed) {
+            if (m.getId() > knownMaxId) {
+                if (matches(m) && !append(m)) return false;
+                continue;
+            }
+            for (Map.Entry<Integer, Page> e : pages.entrySet()) {
+                Page page = e.getValue();
+                int i = page.size == 0 ? -1 : Arrays.binarySearch(page.ids, 0, page.size, m.getId());
+                if (i < 0) continue;
+                int row = e.getKey() * PAGE_SIZE + i;
+                if (!matches(m)) return false; // renamed out of the filter: rows would shift
+                if (row < rowCount && !same(page, i, m)) {
+                    store(page, i, m);
+                    fireTableRowsUpdated(row, row);
+                }
+                break;
+            }
+        }
+        if (rowCount > firstNew) fireTableRowsInserted(firstNew, rowCount - 1);
+        return true;
+    }
+
+    // Add a new medicine as the last row; the page it lands on may already hold it if read after the insert
+    private boolean append(Medicine m) {
+        int pageNo = rowCount / PAGE_SIZE;
+        int i = rowCount % PAGE_SIZE;
+        Page page = pages.get(pageNo);
+        if (page != null) {
+            if (i < page.size) {
+                if (page.ids[i] != m.getId()) return false;
+                store(page, i, m);
+            } else if (i == page.size) {
+                store(page, i, m);
+                page.size++;
+                if (page.size == PAGE_SIZE) pageStarts.put(pageNo + 1, (long) m.getId());
+            } else {
+                return false;
+            }
+        }
+        rowCount++;
+        knownMaxId = m.getId();
+        return true;
+    }
+
+    // Same test as the database filter (substring of name or company, ignoring case)
+    private boolean matches(Medicine m) {
+        if (nameFilter.isEmpty()) return true;
+        String q = CatalogCache.normalize(nameFilter);
+        return CatalogCache.normalize(m.getName()).contains(q) || CatalogCache.normalize(m.getCompany()).contains(q);
+    }
+
+    private static boolean same(Page page, int i, Medicine m) {
+        return page.stocks[i] == m.getStock() && page.prices[i] == m.getPrice()
+                && page.names[i].equals(m.getName()) && String.valueOf(page.companies[i]).equals(String.valueOf(m.getCompany()));
+    }
+
+    private static void store(Page page, int i, Medicine m) {
+        page.ids[i] = m.getId();
+        page.names[i] = m.getName();
+        page.companies[i] = m.getCompany();
+        page.prices[i] = m.getPrice();
+        page.stocks[i] = m.getStock();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        // The sorted column carries an arrow (in memory only)
+        if (columns == null || column != sortColumn) return COLUMNS[column];
+        return COLUMNS[column] + SORT_ARROWS[ascending ? 0 : 1];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_CLASSES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (columns != null) {
+            int i = view[row];
+            switch (column) {
+                case 0: return columns.ids[i];
+                case 1: return columns.names[i];
+                case 2: return columns.company(i);
+                case 3: return columns.prices[i];
+                default: return columns.stocks[i];
+            }
+        }
+        int pageNo = row / PAGE_SIZE;
+        Page page = pages.get(pageNo);
+        if (page == null) {
+            requestPage(pageNo, false);
+            return null; // rendered blank until the page arrives
+        }
+        int i = row % PAGE_SIZE;
+        if (i >= page.size) return null;
+        switch (column) {
+            case 0: return page.ids[i];
+            case 1: return page.names[i];
+            case 2: return page.companies[i];
+            case 3: return page.prices[i];
+            default: return page.stocks[i];
+        }
+    }
+
+    private int pageCount() {
+        return (rowCount + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    // Schedule a background load of the page unless it is cached, in flight or failed too recently
+    private void requestPage(int pageNo, boolean prefetch) {
+        if (pageNo < 0 || pageNo >= pageCount()) return;
+        if (pages.containsKey(pageNo) || loading.contains(pageNo)) return;
+        Long retryAt = failed.get(pageNo);
+        if (retryAt != null) {
+            if (System.currentTimeMillis() < retryAt) return;
+            failed.remove(pageNo);
+        }
+
+        loading.add(pageNo);
+        Map.Entry<Integer, Long> known = pageStarts.floorEntry(pageNo);
+        final int knownPage = known.getKey();
+        final long knownAfterId = known.getValue();
+        final String filter = nameFilter;
+        final long gen = generation;
+
+        DbExecutor.submit(() -> {
+            try {
+                long afterId = knownPage == pageNo ? knownAfterId
+                        : CATALOG.skipAhead(filter, knownAfterId, (pageNo - knownPage) * PAGE_SIZE);
+                Page page = fetchPage(filter, afterId);
+                SwingUtilities.invokeLater(() -> pageLoaded(gen, pageNo, afterId, page, prefetch));
+            } catch (SQLException ex) {
+                Metrics.increment("ui.errors");
+                System.err.println("Failed to load stock page " + pageNo + ": " + ex.getMessage());
+                SwingUtilities.invokeLater(() -> pageFailed(gen, pageNo, ex.getMessage()));
+            }
+        });
+    }
+
+    private void pageLoaded(long gen, int pageNo, long afterId, Page page, boolean prefetched) {
+        if (gen != generation) return; // filter changed meanwhile
+        loading.remove(pageNo);
+        if (failures > 0) {
+            failures = 0;
+            if (pageErrorHandler != null) pageErrorHandler.accept(null);
+        }
+        pages.put(pageNo, page);
+        pageStarts.put(pageNo, afterId);
+        if (page.size > 0) pageStarts.put(pageNo + 1, (long) page.ids[page.size - 1]);
+
+        firePageUpdated(pageNo);
+
+        // Prefetch the next page so scrolling down does not hit a blank screen
+        // (only after a demand load, so prefetches do not cascade through the table)
+        if (!prefetched) requestPage(pageNo + 1, true);
+    }
+
+    private void pageFailed(long gen, int pageNo, String error) {
+        if (gen != generation) return;
+        loading.remove(pageNo);
+        failures++;
+        int delay = (int) Math.min(RETRY_MAX_MS, (long) RETRY_MIN_MS << Math.min(failures - 1, 5));
+        failed.put(pageNo, System.currentTimeMillis() + delay);
+
+        // Repaint the page's rows after the backoff; if they are still on screen, getValueAt asks again
+        Timer retry = new Timer(delay, e -> {
+            if (gen == generation) firePageUpdated(pageNo);
+        });
+        retry.setRepeats(false);
+        retry.start();
+
+        if (pageErrorHandler != null) {
+            int first = pageNo * PAGE_SIZE + 1;
+            int last = Math.min(rowCount, pageNo * PAGE_SIZE + PAGE_SIZE);
+            String reason = error == null ? "database error" : error.split("\\R", 2)[0];
+            pageErrorHandler.accept("Could not load rows " + first + "-" + last + " (" + reason + "); retrying in "
+                    + (delay / 1000) + " s.");
+        }
+    }
+
+    private void firePageUpdated(int pageNo) {
+        int first = pageNo * PAGE_SIZE;
+        int last = Math.min(rowCount, first + PAGE_SIZE) - 1;
+        if (last >= first) fireTableRowsUpdated(first, last);
+    }
+
+    // Keyset page: the next PAGE_SIZE rows after afterId, stored column-wise
+    private static Page fetchPage(String filter, long afterId) throws SQLException {
+        List<Medicine> rows = CATALOG.page(filter, afterId, PAGE_SIZE);
+        Page page = new Page(PAGE_SIZE);
+        for (Medicine m : rows) {
+            store(page, page.size++, m);
+        }
+        return page;
+    }
+}
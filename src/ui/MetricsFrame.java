@@ -0,0 +1,137 @@
+package ui;
+
+import db.DBConnection;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * MetricsFrame
+ *
+ * Live view of this terminal's latency histograms and counters, refreshed every
+ * two seconds. "Last interval" shows only what happened since the previous refresh;
+ * "Since start" shows all-time figures (the same ones published over JMX).
+ */
+public class MetricsFrame extends JFrame {
+
+    private static final int REFRESH_MS = 2000;
+    private static final String[] MODES = {"Last interval", "Since start"};
+
+    private JComboBox<String> modeBox;
+    private DefaultTableModel model;
+    private JLabel countersLabel;
+    private JLabel poolLabel;
+    private Timer timer;
+
+    private Map<String, LatencyHistogram.Snapshot> previous = new HashMap<>();
+    private long previousAt = System.nanoTime();
+    private final long startedAt = System.nanoTime();
+
+    public MetricsFrame() {
+        super();
+        UIUtils.init();
+        initComponents();
+        UIUtils.styleFrame(this, "Metrics - terminal " + Metrics.getTerminalId());
+        refresh();
+    }
+
+    private void initComponents() {
+    setLayout(new BorderLayout(8,8));
+
+    JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    top.add(new JLabel("Show:"));
+    modeBox = new JComboBox<>(MODES);
+    top.add(modeBox);
+
+    model = new DefaultTableModel(new String[]{"Operation", "Count", "Rate/s", "p50 ms", "p90 ms", "p99 ms", "Mean ms", "Max ms"}, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    JTable table = new JTable(model);
+    table.getColumnModel().getColumn(0).setPreferredWidth(220);
+
+    countersLabel = new JLabel(" ");
+    poolLabel = new JLabel(" ");
+    JPanel south = new JPanel(new GridLayout(2, 1));
+    south.setBorder(BorderFactory.createEmptyBorder(0, 8, 4, 8));
+    south.add(countersLabel);
+    south.add(poolLabel);
+
+    add(top, BorderLayout.NORTH);
+    add(new JScrollPane(table), BorderLayout.CENTER);
+    add(south, BorderLayout.SOUTH);
+
+        timer = new Timer(REFRESH_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                refresh();
+            }
+        });
+        timer.start();
+
+        // Stop polling once the window is gone
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                timer.stop();
+            }
+        });
+    }
+
+    // Everything here reads in-memory counters, so it is cheap enough for the event thread
+    private void refresh() {
+        long now = System.nanoTime();
+        boolean interval = modeBox.getSelectedIndex() == 0;
+        double seconds = Math.max(1e-3, (now - (interval ? previousAt : startedAt)) / 1e9);
+
+        Map<String, LatencyHistogram.Snapshot> current = new HashMap<>();
+        model.setRowCount(0);
+        for (LatencyHistogram.Snapshot s : Metrics.snapshots()) {
+            current.put(s.getName(), s);
+            LatencyHistogram.Snapshot shown = interval ? s.minus(previous.get(s.getName())) : s;
+            model.addRow(new Object[]{
+                    s.getName(),
+                    shown.getCount(),
+                    String.format("%.1f", shown.getCount() / seconds),
+                    ms(shown.getPercentileMillis(0.50)),
+                    ms(shown.getPercentileMillis(0.90)),
+                    ms(shown.getPercentileMillis(0.99)),
+                    ms(shown.getMeanMillis()),
+                    ms(shown.getMaxMillis())});
+        }
+        previous = current;
+        previousAt = now;
+
+        StringBuilder counters = new StringBuilder("Counters:");
+        for (Map.Entry<String, Long> e : Metrics.counters().entrySet()) {
+            counters.append("  ").append(e.getKey()).append('=').append(e.getValue());
+        }
+        countersLabel.setText(counters.toString());
+        poolLabel.setText("Pool: " + DBConnection.getPoolStats());
+    }
+
+    private static String ms(double value) {
+        return String.format("%.2f", value);
+    }
+
+    // Quick test
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                new MetricsFrame().setVisible(true);
+            }
+        });
+    }
+}
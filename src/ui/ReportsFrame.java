@@ -0,0 +1,165 @@
+package ui;
+
+import service.ReportService;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * ReportsFrame
+ *
+ * Sales reports served from the daily/hourly rollup tables: revenue for a period,
+ * the top 20 sellers and today's sales by hour.
+ */
+public class ReportsFrame extends JFrame {
+
+    private static final int TOP_N = 20;
+    private static final String[] PERIODS = {"Today", "Last 7 days", "This month", "This year"};
+
+    private JComboBox<String> periodBox;
+    private JLabel totalsLabel;
+    private DefaultTableModel topModel;
+    private DefaultTableModel hourlyModel;
+    private DbWorker worker;
+    private final ReportService reports = new ReportService();
+
+    public ReportsFrame() {
+        super();
+        UIUtils.init();
+        initComponents();
+        UIUtils.styleFrame(this, "Sales Reports");
+        loadReport();
+    }
+
+    // Everything the window shows, fetched in one background call
+    private static final class Snapshot {
+        ReportService.Totals totals;
+        List<ReportService.Row> top;
+        List<ReportService.Row> hourly;
+    }
+
+    private void initComponents() {
+    setLayout(new BorderLayout(8,8));
+
+    JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    top.add(new JLabel("Period:"));
+    periodBox = new JComboBox<>(PERIODS);
+    periodBox.setSelectedIndex(2);
+    top.add(periodBox);
+    JButton refreshBtn = new JButton("Refresh");
+    JButton rebuildBtn = new JButton("Rebuild from History");
+    top.add(refreshBtn);
+    top.add(rebuildBtn);
+    worker = new DbWorker(this, periodBox, refreshBtn, rebuildBtn);
+    top.add(worker.getProgressBar());
+
+    totalsLabel = new JLabel(" ");
+    totalsLabel.setBorder(BorderFactory.createEmptyBorder(0, 8, 0, 8));
+
+    JPanel north = new JPanel(new BorderLayout());
+    north.add(top, BorderLayout.NORTH);
+    north.add(totalsLabel, BorderLayout.SOUTH);
+
+    topModel = readOnlyModel("Medicine", "Units", "Revenue");
+    hourlyModel = readOnlyModel("Hour", "Units", "Revenue");
+
+    JTabbedPane tabs = new JTabbedPane();
+    tabs.addTab("Top " + TOP_N + " sellers", new JScrollPane(new JTable(topModel)));
+    tabs.addTab("Today by hour", new JScrollPane(new JTable(hourlyModel)));
+
+    add(north, BorderLayout.NORTH);
+    add(tabs, BorderLayout.CENTER);
+
+        periodBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                loadReport();
+            }
+        });
+
+        refreshBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                loadReport();
+            }
+        });
+
+        rebuildBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                int answer = JOptionPane.showConfirmDialog(ReportsFrame.this,
+                        "Recompute all rollups from the full bill history?\nThis runs one day at a time; sales can continue.",
+                        "Rebuild Rollups", JOptionPane.OK_CANCEL_OPTION);
+                if (answer != JOptionPane.OK_OPTION) return;
+                int period = periodBox.getSelectedIndex();
+                worker.run("Rebuilding...", () -> {
+                    reports.rebuild();
+                    return fetch(period);
+                }, ReportsFrame.this::showReport);
+            }
+        });
+    }
+
+    private static DefaultTableModel readOnlyModel(String... columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+
+    private void loadReport() {
+        int period = periodBox.getSelectedIndex();
+        worker.run("Loading...", () -> fetch(period), this::showReport);
+    }
+
+    // Runs on a DbExecutor thread
+    private Snapshot fetch(int period) throws SQLException {
+        LocalDate today = LocalDate.now();
+        LocalDate from;
+        switch (period) {
+            case 0: from = today; break;
+            case 1: from = today.minusDays(6); break;
+            case 3: from = today.withDayOfYear(1); break;
+            default: from = today.withDayOfMonth(1); break;
+        }
+        LocalDate to = today.plusDays(1);
+
+        Snapshot s = new Snapshot();
+        s.totals = reports.totals(from, to);
+        s.top = reports.topSellers(from, to, TOP_N);
+        s.hourly = reports.hourly(today);
+        return s;
+    }
+
+    private void showReport(Snapshot s) {
+        totalsLabel.setText(String.format("%s: revenue %.2f from %,d units in %,d sale lines",
+                periodBox.getSelectedItem(), s.totals.getRevenue(), s.totals.getQuantity(), s.totals.getSales()));
+
+        topModel.setRowCount(0);
+        for (ReportService.Row r : s.top) {
+            topModel.addRow(new Object[]{r.getName(), r.getQuantity(), String.format("%.2f", r.getRevenue())});
+        }
+        hourlyModel.setRowCount(0);
+        for (ReportService.Row r : s.hourly) {
+            hourlyModel.addRow(new Object[]{r.getName(), r.getQuantity(), String.format("%.2f", r.getRevenue())});
+        }
+    }
+
+    // Quick test
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                new ReportsFrame().setVisible(true);
+            }
+        });
+    }
+}
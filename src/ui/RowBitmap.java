@@ -0,0 +1,121 @@
+package ui;
+
+import java.util.Arrays;
+
+/**
+ * RowBitmap
+ *
+ * A set of row numbers for FacetIndex, kept compressed: a sorted int[] while sparse
+ * (a company with a few dozen medicines) and a long[] of bit words once more than
+ * about one row in 32 is set (a stock or price band), switching form as rows are
+ * added and removed. Queries combine bitmaps through plain long[] masks covering
+ * every row.
+ */
+final class RowBitmap {
+
+    private int[] rows = new int[4]; // sparse form: sorted, first `cardinality` used
+    private long[] words;            // dense form when not null
+    private int cardinality;
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    boolean contains(int row) {
+        if (words != null) {
+            int w = row >>> 6;
+            return w < words.length && (words[w] & (1L << row)) != 0;
+        }
+        return Arrays.binarySearch(rows, 0, cardinality, row) >= 0;
+    }
+
+    void add(int row) {
+        if (words != null) {
+            int w = row >>> 6;
+            if (w >= words.length) words = Arrays.copyOf(words, Math.max(w + 1, words.length * 2));
+            if ((words[w] & (1L << row)) != 0) return;
+            words[w] |= 1L << row;
+            cardinality++;
+            return;
+        }
+        int i = Arrays.binarySearch(rows, 0, cardinality, row);
+        if (i >= 0) return;
+        i = -i - 1;
+        if (cardinality == rows.length) rows = Arrays.copyOf(rows, cardinality * 2);
+        System.arraycopy(rows, i, rows, i + 1, cardinality - i);
+        rows[i] = row;
+        cardinality++;
+        // An int per row costs more than a bit per row once more than one row in 32 is set
+        if (cardinality > 64 && cardinality > rows[cardinality - 1] >>> 5) toWords();
+    }
+
+    void remove(int row) {
+        if (words != null) {
+            int w = row >>> 6;
+            if (w >= words.length || (words[w] & (1L << row)) == 0) return;
+            words[w] &= ~(1L << row);
+            cardinality--;
+            if (cardinality < words.length) toRows(); // under one row per word
+            return;
+        }
+        int i = Arrays.binarySearch(rows, 0, cardinality, row);
+        if (i < 0) return;
+        System.arraycopy(rows, i + 1, rows, i, cardinality - i - 1);
+        cardinality--;
+    }
+
+    // Sets this bitmap's rows in mask
+    void orInto(long[] mask) {
+        if (words != null) {
+            int n = Math.min(words.length, mask.length);
+            for (int w = 0; w < n; w++) {
+                mask[w] |= words[w];
+            }
+            return;
+        }
+        for (int i = 0; i < cardinality; i++) {
+            int row = rows[i];
+            mask[row >>> 6] |= 1L << row;
+        }
+    }
+
+    // How many of this bitmap's rows are set in mask
+    int andCardinality(long[] mask) {
+        int count = 0;
+        if (words != null) {
+            int n = Math.min(words.length, mask.length);
+            for (int w = 0; w < n; w++) {
+                count += Long.bitCount(words[w] & mask[w]);
+            }
+            return count;
+        }
+        for (int i = 0; i < cardinality; i++) {
+            int row = rows[i];
+            if ((mask[row >>> 6] & (1L << row)) != 0) count++;
+        }
+        return count;
+    }
+
+    private void toWords() {
+        long[] dense = new long[(rows[cardinality - 1] >>> 6) + 1];
+        for (int i = 0; i < cardinality; i++) {
+            dense[rows[i] >>> 6] |= 1L << rows[i];
+        }
+        words = dense;
+        rows = null;
+    }
+
+    private void toRows() {
+        int[] sparse = new int[Math.max(4, cardinality * 2)];
+        int n = 0;
+        for (int w = 0; w < words.length; w++) {
+            long bits = words[w];
+            while (bits != 0) {
+                sparse[n++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        rows = sparse;
+        words = null;
+    }
+}
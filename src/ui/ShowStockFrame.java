@@ -1,28 +1,57 @@
 package ui;
 
-import db.DBConnection;
+import db.DbExecutor;
+import metrics.Metrics;
+import service.CatalogCache;
+import service.CatalogChanges;
+import service.CatalogService;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.sql.SQLException;
 
 /**
  * ShowStockFrame
  *
  * Displays all medicines in a JTable with columns: ID, Name, Company, Price, Stock.
- * Includes a simple search by name filter.
+ * Includes a name/company search that filters as you type once the catalog cache is loaded.
+ * From then on the whole catalog is shown from memory: click a column header to sort,
+ * and narrow it down by stock, price range and company, or tick facets on the left
+ * (company, stock band, price band; each shows how many rows it would match). Until
+ * then rows are paged in lazily from the database by MedicineTableModel. History opens
+ * the selected medicine's stock ledger. Refresh (and Auto-refresh, every few seconds)
+ * fetches only the medicines changed since the last sync and patches them into the
+ * table, keeping the selection and scroll position.
  */
 public class ShowStockFrame extends JFrame {
 
-    private DefaultTableModel tableModel;
+    private MedicineTableModel tableModel;
     private JTable table;
     private JTextField searchField;
+    private JTextField stockBelowField;
+    private JTextField minPriceField;
+    private JTextField maxPriceField;
+    private JComboBox<String> companyBox;
+    private JButton filterBtn;
+    private JButton clearBtn;
+    private FacetPanel facetPanel;
+    private DbWorker worker;
+    private JLabel cacheStatusLabel;
+    private Timer searchDebounce;
+    private Timer autoRefresh;
+    private boolean refreshing;
+    private String lastFilter = "";
+    private final CatalogService catalog = new CatalogService();
+
+    private static final int SEARCH_DEBOUNCE_MS = 150;
+    private static final int AUTO_REFRESH_MS = 5_000;
+    private static final String ALL_COMPANIES = "All companies";
 
     public ShowStockFrame() {
         super();
@@ -34,33 +63,81 @@ public class ShowStockFrame extends JFrame {
 
     @SuppressWarnings("Convert2Lambda")
     private void initComponents() {
-        setSize(400, 300);
+        setSize(960, 520);
         setLocationRelativeTo(null);
         setLayout(new BorderLayout(8, 8));
 
         // Top: search
         JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
-        top.add(new JLabel("Search by name:"));
+        top.add(new JLabel("Search name/company:"));
     searchField = new JTextField(20);
         top.add(searchField);
         JButton searchBtn = new JButton("Search");
         JButton refreshBtn = new JButton("Refresh");
+        JButton historyBtn = new JButton("History");
+        JCheckBox autoRefreshBox = new JCheckBox("Auto-refresh");
         top.add(searchBtn);
         top.add(refreshBtn);
+        top.add(autoRefreshBox);
+        top.add(historyBtn);
+        worker = new DbWorker(this, searchBtn, refreshBtn);
+        top.add(worker.getProgressBar());
+
+        // Second row: column filters, applied in memory
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filters.add(new JLabel("Stock below:"));
+        stockBelowField = new JTextField(5);
+        filters.add(stockBelowField);
+        filters.add(new JLabel("Price from:"));
+        minPriceField = new JTextField(6);
+        filters.add(minPriceField);
+        filters.add(new JLabel("to:"));
+        maxPriceField = new JTextField(6);
+        filters.add(maxPriceField);
+        filters.add(new JLabel("Company:"));
+        companyBox = new JComboBox<>(new String[]{ALL_COMPANIES});
+        filters.add(companyBox);
+        filterBtn = new JButton("Filter");
+        clearBtn = new JButton("Clear");
+        filters.add(filterBtn);
+        filters.add(clearBtn);
+        setFiltersEnabled(false);
 
-        add(top, BorderLayout.NORTH);
+        JPanel north = new JPanel(new GridLayout(2, 1));
+        north.add(top);
+        north.add(filters);
+        add(north, BorderLayout.NORTH);
 
         // Table
-        tableModel = new DefaultTableModel(new Object[]{"ID", "Name", "Company", "Price", "Stock"}, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new MedicineTableModel();
         table = new JTable(tableModel);
+        table.getTableHeader().setToolTipText("Click to sort (once the catalog is loaded)");
         JScrollPane scroll = new JScrollPane(table);
         add(scroll, BorderLayout.CENTER);
 
+        // Left: facets, counted from the in-memory bitmap indexes
+        facetPanel = new FacetPanel(new Runnable() {
+            @Override
+            public void run() {
+                loadData(searchField.getText().trim());
+            }
+        });
+        add(facetPanel.getComponent(), BorderLayout.WEST);
+
+        // Bottom: catalog cache health (hit ratio, staleness)
+        cacheStatusLabel = new JLabel(" ");
+        cacheStatusLabel.setForeground(Color.GRAY);
+        add(cacheStatusLabel, BorderLayout.SOUTH);
+        // Rows that could not be loaded stay blank until the retry; say so instead of the cache stats
+        tableModel.setPageErrorHandler(error -> {
+            if (error == null) {
+                updateCacheStatus();
+            } else {
+                cacheStatusLabel.setForeground(Color.RED);
+                cacheStatusLabel.setText(error);
+            }
+        });
+
         // Actions
         searchBtn.addActionListener(new ActionListener() {
             @Override
@@ -69,57 +146,271 @@ public class ShowStockFrame extends JFrame {
             }
         });
 
+        // Enter in the search box supersedes any search still in flight
+        searchField.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                loadData(searchField.getText().trim());
+            }
+        });
+
+        // Search as you type, debounced; only served from memory, never a DB query per keystroke
+        searchDebounce = new Timer(SEARCH_DEBOUNCE_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                String text = searchField.getText().trim();
+                if (!CatalogCache.get().isLoaded()) return;
+                if (!text.equals(lastFilter)) loadData(text);
+            }
+        });
+        searchDebounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { searchDebounce.restart(); }
+            @Override public void removeUpdate(DocumentEvent e) { searchDebounce.restart(); }
+            @Override public void changedUpdate(DocumentEvent e) { searchDebounce.restart(); }
+        });
+
         refreshBtn.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                searchField.setText("");
-                loadData("");
+                refresh();
             }
         });
-    }
 
-    // Load data from medicines table; if nameFilter is empty, load all
-    private void loadData(String nameFilter) {
-        tableModel.setRowCount(0);
+        // Quiet background deltas: no progress bar, errors only logged
+        autoRefresh = new Timer(AUTO_REFRESH_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                refreshInBackground();
+            }
+        });
+        autoRefreshBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (autoRefreshBox.isSelected()) autoRefresh.start(); else autoRefresh.stop();
+            }
+        });
 
-        Connection conn = null;
-        PreparedStatement pst = null;
-        ResultSet rs = null;
+        ActionListener applyFilters = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                loadData(searchField.getText().trim());
+            }
+        };
+        filterBtn.addActionListener(applyFilters);
+        stockBelowField.addActionListener(applyFilters);
+        minPriceField.addActionListener(applyFilters);
+        maxPriceField.addActionListener(applyFilters);
 
-        try {
-            conn = DBConnection.getConnection();
-            if (conn == null) {
-                JOptionPane.showMessageDialog(this, "Cannot connect to database.", "DB Error", JOptionPane.ERROR_MESSAGE);
-                return;
+        clearBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                stockBelowField.setText("");
+                minPriceField.setText("");
+                maxPriceField.setText("");
+                companyBox.setSelectedIndex(0);
+                loadData(searchField.getText().trim());
             }
+        });
 
-            if (nameFilter == null || nameFilter.isEmpty()) {
-                String sql = "SELECT id, name, company, price, stock FROM medicine";
-                pst = conn.prepareStatement(sql);
-            } else {
-                String sql = "SELECT id, name, company, price, stock FROM medicine WHERE name LIKE ?";
-                pst = conn.prepareStatement(sql);
-                pst.setString(1, "%" + nameFilter + "%");
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = table.columnAtPoint(e.getPoint());
+                if (column >= 0) sortBy(table.convertColumnIndexToModel(column));
             }
+        });
 
-            rs = pst.executeQuery();
-            while (rs.next()) {
-                Object[] row = new Object[5];
-                row[0] = rs.getInt("id");
-                row[1] = rs.getString("name");
-                row[2] = rs.getString("company");
-                row[3] = rs.getDouble("price");
-                row[4] = rs.getInt("stock");
-                tableModel.addRow(row);
+        historyBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showHistory();
             }
+        });
+    }
 
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(this, "Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
-        } finally {
-            try { if (rs != null) rs.close(); } catch (SQLException ignored) {}
-            try { if (pst != null) pst.close(); } catch (SQLException ignored) {}
-            try { if (conn != null) conn.close(); } catch (SQLException ignored) {}
+    // Fetch the medicines changed since the table's last sync and patch them in
+    private void refresh() {
+        long since = tableModel.getSyncedAt();
+        if (since == 0L) {
+            loadData(lastFilter);
+            return;
         }
+        worker.run("Refreshing...", () -> catalog.changesSince(since), changes -> applyChanges(since, changes));
+    }
+
+    private void refreshInBackground() {
+        long since = tableModel.getSyncedAt();
+        if (since == 0L || refreshing || worker.isBusy()) return;
+        refreshing = true;
+        DbExecutor.submit(() -> {
+            try {
+                CatalogChanges changes = catalog.changesSince(since);
+                SwingUtilities.invokeLater(() -> {
+                    refreshing = false;
+                    if (!worker.isBusy()) applyChanges(since, changes);
+                });
+            } catch (SQLException | RuntimeException ex) {
+                Metrics.increment("ui.errors");
+                System.err.println("Stock auto-refresh failed: " + ex.getMessage());
+                SwingUtilities.invokeLater(() -> refreshing = false);
+            }
+        });
+    }
+
+    private void applyChanges(long since, CatalogChanges changes) {
+        CatalogCache.get().apply(changes);
+        if (!tableModel.apply(since, changes)) reload();
+        updateFacets();
+        updateCacheStatus();
+    }
+
+    // Start over from the catalog cache (in memory) or the database
+    private void reload() {
+        CatalogCache cache = CatalogCache.get();
+        if (tableModel.isInMemory() && cache.isLoaded()) {
+            int selected = selectedId();
+            tableModel.showInMemory(cache.all(), tableModel.getFilter(), cache.getSyncedAt());
+            fillCompanies();
+            reselect(selected);
+        } else {
+            loadData(lastFilter);
+        }
+    }
+
+    private void sortBy(int column) {
+        if (!tableModel.isInMemory()) return;
+        int selected = selectedId();
+        long start = System.nanoTime();
+        tableModel.sortBy(column);
+        Metrics.timer("ui.sort").recordSince(start);
+        updateHeaders();
+        reselect(selected);
+    }
+
+    // Column filters from the second row; null (after telling the user) when one is not a number
+    private MedicineColumns.Filter readFilter(String text) {
+        try {
+            String stock = stockBelowField.getText().trim();
+            String min = minPriceField.getText().trim();
+            String max = maxPriceField.getText().trim();
+            String company = (String) companyBox.getSelectedItem();
+            return new MedicineColumns.Filter(text,
+                    stock.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(stock),
+                    min.isEmpty() ? Double.NEGATIVE_INFINITY : Double.parseDouble(min),
+                    max.isEmpty() ? Double.POSITIVE_INFINITY : Double.parseDouble(max),
+                    company == null || ALL_COMPANIES.equals(company) ? null : company,
+                    facetPanel.getSelected());
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this, "Stock and prices must be numbers.", "Validation", JOptionPane.WARNING_MESSAGE);
+            return null;
+        }
+    }
+
+    private void fillCompanies() {
+        Object selected = companyBox.getSelectedItem();
+        DefaultComboBoxModel<String> model = new DefaultComboBoxModel<>();
+        model.addElement(ALL_COMPANIES);
+        for (String company : tableModel.getCompanies()) {
+            model.addElement(company);
+        }
+        companyBox.setModel(model);
+        if (selected != null) companyBox.setSelectedItem(selected);
+    }
+
+    // Facet counts follow the rows shown; empty (with a hint) until the table is in memory
+    private void updateFacets() {
+        String[][] labels = new String[FacetIndex.FACETS][];
+        for (int f = 0; f < FacetIndex.FACETS; f++) {
+            labels[f] = tableModel.getFacetLabels(f);
+        }
+        facetPanel.show(labels, tableModel.getFacetCounts());
+    }
+
+    private void setFiltersEnabled(boolean enabled) {
+        stockBelowField.setEnabled(enabled);
+        minPriceField.setEnabled(enabled);
+        maxPriceField.setEnabled(enabled);
+        companyBox.setEnabled(enabled);
+        filterBtn.setEnabled(enabled);
+        clearBtn.setEnabled(enabled);
+    }
+
+    // Header text follows the model (sort arrow); TableColumn keeps its own copy
+    private void updateHeaders() {
+        for (int c = 0; c < table.getColumnCount(); c++) {
+            table.getColumnModel().getColumn(c).setHeaderValue(tableModel.getColumnName(table.convertColumnIndexToModel(c)));
+        }
+        table.getTableHeader().repaint();
+    }
+
+    private int selectedId() {
+        int row = table.getSelectedRow();
+        Object id = row < 0 ? null : tableModel.getValueAt(row, 0);
+        return id == null ? -1 : (Integer) id;
+    }
+
+    private void reselect(int id) {
+        int row = id < 0 ? -1 : tableModel.rowOf(id);
+        if (row < 0) return;
+        table.setRowSelectionInterval(row, row);
+        table.scrollRectToVisible(table.getCellRect(row, 0, true));
+    }
+
+    @Override
+    public void dispose() {
+        autoRefresh.stop();
+        super.dispose();
+    }
+
+    // Stock ledger of the selected medicine
+    private void showHistory() {
+        int row = table.getSelectedRow();
+        Object id = row < 0 ? null : tableModel.getValueAt(row, 0);
+        if (id == null) {
+            JOptionPane.showMessageDialog(this, "Select a medicine first.", "Validation", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        new StockHistoryFrame((Integer) id, String.valueOf(tableModel.getValueAt(row, 1))).setVisible(true);
+    }
+
+    // Once the catalog cache is loaded, searches and filters run in memory (text through its trigram
+    // index); otherwise count matching rows in the background and let the model page rows in as they are shown
+    private void loadData(String nameFilter) {
+        lastFilter = nameFilter;
+        CatalogCache cache = CatalogCache.get();
+        if (cache.isLoaded()) {
+            MedicineColumns.Filter filter = readFilter(nameFilter);
+            if (filter == null) return;
+            worker.cancel();
+            int selected = selectedId();
+            long start = System.nanoTime();
+            if (tableModel.isInMemory()) {
+                tableModel.setFilter(filter);
+            } else {
+                tableModel.showInMemory(cache.all(), filter, cache.getSyncedAt());
+                fillCompanies();
+                setFiltersEnabled(true);
+                updateHeaders();
+            }
+            Metrics.timer("ui.search").recordSince(start);
+            updateFacets();
+            reselect(selected);
+            updateCacheStatus();
+            return;
+        }
+        worker.run("Loading...", Metrics.timed("ui.search", () -> catalog.syncPoint(nameFilter)), at -> {
+            tableModel.reset(nameFilter, at);
+            setFiltersEnabled(false);
+            updateHeaders();
+            updateFacets();
+            updateCacheStatus();
+        });
+    }
+
+    private void updateCacheStatus() {
+        cacheStatusLabel.setForeground(Color.GRAY);
+        cacheStatusLabel.setText(CatalogCache.get().stats().toString());
     }
 
     // Quick test
@@ -0,0 +1,73 @@
+package ui;
+
+import db.DBConnection;
+import db.DbExecutor;
+import metrics.Metrics;
+import service.CatalogCache;
+import service.RemoteClient;
+
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup
+ *
+ * Launch pipeline: starts warming the connection pool, upgrading the schema and
+ * prefetching the catalog in the background, installs the look and feel once, and lets Main show the login window
+ * straight away. The connection check runs in parallel from LoginFrame.
+ *
+ * Each phase is printed as "Startup: <phase> at N ms" (measured from JVM start) and
+ * recorded as a startup.<phase> timer, so time to first usable window can be tracked.
+ */
+public final class Startup {
+
+    private static final long JVM_START_MS = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+    private Startup() {
+    }
+
+    // Called first thing in main, before any window exists
+    public static void begin() {
+        mark("main");
+        // Thin clients have no pool; the store server keeps its own catalog warm
+        if (!RemoteClient.isEnabled()) {
+            DbExecutor.submit(() -> {
+                DBConnection.warmUpPool();
+                mark("pool-warm");
+            });
+        }
+        DbExecutor.submit(() -> {
+            prepareDatabase();
+            try {
+                CatalogCache.get().loadIfNeeded();
+                mark("catalog");
+            } catch (SQLException ex) {
+                // LoginFrame loads it again after login (e.g. once DB settings are fixed)
+                Metrics.increment("catalog.errors");
+                System.err.println("Catalog prefetch failed: " + ex.getMessage());
+            }
+        });
+        UIUtils.init();
+        mark("look-and-feel");
+    }
+
+    // Create or upgrade the schema before first use; failures are logged and retried after login
+    static void prepareDatabase() {
+        if (RemoteClient.isEnabled()) return;
+        try {
+            DBConnection.ensureSchema();
+            mark("schema");
+        } catch (SQLException ex) {
+            Metrics.increment("schema.errors");
+            System.err.println("Schema check failed: " + ex.getMessage());
+        }
+    }
+
+    // Record a phase as finished now
+    public static void mark(String phase) {
+        long elapsedMs = Math.max(0L, System.currentTimeMillis() - JVM_START_MS);
+        Metrics.timer("startup." + phase).record(TimeUnit.MILLISECONDS.toNanos(elapsedMs));
+        System.out.println("Startup: " + phase + " at " + elapsedMs + " ms");
+    }
+}
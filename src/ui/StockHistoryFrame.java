@@ -0,0 +1,110 @@
+package ui;
+
+import service.StockHistory;
+import service.StockLedger;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.sql.Timestamp;
+
+/**
+ * StockHistoryFrame
+ *
+ * The stock ledger of one medicine: its latest movements, newest first, and the
+ * on-hand figure they add up to next to the stock column sales use.
+ */
+public class StockHistoryFrame extends JFrame {
+
+    private static final int MAX_ROWS = 200;
+
+    private final int medicineId;
+    private final String medicineName;
+    private DefaultTableModel model;
+    private JLabel summaryLabel;
+    private DbWorker worker;
+    private final StockLedger ledger = new StockLedger();
+
+    public StockHistoryFrame(int medicineId, String medicineName) {
+        super();
+        this.medicineId = medicineId;
+        this.medicineName = medicineName;
+        UIUtils.init();
+        initComponents();
+        UIUtils.styleFrame(this, "Stock History - " + medicineName);
+        setSize(720, 420);
+        setLocationRelativeTo(null);
+        loadHistory();
+    }
+
+    private void initComponents() {
+    setLayout(new BorderLayout(8,8));
+
+    JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    top.add(new JLabel("Last " + MAX_ROWS + " stock movements of " + medicineName));
+    JButton refreshBtn = new JButton("Refresh");
+    top.add(refreshBtn);
+    worker = new DbWorker(this, refreshBtn);
+    top.add(worker.getProgressBar());
+
+    model = new DefaultTableModel(new String[]{"Time", "Change", "Reason", "Batch", "Reference", "Terminal"}, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    JTable table = new JTable(model);
+
+    summaryLabel = new JLabel(" ");
+    summaryLabel.setBorder(BorderFactory.createEmptyBorder(0, 8, 4, 8));
+
+    add(top, BorderLayout.NORTH);
+    add(new JScrollPane(table), BorderLayout.CENTER);
+    add(summaryLabel, BorderLayout.SOUTH);
+
+        refreshBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                loadHistory();
+            }
+        });
+    }
+
+    private void loadHistory() {
+        worker.run("Loading...", () -> ledger.history(medicineId, MAX_ROWS), this::showHistory);
+    }
+
+    private void showHistory(StockHistory history) {
+        model.setRowCount(0);
+        if (history == null) {
+            summaryLabel.setText(medicineName + " no longer exists.");
+            return;
+        }
+        for (StockHistory.Entry e : history.getEntries()) {
+            model.addRow(new Object[]{new Timestamp(e.getCreatedAt()).toString(),
+                    (e.getDelta() > 0 ? "+" : "") + e.getDelta(), e.getReason(),
+                    e.getBatchNo() == null ? "" : e.getBatchNo(), e.getRef() == null ? "" : e.getRef(),
+                    e.getTerminal() == null ? "" : e.getTerminal()});
+        }
+        String text = "On hand per ledger: " + history.getOnHand() + "   Stock: " + history.getRecordedStock();
+        if (history.isDrifted()) {
+            text += "   (stock was changed outside the app)";
+            summaryLabel.setForeground(Color.RED);
+        } else {
+            summaryLabel.setForeground(UIManager.getColor("Label.foreground"));
+        }
+        summaryLabel.setText(text);
+    }
+
+    // Quick test
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                new StockHistoryFrame(1, "Paracetamol").setVisible(true);
+            }
+        });
+    }
+}
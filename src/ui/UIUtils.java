@@ -12,8 +12,12 @@ public class UIUtils {
 
     private static final Font DEFAULT_FONT = new Font("SansSerif", Font.PLAIN, 14);
 
-    // Apply theme once at application start
-    public static void init() {
+    private static boolean initialized;
+
+    // Apply theme once at application start; later calls (every frame constructor) are no-ops
+    public static synchronized void init() {
+        if (initialized) return;
+        initialized = true;
         try {
             for (UIManager.LookAndFeelInfo info : UIManager.getInstalledLookAndFeels()) {
                 if ("Nimbus".equals(info.getName())) {
@@ -0,0 +1,79 @@
+package bench;
+
+import db.DBConnection;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * EmbeddedDatabase
+ *
+ * An in-memory H2 database in MySQL mode carrying the app's schema, so benchmarks and
+ * tests run the real service code without a MySQL server and start from the same
+ * state every time. Lives outside src/ (the root pom adds test-support/ to the test
+ * sources, benchmarks/ to its own) so the app never ships it and never needs H2.
+ *
+ * The schema comes from SchemaMigrator, every migration included, as on MySQL. Two
+ * things H2 lacks are stood in for first: GET_LOCK / RELEASE_LOCK (the migration lock)
+ * and DATE_FORMAT (hourly sales rollups) become the Java functions below. Report
+ * rebuilds (LOCK IN SHARE MODE) and EXPLAIN plan checks are MySQL-only.
+ *
+ * DBConnection migrates once per process, so use one embedded database per JVM.
+ */
+public final class EmbeddedDatabase {
+
+    private static final String USER = "sa";
+
+    private static final String[] SHIMS = {
+        "CREATE ALIAS IF NOT EXISTS GET_LOCK FOR 'bench.EmbeddedDatabase.getLock'",
+        "CREATE ALIAS IF NOT EXISTS RELEASE_LOCK FOR 'bench.EmbeddedDatabase.releaseLock'",
+        "CREATE ALIAS IF NOT EXISTS DATE_FORMAT FOR 'bench.EmbeddedDatabase.dateFormat'"
+    };
+
+    private EmbeddedDatabase() {
+    }
+
+    /**
+     * Creates (or reopens) the named in-memory database, brings its schema up to date and
+     * points DBConnection at it.
+     *
+     * @return the JDBC URL
+     */
+    public static String start(String name) throws SQLException {
+        // Contended row locks wait 10 s rather than H2's default 1 s, closer to InnoDB
+        String url = "jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+        try (Connection conn = DriverManager.getConnection(url, USER, "");
+             Statement st = conn.createStatement()) {
+            for (String sql : SHIMS) {
+                st.execute(sql);
+            }
+        }
+        DBConnection.setConfig(url, USER, "");
+        DBConnection.ensureSchema();
+        return url;
+    }
+
+    // GET_LOCK(name, timeout): one process, one database, nobody to wait for
+    public static int getLock(String name, int timeoutSec) {
+        return 1;
+    }
+
+    public static int releaseLock(String name) {
+        return 1;
+    }
+
+    // DATE_FORMAT(time, format) for the specifiers the app uses (%Y %m %d %H %i %s)
+    public static String dateFormat(Timestamp time, String format) {
+        LocalDateTime t = time.toLocalDateTime();
+        return format.replace("%Y", String.format("%04d", t.getYear()))
+                .replace("%m", String.format("%02d", t.getMonthValue()))
+                .replace("%d", String.format("%02d", t.getDayOfMonth()))
+                .replace("%H", String.format("%02d", t.getHour()))
+                .replace("%i", String.format("%02d", t.getMinute()))
+                .replace("%s", String.format("%02d", t.getSecond()));
+    }
+}
@@ -0,0 +1,232 @@
+package service;
+
+import bench.EmbeddedDatabase;
+import db.DBConnection;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Many cashiers selling the same medicine at once must never oversell it: the
+ * guarded decrement in BillingService lets exactly the starting stock through, at
+ * about the throughput of the SELECT-then-UPDATE sale it replaced.
+ * Runs against an embedded H2 database in MySQL mode.
+ */
+class BillingServiceConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int STOCK = 200;
+    // Each seller keeps trying until refused, so far more sales are attempted than there is stock
+    private static final int MAX_ATTEMPTS_PER_THREAD = STOCK;
+    private static final int SALES_PER_THREAD = 200;
+    // Embedded H2 has no network round trip for the guarded update to save, so it only has to stay close
+    private static final double MIN_RELATIVE_THROUGHPUT = 0.5;
+
+    @BeforeAll
+    static void startDatabase() throws SQLException {
+        EmbeddedDatabase.start("medixtest");
+        DBConnection.setPoolSize(THREADS, THREADS + 2);
+    }
+
+    @Test
+    void concurrentSalesNeverOversell() throws Exception {
+        String name = "Oversell Test 500mg Tablet";
+        int id = insertMedicine(name, STOCK);
+        BillingService billing = new BillingService();
+
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        AtomicInteger lowestReported = new AtomicInteger(STOCK);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<Void>> sellers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            // Half the sellers go by id (autocomplete), half by name (typed)
+            boolean byId = t % 2 == 0;
+            sellers.add(pool.submit((Callable<Void>) () -> {
+                start.await();
+                for (int i = 0; i < MAX_ATTEMPTS_PER_THREAD; i++) {
+                    SaleResult r = byId ? billing.sellById(id, name, 1) : billing.sell(name, 1);
+                    if (r.getStatus() == SaleResult.Status.INSUFFICIENT_STOCK) {
+                        refused.incrementAndGet();
+                        break;
+                    }
+                    assertEquals(SaleResult.Status.OK, r.getStatus());
+                    sold.incrementAndGet();
+                    lowestReported.accumulateAndGet(r.getRemainingStock(), Math::min);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(2, TimeUnit.MINUTES), "sellers did not finish");
+        for (Future<Void> f : sellers) {
+            f.get();
+        }
+
+        assertEquals(STOCK, sold.get(), "successful sales must add up to the starting stock");
+        assertEquals(THREADS, refused.get(), "every seller should end on a refusal");
+        assertTrue(lowestReported.get() >= 0, "a sale reported negative stock: " + lowestReported.get());
+        assertEquals(0, queryInt("SELECT stock FROM medicine WHERE id = ?", id));
+        assertEquals(STOCK, queryInt("SELECT COALESCE(SUM(quantity), 0) FROM bills WHERE medicine_name = ?", name));
+        assertEquals(STOCK, queryInt("SELECT COUNT(*) FROM bills WHERE medicine_name = ?", name));
+    }
+
+    @Test
+    void guardedSaleKeepsUpWithSelectThenUpdate() throws Exception {
+        String oldName = "Old Path 250mg Capsule";
+        String newName = "Guarded Path 250mg Capsule";
+        insertMedicine(oldName, 1_000_000);
+        int newId = insertMedicine(newName, 1_000_000);
+
+        // Warm both paths up first so JIT and H2's statement cache do not favour the second run
+        timeSales(THREADS, SALES_PER_THREAD / 4, () -> selectThenUpdate(oldName));
+        timeSales(THREADS, SALES_PER_THREAD / 4, () -> guardedUpdate(newName));
+        double oldRate = timeSales(THREADS, SALES_PER_THREAD, () -> selectThenUpdate(oldName));
+        double newRate = timeSales(THREADS, SALES_PER_THREAD, () -> guardedUpdate(newName));
+        System.out.printf("Sales/s with %d threads: select-then-update %.0f, guarded update %.0f%n", THREADS, oldRate, newRate);
+
+        int guardedSales = THREADS * (SALES_PER_THREAD / 4 + SALES_PER_THREAD);
+        assertEquals(1_000_000 - guardedSales, queryInt("SELECT stock FROM medicine WHERE id = ?", newId));
+        assertTrue(newRate >= oldRate * MIN_RELATIVE_THROUGHPUT,
+                String.format("guarded sale fell behind: %.0f vs %.0f sales/s", newRate, oldRate));
+    }
+
+    // Sales per second with every thread making `sales` sales
+    private static double timeSales(int threads, int sales, Callable<?> sale) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> sellers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            sellers.add(pool.submit((Callable<Void>) () -> {
+                start.await();
+                for (int i = 0; i < sales; i++) {
+                    sale.call();
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<Void> f : sellers) {
+            f.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+        return threads * (double) sales * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    // The sale as BillingFrame made it before the guarded update: read the stock, check it, then decrement
+    private static boolean selectThenUpdate(String name) throws SQLException {
+        try (Connection conn = DBConnection.openConnection()) {
+            int id;
+            double price;
+            try (PreparedStatement pst = conn.prepareStatement("SELECT id, price, stock FROM medicine WHERE name = ?")) {
+                pst.setString(1, name);
+                try (ResultSet rs = pst.executeQuery()) {
+                    if (!rs.next() || rs.getInt("stock") < 1) return false;
+                    id = rs.getInt("id");
+                    price = rs.getDouble("price");
+                }
+            }
+            conn.setAutoCommit(false);
+            try (PreparedStatement upd = conn.prepareStatement("UPDATE medicine SET stock = stock - ? WHERE id = ?");
+                 PreparedStatement ins = conn.prepareStatement("INSERT INTO bills(medicine_name, quantity, total) VALUES (?, ?, ?)")) {
+                upd.setInt(1, 1);
+                upd.setInt(2, id);
+                upd.executeUpdate();
+                ins.setString(1, name);
+                ins.setInt(2, 1);
+                ins.setDouble(3, price);
+                ins.executeUpdate();
+                conn.commit();
+                return true;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    // The sale as BillingService.sell makes it at heart: decrement only if enough stock is left, then read the price under the lock
+    private static boolean guardedUpdate(String name) throws SQLException {
+        try (Connection conn = DBConnection.openConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement upd = conn.prepareStatement(BillingService.DECREMENT_SQL);
+                 PreparedStatement look = conn.prepareStatement(BillingService.LOOKUP_SQL);
+                 PreparedStatement ins = conn.prepareStatement(BillingService.INSERT_BILL_SQL)) {
+                upd.setInt(1, 1);
+                upd.setString(2, name);
+                upd.setInt(3, 1);
+                if (upd.executeUpdate() == 0) {
+                    conn.rollback();
+                    return false;
+                }
+                double price;
+                look.setString(1, name);
+                try (ResultSet rs = look.executeQuery()) {
+                    rs.next();
+                    price = rs.getDouble("price");
+                }
+                ins.setString(1, name);
+                ins.setInt(2, 1);
+                ins.setDouble(3, price);
+                ins.executeUpdate();
+                conn.commit();
+                return true;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static int insertMedicine(String name, int stock) throws SQLException {
+        try (Connection conn = DBConnection.openConnection();
+             PreparedStatement pst = conn.prepareStatement("INSERT INTO medicine(name, company, price, stock) VALUES (?, ?, ?, ?)",
+                     Statement.RETURN_GENERATED_KEYS)) {
+            pst.setString(1, name);
+            pst.setString(2, "Test Pharma");
+            pst.setDouble(3, 2.50);
+            pst.setInt(4, stock);
+            pst.executeUpdate();
+            try (ResultSet keys = pst.getGeneratedKeys()) {
+                keys.next();
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    private static int queryInt(String sql, Object arg) throws SQLException {
+        try (Connection conn = DBConnection.openConnection();
+             PreparedStatement pst = conn.prepareStatement(sql)) {
+            pst.setObject(1, arg);
+            try (ResultSet rs = pst.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+}